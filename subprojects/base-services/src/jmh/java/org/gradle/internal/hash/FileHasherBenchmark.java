@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares hashing a file by streaming it with hashing it via memory mappings, with and without reading chunks ahead in parallel.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@State(Scope.Benchmark)
+public class FileHasherBenchmark {
+
+    @Param({"1", "100", "1024"})
+    int fileSizeInMegabytes;
+
+    @Param({"streamed", "mapped", "parallel"})
+    String mode;
+
+    private File file;
+    private ExecutorService executor;
+    private FileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("hash-benchmark", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(1234L);
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < fileSizeInMegabytes; i++) {
+                random.nextBytes(block);
+                outputStream.write(block);
+            }
+        } finally {
+            outputStream.close();
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        StreamHasher streamHasher = new DefaultStreamHasher();
+        if (mode.equals("streamed")) {
+            hasher = new DefaultFileHasher(streamHasher, -1, null);
+        } else if (mode.equals("mapped")) {
+            hasher = new DefaultFileHasher(streamHasher, 0, null);
+        } else {
+            hasher = new DefaultFileHasher(streamHasher, 0, executor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public HashCode hashFile() {
+        return hasher.hash(file);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import org.gradle.api.Action;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock;
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
+
+/**
+ * Measures the throughput of lock/unlock cycles on project-style exclusive locks, with many threads competing for the resource lock state.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ResourceLockCoordinationBenchmark {
+
+    @Param({"1", "16", "256"})
+    int lockCount;
+
+    DefaultResourceLockCoordinationService coordinationService;
+    ResourceLock[] locks;
+
+    @Setup
+    public void setup() {
+        coordinationService = new DefaultResourceLockCoordinationService();
+        Action<ResourceLock> noop = new Action<ResourceLock>() {
+            @Override
+            public void execute(ResourceLock resourceLock) {
+            }
+        };
+        locks = new ResourceLock[lockCount];
+        for (int i = 0; i < lockCount; i++) {
+            locks[i] = new ExclusiveAccessResourceLock("lock " + i, coordinationService, noop, noop);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        final Random random = new Random();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void lockAndUnlock_8_workers(Worker worker) {
+        lockAndUnlock(worker);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void lockAndUnlock_32_workers(Worker worker) {
+        lockAndUnlock(worker);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void lockAndUnlock_64_workers(Worker worker) {
+        lockAndUnlock(worker);
+    }
+
+    private void lockAndUnlock(Worker worker) {
+        ResourceLock resourceLock = locks[worker.random.nextInt(lockCount)];
+        coordinationService.withStateLock(lock(resourceLock));
+        coordinationService.withStateLock(unlock(resourceLock));
+    }
+}
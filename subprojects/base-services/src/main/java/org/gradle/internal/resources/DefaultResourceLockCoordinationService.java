@@ -17,16 +17,34 @@
 package org.gradle.internal.resources;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.gradle.api.Transformer;
 import org.gradle.internal.UncheckedException;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Coordinates changes to resource lock state.  All state changes happen while holding a single state lock, so that
+ * a transform can atomically acquire or release several resources.  Threads that need to wait for a change are parked
+ * on their own {@link Condition}: a thread blocked by {@link #lock(Iterable)} on an {@link ExclusiveAccessResourceLock}
+ * is only woken when that resource is released, while any other waiting thread is woken by every released resource.
+ */
 public class DefaultResourceLockCoordinationService implements ResourceLockCoordinationService {
-    private final Object lock = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final Set<Condition> waitingForAnyChange = Sets.newLinkedHashSet();
+    // Guarded by lock
+    private final Map<ResourceLock, Set<Condition>> waitingForResource = Maps.newHashMap();
+    private final AtomicLong contendedStateChanges = new AtomicLong();
+    private final AtomicLong stateChangeRetries = new AtomicLong();
     private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
         @Override
         protected List<ResourceLockState> initialValue() {
@@ -39,7 +57,8 @@ public boolean withStateLock(Transformer<ResourceLockState.Disposition, Resource
         while (true) {
             DefaultResourceLockState resourceLockState = new DefaultResourceLockState();
             ResourceLockState.Disposition disposition;
-            synchronized (lock) {
+            acquireStateLock();
+            try {
                 try {
                     currentState.get().add(resourceLockState);
                     disposition = stateLockAction.transform(resourceLockState);
@@ -47,27 +66,28 @@ public boolean withStateLock(Transformer<ResourceLockState.Disposition, Resource
                     switch (disposition) {
                         case RETRY:
                             resourceLockState.releaseLocks();
-                            try {
-                                lock.wait();
-                            } catch (InterruptedException e) {
-                                throw UncheckedException.throwAsUncheckedException(e);
-                            }
+                            signalWaiters(resourceLockState);
+                            awaitStateChange(stateLockAction instanceof AcquireLocks ? resourceLockState.blockedOn : null);
                             break;
                         case FINISHED:
-                            maybeNotifyStateChange(resourceLockState);
+                            signalWaiters(resourceLockState);
                             return true;
                         case FAILED:
                             resourceLockState.releaseLocks();
+                            signalWaiters(resourceLockState);
                             return false;
                         default:
                             throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
                     }
                 } catch (Throwable t) {
                     resourceLockState.releaseLocks();
+                    signalWaiters(resourceLockState);
                     throw UncheckedException.throwAsUncheckedException(t);
                 } finally {
                     currentState.get().remove(resourceLockState);
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -83,22 +103,88 @@ public ResourceLockState getCurrent() {
         }
     }
 
-    private void maybeNotifyStateChange(DefaultResourceLockState resourceLockState) {
+    /**
+     * Returns the number of times a thread had to wait for another thread to finish changing the resource lock state.
+     */
+    public long getContendedStateChanges() {
+        return contendedStateChanges.get();
+    }
+
+    /**
+     * Returns the number of times a thread waiting for the resource lock state to change was woken up to retry.
+     */
+    public long getStateChangeRetries() {
+        return stateChangeRetries.get();
+    }
+
+    private void acquireStateLock() {
+        if (!lock.tryLock()) {
+            contendedStateChanges.incrementAndGet();
+            lock.lock();
+        }
+    }
+
+    private void awaitStateChange(@Nullable ResourceLock blockedOn) {
+        Condition condition = lock.newCondition();
+        Set<Condition> waiters;
+        if (blockedOn instanceof ExclusiveAccessResourceLock) {
+            waiters = waitingForResource.get(blockedOn);
+            if (waiters == null) {
+                waiters = Sets.newLinkedHashSet();
+                waitingForResource.put(blockedOn, waiters);
+            }
+        } else {
+            waiters = waitingForAnyChange;
+        }
+        waiters.add(condition);
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            waiters.remove(condition);
+            if (waiters.isEmpty() && waiters != waitingForAnyChange) {
+                waitingForResource.remove(blockedOn);
+            }
+        }
+        stateChangeRetries.incrementAndGet();
+    }
+
+    private void signalWaiters(DefaultResourceLockState resourceLockState) {
         if (resourceLockState.hasUnlockedResources()) {
-            notifyStateChange();
+            for (ResourceLock resourceLock : resourceLockState.unlockedResources) {
+                Set<Condition> waiters = waitingForResource.get(resourceLock);
+                if (waiters != null) {
+                    signalAll(waiters);
+                }
+            }
+            signalAll(waitingForAnyChange);
+        }
+    }
+
+    private static void signalAll(Iterable<Condition> waiters) {
+        for (Condition condition : waiters) {
+            condition.signal();
         }
     }
 
     @Override
     public void notifyStateChange() {
-        synchronized (lock) {
-            lock.notifyAll();
+        acquireStateLock();
+        try {
+            for (Set<Condition> waiters : waitingForResource.values()) {
+                signalAll(waiters);
+            }
+            signalAll(waitingForAnyChange);
+        } finally {
+            lock.unlock();
         }
     }
 
     private static class DefaultResourceLockState implements ResourceLockState {
         private Set<ResourceLock> lockedResources;
         private Set<ResourceLock> unlockedResources;
+        private ResourceLock blockedOn;
         boolean rollback;
 
         @Override
@@ -196,6 +282,9 @@ private static class AcquireLocks implements Transformer<ResourceLockState.Dispo
         public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
             for (ResourceLock resourceLock : resourceLocks) {
                 if (!resourceLock.tryLock()) {
+                    if (resourceLockState instanceof DefaultResourceLockState) {
+                        ((DefaultResourceLockState) resourceLockState).blockedOn = resourceLock;
+                    }
                     return blocking ? ResourceLockState.Disposition.RETRY : ResourceLockState.Disposition.FAILED;
                 }
             }
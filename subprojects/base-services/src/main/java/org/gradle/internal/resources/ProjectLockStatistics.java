@@ -20,4 +20,14 @@ public interface ProjectLockStatistics {
     void measure(Runnable runnable);
 
     long getTotalWaitTimeMillis();
+
+    /**
+     * Returns the number of resource lock state changes that had to wait for another state change to complete.
+     */
+    long getContendedStateChanges();
+
+    /**
+     * Returns the number of times a thread blocked on a resource lock was woken up to retry.
+     */
+    long getStateChangeRetries();
 }
@@ -59,6 +59,7 @@ public class DefaultWorkerLeaseService implements WorkerLeaseService, Stoppable
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultWorkerLeaseService.class);
 
     private final int maxWorkerCount;
+    private final WorkerLeaseLimit workerLeaseLimit;
     private int counter = 1;
     private final Root root = new Root();
 
@@ -67,8 +68,22 @@ public class DefaultWorkerLeaseService implements WorkerLeaseService, Stoppable
     private final WorkerLeaseLockRegistry workerLeaseLockRegistry;
     private final ProjectLockStatisticsImpl projectLockStatistics = new ProjectLockStatisticsImpl();
 
-    public DefaultWorkerLeaseService(ResourceLockCoordinationService coordinationService, ParallelismConfiguration parallelismConfiguration) {
+    public DefaultWorkerLeaseService(ResourceLockCoordinationService coordinationService, final ParallelismConfiguration parallelismConfiguration) {
+        this(coordinationService, parallelismConfiguration, new WorkerLeaseLimit() {
+            @Override
+            public int getWorkerLimit() {
+                return parallelismConfiguration.getMaxWorkerCount();
+            }
+        });
+    }
+
+    /**
+     * Creates a service that grants at most {@link WorkerLeaseLimit#getWorkerLimit()} leases at a time.  The limit is
+     * checked whenever a lease is requested, so the limit must notify the coordination service when it grows.
+     */
+    public DefaultWorkerLeaseService(ResourceLockCoordinationService coordinationService, ParallelismConfiguration parallelismConfiguration, WorkerLeaseLimit workerLeaseLimit) {
         this.maxWorkerCount = parallelismConfiguration.getMaxWorkerCount();
+        this.workerLeaseLimit = workerLeaseLimit;
         this.coordinationService = coordinationService;
         this.projectLockRegistry = new ProjectLockRegistry(coordinationService, parallelismConfiguration.isParallelProjectExecutionEnabled());
         this.workerLeaseLockRegistry = new WorkerLeaseLockRegistry(coordinationService);
@@ -130,6 +145,7 @@ public ResourceLockState.Disposition transform(ResourceLockState resourceLockSta
 
         if (projectLockStatistics.isEnabled()) {
             LOGGER.warn("Time spent waiting on project locks: " + projectLockStatistics.getTotalWaitTimeMillis() + "ms");
+            LOGGER.warn("Contended resource lock state changes: " + projectLockStatistics.getContendedStateChanges() + ", retries: " + projectLockStatistics.getStateChangeRetries());
         }
     }
 
@@ -336,7 +352,7 @@ public String getDisplayName() {
 
         @Override
         public boolean grantLease() {
-            if (leasesInUse >= maxWorkerCount) {
+            if (leasesInUse >= Math.min(maxWorkerCount, workerLeaseLimit.getWorkerLimit())) {
                 return false;
             }
             leasesInUse++;
@@ -440,7 +456,7 @@ public void leaseFinish() {
         }
     }
 
-    private static class ProjectLockStatisticsImpl implements ProjectLockStatistics {
+    private class ProjectLockStatisticsImpl implements ProjectLockStatistics {
         private final AtomicLong total = new AtomicLong(-1);
 
         @Override
@@ -459,6 +475,22 @@ public long getTotalWaitTimeMillis() {
             return total.get();
         }
 
+        @Override
+        public long getContendedStateChanges() {
+            if (coordinationService instanceof DefaultResourceLockCoordinationService) {
+                return ((DefaultResourceLockCoordinationService) coordinationService).getContendedStateChanges();
+            }
+            return 0;
+        }
+
+        @Override
+        public long getStateChangeRetries() {
+            if (coordinationService instanceof DefaultResourceLockCoordinationService) {
+                return ((DefaultResourceLockCoordinationService) coordinationService).getStateChangeRetries();
+            }
+            return 0;
+        }
+
         public boolean isEnabled() {
             return System.getProperty(PROJECT_LOCK_STATS_PROPERTY) != null;
         }
@@ -21,6 +21,9 @@ import org.gradle.api.Transformer
 import org.gradle.test.fixtures.ConcurrentTestUtil
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
 import static org.gradle.internal.resources.ResourceLockState.Disposition.*
 import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.*
 
@@ -317,6 +320,90 @@ class DefaultResourceLockCoordinationServiceTest extends ConcurrentSpec {
         false       | false       | FINISHED
     }
 
+    def "thread blocked on an exclusive lock is not woken when an unrelated lock is released"() {
+        def attempts = new AtomicInteger()
+        def lock1 = new ExclusiveAccessResourceLock("lock1", coordinationService, {} as Action, {} as Action) {
+            @Override
+            protected boolean acquireLock() {
+                attempts.incrementAndGet()
+                return super.acquireLock()
+            }
+        }
+        def lock2 = exclusiveLock("lock2")
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.lock1Acquired
+                thread.blockUntil.waiterBlocked
+                coordinationService.withStateLock(lock(lock2))
+                coordinationService.withStateLock(unlock(lock2))
+                assert attempts.get() == 2
+                assert coordinationService.stateChangeRetries == 0
+                coordinationService.withStateLock(unlock(lock1))
+            }
+            start {
+                thread.blockUntil.lock1Acquired
+                coordinationService.withStateLock(lock(lock1))
+                coordinationService.withStateLock(unlock(lock1))
+            }
+            ConcurrentTestUtil.poll {
+                assert attempts.get() == 2
+            }
+            instant.waiterBlocked
+        }
+
+        then:
+        attempts.get() == 3
+        coordinationService.stateChangeRetries == 1
+    }
+
+    def "many threads can lock and unlock a small set of exclusive locks"() {
+        def locks = (1..4).collect { exclusiveLock("lock${it}") }
+        def holders = locks.collect { new AtomicInteger() }
+        def threadCount = 32
+        def iterations = 200
+        def ready = new CountDownLatch(1)
+        def failures = new AtomicInteger()
+
+        when:
+        async {
+            threadCount.times { threadIndex ->
+                start {
+                    ready.await()
+                    def random = new Random(threadIndex)
+                    iterations.times {
+                        def first = random.nextInt(locks.size())
+                        def second = (first + 1 + random.nextInt(locks.size() - 1)) % locks.size()
+                        def toLock = [locks[first], locks[second]]
+                        coordinationService.withStateLock(lock(toLock))
+                        [first, second].each { index ->
+                            if (holders[index].incrementAndGet() != 1) {
+                                failures.incrementAndGet()
+                            }
+                        }
+                        [first, second].each { index ->
+                            holders[index].decrementAndGet()
+                        }
+                        coordinationService.withStateLock(unlock(toLock))
+                    }
+                }
+            }
+            ready.countDown()
+        }
+
+        then:
+        failures.get() == 0
+        locks.every { resourceLock ->
+            coordinationService.withStateLock(tryLock(resourceLock))
+        }
+    }
+
+    ExclusiveAccessResourceLock exclusiveLock(String displayName) {
+        return new ExclusiveAccessResourceLock(displayName, coordinationService, {} as Action, {} as Action)
+    }
+
     TestTrackedResourceLock resourceLock(String displayName, boolean locked, boolean hasLock=false) {
         return new TestTrackedResourceLock(displayName, coordinationService, Mock(Action), Mock(Action), locked, hasLock)
     }
@@ -358,6 +358,38 @@ class DefaultWorkerLeaseServiceWorkerLeaseTest extends ConcurrentSpec {
         noExceptionThrown()
     }
 
+    def "operation start blocks until the worker lease limit is raised"() {
+        def limit = 1
+        def registry = new DefaultWorkerLeaseService(coordinationService, new DefaultParallelismConfiguration(true, 2), { limit } as WorkerLeaseLimit)
+
+        when:
+        async {
+            start {
+                def cl = registry.getWorkerLease().start()
+                instant.worker1
+                thread.blockUntil.worker2
+                cl.leaseFinish()
+            }
+            start {
+                thread.blockUntil.worker1
+                def cl = registry.getWorkerLease().start()
+                instant.worker2
+                cl.leaseFinish()
+            }
+            thread.blockUntil.worker1
+            thread.block()
+            instant.limitRaised
+            limit = 2
+            coordinationService.notifyStateChange()
+        }
+
+        then:
+        instant.worker2 > instant.limitRaised
+
+        cleanup:
+        registry?.stop()
+    }
+
     WorkerLeaseService workerLeaseService(int maxWorkers) {
         return new DefaultWorkerLeaseService(coordinationService, new DefaultParallelismConfiguration(true, maxWorkers))
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares snapshotting a directory tree sequentially with snapshotting it on a fork/join pool.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class DirectorySnapshotterBenchmark {
+    private static final FileHasher FILE_HASHER = new FileHasher() {
+        @Override
+        public HashCode hash(File file) {
+            try {
+                return Hashing.hashBytes(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public HashCode hash(File file, long length, long lastModified) {
+            return hash(file);
+        }
+    };
+
+    @Param({"sequential", "parallel"})
+    String walker;
+
+    @Param({"flat", "deep"})
+    String tree;
+
+    Path tempDirPath;
+    ForkJoinPool forkJoinPool;
+    DirectorySnapshotter snapshotter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDirPath = Files.createTempDirectory("directory-snapshotting");
+        if (tree.equals("flat")) {
+            // A single directory with many files, like a directory of generated resources
+            createFiles(tempDirPath, 20_000);
+        } else {
+            // Many small directories, like node_modules or a generated sources tree
+            createTree(tempDirPath, 4, 6, 10);
+        }
+        forkJoinPool = walker.equals("parallel") ? new ForkJoinPool() : null;
+        snapshotter = new DirectorySnapshotter(FILE_HASHER, new StringInterner(), Collections.emptyList(), forkJoinPool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        }
+        FileUtils.forceDelete(tempDirPath.toFile());
+    }
+
+    private static void createTree(Path dir, int depth, int directoriesPerLevel, int filesPerDirectory) throws IOException {
+        createFiles(dir, filesPerDirectory);
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < directoriesPerLevel; i++) {
+            createTree(Files.createDirectory(dir.resolve("dir" + i)), depth - 1, directoriesPerLevel, filesPerDirectory);
+        }
+    }
+
+    private static void createFiles(Path dir, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Files.write(dir.resolve("file" + i + ".txt"), ("content of " + dir + " " + i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public Object snapshot() {
+        return snapshotter.snapshot(tempDirPath.toString(), null, new AtomicBoolean());
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.cache.CleanupProgressMonitor;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
+import org.gradle.cache.internal.SingleDepthFilesFinder;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.internal.Factory;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.file.impl.SingleDepthFileAccessTracker;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.resource.local.DefaultLocallyAvailableResource;
+import org.gradle.internal.resource.local.LocallyAvailableResource;
+import org.gradle.internal.resource.local.PathKeyFileStore;
+import org.gradle.internal.serialize.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading, storing and cleaning up entries of a {@link DirectoryBuildCacheService} with the flat and the sharded layout.
+ *
+ * <p>The {@code unmigrated} layout stores the entries flat and accesses them with the sharded service, so loads go through the fallback to the flat layout.
+ * Its first cleanup moves all entries into shards, so it measures the same as the sharded layout afterwards.</p>
+ *
+ * <p>Cleanup is measured when no entry is due for removal, which is the common case: the flat layout checks the access time of every entry,
+ * the sharded layout only looks at the index files of expired days.</p>
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DirectoryBuildCacheLayoutBenchmark {
+    private static final byte[] CONTENT = new byte[1024];
+
+    @Param({"100000", "1000000"})
+    int entries;
+
+    @Param({"flat", "sharded", "unmigrated"})
+    String layout;
+
+    File cacheDir;
+    BuildCacheKey[] keys;
+    InMemoryFileAccessTimeJournal journal;
+    DirectoryBuildCacheAccessIndex accessIndex;
+    DirectoryBuildCacheService service;
+    int nextLoad;
+    int nextStore;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("build-cache-layout").toFile();
+        journal = new InMemoryFileAccessTimeJournal();
+        accessIndex = new DirectoryBuildCacheAccessIndex(new File(cacheDir, "access-index"), journal);
+        PathKeyFileStore fileStore = new SimpleFileStore(cacheDir);
+        BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(cacheDir);
+        PersistentCache persistentCache = new InProcessPersistentCache(cacheDir);
+        DirectoryBuildCacheService flatService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, new SingleDepthFileAccessTracker(journal, cacheDir, 1), ".failed");
+        DirectoryBuildCacheService shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, ".failed", newCleanup(), null);
+
+        Random random = new Random(1234);
+        keys = new BuildCacheKey[entries];
+        DirectoryBuildCacheService populatingService = layout.equals("sharded") ? shardedService : flatService;
+        for (int i = 0; i < entries; i++) {
+            keys[i] = new SimpleBuildCacheKey(randomKey(random));
+            populatingService.storeLocally(keys[i], newEntryFile());
+        }
+        if (layout.equals("sharded")) {
+            accessIndex.flush();
+            accessIndex.markBuilt();
+        }
+        service = layout.equals("flat") ? flatService : shardedService;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.close();
+        FileUtils.forceDelete(cacheDir);
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        service.loadLocally(keys[nextLoad++ % keys.length], file -> blackhole.consume(file.length()));
+    }
+
+    @Benchmark
+    public void store() throws IOException {
+        // Replaces existing entries, so that the number of entries stays the same
+        service.storeLocally(keys[nextStore++ % keys.length], newEntryFile());
+    }
+
+    @Benchmark
+    public void cleanup() {
+        if (layout.equals("flat")) {
+            new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(1), journal, 7).clean(new InProcessPersistentCache(cacheDir), CleanupProgressMonitor.NO_OP);
+        } else {
+            newCleanup().clean(Runnable::run);
+        }
+    }
+
+    private DirectoryBuildCacheCleanup newCleanup() {
+        return new DirectoryBuildCacheCleanup(cacheDir, accessIndex, journal, 7);
+    }
+
+    private File newEntryFile() throws IOException {
+        File file = File.createTempFile("entry", BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX, cacheDir);
+        Files.write(file.toPath(), CONTENT);
+        return file;
+    }
+
+    private static String randomKey(Random random) {
+        return Long.toHexString(random.nextLong() | Long.MIN_VALUE) + Long.toHexString(random.nextLong() | Long.MIN_VALUE);
+    }
+
+    private static class SimpleBuildCacheKey implements BuildCacheKey {
+        private final String hashCode;
+
+        SimpleBuildCacheKey(String hashCode) {
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public String getHashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return HashCode.fromString(hashCode).toByteArray();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Stores files like the default path key file store, without tracking files in progress.
+     */
+    private static class SimpleFileStore implements PathKeyFileStore {
+        private static final HashCode NO_SHA1 = HashCode.fromInt(0);
+        private final File baseDir;
+
+        SimpleFileStore(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        @Override
+        public LocallyAvailableResource get(String... path) {
+            File file = baseDir;
+            for (String segment : path) {
+                file = new File(file, segment);
+            }
+            return file.exists() ? new DefaultLocallyAvailableResource(file, NO_SHA1) : null;
+        }
+
+        @Override
+        public LocallyAvailableResource move(String path, File source) {
+            File destination = new File(baseDir, path);
+            try {
+                Files.createDirectories(destination.getParentFile().toPath());
+                Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return new DefaultLocallyAvailableResource(destination, NO_SHA1);
+        }
+
+        @Override
+        public LocallyAvailableResource add(String path, Action<File> addAction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<? extends LocallyAvailableResource> search(String pattern) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Runs actions without file locking, as there is no other process using the cache.
+     */
+    private static class InProcessPersistentCache implements PersistentCache {
+        private final File baseDir;
+
+        InProcessPersistentCache(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        @Override
+        public File getBaseDir() {
+            return baseDir;
+        }
+
+        @Override
+        public Collection<File> getReservedCacheFiles() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "build cache";
+        }
+
+        @Override
+        public <T> T useCache(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void useCache(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <T> T withFileLock(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void withFileLock(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(String name, Class<K> keyType, Serializer<V> valueSerializer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <K, V> boolean cacheExists(PersistentIndexedCacheParameters<K, V> parameters) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class InMemoryFileAccessTimeJournal implements FileAccessTimeJournal {
+        private final Map<File, Long> accessTimes = new ConcurrentHashMap<>();
+
+        @Override
+        public long getLastAccessTime(File file) {
+            Long accessTime = accessTimes.get(file);
+            return accessTime == null ? file.lastModified() : accessTime;
+        }
+
+        @Override
+        public void setLastAccessTime(File file, long millis) {
+            accessTimes.put(file, millis);
+        }
+
+        @Override
+        public void deleteLastAccessTime(File file) {
+            accessTimes.remove(file);
+        }
+    }
+}
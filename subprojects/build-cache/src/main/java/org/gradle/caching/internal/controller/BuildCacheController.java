@@ -18,6 +18,7 @@
 
 import org.gradle.caching.BuildCacheService;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.util.Optional;
 
@@ -34,6 +35,20 @@ public interface BuildCacheController extends Closeable {
 
     <T> Optional<T> load(BuildCacheLoadCommand<T> command);
 
+    /**
+     * Loads the entry like {@link #load(BuildCacheLoadCommand)}, but stops waiting for the remote cache when the remote lookup is expected to take
+     * longer than executing the work, or when it takes longer than the given deadline.
+     *
+     * When the caller stops waiting, the remote entry continues to be downloaded into the local cache in the background, but is never unpacked.
+     * This way the outputs of the work, which the caller executes in the meantime, are only ever written by one party.
+     *
+     * @param estimatedExecutionTime the expected execution time of the work in milliseconds, or {@code null} if unknown.
+     * @param deadline the maximum time to wait for the remote cache in milliseconds.
+     */
+    default <T> Optional<T> loadSpeculatively(BuildCacheLoadCommand<T> command, @Nullable Long estimatedExecutionTime, long deadline) {
+        return load(command);
+    }
+
     void store(BuildCacheStoreCommand command);
 
 }
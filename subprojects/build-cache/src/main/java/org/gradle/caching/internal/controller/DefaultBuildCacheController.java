@@ -39,20 +39,34 @@
 import org.gradle.caching.local.internal.BuildCacheTempFileStore;
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.time.Clock;
+import org.gradle.internal.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DefaultBuildCacheController implements BuildCacheController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBuildCacheController.class);
 
     @VisibleForTesting
     final BuildCacheServiceHandle remote;
@@ -63,6 +77,11 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
+    private final ExecutorFactory executorFactory;
+    private final Clock clock;
+    // Moving average of the time taken by remote lookups, in milliseconds
+    private final AtomicLong remoteLoadLatency = new AtomicLong();
+    private ManagedExecutor remoteLoadExecutor;
 
     private boolean closed;
 
@@ -73,6 +92,25 @@ public DefaultBuildCacheController(
         boolean logStackTraces,
         boolean emitDebugLogging
     ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, null, Time.clock());
+    }
+
+    /**
+     * @param executorFactory used to load from the remote cache in the background for {@link #loadSpeculatively(BuildCacheLoadCommand, Long, long)},
+     * or {@code null} when loading speculatively is not supported.
+     * @param clock used to measure how long loading from the remote cache takes.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        @Nullable ExecutorFactory executorFactory,
+        Clock clock
+    ) {
+        this.executorFactory = executorFactory;
+        this.clock = clock;
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush());
@@ -130,6 +168,80 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             : Optional.of(result.getMetadata());
     }
 
+    @Override
+    public <T> Optional<T> loadSpeculatively(BuildCacheLoadCommand<T> command, @Nullable Long estimatedExecutionTime, long deadline) {
+        // The remote entry is downloaded into the local cache in the background, and unpacked from there
+        if (executorFactory == null || !remote.canLoad() || !local.canLoad() || !local.canStore()) {
+            return load(command);
+        }
+
+        BuildCacheKey key = command.getKey();
+        Unpack<T> unpack = new Unpack<>(command);
+        loadFromLocalCache(key, unpack);
+        if (unpack.result != null) {
+            return Optional.of(unpack.result.getMetadata());
+        }
+
+        Future<Boolean> download = getRemoteLoadExecutor().submit(() -> downloadIntoLocalCache(key));
+        long averageLatency = remoteLoadLatency.get();
+        long timeout = estimatedExecutionTime != null && averageLatency > 0 && estimatedExecutionTime < averageLatency
+            ? 0
+            : deadline;
+        boolean downloaded;
+        try {
+            downloaded = download.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.info("Not waiting for remote build cache entry {} after {} ms, executing instead", key.getHashCode(), timeout);
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+
+        if (downloaded) {
+            loadFromLocalCache(key, unpack);
+        }
+        return unpack.result == null
+            ? Optional.empty()
+            : Optional.of(unpack.result.getMetadata());
+    }
+
+    private void loadFromLocalCache(BuildCacheKey key, Unpack<?> unpack) {
+        try {
+            local.load(key, unpack);
+        } catch (Exception e) {
+            throw new GradleException("Build cache entry " + key.getHashCode() + " from local build cache is invalid", e);
+        }
+    }
+
+    private boolean downloadIntoLocalCache(BuildCacheKey key) {
+        // Failures to load from the remote cache are handled by the remote handle
+        boolean[] downloaded = new boolean[1];
+        tmp.withTempFile(key, file -> {
+            long start = clock.getCurrentTime();
+            LoadTarget loadTarget = new LoadTarget(file);
+            remote.load(key, loadTarget);
+            recordRemoteLoadLatency(clock.getCurrentTime() - start);
+            if (loadTarget.isLoaded()) {
+                local.store(key, file);
+                downloaded[0] = true;
+            }
+        });
+        return downloaded[0];
+    }
+
+    private void recordRemoteLoadLatency(long latency) {
+        remoteLoadLatency.accumulateAndGet(latency, (average, sample) -> average == 0 ? sample : (3 * average + sample) / 4);
+    }
+
+    private synchronized ManagedExecutor getRemoteLoadExecutor() {
+        if (remoteLoadExecutor == null) {
+            remoteLoadExecutor = executorFactory.create("Build cache remote load");
+        }
+        return remoteLoadExecutor;
+    }
+
     private class Unpack<T> implements Action<File> {
         private final BuildCacheLoadCommand<T> command;
 
@@ -223,6 +335,13 @@ public void close() throws IOException {
             Closer closer = Closer.create();
             closer.register(local);
             closer.register(remote);
+            synchronized (this) {
+                if (remoteLoadExecutor != null) {
+                    // Closed first, so background downloads finish before the caches are closed
+                    Closeable stopRemoteLoads = remoteLoadExecutor::stop;
+                    closer.register(stopRemoteLoads);
+                }
+            }
             closer.close();
         }
     }
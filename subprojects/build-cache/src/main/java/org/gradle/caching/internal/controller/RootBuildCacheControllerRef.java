@@ -16,6 +16,7 @@
 
 package org.gradle.caching.internal.controller;
 
+import javax.annotation.Nullable;
 import java.util.Optional;
 
 public class RootBuildCacheControllerRef {
@@ -63,6 +64,11 @@ public <T> Optional<T> load(BuildCacheLoadCommand<T> command) {
             return delegate.load(command);
         }
 
+        @Override
+        public <T> Optional<T> loadSpeculatively(BuildCacheLoadCommand<T> command, @Nullable Long estimatedExecutionTime, long deadline) {
+            return delegate.loadSpeculatively(command, estimatedExecutionTime, deadline);
+        }
+
         @Override
         public void store(BuildCacheStoreCommand command) {
             delegate.store(command);
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.internal.file.FileAccessTracker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tracks access to the entries of a directory build cache, and records the keys of the accessed entries in an index of files, one per day.
+ *
+ * <p>Cleanup only needs to look at the entries listed for days which are older than the retention period, instead of scanning the whole cache.
+ * An entry can be listed for more than one day, so cleanup still checks the last access time of the entry in the journal before deleting it.</p>
+ *
+ * <p>Accesses are recorded in memory and written to the index by {@link #flush()}, which must be called while holding the lock on the cache.
+ * The cache writes them on every store, and at most every {@value #FLUSH_INTERVAL_IN_SECONDS} seconds on loads, so few are lost when a process crashes.</p>
+ */
+class DirectoryBuildCacheAccessIndex implements FileAccessTracker {
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+    private static final String BUILT_MARKER = "index.built";
+    private static final String CLEANED_MARKER = "index.cleaned";
+    private static final long FLUSH_INTERVAL_IN_SECONDS = 60;
+
+    private final File indexDir;
+    private final FileAccessTimeJournal journal;
+    private final Map<Long, Set<String>> pendingKeys = new TreeMap<>();
+    private final Object flushLock = new Object();
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    DirectoryBuildCacheAccessIndex(File indexDir, FileAccessTimeJournal journal) {
+        this.indexDir = indexDir;
+        this.journal = journal;
+    }
+
+    @Override
+    public void markAccessed(File file) {
+        long now = System.currentTimeMillis();
+        journal.setLastAccessTime(file, now);
+        record(file.getName(), now);
+    }
+
+    @Override
+    public void markAccessed(Collection<File> files) {
+        for (File file : files) {
+            markAccessed(file);
+        }
+    }
+
+    /**
+     * Records that the entry with the given key was last accessed at the given time.
+     */
+    synchronized void record(String key, long timestamp) {
+        pendingKeys.computeIfAbsent(dayOf(timestamp), day -> new HashSet<>()).add(key);
+    }
+
+    /**
+     * Appends the recorded keys to the index, if the last time was at least {@value #FLUSH_INTERVAL_IN_SECONDS} seconds ago.
+     */
+    void flushIfDue() {
+        if (lastFlushTime < System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(FLUSH_INTERVAL_IN_SECONDS)) {
+            flush();
+        }
+    }
+
+    /**
+     * Appends the recorded keys to the index.
+     */
+    void flush() {
+        // Threads holding a shared lock on the cache may flush concurrently, so only one writes the index files at a time
+        synchronized (flushLock) {
+            lastFlushTime = System.currentTimeMillis();
+            Map<Long, Set<String>> keysToWrite;
+            synchronized (this) {
+                if (pendingKeys.isEmpty()) {
+                    return;
+                }
+                keysToWrite = new TreeMap<>(pendingKeys);
+                pendingKeys.clear();
+            }
+            mkdirs();
+            for (Map.Entry<Long, Set<String>> entry : keysToWrite.entrySet()) {
+                File indexFile = indexFile(entry.getKey());
+                try {
+                    Files.write(indexFile.toPath(), entry.getValue(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(String.format("Could not write build cache index file '%s'.", indexFile), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the days for which the index lists accessed entries, oldest first.
+     */
+    List<Long> getIndexedDays() {
+        File[] files = indexDir.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<Long> days = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(INDEX_FILE_SUFFIX)) {
+                try {
+                    days.add(Long.parseLong(name.substring(0, name.length() - INDEX_FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not an index file
+                }
+            }
+        }
+        Collections.sort(days);
+        return days;
+    }
+
+    /**
+     * Visits the keys listed for the given day. A key can be visited more than once.
+     */
+    void visitKeys(long day, Consumer<String> visitor) {
+        File indexFile = indexFile(day);
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String key;
+            while ((key = reader.readLine()) != null) {
+                if (!key.isEmpty()) {
+                    visitor.accept(key);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read build cache index file '%s'.", indexFile), e);
+        }
+    }
+
+    void removeDay(long day) {
+        File indexFile = indexFile(day);
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new UncheckedIOException(String.format("Could not delete build cache index file '%s'.", indexFile));
+        }
+    }
+
+    /**
+     * Returns the time at which all entries of the cache were last added to the index, or 0 if that never happened.
+     */
+    long getLastBuildTime() {
+        return new File(indexDir, BUILT_MARKER).lastModified();
+    }
+
+    void markBuilt() {
+        touch(BUILT_MARKER);
+    }
+
+    /**
+     * Returns the time at which unused entries were last removed using the index, or 0 if that never happened.
+     */
+    long getLastCleanupTime() {
+        return new File(indexDir, CLEANED_MARKER).lastModified();
+    }
+
+    void markCleaned() {
+        touch(CLEANED_MARKER);
+    }
+
+    private void touch(String marker) {
+        mkdirs();
+        File markerFile = new File(indexDir, marker);
+        try {
+            Files.write(markerFile.toPath(), new byte[0]);
+            //noinspection ResultOfMethodCallIgnored
+            markerFile.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write build cache index marker '%s'.", markerFile), e);
+        }
+    }
+
+    private void mkdirs() {
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            throw new UncheckedIOException(String.format("Could not create build cache index directory '%s'.", indexDir));
+        }
+    }
+
+    private File indexFile(long day) {
+        return new File(indexDir, day + INDEX_FILE_SUFFIX);
+    }
+
+    static long dayOf(long timestamp) {
+        return TimeUnit.MILLISECONDS.toDays(timestamp);
+    }
+}
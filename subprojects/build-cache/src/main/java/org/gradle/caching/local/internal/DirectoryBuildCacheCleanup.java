@@ -0,0 +1,268 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.Action;
+import org.gradle.internal.file.FileAccessTimeJournal;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the entries of a sharded directory build cache which were not accessed within the retention period, using the {@link DirectoryBuildCacheAccessIndex}.
+ *
+ * <p>The cleanup runs in the background, and only holds the lock on the cache for a batch of entries at a time, so that builds can keep using the cache meanwhile.
+ * It looks at the entries listed in the index for expired days only. When the index was never built, or was last built too long ago, all entries are scanned once
+ * to add them to the index. This scan also moves the entries of the flat layout into shards.</p>
+ *
+ * <p>When the cache replaces a cache with the flat layout in another directory, the first scan also imports the entries of that cache which are still in use.
+ * The entries are linked, or copied when linking is not possible, so that the other cache stays intact for the processes still using it.</p>
+ */
+class DirectoryBuildCacheCleanup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheCleanup.class);
+
+    /**
+     * How often all entries are scanned, to pick up entries which are missing in the index, for example because a build crashed before writing it.
+     */
+    static final long FULL_SCAN_INTERVAL_IN_DAYS = 30;
+    static final long CLEANUP_INTERVAL_IN_HOURS = 24;
+    private static final int BATCH_SIZE = 1000;
+    private static final String IMPORT_SUFFIX = ".import";
+
+    private final File baseDir;
+    @Nullable
+    private final File importDir;
+    private final DirectoryBuildCacheAccessIndex index;
+    private final FileAccessTimeJournal journal;
+    private final long minimumTimestamp;
+    private volatile boolean stopped;
+
+    DirectoryBuildCacheCleanup(File baseDir, DirectoryBuildCacheAccessIndex index, FileAccessTimeJournal journal, long removeUnusedEntriesAfterDays) {
+        this(baseDir, null, index, journal, removeUnusedEntriesAfterDays);
+    }
+
+    /**
+     * @param importDir the directory of a cache with the flat layout to import the entries of when the index was never built, or {@code null} to not import entries.
+     */
+    DirectoryBuildCacheCleanup(File baseDir, @Nullable File importDir, DirectoryBuildCacheAccessIndex index, FileAccessTimeJournal journal, long removeUnusedEntriesAfterDays) {
+        this.baseDir = baseDir;
+        this.importDir = importDir;
+        this.index = index;
+        this.journal = journal;
+        this.minimumTimestamp = Math.max(0, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(removeUnusedEntriesAfterDays));
+    }
+
+    boolean isCleanupDue() {
+        return index.getLastCleanupTime() < System.currentTimeMillis() - TimeUnit.HOURS.toMillis(CLEANUP_INTERVAL_IN_HOURS);
+    }
+
+    /**
+     * Stops the cleanup after the current batch of entries. The next cleanup continues where this one stopped.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Removes unused entries, running each batch of entries with the given exclusive access to the cache.
+     */
+    void clean(Action<Runnable> exclusiveAccess) {
+        LOGGER.info("Build cache in {} removing entries not accessed on or after {}.", baseDir, new Date(minimumTimestamp));
+        if (index.getLastBuildTime() < System.currentTimeMillis() - TimeUnit.DAYS.toMillis(FULL_SCAN_INTERVAL_IN_DAYS)) {
+            if (!buildIndex(exclusiveAccess)) {
+                return;
+            }
+        }
+        long firstRetainedDay = DirectoryBuildCacheAccessIndex.dayOf(minimumTimestamp);
+        for (long day : index.getIndexedDays()) {
+            if (day >= firstRetainedDay) {
+                break;
+            }
+            if (!removeUnusedEntries(day, exclusiveAccess)) {
+                return;
+            }
+        }
+        exclusiveAccess.execute(index::markCleaned);
+    }
+
+    private boolean buildIndex(Action<Runnable> exclusiveAccess) {
+        if (importDir != null && index.getLastBuildTime() == 0) {
+            LOGGER.info("Build cache in {} importing entries from {}.", baseDir, importDir);
+            // The imported entries are added to the index with the other entries of the shards
+            if (!visitInBatches(listEntries(importDir), exclusiveAccess, this::importIfUsed)) {
+                return false;
+            }
+        }
+        // Entries of the flat layout
+        if (!visitInBatches(listEntries(baseDir), exclusiveAccess, this::migrateOrRemove)) {
+            return false;
+        }
+        File[] shards = baseDir.listFiles(file -> file.isDirectory() && isShardName(file.getName()));
+        if (shards != null) {
+            for (File shard : shards) {
+                if (!visitInBatches(listFiles(shard), exclusiveAccess, this::indexOrRemove)) {
+                    return false;
+                }
+            }
+        }
+        exclusiveAccess.execute(index::markBuilt);
+        return true;
+    }
+
+    private boolean removeUnusedEntries(long day, Action<Runnable> exclusiveAccess) {
+        List<File> candidates = new ArrayList<>();
+        index.visitKeys(day, key -> {
+            if (isEntryName(key)) {
+                candidates.add(new File(new File(baseDir, DirectoryBuildCacheService.shardOf(key)), key));
+                candidates.add(new File(baseDir, key));
+            }
+        });
+        if (!visitInBatches(candidates, exclusiveAccess, this::removeIfUnused)) {
+            return false;
+        }
+        exclusiveAccess.execute(() -> index.removeDay(day));
+        return true;
+    }
+
+    private boolean visitInBatches(List<File> files, Action<Runnable> exclusiveAccess, Action<File> action) {
+        for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+            if (stopped) {
+                return false;
+            }
+            List<File> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+            exclusiveAccess.execute(() -> {
+                for (File file : batch) {
+                    action.execute(file);
+                }
+                index.flush();
+            });
+        }
+        return !stopped;
+    }
+
+    private void migrateOrRemove(File file) {
+        if (!file.isFile() || removeIfUnused(file)) {
+            return;
+        }
+        File shard = new File(baseDir, DirectoryBuildCacheService.shardOf(file.getName()));
+        File target = new File(shard, file.getName());
+        long lastAccessTime = journal.getLastAccessTime(file);
+        GFileUtils.mkdirs(shard);
+        GFileUtils.deleteQuietly(target);
+        if (file.renameTo(target)) {
+            journal.setLastAccessTime(target, lastAccessTime);
+            journal.deleteLastAccessTime(file);
+            index.record(target.getName(), lastAccessTime);
+        }
+    }
+
+    /**
+     * Adds the given entry of the imported cache to its shard, unless the entry is unused or is already present.
+     * The imported cache may be used by other processes meanwhile, so entries which disappear are skipped.
+     */
+    private void importIfUsed(File file) {
+        long lastAccessTime = journal.getLastAccessTime(file);
+        if (!file.isFile() || lastAccessTime < minimumTimestamp) {
+            return;
+        }
+        File shard = new File(baseDir, DirectoryBuildCacheService.shardOf(file.getName()));
+        File target = new File(shard, file.getName());
+        if (target.exists()) {
+            return;
+        }
+        GFileUtils.mkdirs(shard);
+        try {
+            try {
+                Files.createLink(target.toPath(), file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                copy(file, target);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not import build cache entry {}.", file, e);
+            return;
+        }
+        journal.setLastAccessTime(target, lastAccessTime);
+    }
+
+    /**
+     * Copies to a temporary file first, so that a partially copied entry is never used.
+     */
+    private static void copy(File file, File target) throws IOException {
+        File tempFile = new File(target.getParentFile(), target.getName() + IMPORT_SUFFIX);
+        try {
+            Files.copy(file.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            GFileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private void indexOrRemove(File file) {
+        if (file.isFile() && !removeIfUnused(file) && isEntryName(file.getName())) {
+            index.record(file.getName(), journal.getLastAccessTime(file));
+        }
+    }
+
+    private boolean removeIfUnused(File file) {
+        if (file.exists() && journal.getLastAccessTime(file) < minimumTimestamp) {
+            if (GFileUtils.deleteQuietly(file)) {
+                journal.deleteLastAccessTime(file);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static List<File> listEntries(File dir) {
+        File[] files = dir.listFiles(file -> isEntryName(file.getName()));
+        return files == null ? new ArrayList<>() : Arrays.asList(files);
+    }
+
+    private static List<File> listFiles(File dir) {
+        File[] files = dir.listFiles();
+        return files == null ? new ArrayList<>() : Arrays.asList(files);
+    }
+
+    static boolean isShardName(String name) {
+        return name.length() == DirectoryBuildCacheService.SHARD_NAME_LENGTH && isHex(name);
+    }
+
+    private static boolean isEntryName(String name) {
+        return name.length() > DirectoryBuildCacheService.SHARD_NAME_LENGTH && isHex(name);
+    }
+
+    private static boolean isHex(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
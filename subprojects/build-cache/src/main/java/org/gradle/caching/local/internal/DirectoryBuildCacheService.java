@@ -26,12 +26,16 @@
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.file.FileAccessTracker;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -40,6 +44,12 @@
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheService.class);
+
+    /**
+     * The length of the key prefix which names the directory of an entry in the sharded layout.
+     */
+    static final int SHARD_NAME_LENGTH = 2;
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
@@ -47,6 +57,12 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    @Nullable
+    private final DirectoryBuildCacheAccessIndex accessIndex;
+    @Nullable
+    private final DirectoryBuildCacheCleanup cleanup;
+    @Nullable
+    private final ManagedExecutor cleanupExecutor;
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
         this.fileStore = fileStore;
@@ -54,6 +70,38 @@ public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache pe
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.accessIndex = null;
+        this.cleanup = null;
+        this.cleanupExecutor = null;
+    }
+
+    /**
+     * Creates a service which stores entries in shards named after the first characters of their key, and which removes unused entries in the background.
+     * Entries stored in the flat layout are still found, and are moved into shards by the cleanup.
+     *
+     * @param cleanupExecutor the executor to run the cleanup with, or {@code null} to not run the cleanup.
+     */
+    DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, DirectoryBuildCacheAccessIndex accessIndex, String failedFileSuffix, DirectoryBuildCacheCleanup cleanup, @Nullable ManagedExecutor cleanupExecutor) {
+        this.fileStore = fileStore;
+        this.persistentCache = persistentCache;
+        this.tempFileStore = tempFileStore;
+        this.fileAccessTracker = accessIndex;
+        this.failedFileSuffix = failedFileSuffix;
+        this.accessIndex = accessIndex;
+        this.cleanup = cleanup;
+        this.cleanupExecutor = cleanupExecutor;
+        if (cleanupExecutor != null) {
+            cleanupExecutor.execute(this::cleanUp);
+        }
+    }
+
+    private void cleanUp() {
+        try {
+            cleanup.clean(this::withExclusiveAccess);
+        } catch (Exception e) {
+            // Do not fail the build when cleanup fails, the next cleanup continues where this one stopped
+            LOGGER.warn("Could not clean up build cache in {}.", persistentCache.getBaseDir(), e);
+        }
     }
 
     private static class LoadAction implements Action<File> {
@@ -105,13 +153,16 @@ public void run() {
     }
 
     private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
-        LocallyAvailableResource resource = fileStore.get(key.getHashCode());
+        LocallyAvailableResource resource = getEntry(key.getHashCode());
         if (resource == null) {
             return;
         }
 
         File file = resource.getFile();
         fileAccessTracker.markAccessed(file);
+        if (accessIndex != null) {
+            accessIndex.flushIfDue();
+        }
 
         try {
             reader.execute(file);
@@ -166,8 +217,48 @@ public void run() {
     }
 
     private void storeInsideLock(BuildCacheKey key, File file) {
-        LocallyAvailableResource resource = fileStore.move(key.getHashCode(), file);
+        String hashCode = key.getHashCode();
+        if (accessIndex == null) {
+            LocallyAvailableResource resource = fileStore.move(hashCode, file);
+            fileAccessTracker.markAccessed(resource.getFile());
+            return;
+        }
+
+        LocallyAvailableResource resource = fileStore.move(shardOf(hashCode) + "/" + hashCode, file);
         fileAccessTracker.markAccessed(resource.getFile());
+        LocallyAvailableResource unmigratedResource = fileStore.get(hashCode);
+        if (unmigratedResource != null) {
+            GFileUtils.deleteQuietly(unmigratedResource.getFile());
+        }
+        // Write the index right away, so the entry is cleaned up even when the process crashes
+        accessIndex.flush();
+    }
+
+    @Nullable
+    private LocallyAvailableResource getEntry(String hashCode) {
+        if (accessIndex != null) {
+            LocallyAvailableResource resource = fileStore.get(shardOf(hashCode), hashCode);
+            if (resource != null) {
+                return resource;
+            }
+            // The entry may not have been moved from the flat layout yet
+        }
+        return fileStore.get(hashCode);
+    }
+
+    static String shardOf(String hashCode) {
+        return hashCode.substring(0, SHARD_NAME_LENGTH);
+    }
+
+    private void withExclusiveAccess(Runnable action) {
+        persistentCache.withFileLock(() -> {
+            lock.writeLock().lock();
+            try {
+                action.run();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
     }
 
     @Override
@@ -182,6 +273,19 @@ public void run() {
 
     @Override
     public void close() {
-        persistentCache.close();
+        try {
+            if (cleanupExecutor != null) {
+                cleanup.stop();
+                cleanupExecutor.stop();
+            }
+        } finally {
+            try {
+                if (accessIndex != null) {
+                    withExclusiveAccess(accessIndex::flush);
+                }
+            } finally {
+                persistentCache.close();
+            }
+        }
     }
 }
@@ -22,20 +22,25 @@
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.internal.VersionStrategy;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.local.DirectoryBuildCache;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.file.FileAccessTimeJournal;
 import org.gradle.internal.file.FileAccessTracker;
 import org.gradle.internal.file.PathToFileResolver;
 import org.gradle.internal.file.impl.SingleDepthFileAccessTracker;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.File;
+import java.io.FileFilter;
 
 import static org.gradle.cache.FileLockManager.LockMode.OnDemand;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
@@ -43,10 +48,22 @@
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
 
+    /**
+     * When set to {@code true}, entries are stored in shards named after the first characters of their key, and unused entries are removed in the background.
+     *
+     * The default cache directory then changes from {@code build-cache-1} to {@code build-cache-2}. The entries of {@code build-cache-1} which are still in use
+     * are imported into {@code build-cache-2} the first time it is cleaned up, and {@code build-cache-1} is left for the processes still using the flat layout.
+     */
+    public static final String SHARDED_LAYOUT_PROPERTY = "org.gradle.internal.build-cache.sharded-layout";
+
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
+    // The sharded layout uses its own default directory, so that processes using the flat layout do not remove its shards
+    private static final String SHARDED_BUILD_CACHE_VERSION = "2";
+    private static final String SHARDED_BUILD_CACHE_KEY = "build-cache-" + SHARDED_BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
     private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
+    private static final String ACCESS_INDEX_DIRECTORY = "access-index";
 
     private final CacheRepository cacheRepository;
     private final CacheScopeMapping cacheScopeMapping;
@@ -54,24 +71,37 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
     private final DirectoryBuildCacheFileStoreFactory fileStoreFactory;
     private final CleanupActionFactory cleanupActionFactory;
     private final FileAccessTimeJournal fileAccessTimeJournal;
+    private final ExecutorFactory executorFactory;
+    private final boolean shardedLayout;
 
     @Inject
     public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheScopeMapping cacheScopeMapping, PathToFileResolver resolver, DirectoryBuildCacheFileStoreFactory fileStoreFactory,
-                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal) {
+                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal, ExecutorFactory executorFactory) {
+        this(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal, executorFactory, Boolean.getBoolean(SHARDED_LAYOUT_PROPERTY));
+    }
+
+    public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheScopeMapping cacheScopeMapping, PathToFileResolver resolver, DirectoryBuildCacheFileStoreFactory fileStoreFactory,
+                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal, ExecutorFactory executorFactory, boolean shardedLayout) {
         this.cacheRepository = cacheRepository;
         this.cacheScopeMapping = cacheScopeMapping;
         this.resolver = resolver;
         this.fileStoreFactory = fileStoreFactory;
         this.cleanupActionFactory = cleanupActionFactory;
         this.fileAccessTimeJournal = fileAccessTimeJournal;
+        this.executorFactory = executorFactory;
+        this.shardedLayout = shardedLayout;
     }
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
         Object cacheDirectory = configuration.getDirectory();
         File target;
+        File flatLayoutTarget = null;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
+        } else if (shardedLayout) {
+            target = cacheScopeMapping.getBaseDirectory(null, SHARDED_BUILD_CACHE_KEY, VersionStrategy.SharedCache);
+            flatLayoutTarget = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         } else {
             target = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         }
@@ -83,9 +113,12 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
 
         PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
+        if (shardedLayout) {
+            return createShardedBuildCacheService(target, flatLayoutTarget, fileStore, removeUnusedEntriesAfterDays);
+        }
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new FlatLayoutEntriesFinder(), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
             .withDisplayName("Build cache")
             .withLockOptions(mode(OnDemand))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -96,6 +129,41 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
         return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
     }
 
+    private BuildCacheService createShardedBuildCacheService(File target, @Nullable File flatLayoutTarget, PathKeyFileStore fileStore, int removeUnusedEntriesAfterDays) {
+        // Unused entries are removed by the background cleanup of the service instead of the cleanup of the cache
+        PersistentCache persistentCache = cacheRepository
+            .cache(target)
+            .withDisplayName("Build cache")
+            .withLockOptions(mode(OnDemand))
+            .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
+            .open();
+        BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(target);
+        DirectoryBuildCacheAccessIndex accessIndex = new DirectoryBuildCacheAccessIndex(new File(target, ACCESS_INDEX_DIRECTORY), fileAccessTimeJournal);
+        // Import the entries of the default directory of the flat layout, unless it is not used
+        File importDir = flatLayoutTarget != null && flatLayoutTarget.isDirectory() ? flatLayoutTarget : null;
+        DirectoryBuildCacheCleanup cleanup = new DirectoryBuildCacheCleanup(target, importDir, accessIndex, fileAccessTimeJournal, removeUnusedEntriesAfterDays);
+        ManagedExecutor cleanupExecutor = cleanup.isCleanupDue() ? executorFactory.create("Build cache cleanup") : null;
+
+        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, FAILED_READ_SUFFIX, cleanup, cleanupExecutor);
+    }
+
+    /**
+     * Finds the entries of the flat layout, skipping the shards and the index of the sharded layout in case a configured directory is shared by both layouts.
+     */
+    private static class FlatLayoutEntriesFinder implements FilesFinder {
+        private final FilesFinder delegate = new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+
+        @Override
+        public Iterable<File> find(File baseDir, FileFilter filter) {
+            return delegate.find(baseDir, file -> filter.accept(file) && !isShardedLayoutDirectory(file));
+        }
+
+        private static boolean isShardedLayoutDirectory(File file) {
+            String name = file.getName();
+            return (name.equals(ACCESS_INDEX_DIRECTORY) || DirectoryBuildCacheCleanup.isShardName(name)) && file.isDirectory();
+        }
+    }
+
     private static void checkDirectory(File directory) {
         if (directory.exists()) {
             if (!directory.isDirectory()) {
@@ -23,11 +23,17 @@ import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.time.MockClock
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import spock.lang.Specification
+import spock.lang.Timeout
 import org.junit.Rule
 
+import java.util.concurrent.CountDownLatch
+
 class DefaultBuildCacheControllerTest extends Specification {
 
     def key = Mock(BuildCacheKey) {
@@ -77,6 +83,7 @@ class DefaultBuildCacheControllerTest extends Specification {
     }
 
     def operations = new TestBuildOperationExecutor()
+    def clock = new MockClock()
 
     @Rule
     final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
@@ -98,6 +105,23 @@ class DefaultBuildCacheControllerTest extends Specification {
         )
     }
 
+    BuildCacheController speculativeController(ExecutorFactory executorFactory) {
+        new DefaultBuildCacheController(
+            new BuildCacheServicesConfiguration(
+                local,
+                localPush,
+                remote,
+                remotePush
+            ),
+            operations,
+            tmpDir.file("dir"),
+            false,
+            false,
+            executorFactory,
+            clock
+        )
+    }
+
     def "does suppress exceptions from load"() {
         given:
         1 * remote.load(key, _) >> { throw new RuntimeException() }
@@ -239,6 +263,116 @@ class DefaultBuildCacheControllerTest extends Specification {
         0 * remote.store(key, _)
     }
 
+    def "speculative load unpacks remote entry from local cache"() {
+        given:
+        def executorFactory = new DefaultExecutorFactory()
+        def controller = speculativeController(executorFactory)
+        def storedLocally = false
+        _ * local.loadLocally(key, _) >> { BuildCacheKey key, Action<File> action ->
+            if (storedLocally) {
+                action.execute(tmpDir.file("file"))
+            }
+        }
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        1 * local.storeLocally(key, _) >> { storedLocally = true }
+
+        when:
+        def result = controller.loadSpeculatively(loadCommand, null, 10000)
+
+        then:
+        result.get() == loadmetadata
+
+        cleanup:
+        controller.close()
+        executorFactory.stop()
+    }
+
+    def "speculative load stops waiting for remote cache after deadline"() {
+        given:
+        def executorFactory = new DefaultExecutorFactory()
+        def controller = speculativeController(executorFactory)
+        def continueRemoteLoad = new CountDownLatch(1)
+        _ * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            continueRemoteLoad.await()
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        def result = controller.loadSpeculatively(loadCommand, null, 10)
+
+        then:
+        !result.present
+
+        when:
+        continueRemoteLoad.countDown()
+        controller.close()
+
+        then:
+        // The entry is only downloaded into the local cache
+        1 * local.storeLocally(key, _)
+
+        cleanup:
+        executorFactory.stop()
+    }
+
+    @Timeout(10)
+    def "speculative load does not wait for remote cache when executing is expected to take less time than loading"() {
+        given:
+        def executorFactory = new DefaultExecutorFactory()
+        def controller = speculativeController(executorFactory)
+        def continueRemoteLoad = new CountDownLatch(1)
+        def remoteLoads = 0
+        _ * local.loadLocally(key, _) // miss
+        _ * remote.load(key, _) >> {
+            if (++remoteLoads == 2) {
+                continueRemoteLoad.await()
+            }
+            false
+        }
+
+        when:
+        // Takes 10 ms according to the mock clock
+        def first = controller.loadSpeculatively(loadCommand, null, 60000)
+
+        then:
+        !first.present
+
+        when:
+        def second = controller.loadSpeculatively(loadCommand, 5, 60000)
+
+        then:
+        !second.present
+
+        cleanup:
+        continueRemoteLoad.countDown()
+        controller.close()
+        executorFactory.stop()
+    }
+
+    def "speculative load without local cache waits for remote cache"() {
+        given:
+        local = null
+        def executorFactory = new DefaultExecutorFactory()
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        def result = speculativeController(executorFactory).loadSpeculatively(loadCommand, null, 0)
+
+        then:
+        result.get() == loadmetadata
+
+        cleanup:
+        executorFactory.stop()
+    }
+
     def "close only closes once"() {
         when:
         def controller = getController()
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.internal.file.FileAccessTimeJournal
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+@CleanupTestDirectory
+class DirectoryBuildCacheCleanupTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def cacheDir = temporaryFolder.createDir("cache")
+    def accessTimes = [:]
+    def journal = Stub(FileAccessTimeJournal) {
+        getLastAccessTime(_) >> { File file -> accessTimes.containsKey(file) ? accessTimes[file] : file.lastModified() }
+        setLastAccessTime(_, _) >> { File file, long time -> accessTimes[file] = time }
+        deleteLastAccessTime(_) >> { File file -> accessTimes.remove(file) }
+    }
+    def accessIndex = new DirectoryBuildCacheAccessIndex(cacheDir.file("access-index"), journal)
+    def exclusiveAccess = { Runnable action -> action.run() }
+
+    def "moves used entries of flat layout into shards and removes unused entries"() {
+        def usedEntry = cacheDir.file("aa11").createFile()
+        def unusedEntry = cacheDir.file("bb22").createFile()
+        def otherFile = cacheDir.file("gc.properties").createFile()
+        accessTimes[usedEntry] = System.currentTimeMillis()
+        accessTimes[unusedEntry] = daysAgo(10)
+
+        when:
+        newCleanup().clean(exclusiveAccess)
+
+        then:
+        cacheDir.file("aa/aa11").assertIsFile()
+        usedEntry.assertDoesNotExist()
+        unusedEntry.assertDoesNotExist()
+        otherFile.assertIsFile()
+        accessIndex.indexedDays == [DirectoryBuildCacheAccessIndex.dayOf(System.currentTimeMillis())]
+        !newCleanup().cleanupDue
+    }
+
+    def "removes entries last accessed on expired days"() {
+        def unusedEntry = cacheDir.file("cc/cc33").createFile()
+        def usedEntry = cacheDir.file("dd/dd44").createFile()
+        accessIndex.markBuilt()
+        accessTimes[unusedEntry] = daysAgo(9)
+        accessTimes[usedEntry] = System.currentTimeMillis()
+        accessIndex.record("cc33", daysAgo(9))
+        accessIndex.record("dd44", daysAgo(9))
+        accessIndex.flush()
+
+        when:
+        newCleanup().clean(exclusiveAccess)
+
+        then:
+        unusedEntry.assertDoesNotExist()
+        usedEntry.assertIsFile()
+        accessIndex.indexedDays.empty
+    }
+
+    def "continues where stopped cleanup left off"() {
+        def unusedEntry = cacheDir.file("cc/cc33").createFile()
+        accessIndex.markBuilt()
+        accessTimes[unusedEntry] = daysAgo(9)
+        accessIndex.record("cc33", daysAgo(9))
+        accessIndex.flush()
+
+        when:
+        def cleanup = newCleanup()
+        cleanup.stop()
+        cleanup.clean(exclusiveAccess)
+
+        then:
+        unusedEntry.assertIsFile()
+
+        when:
+        newCleanup().clean(exclusiveAccess)
+
+        then:
+        unusedEntry.assertDoesNotExist()
+    }
+
+    def "imports used entries of flat layout cache in another directory when index was never built"() {
+        def importDir = temporaryFolder.createDir("build-cache-1")
+        def usedEntry = importDir.file("ee55").createFile()
+        usedEntry.text = "used"
+        def unusedEntry = importDir.file("ff66").createFile()
+        def existingEntry = importDir.file("aa11").createFile()
+        existingEntry.text = "imported"
+        cacheDir.file("aa/aa11").createFile().text = "existing"
+        accessTimes[usedEntry] = System.currentTimeMillis()
+        accessTimes[unusedEntry] = daysAgo(10)
+        accessTimes[existingEntry] = System.currentTimeMillis()
+
+        when:
+        newCleanup(importDir).clean(exclusiveAccess)
+
+        then:
+        cacheDir.file("ee/ee55").text == "used"
+        accessTimes[cacheDir.file("ee/ee55")] == accessTimes[usedEntry]
+        cacheDir.file("ff/ff66").assertDoesNotExist()
+        cacheDir.file("aa/aa11").text == "existing"
+        usedEntry.assertIsFile()
+        unusedEntry.assertIsFile()
+        accessIndex.indexedDays == [DirectoryBuildCacheAccessIndex.dayOf(System.currentTimeMillis())]
+
+        when:
+        cacheDir.file("ee/ee55").delete()
+        newCleanup(importDir).clean(exclusiveAccess)
+
+        then:
+        cacheDir.file("ee/ee55").assertDoesNotExist()
+    }
+
+    private DirectoryBuildCacheCleanup newCleanup(File importDir) {
+        new DirectoryBuildCacheCleanup(cacheDir, importDir, accessIndex, journal, 7)
+    }
+
+    private DirectoryBuildCacheCleanup newCleanup() {
+        new DirectoryBuildCacheCleanup(cacheDir, accessIndex, journal, 7)
+    }
+
+    private static long daysAgo(long days) {
+        System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)
+    }
+}
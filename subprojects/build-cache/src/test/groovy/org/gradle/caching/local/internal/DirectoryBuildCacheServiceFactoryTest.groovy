@@ -25,6 +25,8 @@ import org.gradle.cache.internal.CleanupActionFactory
 import org.gradle.cache.internal.VersionStrategy
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
 import org.gradle.internal.file.FileAccessTimeJournal
 import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -42,7 +44,8 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
     def fileStoreFactory = Mock(DirectoryBuildCacheFileStoreFactory)
     def cleanupActionFactory = Mock(CleanupActionFactory)
     def fileAccessTimeJournal = Mock(FileAccessTimeJournal)
-    def factory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal)
+    def executorFactory = Mock(ExecutorFactory)
+    def factory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal, executorFactory, false)
     def cacheBuilder = Stub(CacheBuilder)
     def config = Mock(DirectoryBuildCache)
     def buildCacheDescriber = new NoopBuildCacheDescriber()
@@ -81,6 +84,44 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         0 * _
     }
 
+    def "can create service with sharded layout"() {
+        def cacheDir = temporaryFolder.file("cache-dir")
+        def shardedFactory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal, executorFactory, true)
+        def cleanupExecutor = Mock(ManagedExecutor)
+
+        when:
+        def service = shardedFactory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        service instanceof DirectoryBuildCacheService
+        1 * config.getDirectory() >> cacheDir
+        1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * resolver.resolve(cacheDir) >> cacheDir
+        1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
+        1 * cacheRepository.cache(cacheDir) >> cacheBuilder
+        1 * executorFactory.create("Build cache cleanup") >> cleanupExecutor
+        1 * cleanupExecutor.execute(_)
+        0 * cleanupActionFactory._
+        0 * _
+    }
+
+    def "sharded layout uses its own default directory"() {
+        def cacheDir = temporaryFolder.file("build-cache-2")
+        def shardedFactory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal, executorFactory, true)
+
+        when:
+        def service = shardedFactory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        service instanceof DirectoryBuildCacheService
+        1 * config.getDirectory() >> null
+        1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * cacheScopeMapping.getBaseDirectory(null, "build-cache-2", VersionStrategy.SharedCache) >> cacheDir
+        1 * cacheScopeMapping.getBaseDirectory(null, "build-cache-1", VersionStrategy.SharedCache) >> temporaryFolder.file("build-cache-1")
+        1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
+        1 * cacheRepository.cache(cacheDir) >> cacheBuilder
+        1 * executorFactory.create("Build cache cleanup") >> Stub(ManagedExecutor)
+        0 * _
+    }
+
     private class NoopBuildCacheDescriber implements BuildCacheServiceFactory.Describer {
 
         @Override
@@ -20,6 +20,8 @@ import org.gradle.cache.PersistentCache
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.file.FileAccessTimeJournal
 import org.gradle.internal.file.FileAccessTracker
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -133,4 +135,74 @@ class DirectoryBuildCacheServiceTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "stores entries in shards and indexes them right away when using sharded layout"() {
+        def journal = Mock(FileAccessTimeJournal)
+        def accessIndex = new DirectoryBuildCacheAccessIndex(new File(cacheDir, "access-index"), journal)
+        def cleanup = new DirectoryBuildCacheCleanup(cacheDir, accessIndex, journal, 7)
+        def shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, ".failed", cleanup, null)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "bar"
+
+        when:
+        shardedService.storeLocally(key, originalFile)
+
+        then:
+        new File(cacheDir, "12/1234abcd").text == "bar"
+        1 * journal.setLastAccessTime(new File(cacheDir, "12/1234abcd"), _)
+        accessIndex.indexedDays.size() == 1
+    }
+
+    def "loads entries of flat layout when using sharded layout"() {
+        def journal = Mock(FileAccessTimeJournal)
+        def accessIndex = new DirectoryBuildCacheAccessIndex(new File(cacheDir, "access-index"), journal)
+        def cleanup = new DirectoryBuildCacheCleanup(cacheDir, accessIndex, journal, 7)
+        def shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, ".failed", cleanup, null)
+        new File(cacheDir, hashCode).text = "bar"
+
+        when:
+        shardedService.loadLocally(key, { file ->
+            assert file.text == "bar"
+        })
+
+        then:
+        1 * journal.setLastAccessTime(new File(cacheDir, hashCode), _)
+    }
+
+    def "does not fail when background cleanup fails"() {
+        def accessIndex = new DirectoryBuildCacheAccessIndex(new File(cacheDir, "access-index"), Mock(FileAccessTimeJournal))
+        def cleanup = Mock(DirectoryBuildCacheCleanup)
+        def cleanupExecutor = Mock(ManagedExecutor)
+
+        when:
+        def shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, ".failed", cleanup, cleanupExecutor)
+
+        then:
+        1 * cleanupExecutor.execute(_) >> { Runnable action -> action.run() }
+        1 * cleanup.clean(_) >> { throw new UncheckedIOException(new IOException("Simulated cleanup failure")) }
+
+        when:
+        shardedService.close()
+
+        then:
+        1 * cleanup.stop()
+        1 * cleanupExecutor.stop()
+        1 * persistentCache.close()
+    }
+
+    def "closes cache when stopping background cleanup fails"() {
+        def accessIndex = new DirectoryBuildCacheAccessIndex(new File(cacheDir, "access-index"), Mock(FileAccessTimeJournal))
+        def cleanup = Mock(DirectoryBuildCacheCleanup)
+        def cleanupExecutor = Mock(ManagedExecutor)
+        def shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, accessIndex, ".failed", cleanup, cleanupExecutor)
+
+        when:
+        shardedService.close()
+
+        then:
+        def e = thrown(RuntimeException)
+        e.message == "Simulated stop failure"
+        1 * cleanupExecutor.stop() >> { throw new RuntimeException("Simulated stop failure") }
+        1 * persistentCache.close()
+    }
 }
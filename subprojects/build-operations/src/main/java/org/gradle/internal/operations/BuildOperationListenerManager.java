@@ -38,6 +38,14 @@ public interface BuildOperationListenerManager {
 
     void removeListener(BuildOperationListener listener);
 
+    /**
+     * Returns true when at least one listener is registered.  Operations that start while there are no
+     * listeners do not need to create or dispatch start and finish events.
+     *
+     * @since 6.7
+     */
+    boolean hasListeners();
+
     BuildOperationListener getBroadcaster();
 
 }
@@ -91,6 +91,11 @@ public void removeListener(BuildOperationListener listener) {
         }
     }
 
+    @Override
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
     @Override
     public BuildOperationListener getBroadcaster() {
         return broadcaster;
@@ -33,6 +33,25 @@ class DefaultBuildOperationListenerManagerTest extends Specification {
     def progressEvent = new OperationProgressEvent(0, null)
     def finishEvent = new OperationFinishEvent(0, 0, null, null)
 
+    def "knows whether listeners are registered"() {
+        def listener = recordingListener("1")
+
+        expect:
+        !manager.hasListeners()
+
+        when:
+        manager.addListener(listener)
+
+        then:
+        manager.hasListeners()
+
+        when:
+        manager.removeListener(listener)
+
+        then:
+        !manager.hasListeners()
+    }
+
     def "notifies start and progress in registration order, finish in reverse registration order"() {
         given:
         manager.addListener(recordingListener("1"))
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.internal.resources.ResourceLock;
+import org.gradle.internal.resources.ResourceLockState;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Drives {@link DefaultExecutionPlan} through a complete execution of a synthetic graph,
+ * simulating a fixed number of workers that each finish their node in the order they were started.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class ExecutionPlanBenchmark {
+
+    @Param({"10000", "50000", "100000"})
+    int nodeCount;
+
+    @Param({"1", "3"})
+    int dependenciesPerNode;
+
+    @Param({"8", "64"})
+    int workerCount;
+
+    private DefaultExecutionPlan executionPlan;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        Random random = new Random(1234L);
+        List<BenchmarkNode> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            BenchmarkNode node = new BenchmarkNode(i);
+            for (int j = 0; j < dependenciesPerNode && i > 0; j++) {
+                node.addDependencySuccessor(nodes.get(random.nextInt(i)));
+            }
+            node.require();
+            node.dependenciesProcessed();
+            nodes.add(node);
+        }
+        // The plan does not use the build or the task node factory for nodes that are not task nodes
+        executionPlan = new DefaultExecutionPlan(null, null, new TaskDependencyResolver(Collections.emptyList()));
+        executionPlan.addNodes(nodes);
+        executionPlan.determineExecutionPlan();
+    }
+
+    @Benchmark
+    public void executePlan(Blackhole blackhole) {
+        Deque<Node> running = new ArrayDeque<>(workerCount);
+        WorkerLeaseRegistry.WorkerLease workerLease = new BenchmarkWorkerLease();
+        ResourceLockState resourceLockState = new BenchmarkResourceLockState();
+        while (true) {
+            while (running.size() < workerCount) {
+                Node next = executionPlan.selectNext(workerLease, resourceLockState);
+                if (next == null) {
+                    break;
+                }
+                running.add(next);
+            }
+            if (running.isEmpty()) {
+                break;
+            }
+            Node finished = running.remove();
+            executionPlan.finishedExecuting(finished);
+            blackhole.consume(finished);
+        }
+        if (executionPlan.hasNodesRemaining()) {
+            throw new IllegalStateException("Plan did not complete");
+        }
+    }
+
+    private static class BenchmarkNode extends Node {
+        private final int id;
+
+        BenchmarkNode(int id) {
+            this.id = id;
+            getMutationInfo().resolved = true;
+        }
+
+        @Nullable
+        @Override
+        public Throwable getNodeFailure() {
+            return null;
+        }
+
+        @Override
+        public void rethrowNodeFailure() {
+        }
+
+        @Override
+        public void prepareForExecution() {
+        }
+
+        @Override
+        public void resolveDependencies(TaskDependencyResolver dependencyResolver, Action<Node> processHardSuccessor) {
+        }
+
+        @Override
+        public Set<Node> getFinalizers() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void resolveMutations() {
+        }
+
+        @Override
+        public boolean isPublicNode() {
+            return true;
+        }
+
+        @Override
+        public boolean requiresMonitoring() {
+            return false;
+        }
+
+        @Nullable
+        @Override
+        public ResourceLock getProjectToLock() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public ProjectInternal getOwningProject() {
+            return null;
+        }
+
+        @Override
+        public List<? extends ResourceLock> getResourcesToLock() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return Integer.compare(id, ((BenchmarkNode) other).id);
+        }
+
+        @Override
+        public String toString() {
+            return "node " + id;
+        }
+    }
+
+    private static class BenchmarkWorkerLease implements WorkerLeaseRegistry.WorkerLease {
+        @Override
+        public WorkerLeaseRegistry.WorkerLease createChild() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WorkerLeaseRegistry.WorkerLeaseCompletion startChild() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isLocked() {
+            return false;
+        }
+
+        @Override
+        public boolean isLockedByCurrentThread() {
+            return false;
+        }
+
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "benchmark worker lease";
+        }
+    }
+
+    private static class BenchmarkResourceLockState implements ResourceLockState {
+        @Override
+        public void registerLocked(ResourceLock resourceLock) {
+        }
+
+        @Override
+        public void registerUnlocked(ResourceLock resourceLock) {
+        }
+
+        @Override
+        public void releaseLocks() {
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.cache.PersistentCache;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.execution.history.impl.DefaultExecutionHistoryStore;
+import org.gradle.internal.execution.history.impl.WriteBehindExecutionHistoryStore;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.impl.AbsolutePathFingerprintingStrategy;
+import org.gradle.internal.fingerprint.impl.DefaultCurrentFileCollectionFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.ValueSnapshot;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+import org.gradle.testfixtures.internal.InMemoryCacheFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the time the worker thread spends on the execution history for a build of 5000 units of work,
+ * either executing all of them in a cold build, or loading their history in an up-to-date build.
+ *
+ * For the write-behind store, writing the history happens on the writer thread and is flushed after the measurement,
+ * like at the end of a build.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class ExecutionHistoryStoreBenchmark {
+    private static final int WORK_COUNT = 5000;
+    private static final int INPUT_FILE_COUNT = 20;
+
+    @Param({"synchronous", "writeBehind"})
+    String store;
+
+    @Param({"cold", "upToDate"})
+    String build;
+
+    private final List<CurrentFileCollectionFingerprint> inputFingerprints = new ArrayList<>(WORK_COUNT);
+    private final List<CurrentFileCollectionFingerprint> outputFingerprints = new ArrayList<>(WORK_COUNT);
+    private DefaultExecutorFactory executorFactory;
+    private ExecutionHistoryStore executionHistoryStore;
+
+    @Setup(Level.Trial)
+    public void createFingerprints() {
+        for (int work = 0; work < WORK_COUNT; work++) {
+            List<RegularFileSnapshot> inputs = new ArrayList<>(INPUT_FILE_COUNT);
+            for (int file = 0; file < INPUT_FILE_COUNT; file++) {
+                // Each unit of work shares half of its inputs with the others, like a common classpath
+                int id = file < INPUT_FILE_COUNT / 2 ? file : work * INPUT_FILE_COUNT + file;
+                inputs.add(snapshot("/inputs/file" + id + ".txt", id));
+            }
+            inputFingerprints.add(DefaultCurrentFileCollectionFingerprint.from(inputs, AbsolutePathFingerprintingStrategy.IGNORE_MISSING));
+            outputFingerprints.add(DefaultCurrentFileCollectionFingerprint.from(
+                ImmutableList.of(snapshot("/outputs/work" + work + ".txt", -work)), AbsolutePathFingerprintingStrategy.IGNORE_MISSING));
+        }
+        executorFactory = new DefaultExecutorFactory();
+    }
+
+    @Setup(Level.Invocation)
+    public void createStore() {
+        PersistentCache cache = new InMemoryCacheFactory().open(new File("executionHistory"), "execution history");
+        ExecutionHistoryStore defaultStore = new DefaultExecutionHistoryStore(() -> cache, (maxEntries, shortLived) -> null, new StringInterner());
+        executionHistoryStore = store.equals("writeBehind")
+            ? new WriteBehindExecutionHistoryStore(defaultStore, () -> cache, executorFactory)
+            : defaultStore;
+        if (build.equals("upToDate")) {
+            for (int work = 0; work < WORK_COUNT; work++) {
+                storeHistory(work);
+            }
+            if (executionHistoryStore instanceof WriteBehindExecutionHistoryStore) {
+                ((WriteBehindExecutionHistoryStore) executionHistoryStore).flush();
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() {
+        if (executionHistoryStore instanceof WriteBehindExecutionHistoryStore) {
+            ((WriteBehindExecutionHistoryStore) executionHistoryStore).close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopExecutors() {
+        executorFactory.stop();
+    }
+
+    @Benchmark
+    public void executeBuild(Blackhole blackhole) {
+        for (int work = 0; work < WORK_COUNT; work++) {
+            if (build.equals("upToDate")) {
+                blackhole.consume(executionHistoryStore.load("work" + work));
+            } else {
+                storeHistory(work);
+            }
+        }
+    }
+
+    private void storeHistory(int work) {
+        executionHistoryStore.store(
+            "work" + work,
+            new OriginMetadata("build", work),
+            ImplementationSnapshot.of("Work", HashCode.fromInt(1)),
+            ImmutableList.of(),
+            ImmutableSortedMap.<String, ValueSnapshot>of(),
+            ImmutableSortedMap.of("inputs", inputFingerprints.get(work)),
+            ImmutableSortedMap.of("outputs", outputFingerprints.get(work)),
+            true
+        );
+    }
+
+    private static RegularFileSnapshot snapshot(String path, int hash) {
+        return new RegularFileSnapshot(path, path.substring(path.lastIndexOf('/') + 1), HashCode.fromInt(hash), DefaultFileMetadata.file(hash, hash, AccessType.DIRECT));
+    }
+}
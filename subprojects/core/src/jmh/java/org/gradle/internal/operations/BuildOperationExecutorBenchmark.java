@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations;
+
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration;
+import org.gradle.internal.concurrent.GradleThread;
+import org.gradle.internal.logging.events.ProgressCompleteEvent;
+import org.gradle.internal.logging.events.ProgressEvent;
+import org.gradle.internal.logging.events.ProgressStartEvent;
+import org.gradle.internal.logging.progress.DefaultProgressLoggerFactory;
+import org.gradle.internal.logging.progress.ProgressListener;
+import org.gradle.internal.time.Clock;
+import org.gradle.internal.time.Time;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the cost of running a fine-grained build operation, with and without a registered {@link BuildOperationListener}.
+ * Without listeners the executor skips creating and dispatching start and finish events.
+ *
+ * Run with {@code -prof gc} to see the bytes allocated per operation.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class BuildOperationExecutorBenchmark {
+
+    @Param({"0", "1", "3"})
+    int listenerCount;
+
+    private DefaultExecutorFactory executorFactory;
+    private DefaultBuildOperationExecutor buildOperationExecutor;
+
+    @Setup
+    public void setup() {
+        GradleThread.setManaged();
+        Clock clock = Time.clock();
+        DefaultBuildOperationIdFactory buildOperationIdFactory = new DefaultBuildOperationIdFactory();
+        DefaultBuildOperationListenerManager listenerManager = new DefaultBuildOperationListenerManager();
+        for (int i = 0; i < listenerCount; i++) {
+            listenerManager.addListener(new NoOpBuildOperationListener());
+        }
+        executorFactory = new DefaultExecutorFactory();
+        buildOperationExecutor = new DefaultBuildOperationExecutor(
+            listenerManager,
+            clock,
+            new DefaultProgressLoggerFactory(new NoOpProgressListener(), clock, buildOperationIdFactory),
+            new DefaultBuildOperationQueueFactory(null),
+            executorFactory,
+            new DefaultParallelismConfiguration(false, 1),
+            buildOperationIdFactory
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorFactory.stop();
+        GradleThread.setUnmanaged();
+    }
+
+    @Benchmark
+    public Object callOperation(Blackhole blackhole) {
+        return buildOperationExecutor.call(new CallableBuildOperation<Object>() {
+            @Override
+            public Object call(BuildOperationContext context) {
+                blackhole.consume(context);
+                return context;
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Snapshot inputs");
+            }
+        });
+    }
+
+    private static class NoOpBuildOperationListener implements BuildOperationListener {
+        @Override
+        public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+        }
+
+        @Override
+        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+        }
+
+        @Override
+        public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+        }
+    }
+
+    private static class NoOpProgressListener implements ProgressListener {
+        @Override
+        public void started(ProgressStartEvent event) {
+        }
+
+        @Override
+        public void progress(ProgressEvent event) {
+        }
+
+        @Override
+        public void completed(ProgressCompleteEvent event) {
+        }
+    }
+}
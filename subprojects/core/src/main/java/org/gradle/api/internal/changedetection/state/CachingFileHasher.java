@@ -20,8 +20,11 @@
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.hash.BatchFileHasher;
 import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.FileToHash;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.serialize.AbstractSerializer;
@@ -30,30 +33,67 @@
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.InterningStringSerializer;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
-public class CachingFileHasher implements FileHasher {
+public class CachingFileHasher implements BatchFileHasher {
+    /**
+     * When set to {@code true}, the hashes of files are kept in an off-heap table in a memory-mapped file instead of the persistent indexed cache.
+     */
+    public static final String MAPPED_FILE_HASH_TABLE_PROPERTY = "org.gradle.internal.hash.mapped-file-hash-table";
+
+    private static final int MAPPED_FILE_HASH_TABLE_CAPACITY = 1 << 19;
+
+    private final CrossBuildFileHashCache store;
     private final PersistentIndexedCache<String, FileInfo> cache;
     private final FileHasher delegate;
+    private final Executor executor;
     private final FileSystem fileSystem;
     private final StringInterner stringInterner;
     private final FileTimeStampInspector timestampInspector;
 
-    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, int inMemorySize) {
+    /**
+     * @param executor the executor to hash the files not found in the cache with when hashing a batch of files, or {@code null} to hash them on the calling thread.
+     * @param useMappedFileHashTable whether to keep the hashes in an off-heap table in a memory-mapped file instead of the persistent indexed cache.
+     */
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, int inMemorySize, @Nullable Executor executor, boolean useMappedFileHashTable) {
         this.delegate = delegate;
+        this.store = store;
+        this.executor = executor;
         this.fileSystem = fileSystem;
-        this.cache = store.createCache(
-            PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
-            inMemorySize,
-            true);
+        this.cache = useMappedFileHashTable
+            ? store.createFileHashTable(cacheName, MAPPED_FILE_HASH_TABLE_CAPACITY)
+            : store.createCache(
+                PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
+                inMemorySize,
+                true);
         this.stringInterner = stringInterner;
         this.timestampInspector = timestampInspector;
     }
 
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, int inMemorySize, @Nullable Executor executor) {
+        this(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem, inMemorySize, executor, Boolean.getBoolean(MAPPED_FILE_HASH_TABLE_PROPERTY));
+    }
+
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, int inMemorySize) {
+        this(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem, inMemorySize, null);
+    }
+
     public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem) {
         this(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem, 400000);
     }
 
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem, @Nullable Executor executor) {
+        this(delegate, store, stringInterner, timestampInspector, cacheName, fileSystem, 400000, executor);
+    }
+
     @Override
     public String toString() {
         return "{hasher cache: " + cache + "}";
@@ -74,8 +114,84 @@ private FileInfo snapshot(File file) {
         return snapshot(file, fileMetadata.getLength(), fileMetadata.getLastModified());
     }
 
+    /**
+     * Looks up the cached hashes of all files first, then hashes the remaining files concurrently and stores their hashes in a single cache transaction.
+     * The calling thread hashes the files which the executor did not start hashing yet, so that the batch never waits for a busy executor.
+     */
+    @Override
+    public List<HashCode> hash(List<FileToHash> files) {
+        HashCode[] hashes = new HashCode[files.size()];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            FileToHash file = files.get(i);
+            FileInfo info = cachedInfo(file.getFile().getAbsolutePath(), file.getLength(), file.getLastModified());
+            if (info != null) {
+                hashes[i] = info.getHash();
+            } else {
+                misses.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return Arrays.asList(hashes);
+        }
+
+        List<FutureTask<HashCode>> tasks = new ArrayList<>(misses.size());
+        for (int miss : misses) {
+            File file = files.get(miss).getFile();
+            FutureTask<HashCode> task = new FutureTask<>(() -> delegate.hash(file));
+            if (executor != null && misses.size() > 1) {
+                executor.execute(task);
+            }
+            tasks.add(task);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            FutureTask<HashCode> task = tasks.get(i);
+            task.run();
+            hashes[misses.get(i)] = getHash(task);
+        }
+
+        store.useCache(() -> {
+            for (int miss : misses) {
+                HashCode hash = hashes[miss];
+                if (hash != null) {
+                    FileToHash file = files.get(miss);
+                    cache.put(stringInterner.intern(file.getFile().getAbsolutePath()), new FileInfo(hash, file.getLength(), file.getLastModified()));
+                }
+            }
+        });
+        return Arrays.asList(hashes);
+    }
+
+    @Nullable
+    private static HashCode getHash(FutureTask<HashCode> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                return null;
+            }
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
     private FileInfo snapshot(File file, long length, long timestamp) {
         String absolutePath = file.getAbsolutePath();
+        FileInfo cachedInfo = cachedInfo(absolutePath, length, timestamp);
+        if (cachedInfo != null) {
+            return cachedInfo;
+        }
+
+        HashCode hash = delegate.hash(file);
+        FileInfo info = new FileInfo(hash, length, timestamp);
+        cache.put(stringInterner.intern(absolutePath), info);
+        return info;
+    }
+
+    @Nullable
+    private FileInfo cachedInfo(String absolutePath, long length, long timestamp) {
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
             FileInfo info = cache.get(absolutePath);
 
@@ -83,11 +199,7 @@ private FileInfo snapshot(File file, long length, long timestamp) {
                 return info;
             }
         }
-
-        HashCode hash = delegate.hash(file);
-        FileInfo info = new FileInfo(hash, length, timestamp);
-        cache.put(stringInterner.intern(absolutePath), info);
-        return info;
+        return null;
     }
 
     public void discard(String path) {
@@ -109,6 +221,14 @@ public FileInfo(HashCode hash, long length, long timestamp) {
         public HashCode getHash() {
             return hash;
         }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
     }
 
     private static class FileInfoSerializer extends AbstractSerializer<FileInfo> {
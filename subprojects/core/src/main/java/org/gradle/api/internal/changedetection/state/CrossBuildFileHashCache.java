@@ -23,10 +23,13 @@
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.internal.concurrent.CompositeStoppable;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
@@ -34,6 +37,7 @@ public class CrossBuildFileHashCache implements Closeable {
 
     private final PersistentCache cache;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
+    private final List<MappedFileHashTable> fileHashTables = new CopyOnWriteArrayList<>();
 
     public CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository repository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, Kind cacheKind) {
         this.inMemoryCacheDecoratorFactory = inMemoryCacheDecoratorFactory;
@@ -50,9 +54,27 @@ public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCachePar
         );
     }
 
+    /**
+     * Creates a table of file hashes which is stored off-heap in a memory-mapped file in this cache, and which is updated while holding the lock on this cache.
+     *
+     * The table uses its own file extension, so it never shares a file with the persistent indexed cache of the same name.
+     */
+    MappedFileHashTable createFileHashTable(String name, int capacity) {
+        MappedFileHashTable table = new MappedFileHashTable(new File(cache.getBaseDir(), name + ".table"), capacity, cache);
+        fileHashTables.add(table);
+        return table;
+    }
+
+    /**
+     * Runs the given action while holding the lock on the cache, so that updating multiple entries takes a single cache transaction.
+     */
+    public void useCache(Runnable action) {
+        cache.useCache(action);
+    }
+
     @Override
     public void close() {
-        cache.close();
+        CompositeStoppable.stoppable(fileHashTables).add(cache).stop();
     }
 
     public enum Kind {
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.service.scopes.Scopes;
+import org.gradle.internal.service.scopes.ServiceScope;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The thread pool used for hashing file content in parallel, shared by all file hashers of a Gradle user home.
+ * The pool is sized by the number of processors, as hashing is bound by both I/O and CPU.
+ */
+@ServiceScope(Scopes.UserHome.class)
+public class FileHashingExecutor implements Executor, Stoppable {
+    private final ManagedExecutor executor;
+
+    public FileHashingExecutor(ExecutorFactory executorFactory) {
+        this.executor = executorFactory.create("File hashing", Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+}
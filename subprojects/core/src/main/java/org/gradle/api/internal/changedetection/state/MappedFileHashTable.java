@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo;
+import org.gradle.cache.CacheAccess;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores the hashes of files in an open-addressing hash table in a memory-mapped file, without keeping the entries on the heap.
+ *
+ * <p>Each entry takes a fixed-width slot keyed by a 128-bit hash of the absolute path, and holds the length, the modification time and the 128-bit content hash
+ * of the file. Slots also hold a checksum of their content. Lookups do not take any lock, and treat a slot which does not match its checksum as missing,
+ * so that readers in this process and in other processes never see a partially written entry.</p>
+ *
+ * <p>Updates are made while holding the lock of the given cache, which is coordinated across processes via the file lock manager.
+ * When all slots reachable from the home slot of a path are taken, one of them is overwritten, so the table never grows.</p>
+ *
+ * <p>Once closed, the table no longer reads from or writes to the mapping, and behaves as if it was empty.</p>
+ */
+class MappedFileHashTable implements PersistentIndexedCache<String, FileInfo>, Closeable {
+    private static final int MAGIC = 0x46485431;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int MAX_PROBES = 8;
+    private static final int HASH_LENGTH = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int PATH_HASH_1 = 0;
+    private static final int PATH_HASH_2 = 8;
+    private static final int LENGTH = 16;
+    private static final int LAST_MODIFIED = 24;
+    private static final int CONTENT_HASH_1 = 32;
+    private static final int CONTENT_HASH_2 = 40;
+    private static final int CHECKSUM = 48;
+
+    private final File file;
+    private final CacheAccess cacheAccess;
+    private final int capacity;
+    private final RandomAccessFile randomAccessFile;
+    private volatile ByteBuffer slots;
+
+    /**
+     * @param capacity the number of slots of the table, which must be a power of two
+     */
+    MappedFileHashTable(File file, int capacity, CacheAccess cacheAccess) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(String.format("Capacity of file hash table must be a power of two, but was %d.", capacity));
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.cacheAccess = cacheAccess;
+        try {
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            cacheAccess.useCache(() -> initialize(size));
+            this.slots = randomAccessFile.getChannel()
+                .map(FileChannel.MapMode.READ_WRITE, 0, size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not open file hash table '%s'.", file), e);
+        }
+    }
+
+    private void initialize(long size) {
+        try {
+            long length = randomAccessFile.length();
+            if (length >= size) {
+                randomAccessFile.seek(0);
+                if (randomAccessFile.readInt() == MAGIC && randomAccessFile.readInt() == VERSION && randomAccessFile.readInt() == capacity) {
+                    return;
+                }
+            }
+            // Start over with empty slots. Never shrink the file, as other processes may have it mapped and would crash reading beyond its end.
+            if (length < size) {
+                randomAccessFile.setLength(size);
+            }
+            byte[] zeros = new byte[BUFFER_SIZE];
+            randomAccessFile.seek(0);
+            for (long position = 0; position < size; position += zeros.length) {
+                randomAccessFile.write(zeros, 0, (int) Math.min(zeros.length, size - position));
+            }
+            randomAccessFile.seek(0);
+            randomAccessFile.writeInt(MAGIC);
+            randomAccessFile.writeInt(VERSION);
+            randomAccessFile.writeInt(capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not initialize file hash table '%s'.", file), e);
+        }
+    }
+
+    @Nullable
+    @Override
+    public FileInfo get(String absolutePath) {
+        ByteBuffer slots = this.slots;
+        if (slots == null) {
+            return null;
+        }
+        HashCode pathHash = hashPath(absolutePath);
+        long pathHash1 = pathHash.getLong(0);
+        long pathHash2 = pathHash.getLong(8);
+        int home = homeSlot(pathHash1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = slotOffset(home, probe);
+            if (slots.getLong(offset + PATH_HASH_1) != pathHash1 || slots.getLong(offset + PATH_HASH_2) != pathHash2) {
+                continue;
+            }
+            long length = slots.getLong(offset + LENGTH);
+            long lastModified = slots.getLong(offset + LAST_MODIFIED);
+            long contentHash1 = slots.getLong(offset + CONTENT_HASH_1);
+            long contentHash2 = slots.getLong(offset + CONTENT_HASH_2);
+            long checksum = slots.getLong(offset + CHECKSUM);
+            if (checksum == checksum(pathHash1, pathHash2, length, lastModified, contentHash1, contentHash2)) {
+                return new FileInfo(HashCode.fromLongs(contentHash1, contentHash2), length, lastModified);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public FileInfo get(String absolutePath, Transformer<? extends FileInfo, ? super String> producer) {
+        FileInfo info = get(absolutePath);
+        if (info == null) {
+            info = producer.transform(absolutePath);
+            put(absolutePath, info);
+        }
+        return info;
+    }
+
+    @Override
+    public void put(String absolutePath, FileInfo info) {
+        HashCode hash = info.getHash();
+        if (hash.length() != HASH_LENGTH) {
+            // Only content hashes of 128 bits fit into a slot
+            return;
+        }
+        HashCode pathHash = hashPath(absolutePath);
+        long pathHash1 = pathHash.getLong(0);
+        long pathHash2 = pathHash.getLong(8);
+        long contentHash1 = hash.getLong(0);
+        long contentHash2 = hash.getLong(8);
+        long length = info.getLength();
+        long lastModified = info.getTimestamp();
+        long checksum = checksum(pathHash1, pathHash2, length, lastModified, contentHash1, contentHash2);
+        cacheAccess.useCache(() -> {
+            ByteBuffer slots = this.slots;
+            if (slots == null) {
+                return;
+            }
+            int offset = findSlotToWrite(slots, pathHash1, pathHash2);
+            slots.putLong(offset + PATH_HASH_1, pathHash1);
+            slots.putLong(offset + PATH_HASH_2, pathHash2);
+            slots.putLong(offset + LENGTH, length);
+            slots.putLong(offset + LAST_MODIFIED, lastModified);
+            slots.putLong(offset + CONTENT_HASH_1, contentHash1);
+            slots.putLong(offset + CONTENT_HASH_2, contentHash2);
+            slots.putLong(offset + CHECKSUM, checksum);
+        });
+    }
+
+    @Override
+    public void remove(String absolutePath) {
+        HashCode pathHash = hashPath(absolutePath);
+        long pathHash1 = pathHash.getLong(0);
+        long pathHash2 = pathHash.getLong(8);
+        int home = homeSlot(pathHash1);
+        cacheAccess.useCache(() -> {
+            ByteBuffer slots = this.slots;
+            if (slots == null) {
+                return;
+            }
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int offset = slotOffset(home, probe);
+                if (slots.getLong(offset + PATH_HASH_1) == pathHash1 && slots.getLong(offset + PATH_HASH_2) == pathHash2) {
+                    clearSlot(slots, offset);
+                }
+            }
+        });
+    }
+
+    private int findSlotToWrite(ByteBuffer slots, long pathHash1, long pathHash2) {
+        int home = homeSlot(pathHash1);
+        int free = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = slotOffset(home, probe);
+            if (slots.getLong(offset + PATH_HASH_1) == pathHash1 && slots.getLong(offset + PATH_HASH_2) == pathHash2) {
+                return offset;
+            }
+            if (free < 0 && slots.getLong(offset + CHECKSUM) == 0) {
+                free = offset;
+            }
+        }
+        if (free >= 0) {
+            return free;
+        }
+        // All slots are taken, evict one of them
+        return slotOffset(home, (int) (pathHash2 & (MAX_PROBES - 1)));
+    }
+
+    private static void clearSlot(ByteBuffer slots, int offset) {
+        // Clear the checksum first, so readers never match a partially cleared slot
+        slots.putLong(offset + CHECKSUM, 0);
+        for (int field = 0; field < SLOT_SIZE; field += 8) {
+            slots.putLong(offset + field, 0);
+        }
+    }
+
+    private int homeSlot(long pathHash1) {
+        return (int) (pathHash1 & (capacity - 1));
+    }
+
+    private int slotOffset(int home, int probe) {
+        return HEADER_SIZE + ((home + probe) & (capacity - 1)) * SLOT_SIZE;
+    }
+
+    private static HashCode hashPath(String absolutePath) {
+        return Hashing.murmur3().hashString(absolutePath);
+    }
+
+    private static long checksum(long pathHash1, long pathHash2, long length, long lastModified, long contentHash1, long contentHash2) {
+        long checksum = mix(pathHash1);
+        checksum = mix(checksum ^ pathHash2);
+        checksum = mix(checksum ^ length);
+        checksum = mix(checksum ^ lastModified);
+        checksum = mix(checksum ^ contentHash1);
+        checksum = mix(checksum ^ contentHash2);
+        // Zero marks a free slot
+        return checksum == 0 ? 1 : checksum;
+    }
+
+    private static long mix(long value) {
+        long mixed = value * 0x9e3779b97f4a7c15L;
+        mixed ^= mixed >>> 32;
+        mixed *= 0xd6e8feb86659fd93L;
+        return mixed ^ (mixed >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return "file hash table " + file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Stop using the mapping, which is released when it is garbage collected
+        slots = null;
+        randomAccessFile.close();
+    }
+}
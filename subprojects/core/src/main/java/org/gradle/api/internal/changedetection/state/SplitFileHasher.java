@@ -17,16 +17,22 @@
 package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.cache.GlobalCacheLocations;
+import org.gradle.internal.hash.BatchFileHasher;
 import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.FileToHash;
 import org.gradle.internal.hash.HashCode;
 
 import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A {@link FileHasher} that delegates to the global hasher for immutable files
  * and uses the local hasher for all other files. This ensures optimal cache utilization.
  */
-public class SplitFileHasher implements FileHasher {
+public class SplitFileHasher implements BatchFileHasher {
     private final FileHasher globalHasher;
     private final FileHasher localHasher;
     private final GlobalCacheLocations globalCacheLocations;
@@ -54,4 +60,46 @@ public HashCode hash(File file, long length, long lastModified) {
             return localHasher.hash(file, length, lastModified);
         }
     }
+
+    @Override
+    public List<HashCode> hash(List<FileToHash> files) {
+        List<Integer> globalIndexes = new ArrayList<>();
+        List<Integer> localIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (globalCacheLocations.isInsideGlobalCache(files.get(i).getFile().getPath())) {
+                globalIndexes.add(i);
+            } else {
+                localIndexes.add(i);
+            }
+        }
+        HashCode[] hashes = new HashCode[files.size()];
+        hashWith(globalHasher, files, globalIndexes, hashes);
+        hashWith(localHasher, files, localIndexes, hashes);
+        return Arrays.asList(hashes);
+    }
+
+    private static void hashWith(FileHasher hasher, List<FileToHash> files, List<Integer> indexes, HashCode[] hashes) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        if (hasher instanceof BatchFileHasher) {
+            List<FileToHash> batch = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                batch.add(files.get(index));
+            }
+            List<HashCode> batchHashes = ((BatchFileHasher) hasher).hash(batch);
+            for (int i = 0; i < indexes.size(); i++) {
+                hashes[indexes.get(i)] = batchHashes.get(i);
+            }
+        } else {
+            for (int index : indexes) {
+                FileToHash file = files.get(index);
+                try {
+                    hashes[index] = hasher.hash(file.getFile(), file.getLength(), file.getLastModified());
+                } catch (UncheckedIOException e) {
+                    hashes[index] = null;
+                }
+            }
+        }
+    }
 }
@@ -40,6 +40,7 @@
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.FileException;
 import org.gradle.internal.hash.ChecksumService;
@@ -56,6 +57,7 @@
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.service.scopes.AbstractPluginServiceRegistry;
+import org.gradle.internal.time.Clock;
 import org.gradle.internal.vfs.FileSystemAccess;
 import org.gradle.util.GradleVersion;
 import org.gradle.util.Path;
@@ -196,7 +198,9 @@ private BuildCacheController doCreateBuildCacheController(ServiceRegistry servic
                     remoteAccessMode,
                     logStackTraces,
                     emitDebugLogging,
-                    instantiatorFactory.inject(serviceRegistry)
+                    instantiatorFactory.inject(serviceRegistry),
+                    serviceRegistry.get(ExecutorFactory.class),
+                    serviceRegistry.get(Clock.class)
                 );
             }
         });
@@ -32,11 +32,13 @@
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheService;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.CallableBuildOperation;
 import org.gradle.internal.reflect.Instantiator;
+import org.gradle.internal.time.Clock;
 import org.gradle.util.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,7 +71,9 @@ public static BuildCacheController create(
         final RemoteAccessMode remoteAccessMode,
         final boolean logStackTraces,
         final boolean emitDebugLogging,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory,
+        final Clock clock
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -120,7 +124,9 @@ public BuildCacheController call(BuildOperationContext context) {
                         buildOperationExecutor,
                         gradleUserHomeDir,
                         logStackTraces,
-                        emitDebugLogging
+                        emitDebugLogging,
+                        executorFactory,
+                        clock
                     );
                 }
             }
@@ -66,6 +66,7 @@
 import org.gradle.internal.fingerprint.classpath.ClasspathFingerprinter;
 import org.gradle.internal.fingerprint.classpath.impl.DefaultClasspathFingerprinter;
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionFingerprinterRegistry;
+import org.gradle.internal.fingerprint.impl.FileCollectionFingerprintCache;
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.service.DefaultServiceRegistry;
@@ -189,8 +190,8 @@ TaskSnapshotter createTaskFingerprinter(FileCollectionSnapshotter fileCollection
         return new DefaultTaskSnapshotter(fileCollectionSnapshotter);
     }
 
-    FileCollectionFingerprinterRegistry createFileCollectionFingerprinterRegistry(List<FileCollectionFingerprinter> fingerprinters) {
-        return new DefaultFileCollectionFingerprinterRegistry(fingerprinters);
+    FileCollectionFingerprinterRegistry createFileCollectionFingerprinterRegistry(List<FileCollectionFingerprinter> fingerprinters, FileCollectionSnapshotter fileCollectionSnapshotter, FileCollectionFingerprintCache fingerprintCache) {
+        return new DefaultFileCollectionFingerprinterRegistry(fingerprinters, fileCollectionSnapshotter, fingerprintCache);
     }
 
     TaskExecutionModeResolver createExecutionModeResolver(
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A chain of nodes in an execution plan, together with the time spent executing them.
+ */
+public class CriticalPath {
+    public static final CriticalPath EMPTY = new CriticalPath(ImmutableList.of(), 0);
+
+    private final List<Node> nodes;
+    private final long durationMillis;
+
+    public CriticalPath(List<Node> nodes, long durationMillis) {
+        this.nodes = nodes;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * The nodes on the path, in execution order.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
@@ -21,8 +21,10 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import org.gradle.api.BuildCancelledException;
 import org.gradle.api.CircularReferenceException;
@@ -30,6 +32,7 @@
 import org.gradle.api.NonNullApi;
 import org.gradle.api.Task;
 import org.gradle.api.internal.GradleInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.internal.Pair;
@@ -38,6 +41,7 @@
 import org.gradle.internal.logging.text.StyledTextOutput;
 import org.gradle.internal.resources.ResourceLock;
 import org.gradle.internal.resources.ResourceLockState;
+import org.gradle.internal.time.Time;
 import org.gradle.internal.work.WorkerLeaseRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +54,16 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * A reusable implementation of ExecutionPlan. The {@link #addEntryTasks(java.util.Collection)} and {@link #clear()} methods are NOT threadsafe, and callers must synchronize access to these methods.
@@ -67,7 +74,19 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
     private final Set<Node> entryNodes = new LinkedHashSet<>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = Lists.newLinkedList();
+    private final Set<Node> executionQueue = new LinkedHashSet<>();
+    private final Map<Node, Integer> executionQueuePositions = Maps.newIdentityHashMap();
+    // Estimated time until all nodes waiting for a node have completed, including the node itself
+    private final Map<Node, Long> remainingPathMillis = Maps.newIdentityHashMap();
+    // Queued nodes whose dependencies are complete, longest remaining path first, then in execution queue order
+    private final NavigableSet<Node> readyNodes = new TreeSet<>(
+        Comparator.comparingLong((Node node) -> remainingPathMillis.getOrDefault(node, 0L)).reversed()
+            .thenComparingInt(executionQueuePositions::get)
+    );
+    // Ready nodes which cannot start until the given project lock is released
+    private final SetMultimap<ResourceLock, Node> nodesWaitingForProjectLock = LinkedHashMultimap.create();
+    // Ready nodes which cannot start until a running node completes, because of overlapping or destroyed outputs
+    private final Set<Node> nodesWaitingForRunningNodes = new LinkedHashSet<>();
     private final Set<ResourceLock> projectLocks = Sets.newHashSet();
     private final FailureCollector failureCollector = new FailureCollector();
     private final TaskNodeFactory taskNodeFactory;
@@ -81,7 +100,9 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private final Set<Node> producedButNotYetConsumed = Sets.newIdentityHashSet();
     private final Map<Pair<Node, Node>, Boolean> reachableCache = Maps.newHashMap();
     private final List<Node> dependenciesWhichRequireMonitoring = Lists.newArrayList();
-    private boolean maybeNodesReady;
+    private final Map<Node, Long> executionStartTimes = Maps.newIdentityHashMap();
+    private final Map<Node, Long> executionFinishTimes = Maps.newIdentityHashMap();
+    private TaskDurationHistory durationHistory = TaskDurationHistory.DISABLED;
     private final GradleInternal gradle;
 
     private boolean buildCancelled;
@@ -324,15 +345,56 @@ public NodeInVisitingSegment apply(Node node) {
                 }
             }
         }
-        executionQueue.clear();
+        clearExecutionQueue();
         dependencyResolver.clear();
-        Iterables.addAll(executionQueue, nodeMapping);
+        for (Node node : nodeMapping) {
+            executionQueuePositions.put(node, executionQueue.size());
+            executionQueue.add(node);
+        }
+        if (durationHistory.isEnabled()) {
+            estimateRemainingPaths();
+        }
         for (Node node : executionQueue) {
-            maybeNodesReady |= node.updateAllDependenciesComplete() && node.isReady();
+            node.updateAllDependenciesComplete();
+            maybeNodeReady(node);
         }
         this.dependenciesWhichRequireMonitoring.addAll(dependenciesWhichRequireMonitoring);
     }
 
+    private void estimateRemainingPaths() {
+        Map<Node, Long> durations = Maps.newIdentityHashMap();
+        long totalKnownDuration = 0;
+        int knownDurations = 0;
+        for (Node node : executionQueue) {
+            if (node instanceof LocalTaskNode) {
+                long duration = durationHistory.getDurationMillis(taskPathOf(node));
+                if (duration != TaskDurationHistory.UNKNOWN_DURATION) {
+                    durations.put(node, duration);
+                    totalKnownDuration += duration;
+                    knownDurations++;
+                }
+            }
+        }
+        // Tasks which have not executed before are assumed to take as long as an average task
+        long defaultDuration = knownDurations == 0 ? 0 : totalKnownDuration / knownDurations;
+
+        // Nodes waiting for a node are always queued after it, so visit the queue backwards
+        List<Node> queue = new ArrayList<>(executionQueue);
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            Node node = queue.get(i);
+            long longestPredecessorPath = 0;
+            for (Node predecessor : node.getAllPredecessors()) {
+                longestPredecessorPath = Math.max(longestPredecessorPath, remainingPathMillis.getOrDefault(predecessor, 0L));
+            }
+            long duration = node instanceof LocalTaskNode ? durations.getOrDefault(node, defaultDuration) : 0;
+            remainingPathMillis.put(node, duration + longestPredecessorPath);
+        }
+    }
+
+    private static String taskPathOf(Node node) {
+        return ((LocalTaskNode) node).getTask().getIdentityPath().getPath();
+    }
+
     private void maybeRemoveProcessedShouldRunAfterEdge(Deque<GraphEdge> walkedShouldRunAfterEdges, Node node) {
         GraphEdge edge = walkedShouldRunAfterEdges.peek();
         if (edge != null && edge.to.equals(node)) {
@@ -467,7 +529,7 @@ public void clear() {
         dependencyResolver.clear();
         entryNodes.clear();
         nodeMapping.clear();
-        executionQueue.clear();
+        clearExecutionQueue();
         projectLocks.clear();
         failureCollector.clearFailures();
         producedButNotYetConsumed.clear();
@@ -476,6 +538,17 @@ public void clear() {
         runningNodes.clear();
     }
 
+    private void clearExecutionQueue() {
+        readyNodes.clear();
+        nodesWaitingForProjectLock.clear();
+        nodesWaitingForRunningNodes.clear();
+        executionQueue.clear();
+        executionQueuePositions.clear();
+        remainingPathMillis.clear();
+        executionStartTimes.clear();
+        executionFinishTimes.clear();
+    }
+
     @Override
     public Set<Task> getTasks() {
         return nodeMapping.getTasks();
@@ -504,6 +577,86 @@ public void setContinueOnFailure(boolean continueOnFailure) {
         this.continueOnFailure = continueOnFailure;
     }
 
+    /**
+     * Prefers ready nodes with the longest estimated remaining path through the plan, based on the task durations from the given history.
+     * Also records the duration of each node, so the critical path of the execution can be reported.
+     */
+    public void useDurationHistory(TaskDurationHistory durationHistory) {
+        this.durationHistory = durationHistory;
+    }
+
+    /**
+     * Returns the longest path through the plan, based on the task durations of earlier builds.
+     */
+    public CriticalPath getEstimatedCriticalPath() {
+        Node current = null;
+        for (Map.Entry<Node, Long> entry : remainingPathMillis.entrySet()) {
+            if (current == null || entry.getValue() > remainingPathMillis.get(current)) {
+                current = entry.getKey();
+            }
+        }
+        if (current == null) {
+            return CriticalPath.EMPTY;
+        }
+        long durationMillis = remainingPathMillis.get(current);
+        ImmutableList.Builder<Node> path = ImmutableList.builder();
+        while (current != null) {
+            path.add(current);
+            Node next = null;
+            for (Node predecessor : current.getAllPredecessors()) {
+                Long predecessorPath = remainingPathMillis.get(predecessor);
+                if (predecessorPath != null && (next == null || predecessorPath > remainingPathMillis.get(next))) {
+                    next = predecessor;
+                }
+            }
+            current = next;
+        }
+        return new CriticalPath(path.build(), durationMillis);
+    }
+
+    /**
+     * Returns the longest chain of executed nodes where each node started after the previous one in the chain finished.
+     */
+    public CriticalPath getActualCriticalPath() {
+        Node current = null;
+        for (Map.Entry<Node, Long> entry : executionFinishTimes.entrySet()) {
+            if (current == null || entry.getValue() > executionFinishTimes.get(current)) {
+                current = entry.getKey();
+            }
+        }
+        Deque<Node> path = new ArrayDeque<>();
+        long durationMillis = 0;
+        while (current != null) {
+            path.addFirst(current);
+            long startTime = executionStartTimes.get(current);
+            durationMillis += executionFinishTimes.get(current) - startTime;
+            Node waitedFor = null;
+            for (Node successor : current.getAllSuccessors()) {
+                Long finishTime = executionFinishTimes.get(successor);
+                if (finishTime != null && finishTime <= startTime && (waitedFor == null || finishTime > executionFinishTimes.get(waitedFor))) {
+                    waitedFor = successor;
+                }
+            }
+            current = waitedFor;
+        }
+        return new CriticalPath(ImmutableList.copyOf(path), durationMillis);
+    }
+
+    /**
+     * Stores the durations of the successful tasks whose actions were executed in the duration history, for scheduling later builds.
+     *
+     * Tasks which were up-to-date, loaded from the cache or skipped keep the duration recorded when they last executed,
+     * as their near-zero duration says nothing about how long executing them takes.
+     */
+    public void storeTaskDurations() {
+        for (Map.Entry<Node, Long> entry : executionFinishTimes.entrySet()) {
+            Node node = entry.getKey();
+            if (node instanceof LocalTaskNode && node.isSuccessful() && ((LocalTaskNode) node).getTask().getState().getOutcome() == TaskExecutionOutcome.EXECUTED) {
+                durationHistory.recordDuration(taskPathOf(node), entry.getValue() - executionStartTimes.get(node));
+            }
+        }
+    }
+
     @Override
     @Nullable
     public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLockState resourceLockState) {
@@ -517,69 +670,95 @@ public Node selectNext(WorkerLeaseRegistry.WorkerLease workerLease, ResourceLock
             if (node.isComplete()) {
                 LOGGER.debug("Monitored node {} completed", node);
                 updateAllDependenciesCompleteForPredecessors(node);
+                readmitNodesWaitingForRunningNodes();
                 iterator.remove();
             }
         }
-        if (!maybeNodesReady) {
+        readmitNodesWaitingForProjectLocks();
+        if (readyNodes.isEmpty()) {
             return null;
         }
-        Iterator<Node> iterator = executionQueue.iterator();
-        boolean foundReadyNode = false;
+        Iterator<Node> iterator = readyNodes.iterator();
         while (iterator.hasNext()) {
             Node node = iterator.next();
-            if (node.isReady() && node.allDependenciesComplete()) {
-                foundReadyNode = true;
-                MutationInfo mutations = getResolvedMutationInfo(node);
+            if (!node.isReady() || !node.allDependenciesComplete()) {
+                // No longer ready, will be added back when its state changes
+                iterator.remove();
+                continue;
+            }
+            MutationInfo mutations = getResolvedMutationInfo(node);
 
-                if (!tryAcquireLocksForNode(node, workerLease, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
-                }
+            ResourceLock projectLock = node.getProjectToLock();
+            if (projectLock != null && !projectLock.tryLock()) {
+                LOGGER.debug("Cannot acquire project lock for node {}", node);
+                iterator.remove();
+                nodesWaitingForProjectLock.put(projectLock, node);
+                continue;
+            } else if (!tryLockSharedResourceFor(node)) {
+                LOGGER.debug("Cannot acquire shared resource lock for node {}", node);
+                resourceLockState.releaseLocks();
+                continue;
+            } else if (!workerLease.tryLock()) {
+                // No other node can be started without a worker lease either
+                LOGGER.debug("Cannot acquire worker lease lock for node {}", node);
+                resourceLockState.releaseLocks();
+                return null;
+            } else if (!canRunWithCurrentlyExecutedNodes(node, mutations)) {
+                LOGGER.debug("Node {} cannot run with currently running nodes {}", node, runningNodes);
+                resourceLockState.releaseLocks();
+                iterator.remove();
+                nodesWaitingForRunningNodes.add(node);
+                continue;
+            }
 
-                if (node.allDependenciesSuccessful()) {
-                    node.startExecution(this::recordNodeExecutionStarted);
-                } else {
-                    node.skipExecution(this::recordNodeCompleted);
+            iterator.remove();
+            executionQueue.remove(node);
+            executionQueuePositions.remove(node);
+            if (node.allDependenciesSuccessful()) {
+                node.startExecution(this::recordNodeExecutionStarted);
+            } else {
+                node.skipExecution(this::recordNodeCompleted);
+            }
+            return node;
+        }
+        LOGGER.debug("No node could be selected, nodes ready: {}", !readyNodes.isEmpty());
+        return null;
+    }
+
+    private void readmitNodesWaitingForProjectLocks() {
+        if (nodesWaitingForProjectLock.isEmpty()) {
+            return;
+        }
+        Iterator<ResourceLock> iterator = nodesWaitingForProjectLock.keySet().iterator();
+        while (iterator.hasNext()) {
+            ResourceLock projectLock = iterator.next();
+            if (!projectLock.isLocked() || projectLock.isLockedByCurrentThread()) {
+                for (Node node : nodesWaitingForProjectLock.get(projectLock)) {
+                    maybeNodeReady(node);
                 }
                 iterator.remove();
-                return node;
             }
         }
-        LOGGER.debug("No node could be selected, nodes ready: {}", foundReadyNode);
-        maybeNodesReady = foundReadyNode;
-        return null;
     }
 
-    private boolean tryAcquireLocksForNode(Node node, WorkerLeaseRegistry.WorkerLease workerLease, MutationInfo mutations) {
-        if (!tryLockProjectFor(node)) {
-            LOGGER.debug("Cannot acquire project lock for node {}", node);
-            return false;
-        } else if (!tryLockSharedResourceFor(node)) {
-            LOGGER.debug("Cannot acquire shared resource lock for node {}", node);
-            return false;
-        } else if (!workerLease.tryLock()) {
-            LOGGER.debug("Cannot acquire worker lease lock for node {}", node);
-            return false;
-            // TODO: convert output file checks to a resource lock
-        } else if (!canRunWithCurrentlyExecutedNodes(node, mutations)) {
-            LOGGER.debug("Node {} cannot run with currently running nodes {}", node, runningNodes);
-            return false;
+    private void readmitNodesWaitingForRunningNodes() {
+        for (Node node : nodesWaitingForRunningNodes) {
+            maybeNodeReady(node);
         }
-        return true;
+        nodesWaitingForRunningNodes.clear();
     }
 
-    private void updateAllDependenciesCompleteForPredecessors(Node node) {
-        for (Node predecessor : node.getAllPredecessors()) {
-            maybeNodesReady |= predecessor.updateAllDependenciesComplete() && predecessor.isReady();
+    private void maybeNodeReady(Node node) {
+        if (node.isReady() && node.allDependenciesComplete() && executionQueuePositions.containsKey(node)) {
+            readyNodes.add(node);
         }
     }
 
-    private boolean tryLockProjectFor(Node node) {
-        ResourceLock toLock = node.getProjectToLock();
-        if (toLock != null) {
-            return toLock.tryLock();
-        } else {
-            return true;
+    private void updateAllDependenciesCompleteForPredecessors(Node node) {
+        for (Node predecessor : node.getAllPredecessors()) {
+            if (predecessor.updateAllDependenciesComplete()) {
+                maybeNodeReady(predecessor);
+            }
         }
     }
 
@@ -729,6 +908,9 @@ private static String getOverLappedPath(String firstPath, String secondPath) {
 
     private void recordNodeExecutionStarted(Node node) {
         runningNodes.add(node);
+        if (durationHistory.isEnabled()) {
+            executionStartTimes.put(node, Time.currentTimeMillis());
+        }
     }
 
     private void recordNodeCompleted(Node node) {
@@ -745,6 +927,7 @@ private void recordNodeCompleted(Node node) {
             producedButNotYetConsumed.add(node);
         }
 
+        readmitNodesWaitingForRunningNodes();
         updateAllDependenciesCompleteForPredecessors(node);
     }
 
@@ -753,7 +936,6 @@ public void finishedExecuting(Node node) {
         try {
             if (!node.isComplete()) {
                 enforceFinalizers(node);
-                maybeNodesReady = true;
                 if (node.isFailed()) {
                     LOGGER.debug("Node {} failed", node);
                     handleFailure(node);
@@ -762,6 +944,9 @@ public void finishedExecuting(Node node) {
                 }
 
                 runningNodes.remove(node);
+                if (durationHistory.isEnabled()) {
+                    executionFinishTimes.put(node, Time.currentTimeMillis());
+                }
                 node.finishExecution(this::recordNodeCompleted);
             } else {
                 LOGGER.debug("Already completed node {} reported as finished executing", node);
@@ -772,7 +957,7 @@ public void finishedExecuting(Node node) {
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         for (Node finalizerNode : node.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 Set<Node> enforcedNodes = Sets.newHashSet();
@@ -781,7 +966,7 @@ private static void enforceFinalizers(Node node) {
         }
     }
 
-    private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
+    private void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
         Deque<Node> candidateNodes = new ArrayDeque<>();
         candidateNodes.add(nodeInfo);
 
@@ -794,9 +979,11 @@ private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNod
 
                 if (node.isMustNotRun() || node.isRequired()) {
                     node.enforceRun();
+                    maybeNodeReady(node);
                     // Completed changed from true to false - inform all nodes depending on this one.
                     for (Node predecessor : node.getAllPredecessors()) {
                         predecessor.forceAllDependenciesCompleteUpdate();
+                        maybeNodeReady(predecessor);
                     }
                 }
             }
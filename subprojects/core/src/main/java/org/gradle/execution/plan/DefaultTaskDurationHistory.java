@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan;
+
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+
+import java.util.function.Supplier;
+
+import static org.gradle.internal.serialize.BaseSerializerFactory.LONG_SERIALIZER;
+import static org.gradle.internal.serialize.BaseSerializerFactory.STRING_SERIALIZER;
+
+/**
+ * Stores task durations next to the execution history of the build.
+ */
+public class DefaultTaskDurationHistory implements TaskDurationHistory {
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.internal.scheduling.criticalpath";
+
+    private final PersistentIndexedCache<String, Long> store;
+
+    public DefaultTaskDurationHistory(Supplier<PersistentCache> cache, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
+        this.store = cache.get().createCache(
+            PersistentIndexedCacheParameters.of("taskDurations", STRING_SERIALIZER, LONG_SERIALIZER)
+                .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+        );
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public long getDurationMillis(String taskPath) {
+        Long duration = store.get(taskPath);
+        return duration == null ? UNKNOWN_DURATION : duration;
+    }
+
+    @Override
+    public void recordDuration(String taskPath, long durationMillis) {
+        store.put(taskPath, durationMillis);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan;
+
+/**
+ * Durations of task executions from earlier builds, used to schedule the nodes on the longest remaining path first.
+ */
+public interface TaskDurationHistory {
+    TaskDurationHistory DISABLED = new TaskDurationHistory() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getDurationMillis(String taskPath) {
+            return UNKNOWN_DURATION;
+        }
+
+        @Override
+        public void recordDuration(String taskPath, long durationMillis) {
+        }
+    };
+
+    long UNKNOWN_DURATION = -1;
+
+    /**
+     * Whether nodes should be prioritized by their remaining path through the graph.
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the duration of the last execution of the given task, or {@link #UNKNOWN_DURATION} if the task has not executed before.
+     */
+    long getDurationMillis(String taskPath);
+
+    void recordDuration(String taskPath, long durationMillis);
+}
@@ -41,6 +41,7 @@
 import org.gradle.execution.plan.NodeExecutor;
 import org.gradle.execution.plan.PlanExecutor;
 import org.gradle.execution.plan.TaskDependencyResolver;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.execution.plan.TaskNode;
 import org.gradle.execution.plan.TaskNodeFactory;
 import org.gradle.internal.Cast;
@@ -85,6 +86,7 @@ private enum GraphState {
     private final DefaultExecutionPlan executionPlan;
     private final BuildOperationExecutor buildOperationExecutor;
     private final ListenerBuildOperationDecorator listenerBuildOperationDecorator;
+    private final TaskDurationHistory durationHistory;
     private GraphState graphState = GraphState.EMPTY;
     private List<Task> allTasks;
     private boolean hasFiredWhenReady;
@@ -100,6 +102,7 @@ public DefaultTaskExecutionGraph(
         GradleInternal gradleInternal,
         TaskNodeFactory taskNodeFactory,
         TaskDependencyResolver dependencyResolver,
+        TaskDurationHistory durationHistory,
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ListenerBroadcast<TaskExecutionListener> taskListeners,
         BuildScopeListenerRegistrationListener buildScopeListenerRegistrationListener,
@@ -117,7 +120,11 @@ public DefaultTaskExecutionGraph(
         this.buildScopeListenerRegistrationListener = buildScopeListenerRegistrationListener;
         this.projectStateRegistry = projectStateRegistry;
         this.globalServices = globalServices;
+        this.durationHistory = durationHistory;
         this.executionPlan = new DefaultExecutionPlan(gradleInternal, taskNodeFactory, dependencyResolver);
+        if (durationHistory.isEnabled()) {
+            executionPlan.useDurationHistory(durationHistory);
+        }
     }
 
     @Override
@@ -189,6 +196,10 @@ private void executeWithServices(ProjectExecutionServiceRegistry projectExecutio
             );
             LOGGER.debug("Timing: Executing the DAG took " + clock.getElapsed());
         } finally {
+            if (durationHistory.isEnabled()) {
+                executionPlan.storeTaskDurations();
+                buildOperationExecutor.run(new ReportCriticalPath());
+            }
             coordinationService.withStateLock(resourceLockState -> {
                 executionPlan.clear();
                 return ResourceLockState.Disposition.FINISHED;
@@ -395,6 +406,24 @@ public Set<Task> getFilteredTasks() {
         return executionPlan.getFilteredTasks();
     }
 
+    private class ReportCriticalPath implements RunnableBuildOperation {
+        @Override
+        public void run(BuildOperationContext context) {
+            context.setResult(new ReportCriticalPathBuildOperationType.ResultImpl(
+                executionPlan.getEstimatedCriticalPath(),
+                executionPlan.getActualCriticalPath()
+            ));
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName(gradleInternal.contextualize("Report critical path"))
+                .details(new ReportCriticalPathBuildOperationType.DetailsImpl(
+                    gradleInternal.getIdentityPath()
+                ));
+        }
+    }
+
     private static class NotifyTaskGraphWhenReady implements RunnableBuildOperation {
 
         private final TaskExecutionGraph taskExecutionGraph;
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.execution.plan.CriticalPath;
+import org.gradle.execution.plan.Node;
+import org.gradle.internal.operations.BuildOperationType;
+import org.gradle.util.Path;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the estimated and the actual critical path of an executed task graph.
+ * Only fired when critical path scheduling is enabled.
+ */
+public class ReportCriticalPathBuildOperationType implements BuildOperationType<ReportCriticalPathBuildOperationType.Details, ReportCriticalPathBuildOperationType.Result> {
+
+    public interface Details {
+
+        String getBuildPath();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The longest path through the task graph, based on the task durations of earlier builds.
+         * In execution order.
+         */
+        List<String> getEstimatedCriticalPath();
+
+        long getEstimatedCriticalPathMillis();
+
+        /**
+         * The longest chain of work where each item started after the previous one finished.
+         * In execution order.
+         */
+        List<String> getActualCriticalPath();
+
+        long getActualCriticalPathMillis();
+
+    }
+
+    static class DetailsImpl implements ReportCriticalPathBuildOperationType.Details {
+
+        private final Path buildPath;
+
+        DetailsImpl(Path buildPath) {
+            this.buildPath = buildPath;
+        }
+
+        @Override
+        public String getBuildPath() {
+            return buildPath.getPath();
+        }
+
+    }
+
+    static class ResultImpl implements ReportCriticalPathBuildOperationType.Result {
+
+        private final List<String> estimatedCriticalPath;
+        private final long estimatedCriticalPathMillis;
+        private final List<String> actualCriticalPath;
+        private final long actualCriticalPathMillis;
+
+        ResultImpl(CriticalPath estimated, CriticalPath actual) {
+            this.estimatedCriticalPath = toDisplayNames(estimated);
+            this.estimatedCriticalPathMillis = estimated.getDurationMillis();
+            this.actualCriticalPath = toDisplayNames(actual);
+            this.actualCriticalPathMillis = actual.getDurationMillis();
+        }
+
+        @Override
+        public List<String> getEstimatedCriticalPath() {
+            return estimatedCriticalPath;
+        }
+
+        @Override
+        public long getEstimatedCriticalPathMillis() {
+            return estimatedCriticalPathMillis;
+        }
+
+        @Override
+        public List<String> getActualCriticalPath() {
+            return actualCriticalPath;
+        }
+
+        @Override
+        public long getActualCriticalPathMillis() {
+            return actualCriticalPathMillis;
+        }
+
+        private static List<String> toDisplayNames(CriticalPath path) {
+            return path.getNodes().stream().map(Node::toString).collect(Collectors.toList());
+        }
+    }
+
+    private ReportCriticalPathBuildOperationType() {
+    }
+}
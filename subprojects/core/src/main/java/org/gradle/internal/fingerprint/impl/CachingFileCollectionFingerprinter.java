@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.fingerprint.impl;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.FileNormalizer;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileCollectionFingerprinter;
+import org.gradle.internal.fingerprint.FileCollectionSnapshotter;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+/**
+ * Fingerprints via the delegate, reusing the fingerprints of identical roots from the {@link FileCollectionFingerprintCache}.
+ */
+public class CachingFileCollectionFingerprinter implements FileCollectionFingerprinter {
+    private final FileCollectionFingerprinter delegate;
+    private final FileCollectionSnapshotter fileCollectionSnapshotter;
+    private final FileCollectionFingerprintCache cache;
+
+    public CachingFileCollectionFingerprinter(FileCollectionFingerprinter delegate, FileCollectionSnapshotter fileCollectionSnapshotter, FileCollectionFingerprintCache cache) {
+        this.delegate = delegate;
+        this.fileCollectionSnapshotter = fileCollectionSnapshotter;
+        this.cache = cache;
+    }
+
+    @Override
+    public Class<? extends FileNormalizer> getRegisteredType() {
+        return delegate.getRegisteredType();
+    }
+
+    @Override
+    public CurrentFileCollectionFingerprint fingerprint(FileCollection files) {
+        return fingerprint(fileCollectionSnapshotter.snapshot(files));
+    }
+
+    @Override
+    public CurrentFileCollectionFingerprint fingerprint(Iterable<? extends FileSystemSnapshot> roots) {
+        return cache.fingerprint(delegate, roots, () -> delegate.fingerprint(roots));
+    }
+
+    @Override
+    public CurrentFileCollectionFingerprint empty() {
+        return delegate.empty();
+    }
+
+    @Override
+    public String normalizePath(CompleteFileSystemLocationSnapshot root) {
+        return delegate.normalizePath(root);
+    }
+}
@@ -17,11 +17,13 @@
 package org.gradle.internal.fingerprint.impl;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import org.gradle.api.tasks.FileNormalizer;
 import org.gradle.internal.fingerprint.FileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.FileCollectionFingerprinterRegistry;
+import org.gradle.internal.fingerprint.FileCollectionSnapshotter;
 
 import java.util.Collection;
 import java.util.Map;
@@ -38,6 +40,18 @@ public Class<? extends FileNormalizer> apply(FileCollectionFingerprinter fingerp
         }));
     }
 
+    /**
+     * Creates a registry which reuses the fingerprints of identical roots calculated by the given fingerprinters.
+     */
+    public DefaultFileCollectionFingerprinterRegistry(Collection<FileCollectionFingerprinter> fingerprinters, FileCollectionSnapshotter fileCollectionSnapshotter, FileCollectionFingerprintCache cache) {
+        this(Collections2.transform(fingerprinters, new Function<FileCollectionFingerprinter, FileCollectionFingerprinter>() {
+            @Override
+            public FileCollectionFingerprinter apply(FileCollectionFingerprinter fingerprinter) {
+                return new CachingFileCollectionFingerprinter(fingerprinter, fileCollectionSnapshotter, cache);
+            }
+        }));
+    }
+
     @Override
     public FileCollectionFingerprinter getFingerprinter(Class<? extends FileNormalizer> type) {
         FileCollectionFingerprinter fingerprinter = fingerprinters.get(type);
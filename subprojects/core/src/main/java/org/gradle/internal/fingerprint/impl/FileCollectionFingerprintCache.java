@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.fingerprint.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileCollectionFingerprinter;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.service.scopes.Scopes;
+import org.gradle.internal.service.scopes.ServiceScope;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshotVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the fingerprints calculated during the build session, so fingerprinting the same roots again with the same fingerprinter
+ * returns the same {@link CurrentFileCollectionFingerprint} instance instead of normalizing and hashing the roots again.
+ *
+ * The fingerprints are keyed by the fingerprinter and by the absolute paths and hashes of the roots,
+ * so a changed root never matches a fingerprint calculated before the change.
+ * The fingerprinters may be project scoped, so the fingerprints are discarded when the build completes.
+ * The number of reused and calculated fingerprints is then logged at debug level.
+ */
+@ServiceScope(Scopes.BuildSession.class)
+public class FileCollectionFingerprintCache implements RootBuildLifecycleListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileCollectionFingerprintCache.class);
+    private static final int MAXIMUM_SIZE = 10_000;
+
+    private final Cache<Key, CurrentFileCollectionFingerprint> fingerprints = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .build();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CurrentFileCollectionFingerprint fingerprint(FileCollectionFingerprinter fingerprinter, Iterable<? extends FileSystemSnapshot> roots, Supplier<CurrentFileCollectionFingerprint> fingerprintSupplier) {
+        HashCode rootsHash = hashRoots(roots);
+        if (rootsHash == null) {
+            return fingerprintSupplier.get();
+        }
+        try {
+            boolean[] calculated = new boolean[1];
+            CurrentFileCollectionFingerprint fingerprint = fingerprints.get(new Key(fingerprinter, rootsHash), () -> {
+                calculated[0] = true;
+                return fingerprintSupplier.get();
+            });
+            (calculated[0] ? misses : hits).incrementAndGet();
+            return fingerprint;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            // Rethrow the failure of the fingerprinter as is
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    @Override
+    public void afterStart(GradleInternal gradle) {
+    }
+
+    @Override
+    public void beforeComplete(GradleInternal gradle) {
+        fingerprints.invalidateAll();
+        LOGGER.debug("Reused {} and calculated {} file collection fingerprints during the build.", hits.getAndSet(0), misses.getAndSet(0));
+    }
+
+    /**
+     * The number of fingerprints which have been reused during the current build.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of fingerprints which had to be calculated during the current build.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Hashes the absolute paths and the hashes of the roots, or returns {@code null} when there are no roots.
+     */
+    @Nullable
+    private static HashCode hashRoots(Iterable<? extends FileSystemSnapshot> roots) {
+        Hasher hasher = Hashing.newHasher();
+        int[] rootCount = new int[1];
+        FileSystemSnapshotVisitor rootVisitor = new FileSystemSnapshotVisitor() {
+            @Override
+            public boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                visitRoot(directorySnapshot);
+                return false;
+            }
+
+            @Override
+            public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                visitRoot(fileSnapshot);
+            }
+
+            private void visitRoot(CompleteFileSystemLocationSnapshot snapshot) {
+                hasher.putString(snapshot.getAbsolutePath());
+                hasher.putHash(snapshot.getHash());
+                rootCount[0]++;
+            }
+
+            @Override
+            public void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        };
+        for (FileSystemSnapshot root : roots) {
+            root.accept(rootVisitor);
+        }
+        return rootCount[0] == 0 ? null : hasher.hash();
+    }
+
+    private static class Key {
+        private final FileCollectionFingerprinter fingerprinter;
+        private final HashCode rootsHash;
+
+        public Key(FileCollectionFingerprinter fingerprinter, HashCode rootsHash) {
+            this.fingerprinter = fingerprinter;
+            this.rootsHash = rootsHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fingerprinter == key.fingerprinter && rootsHash.equals(key.rootsHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(fingerprinter) + rootsHash.hashCode();
+        }
+    }
+}
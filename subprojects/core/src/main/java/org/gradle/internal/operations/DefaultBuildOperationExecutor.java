@@ -33,6 +33,7 @@
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 @ServiceScope(Scopes.BuildSession.class)
@@ -54,12 +55,41 @@ public DefaultBuildOperationExecutor(
         ExecutorFactory executorFactory,
         ParallelismConfiguration parallelismConfiguration,
         BuildOperationIdFactory buildOperationIdFactory
+    ) {
+        this(listener, () -> true, clock, progressLoggerFactory, buildOperationQueueFactory, executorFactory, parallelismConfiguration, buildOperationIdFactory);
+    }
+
+    /**
+     * Creates an executor that only creates and dispatches start and finish events for operations
+     * that start while there are listeners registered with the given listener manager.
+     */
+    public DefaultBuildOperationExecutor(
+        BuildOperationListenerManager listenerManager,
+        Clock clock,
+        ProgressLoggerFactory progressLoggerFactory,
+        BuildOperationQueueFactory buildOperationQueueFactory,
+        ExecutorFactory executorFactory,
+        ParallelismConfiguration parallelismConfiguration,
+        BuildOperationIdFactory buildOperationIdFactory
+    ) {
+        this(listenerManager.getBroadcaster(), listenerManager::hasListeners, clock, progressLoggerFactory, buildOperationQueueFactory, executorFactory, parallelismConfiguration, buildOperationIdFactory);
+    }
+
+    private DefaultBuildOperationExecutor(
+        BuildOperationListener listener,
+        BooleanSupplier hasListeners,
+        Clock clock,
+        ProgressLoggerFactory progressLoggerFactory,
+        BuildOperationQueueFactory buildOperationQueueFactory,
+        ExecutorFactory executorFactory,
+        ParallelismConfiguration parallelismConfiguration,
+        BuildOperationIdFactory buildOperationIdFactory
     ) {
         this.runner = new DefaultBuildOperationRunner(
             currentBuildOperationRef,
             clock::getCurrentTime,
             buildOperationIdFactory,
-            () -> new ListenerAdapter(listener, progressLoggerFactory, clock)
+            () -> new ListenerAdapter(listener, hasListeners, progressLoggerFactory, clock)
         );
         this.wrapper = new UnmanagedBuildOperationWrapper(
             listener,
@@ -168,19 +198,26 @@ public void stop() {
 
     private static class ListenerAdapter implements DefaultBuildOperationRunner.BuildOperationExecutionListener {
         private final BuildOperationListener buildOperationListener;
+        private final BooleanSupplier hasListeners;
         private final ProgressLoggerFactory progressLoggerFactory;
         private final Clock clock;
         private ProgressLogger progressLogger;
+        private boolean notifyListener;
 
-        public ListenerAdapter(BuildOperationListener buildOperationListener, ProgressLoggerFactory progressLoggerFactory, Clock clock) {
+        public ListenerAdapter(BuildOperationListener buildOperationListener, BooleanSupplier hasListeners, ProgressLoggerFactory progressLoggerFactory, Clock clock) {
             this.buildOperationListener = buildOperationListener;
+            this.hasListeners = hasListeners;
             this.progressLoggerFactory = progressLoggerFactory;
             this.clock = clock;
         }
 
         @Override
         public void start(BuildOperationDescriptor descriptor, BuildOperationState operationState) {
-            buildOperationListener.started(descriptor, new OperationStartEvent(operationState.getStartTime()));
+            // Listeners registered while this operation is running receive neither its start nor its finish event
+            notifyListener = hasListeners.getAsBoolean();
+            if (notifyListener) {
+                buildOperationListener.started(descriptor, new OperationStartEvent(operationState.getStartTime()));
+            }
             ProgressLogger progressLogger = progressLoggerFactory.newOperation(DefaultBuildOperationExecutor.class, descriptor);
             this.progressLogger = progressLogger.start(descriptor.getDisplayName(), descriptor.getProgressDisplayName());
         }
@@ -188,7 +225,9 @@ public void start(BuildOperationDescriptor descriptor, BuildOperationState opera
         @Override
         public void stop(BuildOperationDescriptor descriptor, BuildOperationState operationState, @Nullable BuildOperationState parent, DefaultBuildOperationRunner.ReadableBuildOperationContext context) {
             progressLogger.completed(context.getStatus(), context.getFailure() != null);
-            buildOperationListener.finished(descriptor, new OperationFinishEvent(operationState.getStartTime(), clock.getCurrentTime(), context.getFailure(), context.getResult()));
+            if (notifyListener) {
+                buildOperationListener.finished(descriptor, new OperationFinishEvent(operationState.getStartTime(), clock.getCurrentTime(), context.getFailure(), context.getResult()));
+            }
         }
 
         @Override
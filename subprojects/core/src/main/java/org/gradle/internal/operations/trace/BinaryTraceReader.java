@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import groovy.json.JsonOutput;
+import org.gradle.internal.UncheckedException;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a trace written by {@link BinaryTraceWriter} one record at a time.
+ */
+class BinaryTraceReader {
+
+    interface Visitor {
+        void start(long id, @Nullable Long parentId, long startTime, String displayName, @Nullable String detailsClassName, @Nullable String detailsJson);
+
+        void progress(long id, long time, @Nullable String detailsClassName, @Nullable String detailsJson);
+
+        void finish(long id, long endTime, @Nullable String resultClassName, @Nullable String resultJson, @Nullable String failure);
+    }
+
+    static void read(File file, Visitor visitor) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (input.readInt() != BinaryTraceWriter.MAGIC) {
+                throw new IOException("Not a binary build operation trace: " + file);
+            }
+            int version = input.readInt();
+            if (version != BinaryTraceWriter.VERSION) {
+                throw new IOException("Unsupported binary build operation trace version " + version + ": " + file);
+            }
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                byte type = input.readByte();
+                switch (type) {
+                    case BinaryTraceWriter.START:
+                        long id = input.readLong();
+                        long parentId = input.readLong();
+                        visitor.start(id, parentId == -1 ? null : parentId, input.readLong(), readString(input), readString(input), readString(input));
+                        break;
+                    case BinaryTraceWriter.PROGRESS:
+                        visitor.progress(input.readLong(), input.readLong(), readString(input), readString(input));
+                        break;
+                    case BinaryTraceWriter.FINISH:
+                        visitor.finish(input.readLong(), input.readLong(), readString(input), readString(input), readString(input));
+                        break;
+                    default:
+                        // Skip record types this reader does not know about
+                        input.readFully(new byte[length - 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a binary trace into the line based JSON log written by {@link BuildOperationTrace}.
+     */
+    static void convertToJsonLog(File binaryFile, File jsonFile) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(jsonFile))) {
+            StringBuilder line = new StringBuilder();
+            read(binaryFile, new Visitor() {
+                @Override
+                public void start(long id, @Nullable Long parentId, long startTime, String displayName, @Nullable String detailsClassName, @Nullable String detailsJson) {
+                    line.append("{\"displayName\":").append(JsonOutput.toJson(displayName));
+                    appendValue("details", detailsJson, "detailsClassName", detailsClassName);
+                    line.append(",\"id\":").append(id);
+                    if (parentId != null) {
+                        line.append(",\"parentId\":").append(parentId);
+                    }
+                    line.append(",\"startTime\":").append(startTime).append('}');
+                    writeLine();
+                }
+
+                @Override
+                public void progress(long id, long time, @Nullable String detailsClassName, @Nullable String detailsJson) {
+                    line.append('{');
+                    appendValue("details", detailsJson, "detailsClassName", detailsClassName);
+                    if (line.length() > 1) {
+                        line.append(',');
+                    }
+                    line.append("\"id\":").append(id).append(",\"time\":").append(time).append('}');
+                    writeLine();
+                }
+
+                @Override
+                public void finish(long id, long endTime, @Nullable String resultClassName, @Nullable String resultJson, @Nullable String failure) {
+                    line.append("{\"id\":").append(id);
+                    appendValue("result", resultJson, "resultClassName", resultClassName);
+                    if (failure != null) {
+                        line.append(",\"failure\":").append(JsonOutput.toJson(failure));
+                    }
+                    line.append(",\"endTime\":").append(endTime).append('}');
+                    writeLine();
+                }
+
+                private void appendValue(String key, @Nullable String json, String classNameKey, @Nullable String className) {
+                    if (json != null) {
+                        if (line.length() > 1) {
+                            line.append(',');
+                        }
+                        line.append('"').append(key).append("\":").append(json);
+                        line.append(",\"").append(classNameKey).append("\":").append(JsonOutput.toJson(className));
+                    }
+                }
+
+                private void writeLine() {
+                    line.append('\n');
+                    try {
+                        output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw UncheckedException.throwAsUncheckedException(e);
+                    }
+                    line.setLength(0);
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import groovy.json.JsonOutput;
+import org.gradle.internal.UncheckedException;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes build operation events in the binary trace format from a background thread.
+ *
+ * Only the framing of the format is binary. The file starts with {@link #MAGIC} and {@link #VERSION}, followed by records of the form
+ * {@code [int length][byte type][payload]}, where length covers the type and the payload.
+ * Ids and timestamps are written as longs, and strings as {@code [int length][UTF-8 bytes]}, with a length of -1 for null.
+ * Details and results are still embedded as JSON strings, so that the log can be converted to the JSON trace format.
+ *
+ * Events are encoded into records by {@link #encode(SerializedOperation)} on the thread which reports them, as their details and results
+ * may still change once the event has been reported. The finished records are handed to the writer thread through a bounded queue.
+ * When the writer falls behind, the build blocks instead of buffering an unbounded number of records.
+ */
+class BinaryTraceWriter {
+
+    static final int MAGIC = 0x47424f54; // "GBOT"
+    static final int VERSION = 1;
+
+    static final byte START = 1;
+    static final byte PROGRESS = 2;
+    static final byte FINISH = 3;
+
+    private static final int QUEUE_CAPACITY = 16 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final DataOutputStream output;
+    private final Thread writerThread;
+    private volatile Throwable failure;
+
+    BinaryTraceWriter(File file) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        this.writerThread = new Thread(this::writeRecords, "Build operation trace writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a record created by {@link #encode(SerializedOperation)} to be written.
+     */
+    void write(byte[] record) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    void close() throws IOException {
+        try {
+            queue.put(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            output.close();
+        }
+        if (failure != null) {
+            throw new IOException("Could not write build operation trace.", failure);
+        }
+    }
+
+    private void writeRecords() {
+        try {
+            while (true) {
+                byte[] record = queue.take();
+                if (record == END_OF_STREAM) {
+                    break;
+                }
+                output.writeInt(record.length);
+                output.write(record);
+            }
+            output.flush();
+        } catch (Throwable t) {
+            failure = t;
+            // Drain the queue so that producers blocked on a full queue can continue
+            queue.clear();
+        }
+    }
+
+    /**
+     * Encodes the given event into a record, without the length prefix.
+     */
+    static byte[] encode(SerializedOperation operation) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try {
+            encode(operation, new DataOutputStream(buffer));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void encode(SerializedOperation operation, DataOutputStream record) throws IOException {
+        if (operation instanceof SerializedOperationStart) {
+            SerializedOperationStart start = (SerializedOperationStart) operation;
+            record.writeByte(START);
+            record.writeLong(start.id);
+            record.writeLong(start.parentId == null ? -1 : start.parentId);
+            record.writeLong(start.startTime);
+            writeString(start.displayName, record);
+            writeString(start.detailsClassName, record);
+            writeString(toJson(start.details), record);
+        } else if (operation instanceof SerializedOperationProgress) {
+            SerializedOperationProgress progress = (SerializedOperationProgress) operation;
+            record.writeByte(PROGRESS);
+            record.writeLong(progress.id);
+            record.writeLong(progress.time);
+            writeString(progress.detailsClassName, record);
+            writeString(toJson(progress.details), record);
+        } else {
+            SerializedOperationFinish finish = (SerializedOperationFinish) operation;
+            record.writeByte(FINISH);
+            record.writeLong(finish.id);
+            record.writeLong(finish.endTime);
+            writeString(finish.resultClassName, record);
+            writeString(toJson(finish.result), record);
+            writeString(finish.failureMsg, record);
+        }
+    }
+
+    @Nullable
+    private static String toJson(@Nullable Object value) {
+        return value == null ? null : JsonOutput.toJson(value);
+    }
+
+    private static void writeString(@Nullable String value, DataOutputStream record) throws IOException {
+        if (value == null) {
+            record.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            record.writeInt(bytes.length);
+            record.write(bytes);
+        }
+    }
+}
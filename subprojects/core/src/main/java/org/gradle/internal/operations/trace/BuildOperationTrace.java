@@ -74,6 +74,14 @@
  * The «path-base» param is optional.
  * If invoked as `-Dorg.gradle.internal.operations.trace`, a base value of "operations" will be used.
  *
+ * For large builds, `-Dorg.gradle.internal.operations.trace.format=binary` writes a length-prefixed log instead,
+ * from a background thread. Only its framing is binary: details and results are still embedded as JSON strings. Two files are created:
+ *
+ * - «path-base»-log.bin: a chronological log of events, see {@link BinaryTraceWriter}
+ * - «path-base»-summary.txt: totals by category, the critical path and the slowest operations, see {@link BuildOperationTraceAnalysis}
+ *
+ * A binary log can be converted to the JSON files above with {@link #convertToJson(String)}.
+ *
  * The “trace” produced here is different to the trace produced by Gradle Profiler.
  * There, the focus is analyzing the performance profile.
  * Here, the focus is debugging/developing the information structure of build operations.
@@ -83,11 +91,13 @@
 public class BuildOperationTrace implements Stoppable {
 
     public static final String SYSPROP = "org.gradle.internal.operations.trace";
+    public static final String FORMAT_SYSPROP = "org.gradle.internal.operations.trace.format";
 
     private static final byte[] NEWLINE = "\n".getBytes();
 
     private final String basePath;
     private final OutputStream logOutputStream;
+    private final BinaryTraceWriter binaryTraceWriter;
 
     private final BuildOperationListenerManager buildOperationListenerManager;
 
@@ -120,11 +130,18 @@ public BuildOperationTrace(StartParameter startParameter, BuildOperationListener
         this.basePath = basePath;
         if (this.basePath == null || basePath.equals(Boolean.FALSE.toString())) {
             this.logOutputStream = null;
+            this.binaryTraceWriter = null;
             return;
         }
 
+        String format = sysProps.get(FORMAT_SYSPROP);
+        if (format == null) {
+            format = System.getProperty(FORMAT_SYSPROP);
+        }
+        boolean binary = "binary".equals(format);
+
         try {
-            File logFile = logFile(basePath);
+            File logFile = binary ? binaryLogFile(basePath) : logFile(basePath);
             GFileUtils.mkdirs(logFile.getParentFile());
             if (logFile.isFile()) {
                 GFileUtils.forceDelete(logFile);
@@ -132,7 +149,15 @@ public BuildOperationTrace(StartParameter startParameter, BuildOperationListener
             //noinspection ResultOfMethodCallIgnored
             logFile.createNewFile();
 
-            this.logOutputStream = new BufferedOutputStream(new FileOutputStream(logFile));
+            if (binary) {
+                // Remove any JSON log from an earlier build, so that it is not mistaken for this build's trace
+                GFileUtils.deleteQuietly(logFile(basePath));
+                this.logOutputStream = null;
+                this.binaryTraceWriter = new BinaryTraceWriter(logFile);
+            } else {
+                this.logOutputStream = new BufferedOutputStream(new FileOutputStream(logFile));
+                this.binaryTraceWriter = null;
+            }
         } catch (IOException e) {
             throw UncheckedException.throwAsUncheckedException(e);
         }
@@ -150,8 +175,16 @@ public void stop() {
                 }
 
                 final List<BuildOperationRecord> roots = readLogToTreeRoots(logFile(basePath));
-                writeDetailTree(roots);
-                writeSummaryTree(roots);
+                writeDetailTree(roots, basePath);
+                writeSummaryTree(roots, basePath);
+            } catch (IOException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        } else if (binaryTraceWriter != null) {
+            try {
+                binaryTraceWriter.close();
+                BuildOperationTraceAnalysis analysis = BuildOperationTraceAnalysis.analyze(binaryLogFile(basePath), BuildOperationTraceAnalysis.DEFAULT_SLOWEST_OPERATION_COUNT);
+                Files.asCharSink(file(basePath, "-summary.txt"), Charsets.UTF_8).write(analysis.format());
             } catch (IOException e) {
                 throw UncheckedException.throwAsUncheckedException(e);
             }
@@ -159,6 +192,11 @@ public void stop() {
     }
 
     private void write(SerializedOperation operation) {
+        if (binaryTraceWriter != null) {
+            // Encode on the calling thread, which still owns the details and the result
+            binaryTraceWriter.write(BinaryTraceWriter.encode(operation));
+            return;
+        }
         String json = JsonOutput.toJson(operation.toMap());
         try {
             synchronized (logOutputStream) {
@@ -171,7 +209,7 @@ private void write(SerializedOperation operation) {
         }
     }
 
-    private void writeDetailTree(List<BuildOperationRecord> roots) throws IOException {
+    private static void writeDetailTree(List<BuildOperationRecord> roots, String basePath) throws IOException {
         try {
             String rawJson = JsonOutput.toJson(BuildOperationTree.serialize(roots));
             String prettyJson = JsonOutput.prettyPrint(rawJson);
@@ -181,7 +219,7 @@ private void writeDetailTree(List<BuildOperationRecord> roots) throws IOExceptio
         }
     }
 
-    private void writeSummaryTree(final List<BuildOperationRecord> roots) throws IOException {
+    private static void writeSummaryTree(final List<BuildOperationRecord> roots, String basePath) throws IOException {
         Files.asCharSink(file(basePath, "-tree.txt"), Charsets.UTF_8).writeLines(new Iterable<String>() {
             @Override
             @Nonnull
@@ -267,10 +305,27 @@ public void remove() {
 
     public static BuildOperationTree read(String basePath) {
         File logFile = logFile(basePath);
+        if (!logFile.isFile() && binaryLogFile(basePath).isFile()) {
+            convertToJson(basePath);
+        }
         List<BuildOperationRecord> roots = readLogToTreeRoots(logFile);
         return new BuildOperationTree(roots);
     }
 
+    /**
+     * Converts the binary log for the given base path into the JSON log and trees written in the default format.
+     */
+    public static void convertToJson(String basePath) {
+        try {
+            BinaryTraceReader.convertToJsonLog(binaryLogFile(basePath), logFile(basePath));
+            List<BuildOperationRecord> roots = readLogToTreeRoots(logFile(basePath));
+            writeDetailTree(roots, basePath);
+            writeSummaryTree(roots, basePath);
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
     private static List<BuildOperationRecord> readLogToTreeRoots(final File logFile) {
         try {
             final JsonSlurper slurper = new JsonSlurper();
@@ -362,6 +417,10 @@ private static File logFile(String basePath) {
         return file(basePath, "-log.txt");
     }
 
+    static File binaryLogFile(String basePath) {
+        return file(basePath, "-log.bin");
+    }
+
     private static File file(String base, String suffix) {
         return new File((base == null || base.trim().isEmpty() ? "operations" : base) + suffix).getAbsoluteFile();
     }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Summarizes a binary build operation trace in a single pass, keeping only the operations that are in flight in memory.
+ *
+ * Operations are grouped into categories by the class of their details.
+ * The critical path starts at the longest root operation and repeatedly follows the child that finished last.
+ *
+ * Can be run offline with {@code java org.gradle.internal.operations.trace.BuildOperationTraceAnalysis «path-base» [top-n]}.
+ */
+public class BuildOperationTraceAnalysis {
+
+    public static final int DEFAULT_SLOWEST_OPERATION_COUNT = 20;
+
+    private static final String NO_CATEGORY = "(no details)";
+    private static final Comparator<Operation> BY_DURATION = Comparator.comparingLong(Operation::getDurationMillis);
+
+    private final List<CategoryTotal> categoryTotals;
+    private final List<Operation> criticalPath;
+    private final List<Operation> slowestOperations;
+
+    private BuildOperationTraceAnalysis(List<CategoryTotal> categoryTotals, List<Operation> criticalPath, List<Operation> slowestOperations) {
+        this.categoryTotals = categoryTotals;
+        this.criticalPath = criticalPath;
+        this.slowestOperations = slowestOperations;
+    }
+
+    /**
+     * Operation totals by category, longest total first.
+     */
+    public List<CategoryTotal> getCategoryTotals() {
+        return categoryTotals;
+    }
+
+    /**
+     * The operations on the critical path, from the root operation down.
+     */
+    public List<Operation> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * The slowest operations, slowest first.
+     */
+    public List<Operation> getSlowestOperations() {
+        return slowestOperations;
+    }
+
+    public static BuildOperationTraceAnalysis analyze(File binaryLog, int slowestOperationCount) throws IOException {
+        Analyzer analyzer = new Analyzer(slowestOperationCount);
+        BinaryTraceReader.read(binaryLog, analyzer);
+        return analyzer.getResult();
+    }
+
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Totals by category:\n");
+        for (CategoryTotal total : categoryTotals) {
+            builder.append(String.format("  %8dms %7d  %s%n", total.getTotalMillis(), total.getCount(), total.getCategory()));
+        }
+        builder.append("\nCritical path:\n");
+        for (Operation operation : criticalPath) {
+            builder.append(String.format("  %8dms  %s (%d)%n", operation.getDurationMillis(), operation.getDisplayName(), operation.getId()));
+        }
+        builder.append("\nSlowest operations:\n");
+        for (Operation operation : slowestOperations) {
+            builder.append(String.format("  %8dms  %s (%d)%n", operation.getDurationMillis(), operation.getDisplayName(), operation.getId()));
+        }
+        return builder.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BuildOperationTraceAnalysis <path-base> [top-n]");
+            System.exit(1);
+        }
+        int slowestOperationCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SLOWEST_OPERATION_COUNT;
+        System.out.print(analyze(BuildOperationTrace.binaryLogFile(args[0]), slowestOperationCount).format());
+    }
+
+    public static class Operation {
+        private final long id;
+        private final String displayName;
+        private final String category;
+        private final long startTime;
+        private long endTime;
+
+        Operation(long id, String displayName, String category, long startTime) {
+            this.id = id;
+            this.displayName = displayName;
+            this.category = category;
+            this.startTime = startTime;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getDurationMillis() {
+            return endTime - startTime;
+        }
+
+        @Override
+        public String toString() {
+            return displayName + " [" + getDurationMillis() + "ms]";
+        }
+    }
+
+    public static class CategoryTotal {
+        private final String category;
+        private int count;
+        private long totalMillis;
+
+        CategoryTotal(String category) {
+            this.category = category;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+    }
+
+    private static class PendingOperation {
+        final Operation operation;
+        @Nullable
+        final Long parentId;
+        // The critical path below this operation, through the child that finished last so far
+        Chain criticalChain;
+
+        PendingOperation(Operation operation, @Nullable Long parentId) {
+            this.operation = operation;
+            this.parentId = parentId;
+        }
+    }
+
+    private static class Chain {
+        final Operation head;
+        final Chain tail;
+
+        Chain(Operation head, @Nullable Chain tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    private static class Analyzer implements BinaryTraceReader.Visitor {
+        private final int slowestOperationCount;
+        private final Map<Long, PendingOperation> pending = new HashMap<>();
+        private final Map<String, CategoryTotal> totals = new HashMap<>();
+        private final PriorityQueue<Operation> slowest = new PriorityQueue<>(BY_DURATION);
+        private Chain longestRoot;
+
+        Analyzer(int slowestOperationCount) {
+            this.slowestOperationCount = slowestOperationCount;
+        }
+
+        @Override
+        public void start(long id, @Nullable Long parentId, long startTime, String displayName, @Nullable String detailsClassName, @Nullable String detailsJson) {
+            String category = detailsClassName == null ? NO_CATEGORY : detailsClassName;
+            pending.put(id, new PendingOperation(new Operation(id, displayName, category, startTime), parentId));
+        }
+
+        @Override
+        public void progress(long id, long time, @Nullable String detailsClassName, @Nullable String detailsJson) {
+        }
+
+        @Override
+        public void finish(long id, long endTime, @Nullable String resultClassName, @Nullable String resultJson, @Nullable String failure) {
+            PendingOperation finished = pending.remove(id);
+            if (finished == null) {
+                throw new IllegalStateException("Finish event for unknown operation " + id);
+            }
+            Operation operation = finished.operation;
+            operation.endTime = endTime;
+
+            CategoryTotal total = totals.computeIfAbsent(operation.category, CategoryTotal::new);
+            total.count++;
+            total.totalMillis += operation.getDurationMillis();
+
+            if (slowestOperationCount > 0) {
+                if (slowest.size() < slowestOperationCount) {
+                    slowest.add(operation);
+                } else if (BY_DURATION.compare(operation, slowest.peek()) > 0) {
+                    slowest.poll();
+                    slowest.add(operation);
+                }
+            }
+
+            Chain chain = new Chain(operation, finished.criticalChain);
+            PendingOperation parent = finished.parentId == null ? null : pending.get(finished.parentId);
+            if (parent != null) {
+                if (parent.criticalChain == null || parent.criticalChain.head.endTime <= endTime) {
+                    parent.criticalChain = chain;
+                }
+            } else if (longestRoot == null || longestRoot.head.getDurationMillis() < operation.getDurationMillis()) {
+                longestRoot = chain;
+            }
+        }
+
+        BuildOperationTraceAnalysis getResult() {
+            List<CategoryTotal> categoryTotals = new ArrayList<>(totals.values());
+            categoryTotals.sort(Comparator.comparingLong(CategoryTotal::getTotalMillis).reversed());
+
+            ImmutableList.Builder<Operation> criticalPath = ImmutableList.builder();
+            for (Chain chain = longestRoot; chain != null; chain = chain.tail) {
+                criticalPath.add(chain.head);
+            }
+
+            List<Operation> slowestOperations = new ArrayList<>(slowest);
+            slowestOperations.sort(BY_DURATION.reversed());
+
+            return new BuildOperationTraceAnalysis(ImmutableList.copyOf(categoryTotals), criticalPath.build(), ImmutableList.copyOf(slowestOperations));
+        }
+    }
+}
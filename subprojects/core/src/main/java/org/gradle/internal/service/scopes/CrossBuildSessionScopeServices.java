@@ -56,9 +56,12 @@
 import org.gradle.internal.service.DefaultServiceRegistry;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.time.Clock;
+import org.gradle.internal.work.AdaptiveWorkerLeaseLimit;
 import org.gradle.internal.work.DefaultWorkerLeaseService;
 import org.gradle.internal.work.StopShieldingWorkerLeaseService;
+import org.gradle.internal.work.WorkerLeaseLimit;
 import org.gradle.internal.work.WorkerLeaseService;
+import org.gradle.process.internal.health.memory.MemoryManager;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
@@ -201,8 +204,15 @@ GradleLauncherFactory createGradleLauncherFactory(GradleUserHomeScopeServiceRegi
             );
         }
 
-        WorkerLeaseService createWorkerLeaseService(ResourceLockCoordinationService resourceLockCoordinationService, ParallelismConfiguration parallelismConfiguration) {
-            return new DefaultWorkerLeaseService(resourceLockCoordinationService, parallelismConfiguration);
+        WorkerLeaseLimit createWorkerLeaseLimit(ResourceLockCoordinationService resourceLockCoordinationService, ParallelismConfiguration parallelismConfiguration, MemoryManager memoryManager) {
+            if (AdaptiveWorkerLeaseLimit.isEnabled()) {
+                return new AdaptiveWorkerLeaseLimit(parallelismConfiguration.getMaxWorkerCount(), resourceLockCoordinationService, memoryManager);
+            }
+            return parallelismConfiguration::getMaxWorkerCount;
+        }
+
+        WorkerLeaseService createWorkerLeaseService(ResourceLockCoordinationService resourceLockCoordinationService, ParallelismConfiguration parallelismConfiguration, WorkerLeaseLimit workerLeaseLimit) {
+            return new DefaultWorkerLeaseService(resourceLockCoordinationService, parallelismConfiguration, workerLeaseLimit);
         }
 
         BuildOperationExecutor createBuildOperationExecutor(
@@ -214,7 +224,7 @@ BuildOperationExecutor createBuildOperationExecutor(
             BuildOperationIdFactory buildOperationIdFactory
         ) {
             return new DefaultBuildOperationExecutor(
-                buildOperationListenerManager.getBroadcaster(),
+                buildOperationListenerManager,
                 clock,
                 progressLoggerFactory,
                 new DefaultBuildOperationQueueFactory(workerLeaseService),
@@ -27,7 +27,9 @@
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.concurrent.ParallelismConfiguration;
 import org.gradle.execution.plan.DefaultPlanExecutor;
+import org.gradle.execution.plan.DefaultTaskDurationHistory;
 import org.gradle.execution.plan.PlanExecutor;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.enterprise.core.GradleEnterprisePluginManager;
@@ -42,6 +44,7 @@
 import org.gradle.internal.execution.history.changes.ExecutionStateChangeDetector;
 import org.gradle.internal.execution.history.impl.DefaultExecutionHistoryStore;
 import org.gradle.internal.execution.history.impl.DefaultOutputFilesRepository;
+import org.gradle.internal.execution.history.impl.WriteBehindExecutionHistoryStore;
 import org.gradle.internal.execution.impl.DefaultWorkExecutor;
 import org.gradle.internal.execution.steps.BroadcastChangingOutputsStep;
 import org.gradle.internal.execution.steps.CacheStep;
@@ -87,13 +90,28 @@ ExecutionHistoryCacheAccess createCacheAccess(Gradle gradle, CacheRepository cac
     ExecutionHistoryStore createExecutionHistoryStore(
         ExecutionHistoryCacheAccess executionHistoryCacheAccess,
         InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
-        StringInterner stringInterner
+        StringInterner stringInterner,
+        ExecutorFactory executorFactory
     ) {
-        return new DefaultExecutionHistoryStore(
+        ExecutionHistoryStore executionHistoryStore = new DefaultExecutionHistoryStore(
             executionHistoryCacheAccess,
             inMemoryCacheDecoratorFactory,
             stringInterner
         );
+        if (System.getProperty(WriteBehindExecutionHistoryStore.WRITE_BEHIND_PROPERTY) == null) {
+            return executionHistoryStore;
+        }
+        return new WriteBehindExecutionHistoryStore(executionHistoryStore, executionHistoryCacheAccess, executorFactory);
+    }
+
+    TaskDurationHistory createTaskDurationHistory(
+        ExecutionHistoryCacheAccess executionHistoryCacheAccess,
+        InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory
+    ) {
+        if (System.getProperty(DefaultTaskDurationHistory.CRITICAL_PATH_SCHEDULING_PROPERTY) == null) {
+            return TaskDurationHistory.DISABLED;
+        }
+        return new DefaultTaskDurationHistory(executionHistoryCacheAccess, inMemoryCacheDecoratorFactory);
     }
 
     OutputFilesRepository createOutputFilesRepository(CacheRepository cacheRepository, Gradle gradle, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
@@ -146,7 +164,8 @@ public WorkExecutor<ExecutionRequestContext, CachingResult> createWorkExecutor(
         OverlappingOutputDetector overlappingOutputDetector,
         TimeoutHandler timeoutHandler,
         ValidateStep.ValidationWarningReporter validationWarningReporter,
-        ValueSnapshotter valueSnapshotter
+        ValueSnapshotter valueSnapshotter,
+        WorkerLeaseService workerLeaseService
     ) {
         // @formatter:off
         return new DefaultWorkExecutor<>(
@@ -154,7 +173,7 @@ public WorkExecutor<ExecutionRequestContext, CachingResult> createWorkExecutor(
             new MarkSnapshottingInputsStartedStep<>(
             new SkipEmptyWorkStep<>(
             new ValidateStep<>(validationWarningReporter,
-            new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector,
+            new CaptureStateBeforeExecutionStep(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, workerLeaseService,
             new ResolveCachingStateStep(buildCacheController, gradleEnterprisePluginManager.isPresent(),
             new MarkSnapshottingInputsFinishedStep<>(
             new ResolveChangesStep<>(changeDetector,
@@ -67,6 +67,7 @@
 import org.gradle.execution.plan.NodeExecutor;
 import org.gradle.execution.plan.PlanExecutor;
 import org.gradle.execution.plan.TaskDependencyResolver;
+import org.gradle.execution.plan.TaskDurationHistory;
 import org.gradle.execution.plan.TaskNodeDependencyResolver;
 import org.gradle.execution.plan.TaskNodeFactory;
 import org.gradle.execution.plan.WorkNodeDependencyResolver;
@@ -224,6 +225,7 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
         GradleInternal gradleInternal,
         TaskNodeFactory taskNodeFactory,
         TaskDependencyResolver dependencyResolver,
+        TaskDurationHistory durationHistory,
         ListenerBroadcast<TaskExecutionListener> taskListeners,
         ListenerBroadcast<TaskExecutionGraphListener> graphListeners,
         ListenerManager listenerManager,
@@ -239,6 +241,7 @@ TaskExecutionGraphInternal createTaskExecutionGraph(
             gradleInternal,
             taskNodeFactory,
             dependencyResolver,
+            durationHistory,
             graphListeners,
             taskListeners,
             listenerManager.getBroadcaster(BuildScopeListenerRegistrationListener.class),
@@ -29,6 +29,7 @@
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache;
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService;
+import org.gradle.api.internal.changedetection.state.FileHashingExecutor;
 import org.gradle.api.internal.changedetection.state.GradleUserHomeScopeFileTimeStampInspector;
 import org.gradle.api.internal.changedetection.state.ResourceEntryFilter;
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
@@ -49,6 +50,7 @@
 import org.gradle.initialization.layout.ProjectCacheDir;
 import org.gradle.internal.build.BuildAddedListener;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.deprecation.DeprecationLogger;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
@@ -65,6 +67,7 @@
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionFingerprinterRegistry;
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionSnapshotter;
 import org.gradle.internal.fingerprint.impl.DefaultGenericFileTreeSnapshotter;
+import org.gradle.internal.fingerprint.impl.FileCollectionFingerprintCache;
 import org.gradle.internal.fingerprint.impl.IgnoredPathFileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.impl.NameOnlyFileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.impl.OutputFileCollectionFingerprinter;
@@ -72,6 +75,7 @@
 import org.gradle.internal.hash.DefaultFileHasher;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeintegration.NativeCapabilities;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
@@ -84,12 +88,14 @@
 import org.gradle.internal.vfs.impl.DefaultFileSystemAccess;
 import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy;
 import org.gradle.internal.vfs.impl.VfsRootReference;
+import org.gradle.internal.vfs.impl.VirtualFileSystemImage;
 import org.gradle.internal.watch.registry.FileWatcherRegistryFactory;
 import org.gradle.internal.watch.registry.impl.DarwinFileWatcherRegistryFactory;
 import org.gradle.internal.watch.registry.impl.LinuxFileWatcherRegistryFactory;
 import org.gradle.internal.watch.registry.impl.WindowsFileWatcherRegistryFactory;
 import org.gradle.internal.watch.vfs.BuildLifecycleAwareVirtualFileSystem;
 import org.gradle.internal.watch.vfs.impl.LocationsWrittenByCurrentBuild;
+import org.gradle.internal.watch.vfs.impl.SnapshotRetentionBudget;
 import org.gradle.internal.watch.vfs.impl.WatchingNotSupportedVirtualFileSystem;
 import org.gradle.internal.watch.vfs.impl.WatchingVirtualFileSystem;
 import org.slf4j.Logger;
@@ -133,6 +139,17 @@ public class VirtualFileSystemServices extends AbstractPluginServiceRegistry {
     @VisibleForTesting
     public static final String DEPRECATED_VFS_DROP_PROPERTY = "org.gradle.unsafe.vfs.drop";
 
+    /**
+     * When set for the daemon, the virtual file system is written to disk when the daemon stops, and restored by the next daemon.
+     */
+    public static final String VFS_IMAGE_PROPERTY = "org.gradle.internal.vfs.image";
+
+    /**
+     * The maximum number of files, directories and missing files the daemon retains in the virtual file system between builds.
+     * The least recently used snapshots are evicted when there are more.
+     */
+    public static final String VFS_MAX_RETAINED_ENTRIES_PROPERTY = "org.gradle.internal.vfs.max-retained-entries";
+
     private static final int DEFAULT_MAX_HIERARCHIES_TO_WATCH = 50;
     public static final String MAX_HIERARCHIES_TO_WATCH_PROPERTY = "org.gradle.vfs.watch.hierarchies.max";
 
@@ -187,8 +204,12 @@ CrossBuildFileHashCache createCrossBuildFileHashCache(CacheRepository cacheRepos
             return new CrossBuildFileHashCache(null, cacheRepository, inMemoryCacheDecoratorFactory, CrossBuildFileHashCache.Kind.FILE_HASHES);
         }
 
-        FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+        FileHashingExecutor createFileHashingExecutor(ExecutorFactory executorFactory) {
+            return new FileHashingExecutor(executorFactory);
+        }
+
+        FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GradleUserHomeScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher, FileHashingExecutor fileHashingExecutor) {
+            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher, fileHashingExecutor), fileStore, stringInterner, fileTimeStampInspector, Hashing.qualifyWithContentFunction("fileHashes"), fileSystem, fileHashingExecutor);
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
@@ -215,20 +236,31 @@ BuildLifecycleAwareVirtualFileSystem createVirtualFileSystem(
             NativeCapabilities nativeCapabilities,
             ListenerManager listenerManager,
             FileSystem fileSystem,
-            GlobalCacheLocations globalCacheLocations
+            GlobalCacheLocations globalCacheLocations,
+            CacheScopeMapping cacheScopeMapping,
+            Stat stat
         ) {
             CaseSensitivity caseSensitivity = fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE;
             VfsRootReference rootReference = new VfsRootReference(DefaultSnapshotHierarchy.empty(caseSensitivity));
             // All the changes in global caches should be done by Gradle itself, so in order
             // to minimize the number of watches we don't watch anything within the global caches.
             Predicate<String> watchFilter = path -> !globalCacheLocations.isInsideGlobalCache(path);
+            VirtualFileSystemImage image = System.getProperty(VFS_IMAGE_PROPERTY) == null
+                ? null
+                : new VirtualFileSystemImage(new File(cacheScopeMapping.getBaseDirectory(null, "vfs", VersionStrategy.CachePerVersion), Hashing.qualifyWithContentFunction("image") + ".bin"), stat);
+            Integer maxRetainedEntries = Integer.getInteger(VFS_MAX_RETAINED_ENTRIES_PROPERTY);
+            SnapshotRetentionBudget retentionBudget = maxRetainedEntries == null
+                ? null
+                : new SnapshotRetentionBudget(maxRetainedEntries);
 
             BuildLifecycleAwareVirtualFileSystem virtualFileSystem = determineWatcherRegistryFactory(OperatingSystem.current(), nativeCapabilities, watchFilter)
                 .<BuildLifecycleAwareVirtualFileSystem>map(watcherRegistryFactory -> new WatchingVirtualFileSystem(
                     watcherRegistryFactory,
                     rootReference,
                     sectionId -> documentationRegistry.getDocumentationFor("gradle_daemon", sectionId),
-                    locationsWrittenByCurrentBuild
+                    locationsWrittenByCurrentBuild,
+                    image,
+                    retentionBudget
                 ))
                 .orElse(new WatchingNotSupportedVirtualFileSystem(rootReference));
             listenerManager.addListener((BuildAddedListener) buildState ->
@@ -307,7 +339,7 @@ FileCollectionSnapshotter createFileCollectionSnapshotter(FileSystemAccess fileS
 
         ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildFileHashCache store) {
             PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(
-                PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()),
+                PersistentIndexedCacheParameters.of(Hashing.qualifyWithContentFunction("resourceHashesCache"), HashCode.class, new HashCodeSerializer()),
                 400000,
                 true);
             return new DefaultResourceSnapshotterCacheService(resourceHashesCache);
@@ -336,9 +368,10 @@ FileHasher createFileHasher(
             FileHasher globalHasher,
             FileSystem fileSystem,
             StreamHasher streamHasher,
-            StringInterner stringInterner
+            StringInterner stringInterner,
+            FileHashingExecutor fileHashingExecutor
         ) {
-            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher, fileHashingExecutor), cacheAccess, stringInterner, fileTimeStampInspector, Hashing.qualifyWithContentFunction("fileHashes"), fileSystem, fileHashingExecutor);
             return new SplitFileHasher(globalHasher, localHasher, globalCacheLocations);
         }
 
@@ -393,8 +426,14 @@ OutputFileCollectionFingerprinter createOutputFileCollectionFingerprinter(FileCo
             return new OutputFileCollectionFingerprinter(fileCollectionSnapshotter);
         }
 
-        FileCollectionFingerprinterRegistry createFileCollectionFingerprinterRegistry(List<FileCollectionFingerprinter> fingerprinters) {
-            return new DefaultFileCollectionFingerprinterRegistry(fingerprinters);
+        FileCollectionFingerprintCache createFileCollectionFingerprintCache(ListenerManager listenerManager) {
+            FileCollectionFingerprintCache fingerprintCache = new FileCollectionFingerprintCache();
+            listenerManager.addListener(fingerprintCache);
+            return fingerprintCache;
+        }
+
+        FileCollectionFingerprinterRegistry createFileCollectionFingerprinterRegistry(List<FileCollectionFingerprinter> fingerprinters, FileCollectionSnapshotter fileCollectionSnapshotter, FileCollectionFingerprintCache fingerprintCache) {
+            return new DefaultFileCollectionFingerprinterRegistry(fingerprinters, fileCollectionSnapshotter, fingerprintCache);
         }
 
         ResourceSnapshotterCacheService createResourceSnapshotterCacheService(
@@ -402,7 +441,7 @@ ResourceSnapshotterCacheService createResourceSnapshotterCacheService(
             CrossBuildFileHashCache store,
             ResourceSnapshotterCacheService globalCache
         ) {
-            PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()), 800000, true);
+            PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(PersistentIndexedCacheParameters.of(Hashing.qualifyWithContentFunction("resourceHashesCache"), HashCode.class, new HashCodeSerializer()), 800000, true);
             DefaultResourceSnapshotterCacheService localCache = new DefaultResourceSnapshotterCacheService(resourceHashesCache);
             return new SplitResourceSnapshotterCacheService(globalCache, localCache, globalCacheLocations);
         }
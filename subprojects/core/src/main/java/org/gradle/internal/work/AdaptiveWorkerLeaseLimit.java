@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.work;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.time.Timer;
+import org.gradle.process.internal.health.memory.JvmMemoryStatus;
+import org.gradle.process.internal.health.memory.JvmMemoryStatusListener;
+import org.gradle.process.internal.health.memory.MemoryManager;
+import org.gradle.process.internal.health.memory.OsMemoryStatus;
+import org.gradle.process.internal.health.memory.OsMemoryStatusListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link WorkerLeaseLimit} that follows the health of the machine.  Every time the {@link MemoryManager} reports
+ * the memory status, the limit is lowered when free physical memory runs low, when the JVM spends too much time
+ * collecting garbage or when the system load exceeds the number of processors, and raised again, up to the
+ * configured maximum worker count, when there is spare capacity.
+ *
+ * <p>The changes to the limit are logged at the end of the build.</p>
+ */
+public class AdaptiveWorkerLeaseLimit implements WorkerLeaseLimit, OsMemoryStatusListener, JvmMemoryStatusListener, Stoppable {
+    public static final String ADAPTIVE_WORKER_LEASES_PROPERTY = "org.gradle.internal.workers.adaptive";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveWorkerLeaseLimit.class);
+
+    @VisibleForTesting
+    static final double MIN_FREE_MEMORY_RATIO = 0.1;
+    @VisibleForTesting
+    static final double MAX_GC_TIME_RATIO = 0.15;
+    @VisibleForTesting
+    static final double MAX_HEAP_COMMITTED_RATIO = 0.9;
+    @VisibleForTesting
+    static final double MAX_LOAD_PER_PROCESSOR = 1.25;
+    @VisibleForTesting
+    static final double MIN_LOAD_PER_PROCESSOR = 0.75;
+
+    private final int maxWorkerCount;
+    private final int processorCount;
+    private final ResourceLockCoordinationService coordinationService;
+    private final MemoryManager memoryManager;
+    private final Timer timer = Time.startTimer();
+    private final List<LimitChange> changes = new ArrayList<>();
+    private volatile int workerLimit;
+
+    // Only accessed from the memory manager thread
+    private OsMemoryStatus osMemoryStatus;
+    private long lastSampleMillis;
+    private long lastGcTimeMillis = totalGcTimeMillis();
+
+    public AdaptiveWorkerLeaseLimit(int maxWorkerCount, ResourceLockCoordinationService coordinationService, MemoryManager memoryManager) {
+        this(maxWorkerCount, Runtime.getRuntime().availableProcessors(), coordinationService, memoryManager);
+    }
+
+    @VisibleForTesting
+    AdaptiveWorkerLeaseLimit(int maxWorkerCount, int processorCount, ResourceLockCoordinationService coordinationService, MemoryManager memoryManager) {
+        this.maxWorkerCount = maxWorkerCount;
+        this.processorCount = processorCount;
+        this.coordinationService = coordinationService;
+        this.memoryManager = memoryManager;
+        this.workerLimit = maxWorkerCount;
+        memoryManager.addListener((OsMemoryStatusListener) this);
+        memoryManager.addListener((JvmMemoryStatusListener) this);
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty(ADAPTIVE_WORKER_LEASES_PROPERTY) != null;
+    }
+
+    @Override
+    public int getWorkerLimit() {
+        return workerLimit;
+    }
+
+    @Override
+    public void onOsMemoryStatus(OsMemoryStatus osMemoryStatus) {
+        this.osMemoryStatus = osMemoryStatus;
+    }
+
+    @Override
+    public void onJvmMemoryStatus(JvmMemoryStatus jvmMemoryStatus) {
+        // The memory manager broadcasts the OS status, when available, just before the JVM status
+        long sampleMillis = timer.getElapsedMillis();
+        long gcTimeMillis = totalGcTimeMillis();
+        double gcTimeRatio = sampleMillis > lastSampleMillis ? (double) (gcTimeMillis - lastGcTimeMillis) / (sampleMillis - lastSampleMillis) : 0;
+        lastSampleMillis = sampleMillis;
+        lastGcTimeMillis = gcTimeMillis;
+
+        double heapCommittedRatio = jvmMemoryStatus.getMaxMemory() > 0 ? (double) jvmMemoryStatus.getCommittedMemory() / jvmMemoryStatus.getMaxMemory() : 0;
+        double freeMemoryRatio = osMemoryStatus != null && osMemoryStatus.getTotalPhysicalMemory() > 0
+            ? (double) osMemoryStatus.getFreePhysicalMemory() / osMemoryStatus.getTotalPhysicalMemory()
+            : 1;
+        adjust(sampleMillis, freeMemoryRatio, gcTimeRatio, heapCommittedRatio, ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage());
+    }
+
+    /**
+     * Adjusts the limit for one sample of the system health.  The limit shrinks by a quarter under memory pressure,
+     * by one worker under CPU pressure, and grows by one worker when the system has spare capacity.
+     *
+     * @param loadAverage the system load average, or a negative value when not available.
+     */
+    @VisibleForTesting
+    void adjust(long sampleMillis, double freeMemoryRatio, double gcTimeRatio, double heapCommittedRatio, double loadAverage) {
+        int current = workerLimit;
+        int next;
+        String reason;
+        if (freeMemoryRatio < MIN_FREE_MEMORY_RATIO) {
+            next = current - Math.max(1, current / 4);
+            reason = String.format("%.0f%% physical memory free", freeMemoryRatio * 100);
+        } else if (gcTimeRatio > MAX_GC_TIME_RATIO && heapCommittedRatio > MAX_HEAP_COMMITTED_RATIO) {
+            next = current - Math.max(1, current / 4);
+            reason = String.format("%.0f%% of time spent in GC", gcTimeRatio * 100);
+        } else if (loadAverage > processorCount * MAX_LOAD_PER_PROCESSOR) {
+            next = current - 1;
+            reason = String.format("load average %.2f", loadAverage);
+        } else if (loadAverage < processorCount * MIN_LOAD_PER_PROCESSOR) {
+            next = current + 1;
+            reason = loadAverage < 0 ? "no memory pressure" : String.format("load average %.2f", loadAverage);
+        } else {
+            return;
+        }
+        next = Math.max(1, Math.min(maxWorkerCount, next));
+        if (next == current) {
+            return;
+        }
+
+        workerLimit = next;
+        synchronized (changes) {
+            changes.add(new LimitChange(sampleMillis, next, reason));
+        }
+        LOGGER.debug("Changed worker lease limit from {} to {} ({}).", current, next, reason);
+        if (next > current) {
+            // Let operations waiting for a worker lease retry
+            coordinationService.notifyStateChange();
+        }
+    }
+
+    @VisibleForTesting
+    List<LimitChange> getChanges() {
+        synchronized (changes) {
+            return new ArrayList<>(changes);
+        }
+    }
+
+    @Override
+    public void stop() {
+        memoryManager.removeListener((OsMemoryStatusListener) this);
+        memoryManager.removeListener((JvmMemoryStatusListener) this);
+        List<LimitChange> changes = getChanges();
+        if (changes.isEmpty()) {
+            LOGGER.info("Worker lease limit stayed at {} during the build.", maxWorkerCount);
+        } else {
+            StringBuilder summary = new StringBuilder("Worker lease limit started at ").append(maxWorkerCount).append(" and changed ").append(changes.size()).append(" time(s):");
+            for (LimitChange change : changes) {
+                summary.append("\n  ").append(change);
+            }
+            LOGGER.info(summary.toString());
+        }
+    }
+
+    private static long totalGcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long collectionTime = garbageCollector.getCollectionTime();
+            if (collectionTime > 0) {
+                total += collectionTime;
+            }
+        }
+        return total;
+    }
+
+    @VisibleForTesting
+    static class LimitChange {
+        final long timestampMillis;
+        final int workerLimit;
+        final String reason;
+
+        LimitChange(long timestampMillis, int workerLimit, String reason) {
+            this.timestampMillis = timestampMillis;
+            this.workerLimit = workerLimit;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1fs: %d worker(s) (%s)", timestampMillis / 1000.0, workerLimit, reason);
+        }
+    }
+}
@@ -23,11 +23,14 @@ import org.gradle.cache.PersistentIndexedCache
 import org.gradle.internal.file.FileMetadata.AccessType
 import org.gradle.internal.file.impl.DefaultFileMetadata
 import org.gradle.internal.hash.FileHasher
+import org.gradle.internal.hash.FileToHash
 import org.gradle.internal.hash.HashCode
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.concurrent.Executors
+
 class CachingFileHasherTest extends Specification {
     @Rule
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
@@ -167,4 +170,59 @@ class CachingFileHasherTest extends Specification {
         }
         0 * _._
     }
+
+    def hashesBatchOfFilesLookingUpAllCachedHashesFirst() {
+        def cachedFile = tmpDir.createFile("cached")
+        def unreadableFile = tmpDir.file("unreadable")
+        def files = [new FileToHash(cachedFile, 10, 100), new FileToHash(file, 20, 200), new FileToHash(unreadableFile, 30, 300)]
+
+        when:
+        def result = hasher.hash(files)
+
+        then:
+        result == [oldHash, hash, null]
+
+        and:
+        3 * timeStampInspector.timestampCanBeUsedToDetectFileChange(_, _) >> true
+        1 * cache.get(cachedFile.absolutePath) >> new FileInfo(oldHash, 10, 100)
+        1 * cache.get(file.absolutePath) >> null
+        1 * cache.get(unreadableFile.absolutePath) >> new FileInfo(oldHash, 30, 299)
+
+        then:
+        1 * target.hash(file) >> hash
+        1 * target.hash(unreadableFile) >> { throw new UncheckedIOException(new FileNotFoundException()) }
+
+        then:
+        1 * cacheAccess.useCache(_) >> { Runnable action -> action.run() }
+        1 * cache.put(file.absolutePath, _) >> { String key, FileInfo fileInfo ->
+            assert fileInfo.hash == hash
+            assert fileInfo.length == 20
+            assert fileInfo.timestamp == 200
+        }
+        0 * _._
+    }
+
+    def hashesMissingFilesOfBatchConcurrently() {
+        def executor = Executors.newFixedThreadPool(2)
+        def concurrentCacheAccess = Mock(CrossBuildFileHashCache) {
+            createCache(_, _, _) >> cache
+        }
+        hasher = new CachingFileHasher(target, concurrentCacheAccess, new StringInterner(), timeStampInspector, "fileHashes", fileSystem, executor)
+        def files = (1..10).collect { new FileToHash(tmpDir.createFile("file${it}"), it, it) }
+
+        when:
+        def result = hasher.hash(files)
+
+        then:
+        result == (1..10).collect { HashCode.fromInt(it) }
+
+        and:
+        _ * timeStampInspector.timestampCanBeUsedToDetectFileChange(_, _) >> false
+        10 * target.hash(_) >> { File file -> HashCode.fromInt(file.name.substring(4) as int) }
+        1 * concurrentCacheAccess.useCache(_) >> { Runnable action -> action.run() }
+        10 * cache.put(_, _)
+
+        cleanup:
+        executor.shutdown()
+    }
 }
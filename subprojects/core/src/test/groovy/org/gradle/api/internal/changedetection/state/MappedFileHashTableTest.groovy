@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo
+import org.gradle.cache.CacheAccess
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.Hashing
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MappedFileHashTableTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+    def cacheAccess = Mock(CacheAccess) {
+        _ * useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+    def tableFile = tmpDir.file("fileHashes.table")
+    def hash = Hashing.md5().hashString("content")
+    MappedFileHashTable table
+
+    def setup() {
+        table = new MappedFileHashTable(tableFile, 16, cacheAccess)
+    }
+
+    def cleanup() {
+        table.close()
+    }
+
+    def "returns stored file info"() {
+        when:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+        def info = table.get("/some/file")
+
+        then:
+        info.hash == hash
+        info.length == 12
+        info.timestamp == 345
+        table.get("/other/file") == null
+    }
+
+    def "replaces and removes file info"() {
+        def newHash = Hashing.md5().hashString("new content")
+
+        when:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+        table.put("/some/file", new FileInfo(newHash, 15, 678))
+
+        then:
+        table.get("/some/file").hash == newHash
+
+        when:
+        table.remove("/some/file")
+
+        then:
+        table.get("/some/file") == null
+    }
+
+    def "produces missing file info"() {
+        when:
+        def info = table.get("/some/file", { new FileInfo(hash, 12, 345) })
+
+        then:
+        info.hash == hash
+        table.get("/some/file").length == 12
+    }
+
+    def "updates entries while holding the cache lock"() {
+        when:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+
+        then:
+        1 * cacheAccess.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+
+    def "does not store hashes which do not fit into a slot"() {
+        when:
+        table.put("/some/file", new FileInfo(HashCode.fromInt(0x0123), 12, 345))
+
+        then:
+        table.get("/some/file") == null
+    }
+
+    def "keeps entries when the table is full"() {
+        when:
+        (0..<32).each { table.put("/file-$it", new FileInfo(Hashing.md5().hashString("content-$it"), it, 345)) }
+
+        then:
+        (0..<32).collect { table.get("/file-$it") }.findAll { it != null }.every { info ->
+            info.hash == Hashing.md5().hashString("content-${info.length}")
+        }
+        table.get("/file-31").length == 31
+    }
+
+    def "reopens existing table"() {
+        given:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+        table.close()
+
+        when:
+        table = new MappedFileHashTable(tableFile, 16, cacheAccess)
+
+        then:
+        table.get("/some/file").hash == hash
+    }
+
+    def "does not use the mapping once closed"() {
+        given:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+
+        when:
+        table.close()
+        table.put("/other/file", new FileInfo(hash, 12, 345))
+        table.remove("/some/file")
+
+        then:
+        table.get("/some/file") == null
+        table.get("/other/file") == null
+
+        when:
+        table = new MappedFileHashTable(tableFile, 16, cacheAccess)
+
+        then:
+        table.get("/some/file").hash == hash
+        table.get("/other/file") == null
+    }
+
+    def "discards table with different capacity"() {
+        given:
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+        table.close()
+
+        when:
+        table = new MappedFileHashTable(tableFile, 32, cacheAccess)
+
+        then:
+        table.get("/some/file") == null
+    }
+
+    def "does not shrink file when discarding a larger table"() {
+        given:
+        table.close()
+        table = new MappedFileHashTable(tableFile, 32, cacheAccess)
+        table.put("/some/file", new FileInfo(hash, 12, 345))
+        def length = tableFile.length()
+        table.close()
+
+        when:
+        table = new MappedFileHashTable(tableFile, 16, cacheAccess)
+
+        then:
+        tableFile.length() == length
+        table.get("/some/file") == null
+    }
+}
@@ -30,7 +30,9 @@ import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperation
 import org.gradle.caching.internal.services.BuildCacheControllerFactory
 import org.gradle.caching.local.DirectoryBuildCache
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
+import org.gradle.internal.time.Clock
 import org.gradle.util.Path
 import org.gradle.util.TestUtil
 import spock.lang.Specification
@@ -66,7 +68,9 @@ class BuildCacheControllerFactoryTest extends Specification {
             ONLINE,
             logStacktraces,
             emitDebugLogging,
-            TestUtil.instantiatorFactory().inject()
+            TestUtil.instantiatorFactory().inject(),
+            Stub(ExecutorFactory),
+            Stub(Clock)
         )
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
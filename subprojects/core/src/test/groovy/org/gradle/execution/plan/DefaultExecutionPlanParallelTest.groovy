@@ -21,6 +21,7 @@ import org.gradle.api.Task
 import org.gradle.api.file.FileCollection
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.project.ProjectInternal
+import org.gradle.api.internal.tasks.TaskExecutionOutcome
 import org.gradle.api.tasks.Destroys
 import org.gradle.api.tasks.InputDirectory
 import org.gradle.api.tasks.InputFile
@@ -228,6 +229,78 @@ class DefaultExecutionPlanParallelTest extends AbstractExecutionPlanSpec {
         tasksAreNotExecutedInParallel(a, b)
     }
 
+    def "task waiting for a running task with overlapping outputs keeps its position in the queue"() {
+        def sharedFile = file("output")
+
+        given:
+        Task a = task("a", type: AsyncWithOutputFile)
+        _ * a.outputFile >> sharedFile
+        Task b = task("b", type: AsyncWithOutputFile)
+        _ * b.outputFile >> sharedFile
+        Task c = task("c", type: Async)
+
+        when:
+        addToGraphAndPopulate(a, b, c)
+        def first = selectNextTaskNode()
+
+        then:
+        first.task == a
+        selectNextTask() == c
+        selectNextTask() == null
+
+        when:
+        executionPlan.finishedExecuting(first)
+
+        then:
+        selectNextTask() == b
+    }
+
+    def "ready task with the longest remaining path is selected first when using duration history"() {
+        given:
+        def durationHistory = Stub(TaskDurationHistory) {
+            isEnabled() >> true
+            getDurationMillis(":a") >> 5
+            getDurationMillis(":y") >> 10
+            getDurationMillis(":z") >> TaskDurationHistory.UNKNOWN_DURATION
+        }
+        executionPlan.useDurationHistory(durationHistory)
+        Task a = task("a", type: Async)
+        Task y = task("y", type: Async)
+        Task z = task("z", type: Async, dependsOn: [y])
+
+        when:
+        addToGraphAndPopulate(a, z)
+
+        then:
+        executionPlan.estimatedCriticalPath.nodes*.task == [y, z]
+        executionPlan.estimatedCriticalPath.durationMillis == 17
+        selectNextTask() == y
+        selectNextTask() == a
+        selectNextTask() == null
+    }
+
+    def "only stores the durations of tasks whose actions were executed"() {
+        given:
+        def durationHistory = Mock(TaskDurationHistory) {
+            _ * isEnabled() >> true
+            _ * getDurationMillis(_) >> TaskDurationHistory.UNKNOWN_DURATION
+        }
+        executionPlan.useDurationHistory(durationHistory)
+        Task executed = task("executed", type: Async)
+        Task upToDate = task("upToDate", type: Async)
+        _ * executed.state.outcome >> TaskExecutionOutcome.EXECUTED
+        _ * upToDate.state.outcome >> TaskExecutionOutcome.UP_TO_DATE
+        addToGraphAndPopulate(executed, upToDate)
+        [selectNextTaskNode(), selectNextTaskNode()].each { executionPlan.finishedExecuting(it) }
+
+        when:
+        executionPlan.storeTaskDurations()
+
+        then:
+        1 * durationHistory.recordDuration(":executed", _)
+        0 * durationHistory.recordDuration(":upToDate", _)
+    }
+
     def "two tasks that have the same file as output and local state are not executed in parallel"() {
         def sharedFile = file("output")
 
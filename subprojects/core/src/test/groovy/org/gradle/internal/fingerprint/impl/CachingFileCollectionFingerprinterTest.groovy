@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.fingerprint.impl
+
+import org.gradle.api.internal.GradleInternal
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.fingerprint.FileCollectionFingerprinter
+import org.gradle.internal.vfs.VirtualFileSystem
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class CachingFileCollectionFingerprinterTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def virtualFileSystem = TestFiles.virtualFileSystem()
+    def fileSystemAccess = TestFiles.fileSystemAccess(virtualFileSystem)
+    def fileCollectionSnapshotter = new DefaultFileCollectionSnapshotter(fileSystemAccess, TestFiles.genericFileTreeSnapshotter(), TestFiles.fileSystem())
+    def cache = new FileCollectionFingerprintCache()
+    def absolutePathFingerprinter = new CachingFileCollectionFingerprinter(new AbsolutePathFileCollectionFingerprinter(fileCollectionSnapshotter), fileCollectionSnapshotter, cache)
+    def nameOnlyFingerprinter = new CachingFileCollectionFingerprinter(new NameOnlyFileCollectionFingerprinter(fileCollectionSnapshotter), fileCollectionSnapshotter, cache)
+
+    def "reuses the fingerprint of identical roots"() {
+        def file = tmpDir.createFile("file.txt")
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("nested.txt")
+
+        when:
+        def first = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file, dir))
+        def second = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file, dir))
+
+        then:
+        second.is(first)
+        cache.hits == 1
+        cache.misses == 1
+    }
+
+    def "does not reuse fingerprints of a different fingerprinter"() {
+        def file = tmpDir.createFile("file.txt")
+
+        when:
+        def absolute = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file))
+        def nameOnly = nameOnlyFingerprinter.fingerprint(TestFiles.fixed(file))
+
+        then:
+        !nameOnly.is(absolute)
+        nameOnly.strategyIdentifier != absolute.strategyIdentifier
+        cache.hits == 0
+        cache.misses == 2
+    }
+
+    def "does not reuse the fingerprint of changed roots"() {
+        def file = tmpDir.createFile("file.txt")
+
+        when:
+        def before = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file))
+        file.text = "changed"
+        virtualFileSystem.update(VirtualFileSystem.INVALIDATE_ALL)
+        def after = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file))
+
+        then:
+        !after.is(before)
+        after.hash != before.hash
+        cache.hits == 0
+        cache.misses == 2
+    }
+
+    def "does not reuse fingerprints after the build completes"() {
+        def file = tmpDir.createFile("file.txt")
+
+        when:
+        def first = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file))
+        cache.beforeComplete(Stub(GradleInternal))
+        def second = absolutePathFingerprinter.fingerprint(TestFiles.fixed(file))
+
+        then:
+        !second.is(first)
+        second.hash == first.hash
+        cache.hits == 0
+        cache.misses == 1
+    }
+
+    def "rethrows the failure of the fingerprinter"() {
+        def file = tmpDir.createFile("file.txt")
+        def delegate = Mock(FileCollectionFingerprinter)
+        def failingFingerprinter = new CachingFileCollectionFingerprinter(delegate, fileCollectionSnapshotter, cache)
+
+        when:
+        failingFingerprinter.fingerprint(TestFiles.fixed(file))
+
+        then:
+        1 * delegate.fingerprint(_) >> { throw failure }
+        def e = thrown(Throwable)
+        e.is(failure)
+
+        where:
+        failure << [new IllegalStateException("failure"), new OutOfMemoryError("failure")]
+    }
+
+    def "does not cache empty fingerprints"() {
+        when:
+        def fingerprint = absolutePathFingerprinter.fingerprint(TestFiles.empty())
+
+        then:
+        fingerprint.empty
+        cache.hits == 0
+        cache.misses == 0
+    }
+}
@@ -92,6 +92,41 @@ class DefaultBuildOperationExecutorTest extends ConcurrentSpec {
         GradleThread.setUnmanaged()
     }
 
+    def "does not create or fire listener events when no listeners are registered"() {
+        setup:
+        GradleThread.setManaged()
+
+        and:
+        def listenerManager = new DefaultBuildOperationListenerManager()
+        def executor = new DefaultBuildOperationExecutor(listenerManager, timeProvider, progressLoggerFactory, Mock(BuildOperationQueueFactory), Mock(ExecutorFactory), new DefaultParallelismConfiguration(true, 1), new DefaultBuildOperationIdFactory())
+        def buildOperation = Mock(RunnableBuildOperation)
+        def progressLogger = Spy(NoOpProgressLoggerFactory.Logger)
+
+        when:
+        executor.run(buildOperation)
+
+        then:
+        1 * buildOperation.description() >> displayName("<some-operation>")
+        1 * timeProvider.currentTime >> 123L
+        1 * progressLoggerFactory.newOperation(_ as Class, _ as BuildOperationDescriptor) >> progressLogger
+        1 * buildOperation.run(_)
+        1 * progressLogger.completed(null, false)
+        0 * timeProvider._
+
+        when:
+        listenerManager.addListener(listener)
+        executor.run(buildOperation)
+
+        then:
+        1 * buildOperation.description() >> displayName("<some-operation>")
+        1 * listener.started(_, _)
+        1 * buildOperation.run(_)
+        1 * listener.finished(_, _)
+
+        cleanup:
+        GradleThread.setUnmanaged()
+    }
+
     def "fires events when non-wrap-around operation starts and finishes successfully"() {
         setup:
         GradleThread.setManaged()
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace
+
+import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.OperationFinishEvent
+import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationProgressEvent
+import org.gradle.internal.operations.OperationStartEvent
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class BinaryTraceTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    // Timestamps are epoch milliseconds, which the JSON trace reads back as longs
+    def t = 1600000000000L
+    def basePath
+
+    def setup() {
+        basePath = tmpDir.file("operations").absolutePath
+        def writer = new BinaryTraceWriter(BuildOperationTrace.binaryLogFile(basePath))
+        def root = descriptor(1, null, "Build", null)
+        def configure = descriptor(2, 1, "Configure", new TestDetails(name: "configure"))
+        def task1 = descriptor(3, 1, "Task :a", new TestDetails(name: "a"))
+        def task2 = descriptor(4, 1, "Task :b", new TestDetails(name: "b"))
+        def nested = descriptor(5, 4, "Compile", null)
+
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationStart(root, new OperationStartEvent(t))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationStart(configure, new OperationStartEvent(t))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationFinish(configure, new OperationFinishEvent(t, t + 100, null, null))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationStart(task1, new OperationStartEvent(t + 100))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationStart(task2, new OperationStartEvent(t + 100))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationProgress(new OperationIdentifier(4), new OperationProgressEvent(t + 150, new TestDetails(name: "progress")))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationStart(nested, new OperationStartEvent(t + 200))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationFinish(task1, new OperationFinishEvent(t + 100, t + 300, null, null))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationFinish(nested, new OperationFinishEvent(t + 200, t + 500, new RuntimeException("broken"), null))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationFinish(task2, new OperationFinishEvent(t + 100, t + 550, null, new TestDetails(name: "result")))))
+        writer.write(BinaryTraceWriter.encode(new SerializedOperationFinish(root, new OperationFinishEvent(t, t + 600, null, null))))
+        writer.close()
+    }
+
+    def "analyzes binary trace in a single pass"() {
+        when:
+        def analysis = BuildOperationTraceAnalysis.analyze(BuildOperationTrace.binaryLogFile(basePath), 2)
+
+        then:
+        analysis.criticalPath*.displayName == ["Build", "Task :b", "Compile"]
+        analysis.slowestOperations*.displayName == ["Build", "Task :b"]
+        analysis.categoryTotals*.category == ["(no details)", TestDetails.name]
+        analysis.categoryTotals*.totalMillis == [900, 750]
+        analysis.categoryTotals*.count == [2, 3]
+    }
+
+    def "converts binary trace to the JSON trace"() {
+        when:
+        def tree = BuildOperationTrace.read(basePath)
+
+        then:
+        tree.roots.size() == 1
+        def root = tree.roots[0]
+        root.displayName == "Build"
+        root.endTime - root.startTime == 600
+        root.children*.displayName == ["Configure", "Task :a", "Task :b"]
+        root.children[0].details == [name: "configure"]
+        def taskB = root.children[2]
+        taskB.result == [name: "result"]
+        taskB.progress*.details == [[name: "progress"]]
+        taskB.children[0].failure == "java.lang.RuntimeException: broken"
+        tmpDir.file("operations-tree.txt").file
+    }
+
+    private static BuildOperationDescriptor descriptor(long id, Long parentId, String displayName, Object details) {
+        BuildOperationDescriptor.displayName(displayName).details(details).build(new OperationIdentifier(id), parentId == null ? null : new OperationIdentifier(parentId))
+    }
+
+    static class TestDetails {
+        String name
+    }
+}
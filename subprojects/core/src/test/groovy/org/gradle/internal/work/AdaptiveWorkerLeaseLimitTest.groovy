@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.work
+
+import org.gradle.internal.resources.ResourceLockCoordinationService
+import org.gradle.process.internal.health.memory.MemoryManager
+import spock.lang.Specification
+
+class AdaptiveWorkerLeaseLimitTest extends Specification {
+    def coordinationService = Mock(ResourceLockCoordinationService)
+    def memoryManager = Mock(MemoryManager)
+    def limit = new AdaptiveWorkerLeaseLimit(8, 8, coordinationService, memoryManager)
+
+    def "starts at the maximum worker count"() {
+        expect:
+        limit.workerLimit == 8
+    }
+
+    def "shrinks when free physical memory is low"() {
+        when:
+        limit.adjust(1000, 0.05, 0, 0.5, 4)
+
+        then:
+        limit.workerLimit == 6
+        0 * coordinationService._
+    }
+
+    def "shrinks when the JVM spends too much time in GC with a nearly full heap"() {
+        when:
+        limit.adjust(1000, 0.5, 0.3, 0.95, 4)
+
+        then:
+        limit.workerLimit == 6
+
+        when:
+        limit.adjust(2000, 0.5, 0.3, 0.5, 4)
+
+        then:
+        limit.workerLimit == 7
+    }
+
+    def "shrinks by one worker when the system is overloaded"() {
+        when:
+        limit.adjust(1000, 0.5, 0, 0.5, 12)
+
+        then:
+        limit.workerLimit == 7
+    }
+
+    def "grows back to the maximum when there is spare capacity and notifies waiting operations"() {
+        given:
+        limit.adjust(1000, 0.05, 0, 0.5, 4)
+        limit.adjust(2000, 0.05, 0, 0.5, 4)
+
+        when:
+        3.times {
+            limit.adjust(3000 + it * 1000, 0.5, 0, 0.5, -1)
+        }
+
+        then:
+        limit.workerLimit == 8
+        3 * coordinationService.notifyStateChange()
+    }
+
+    def "never drops below one worker"() {
+        when:
+        10.times {
+            limit.adjust(it * 1000, 0.01, 0, 0.5, 100)
+        }
+
+        then:
+        limit.workerLimit == 1
+    }
+
+    def "does not change when load is within bounds"() {
+        when:
+        limit.adjust(1000, 0.5, 0, 0.5, 8)
+
+        then:
+        limit.workerLimit == 8
+        limit.changes.empty
+    }
+
+    def "records changes to the limit"() {
+        when:
+        limit.adjust(1500, 0.05, 0, 0.5, 4)
+        limit.adjust(2500, 0.5, 0, 0.5, 2)
+
+        then:
+        limit.changes*.toString() == ["1.5s: 6 worker(s) (5% physical memory free)", "2.5s: 7 worker(s) (load average 2.00)"]
+    }
+
+    def "stops listening to memory status when stopped"() {
+        when:
+        limit.stop()
+
+        then:
+        2 * memoryManager.removeListener({ it.is(limit) })
+    }
+}
@@ -42,6 +42,7 @@
 import org.gradle.internal.snapshot.FileSystemSnapshot;
 import org.gradle.internal.snapshot.ValueSnapshotter;
 import org.gradle.internal.vfs.FileSystemAccess;
+import org.gradle.test.fixtures.work.TestWorkerLeaseService;
 
 import java.io.File;
 import java.io.IOException;
@@ -145,7 +146,8 @@ public boolean delete(File target) throws IOException {
             new DefaultOverlappingOutputDetector(),
             new DefaultTimeoutHandler(null),
             behaviour -> DeprecationLogger.deprecateBehaviour(behaviour).willBeRemovedInGradle7().undocumented().nagUser(),
-            valueSnapshotter
+            valueSnapshotter,
+            new TestWorkerLeaseService()
         );
     }
 
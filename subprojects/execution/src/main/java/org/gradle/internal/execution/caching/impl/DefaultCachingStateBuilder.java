@@ -130,6 +130,10 @@ public final CachingState build() {
         ImmutableSortedMap<String, HashCode> inputValueFingerprints = inputValueFingerprintsBuilder.build();
 
         Hasher hasher = Hashing.newHasher();
+        // Keys built from content hashes of a different function must not collide with the default ones
+        if (!Hashing.DEFAULT_CONTENT_FUNCTION.equals(Hashing.contentFunctionName())) {
+            hasher.putString(Hashing.contentFunctionName());
+        }
         implementation.appendToHasher(hasher);
         additionalImplementations.forEach(additionalImplementation -> {
             additionalImplementation.appendToHasher(hasher);
@@ -29,7 +29,7 @@ public abstract class AbstractFingerprintCompareStrategy implements FingerprintC
 
     @Override
     public boolean visitChangesSince(FileCollectionFingerprint current, FileCollectionFingerprint previous, String propertyTitle, ChangeVisitor visitor) {
-        if (hasSameRootHashes(current, previous)) {
+        if (hasSameRootHashes(current, previous) || hasSameStrategyHash(current, previous)) {
             return true;
         }
         return visitChangesSince(current.getFingerprints(), previous.getFingerprints(), propertyTitle, visitor);
@@ -39,6 +39,15 @@ private boolean hasSameRootHashes(FileCollectionFingerprint current, FileCollect
         return Iterables.elementsEqual(current.getRootHashes().entries(), previous.getRootHashes().entries());
     }
 
+    /**
+     * Fingerprints with the same strategy hash have no changes, even when the roots have changed in a way the strategy ignores.
+     * This avoids diffing the fingerprints, which is the expensive part of the comparison for large file collections.
+     */
+    private boolean hasSameStrategyHash(FileCollectionFingerprint current, FileCollectionFingerprint previous) {
+        HashCode previousStrategyHash = previous.getStrategyHash();
+        return previousStrategyHash != null && previousStrategyHash.equals(current.getStrategyHash());
+    }
+
     private boolean visitChangesSince(Map<String, FileSystemLocationFingerprint> current, Map<String, FileSystemLocationFingerprint> previous, String propertyTitle, ChangeVisitor visitor) {
         // Handle trivial cases with 0 or 1 elements in both current and previous
         Boolean trivialResult = compareTrivialFingerprints(visitor, current, previous, propertyTitle);
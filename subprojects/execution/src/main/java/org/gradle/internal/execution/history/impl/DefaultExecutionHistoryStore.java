@@ -19,7 +19,6 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import org.gradle.api.internal.cache.StringInterner;
-import org.gradle.cache.CacheDecorator;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
@@ -29,37 +28,133 @@
 import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.fingerprint.impl.IgnoredPathFileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.snapshot.ValueSnapshot;
 import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
-import static com.google.common.collect.ImmutableSortedMap.copyOfSorted;
-import static com.google.common.collect.Maps.transformValues;
+import static org.gradle.internal.serialize.BaseSerializerFactory.INTEGER_SERIALIZER;
+import static org.gradle.internal.serialize.BaseSerializerFactory.STRING_SERIALIZER;
 
+/**
+ * Stores the execution history of units of work.
+ *
+ * File collection fingerprints are stored once, keyed by the hash of their content, and the history entries refer to them.
+ * This way, fingerprints shared by many units of work, like the same compile classpath, are only stored once.
+ * The store counts the entries referring to each fingerprint and removes a fingerprint when it is no longer referenced.
+ *
+ * Entries in the format used before fingerprints were stored separately are still read, and are migrated to the current format when they are first read.
+ * Once the legacy store has not been used while the current store was updated for {@value #LEGACY_STORE_RETENTION_DAYS} days, its file is deleted.
+ */
 public class DefaultExecutionHistoryStore implements ExecutionHistoryStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultExecutionHistoryStore.class);
+    private static final String ENTRIES_CACHE_NAME = Hashing.qualifyWithContentFunction("executionHistoryEntries");
+    private static final String LEGACY_CACHE_NAME = "executionHistory";
+    private static final long LEGACY_STORE_RETENTION_DAYS = 7;
 
+    private final PersistentCache cache;
     private final PersistentIndexedCache<String, AfterPreviousExecutionState> store;
+    private final PersistentIndexedCache<HashCode, FileCollectionFingerprint> fingerprints;
+    private final PersistentIndexedCache<HashCode, Integer> fingerprintReferences;
+    private final PersistentIndexedCache<String, AfterPreviousExecutionState> legacyStore;
 
     public DefaultExecutionHistoryStore(
         Supplier<PersistentCache> cache,
         InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory,
         StringInterner stringInterner
     ) {
-        DefaultPreviousExecutionStateSerializer serializer = new DefaultPreviousExecutionStateSerializer(
-            new FileCollectionFingerprintSerializer(stringInterner));
+        this.cache = cache.get();
+        HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+        FileCollectionFingerprintSerializer fingerprintSerializer = new FileCollectionFingerprintSerializer(stringInterner);
 
-        CacheDecorator inMemoryCacheDecorator = inMemoryCacheDecoratorFactory.decorator(10000, false);
-        this.store = cache.get().createCache(
-            PersistentIndexedCacheParameters.of("executionHistory", String.class, serializer)
-            .withCacheDecorator(inMemoryCacheDecorator)
+        this.store = this.cache.createCache(
+            PersistentIndexedCacheParameters.of(ENTRIES_CACHE_NAME, STRING_SERIALIZER, new DefaultPreviousExecutionStateSerializer(new FileCollectionFingerprintReferenceSerializer()))
+                .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
         );
+        this.fingerprints = this.cache.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.qualifyWithContentFunction("executionHistoryFingerprints"), hashCodeSerializer, fingerprintSerializer)
+                .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+        );
+        this.fingerprintReferences = this.cache.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.qualifyWithContentFunction("executionHistoryFingerprintReferences"), hashCodeSerializer, INTEGER_SERIALIZER)
+                .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(10000, false))
+        );
+
+        PersistentIndexedCacheParameters<String, AfterPreviousExecutionState> legacyParameters =
+            PersistentIndexedCacheParameters.of(LEGACY_CACHE_NAME, STRING_SERIALIZER, new DefaultPreviousExecutionStateSerializer(fingerprintSerializer));
+        // The legacy store only holds hashes created by the default content hash function
+        boolean defaultContentFunction = Hashing.DEFAULT_CONTENT_FUNCTION.equals(Hashing.contentFunctionName());
+        this.legacyStore = defaultContentFunction && this.cache.cacheExists(legacyParameters) && !deleteUnusedLegacyStore()
+            ? this.cache.createCache(legacyParameters)
+            : null;
+    }
+
+    /**
+     * Deletes the legacy store when it has not been modified for {@value #LEGACY_STORE_RETENTION_DAYS} days before the last modification of the current store.
+     * Reading a legacy entry migrates and removes it, so the legacy store is only left with entries which are no longer used.
+     *
+     * @return whether the legacy store was deleted.
+     */
+    private boolean deleteUnusedLegacyStore() {
+        File legacyFile = new File(cache.getBaseDir(), LEGACY_CACHE_NAME + ".bin");
+        File entriesFile = new File(cache.getBaseDir(), ENTRIES_CACHE_NAME + ".bin");
+        return cache.useCache(() -> {
+            long legacyLastModified = legacyFile.lastModified();
+            if (legacyLastModified == 0 || entriesFile.lastModified() - legacyLastModified < TimeUnit.DAYS.toMillis(LEGACY_STORE_RETENTION_DAYS)) {
+                return false;
+            }
+            LOGGER.debug("Deleting unused execution history store {}.", legacyFile);
+            return legacyFile.delete();
+        });
     }
 
     @Override
     public Optional<AfterPreviousExecutionState> load(String key) {
-        return Optional.ofNullable(store.get(key));
+        AfterPreviousExecutionState entry = store.get(key);
+        if (entry != null) {
+            return Optional.ofNullable(resolve(entry));
+        }
+        if (legacyStore != null) {
+            return Optional.ofNullable(migrateLegacyEntry(key));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Moves the legacy entry for the given key, if any, to the current store.
+     */
+    @Nullable
+    private AfterPreviousExecutionState migrateLegacyEntry(String key) {
+        return cache.useCache(() -> {
+            AfterPreviousExecutionState legacyEntry = legacyStore.get(key);
+            if (legacyEntry == null || store.get(key) != null) {
+                return legacyEntry;
+            }
+            store.put(key, new DefaultAfterPreviousExecutionState(
+                legacyEntry.getOriginMetadata(),
+                legacyEntry.getImplementation(),
+                legacyEntry.getAdditionalImplementations(),
+                legacyEntry.getInputProperties(),
+                storeFingerprints(legacyEntry.getInputFileProperties()),
+                storeFingerprints(legacyEntry.getOutputFileProperties()),
+                legacyEntry.isSuccessful()
+            ));
+            legacyStore.remove(key);
+            return legacyEntry;
+        });
     }
 
     @Override
@@ -73,26 +168,146 @@ public void store(
         ImmutableSortedMap<String, CurrentFileCollectionFingerprint> outputFileProperties,
         boolean successful
     ) {
-        store.put(key, new DefaultAfterPreviousExecutionState(
-            originMetadata,
-            implementation,
-            additionalImplementations,
-            inputProperties,
-            prepareForSerialization(inputFileProperties),
-            prepareForSerialization(outputFileProperties),
-            successful
-        ));
+        // Hold the cache lock while updating the reference counts, so they are not changed concurrently by other threads or processes
+        cache.useCache(() -> {
+            AfterPreviousExecutionState previous = store.get(key);
+            // Add the new references before releasing the previous ones, so fingerprints shared by both are kept
+            store.put(key, new DefaultAfterPreviousExecutionState(
+                originMetadata,
+                implementation,
+                additionalImplementations,
+                inputProperties,
+                storeFingerprints(inputFileProperties),
+                storeFingerprints(outputFileProperties),
+                successful
+            ));
+            if (previous != null) {
+                releaseFingerprints(previous);
+            }
+            if (legacyStore != null) {
+                legacyStore.remove(key);
+            }
+        });
     }
 
     @Override
     public void remove(String key) {
-        store.remove(key);
+        cache.useCache(() -> {
+            AfterPreviousExecutionState previous = store.get(key);
+            if (previous != null) {
+                store.remove(key);
+                releaseFingerprints(previous);
+            }
+            if (legacyStore != null) {
+                legacyStore.remove(key);
+            }
+        });
+    }
+
+    private ImmutableSortedMap<String, FileCollectionFingerprint> storeFingerprints(ImmutableSortedMap<String, ? extends FileCollectionFingerprint> fingerprints) {
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, ? extends FileCollectionFingerprint> entry : fingerprints.entrySet()) {
+            builder.put(entry.getKey(), storeFingerprint(entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    private FileCollectionFingerprint storeFingerprint(FileCollectionFingerprint fingerprint) {
+        if (fingerprint.getFingerprints().isEmpty()) {
+            return FileCollectionFingerprint.EMPTY;
+        }
+        HashCode contentHash = contentHash(fingerprint);
+        Integer referenceCount = fingerprintReferences.get(contentHash);
+        if (referenceCount == null || fingerprints.get(contentHash) == null) {
+            fingerprints.put(contentHash, new SerializableFileCollectionFingerprint(fingerprint.getFingerprints(), fingerprint.getRootHashes()));
+            referenceCount = 0;
+        }
+        fingerprintReferences.put(contentHash, referenceCount + 1);
+        return new FileCollectionFingerprintReference(contentHash, fingerprint.getStrategyHash());
+    }
+
+    private void releaseFingerprints(AfterPreviousExecutionState entry) {
+        releaseFingerprints(entry.getInputFileProperties());
+        releaseFingerprints(entry.getOutputFileProperties());
+    }
+
+    private void releaseFingerprints(ImmutableSortedMap<String, FileCollectionFingerprint> fingerprints) {
+        for (FileCollectionFingerprint fingerprint : fingerprints.values()) {
+            if (!(fingerprint instanceof FileCollectionFingerprintReference)) {
+                continue;
+            }
+            HashCode contentHash = ((FileCollectionFingerprintReference) fingerprint).getContentHash();
+            Integer referenceCount = fingerprintReferences.get(contentHash);
+            if (referenceCount == null || referenceCount <= 1) {
+                fingerprintReferences.remove(contentHash);
+                fingerprints.remove(contentHash);
+            } else {
+                fingerprintReferences.put(contentHash, referenceCount - 1);
+            }
+        }
+    }
+
+    /**
+     * Replaces the references in the given entry with the stored fingerprints.
+     * Returns null when a referenced fingerprint is missing, for example after a crash while updating the store, so that the unit of work is executed again.
+     */
+    @Nullable
+    private AfterPreviousExecutionState resolve(AfterPreviousExecutionState entry) {
+        ImmutableSortedMap<String, FileCollectionFingerprint> inputFileProperties = resolveFingerprints(entry.getInputFileProperties());
+        ImmutableSortedMap<String, FileCollectionFingerprint> outputFileProperties = resolveFingerprints(entry.getOutputFileProperties());
+        if (inputFileProperties == null || outputFileProperties == null) {
+            return null;
+        }
+        return new DefaultAfterPreviousExecutionState(
+            entry.getOriginMetadata(),
+            entry.getImplementation(),
+            entry.getAdditionalImplementations(),
+            entry.getInputProperties(),
+            inputFileProperties,
+            outputFileProperties,
+            entry.isSuccessful()
+        );
+    }
+
+    @Nullable
+    private ImmutableSortedMap<String, FileCollectionFingerprint> resolveFingerprints(ImmutableSortedMap<String, FileCollectionFingerprint> references) {
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, FileCollectionFingerprint> entry : references.entrySet()) {
+            FileCollectionFingerprint fingerprint = entry.getValue();
+            if (fingerprint instanceof FileCollectionFingerprintReference) {
+                FileCollectionFingerprintReference reference = (FileCollectionFingerprintReference) fingerprint;
+                FileCollectionFingerprint stored = fingerprints.get(reference.getContentHash());
+                if (stored == null) {
+                    return null;
+                }
+                // The stored copy can be shared between properties fingerprinted with different strategies
+                fingerprint = new SerializableFileCollectionFingerprint(stored.getFingerprints(), stored.getRootHashes(), reference.getStrategyHash());
+            }
+            builder.put(entry.getKey(), fingerprint);
+        }
+        return builder.build();
     }
 
-    private static ImmutableSortedMap<String, FileCollectionFingerprint> prepareForSerialization(ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fingerprints) {
-        return copyOfSorted(transformValues(fingerprints, value -> {
-            //noinspection ConstantConditions
-            return new SerializableFileCollectionFingerprint(value.getFingerprints(), value.getRootHashes());
-        }));
+    /**
+     * Hashes everything that is serialized for a fingerprint, so that fingerprints with the same hash can share the same stored copy.
+     */
+    private static HashCode contentHash(FileCollectionFingerprint fingerprint) {
+        Hasher hasher = Hashing.newHasher();
+        Map<String, FileSystemLocationFingerprint> fingerprints = fingerprint.getFingerprints();
+        hasher.putInt(fingerprints.size());
+        for (Map.Entry<String, FileSystemLocationFingerprint> entry : fingerprints.entrySet()) {
+            FileSystemLocationFingerprint locationFingerprint = entry.getValue();
+            hasher.putString(entry.getKey());
+            hasher.putString(locationFingerprint.getNormalizedPath());
+            hasher.putHash(locationFingerprint.getNormalizedContentHash());
+            hasher.putInt(locationFingerprint.getType().ordinal());
+            hasher.putBoolean(locationFingerprint instanceof IgnoredPathFileSystemLocationFingerprint);
+        }
+        hasher.putInt(fingerprint.getRootHashes().size());
+        for (Map.Entry<String, HashCode> entry : fingerprint.getRootHashes().entries()) {
+            hasher.putString(entry.getKey());
+            hasher.putHash(entry.getValue());
+        }
+        return hasher.hash();
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Refers to a file collection fingerprint that is stored separately from the execution history entries, keyed by the hash of its content.
+ *
+ * The reference needs to be resolved via {@link DefaultExecutionHistoryStore} before the fingerprints can be queried.
+ * The strategy hash is kept with the reference, so that it is available on the resolved fingerprint.
+ */
+public class FileCollectionFingerprintReference implements FileCollectionFingerprint {
+    private final HashCode contentHash;
+    private final HashCode strategyHash;
+
+    public FileCollectionFingerprintReference(HashCode contentHash, @Nullable HashCode strategyHash) {
+        this.contentHash = contentHash;
+        this.strategyHash = strategyHash;
+    }
+
+    public HashCode getContentHash() {
+        return contentHash;
+    }
+
+    @Nullable
+    @Override
+    public HashCode getStrategyHash() {
+        return strategyHash;
+    }
+
+    @Override
+    public Map<String, FileSystemLocationFingerprint> getFingerprints() {
+        throw unresolved();
+    }
+
+    @Override
+    public ImmutableMultimap<String, HashCode> getRootHashes() {
+        throw unresolved();
+    }
+
+    private IllegalStateException unresolved() {
+        return new IllegalStateException("Fingerprint reference " + contentHash + " has not been resolved.");
+    }
+
+    @Override
+    public String toString() {
+        return "reference to " + contentHash;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.serialize.Serializer;
+
+import java.io.IOException;
+
+/**
+ * Serializes a {@link FileCollectionFingerprintReference} as the content hash of the fingerprint it refers to, followed by its strategy hash, if any.
+ * Empty fingerprints are not stored separately, and are serialized as a marker only.
+ */
+public class FileCollectionFingerprintReferenceSerializer implements Serializer<FileCollectionFingerprint> {
+    private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+
+    @Override
+    public FileCollectionFingerprint read(Decoder decoder) throws IOException {
+        if (!decoder.readBoolean()) {
+            return FileCollectionFingerprint.EMPTY;
+        }
+        HashCode contentHash = hashCodeSerializer.read(decoder);
+        HashCode strategyHash = decoder.readBoolean() ? hashCodeSerializer.read(decoder) : null;
+        return new FileCollectionFingerprintReference(contentHash, strategyHash);
+    }
+
+    @Override
+    public void write(Encoder encoder, FileCollectionFingerprint value) throws IOException {
+        if (value instanceof FileCollectionFingerprintReference) {
+            FileCollectionFingerprintReference reference = (FileCollectionFingerprintReference) value;
+            encoder.writeBoolean(true);
+            hashCodeSerializer.write(encoder, reference.getContentHash());
+            HashCode strategyHash = reference.getStrategyHash();
+            encoder.writeBoolean(strategyHash != null);
+            if (strategyHash != null) {
+                hashCodeSerializer.write(encoder, strategyHash);
+            }
+        } else if (value.getFingerprints().isEmpty()) {
+            encoder.writeBoolean(false);
+        } else {
+            throw new IllegalArgumentException("Only references to stored fingerprints can be serialized, but got " + value + ".");
+        }
+    }
+}
@@ -21,16 +21,23 @@
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
 import org.gradle.internal.hash.HashCode;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 public class SerializableFileCollectionFingerprint implements FileCollectionFingerprint {
 
     private final Map<String, FileSystemLocationFingerprint> fingerprints;
     private final ImmutableMultimap<String, HashCode> rootHashes;
+    private final HashCode strategyHash;
 
     public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes) {
+        this(fingerprints, rootHashes, null);
+    }
+
+    public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes, @Nullable HashCode strategyHash) {
         this.fingerprints = fingerprints;
         this.rootHashes = rootHashes;
+        this.strategyHash = strategyHash;
     }
 
     @Override
@@ -43,4 +50,9 @@ public ImmutableMultimap<String, HashCode> getRootHashes() {
         return rootHashes;
     }
 
+    @Nullable
+    @Override
+    public HashCode getStrategyHash() {
+        return strategyHash;
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import org.gradle.api.GradleException;
+import org.gradle.cache.PersistentCache;
+import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.execution.history.AfterPreviousExecutionState;
+import org.gradle.internal.execution.history.ExecutionHistoryStore;
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.snapshot.ValueSnapshot;
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Writes the execution history to another store in the background, so that units of work do not wait for their history to be persisted.
+ *
+ * Updates are queued and written by a single writer thread in batches, holding the cache lock once per batch.
+ * Loading an entry with a queued update returns the queued state.
+ * All queued updates are written when the store is closed at the end of the build, and a failure to write the history is reported then.
+ */
+public class WriteBehindExecutionHistoryStore implements ExecutionHistoryStore, Closeable {
+    public static final String WRITE_BEHIND_PROPERTY = "org.gradle.internal.execution.history.write-behind";
+
+    // Limits the memory retained by queued fingerprints when the writer cannot keep up
+    private static final int MAX_QUEUED_UPDATES = 1000;
+
+    private final ExecutionHistoryStore delegate;
+    private final PersistentCache cache;
+    private final ManagedExecutor writer;
+    private final Object lock = new Object();
+    // The most recent update for each key which has not been written yet, including those being written
+    private final Map<String, PendingUpdate> pendingUpdates = new HashMap<>();
+    private List<PendingUpdate> queue = new ArrayList<>();
+    private boolean writing;
+    private Throwable failure;
+
+    public WriteBehindExecutionHistoryStore(ExecutionHistoryStore delegate, Supplier<PersistentCache> cache, ExecutorFactory executorFactory) {
+        this.delegate = delegate;
+        this.cache = cache.get();
+        this.writer = executorFactory.create("Execution history writer", 1);
+    }
+
+    @Override
+    public Optional<AfterPreviousExecutionState> load(String key) {
+        synchronized (lock) {
+            PendingUpdate pendingUpdate = pendingUpdates.get(key);
+            if (pendingUpdate != null) {
+                return Optional.ofNullable(pendingUpdate.state);
+            }
+        }
+        return delegate.load(key);
+    }
+
+    @Override
+    public void store(
+        String key,
+        OriginMetadata originMetadata,
+        ImplementationSnapshot implementation,
+        ImmutableList<ImplementationSnapshot> additionalImplementations,
+        ImmutableSortedMap<String, ValueSnapshot> inputProperties,
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileProperties,
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> outputFileProperties,
+        boolean successful
+    ) {
+        AfterPreviousExecutionState state = new DefaultAfterPreviousExecutionState(
+            originMetadata,
+            implementation,
+            additionalImplementations,
+            inputProperties,
+            ImmutableSortedMap.<String, FileCollectionFingerprint>copyOfSorted(inputFileProperties),
+            ImmutableSortedMap.<String, FileCollectionFingerprint>copyOfSorted(outputFileProperties),
+            successful
+        );
+        enqueue(new PendingUpdate(key, state, store -> store.store(
+            key,
+            originMetadata,
+            implementation,
+            additionalImplementations,
+            inputProperties,
+            inputFileProperties,
+            outputFileProperties,
+            successful
+        )));
+    }
+
+    @Override
+    public void remove(String key) {
+        enqueue(new PendingUpdate(key, null, store -> store.remove(key)));
+    }
+
+    private void enqueue(PendingUpdate update) {
+        synchronized (lock) {
+            while (queue.size() >= MAX_QUEUED_UPDATES) {
+                waitForWriter();
+            }
+            pendingUpdates.put(update.key, update);
+            queue.add(update);
+            if (!writing) {
+                writing = true;
+                writer.execute(this::writeQueuedUpdates);
+            }
+        }
+    }
+
+    private void writeQueuedUpdates() {
+        while (true) {
+            List<PendingUpdate> batch;
+            synchronized (lock) {
+                if (queue.isEmpty()) {
+                    writing = false;
+                    lock.notifyAll();
+                    return;
+                }
+                batch = queue;
+                queue = new ArrayList<>();
+                lock.notifyAll();
+            }
+            try {
+                cache.useCache(() -> {
+                    for (PendingUpdate update : batch) {
+                        update.write.accept(delegate);
+                    }
+                });
+            } catch (Throwable t) {
+                synchronized (lock) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            }
+            synchronized (lock) {
+                for (PendingUpdate update : batch) {
+                    pendingUpdates.remove(update.key, update);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until all queued updates have been written.
+     */
+    public void flush() {
+        Throwable failure;
+        synchronized (lock) {
+            while (writing) {
+                waitForWriter();
+            }
+            failure = this.failure;
+            this.failure = null;
+        }
+        if (failure != null) {
+            throw new GradleException("Could not write execution history.", failure);
+        }
+    }
+
+    private void waitForWriter() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            writer.stop();
+        }
+    }
+
+    private static class PendingUpdate {
+        final String key;
+        // Null when the entry is removed
+        final AfterPreviousExecutionState state;
+        final Consumer<ExecutionHistoryStore> write;
+
+        PendingUpdate(String key, @Nullable AfterPreviousExecutionState state, Consumer<ExecutionHistoryStore> write) {
+            this.key = key;
+            this.state = state;
+            this.write = write;
+        }
+    }
+}
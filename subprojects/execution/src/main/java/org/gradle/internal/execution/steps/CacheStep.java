@@ -22,6 +22,7 @@
 import org.gradle.caching.internal.controller.BuildCacheCommandFactory;
 import org.gradle.caching.internal.controller.BuildCacheCommandFactory.LoadMetadata;
 import org.gradle.caching.internal.controller.BuildCacheController;
+import org.gradle.caching.internal.controller.BuildCacheLoadCommand;
 import org.gradle.caching.internal.origin.OriginMetadata;
 import org.gradle.internal.Try;
 import org.gradle.internal.execution.CurrentSnapshotResult;
@@ -41,12 +42,20 @@
 import java.util.Optional;
 
 public class CacheStep implements Step<IncrementalChangesContext, CurrentSnapshotResult> {
+    /**
+     * The maximum time in milliseconds to wait for the remote cache before executing the work instead.
+     * When set, the work is also executed right away when it previously took less time than the remote cache usually takes to respond.
+     * See {@link BuildCacheController#loadSpeculatively(BuildCacheLoadCommand, Long, long)}.
+     */
+    public static final String SPECULATIVE_REMOTE_LOAD_DEADLINE_PROPERTY = "org.gradle.internal.execution.cache.speculative-remote-load-deadline";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(CacheStep.class);
 
     private final BuildCacheController buildCache;
     private final BuildCacheCommandFactory commandFactory;
     private final Deleter deleter;
     private final OutputChangeListener outputChangeListener;
+    private final long speculativeRemoteLoadDeadline;
     private final Step<? super IncrementalChangesContext, ? extends CurrentSnapshotResult> delegate;
 
     public CacheStep(
@@ -55,11 +64,26 @@ public CacheStep(
         Deleter deleter,
         OutputChangeListener outputChangeListener,
         Step<? super IncrementalChangesContext, ? extends CurrentSnapshotResult> delegate
+    ) {
+        this(buildCache, commandFactory, deleter, outputChangeListener, Long.getLong(SPECULATIVE_REMOTE_LOAD_DEADLINE_PROPERTY, -1), delegate);
+    }
+
+    /**
+     * @param speculativeRemoteLoadDeadline the maximum time in milliseconds to wait for the remote cache, or a negative value to always wait for it.
+     */
+    public CacheStep(
+        BuildCacheController buildCache,
+        BuildCacheCommandFactory commandFactory,
+        Deleter deleter,
+        OutputChangeListener outputChangeListener,
+        long speculativeRemoteLoadDeadline,
+        Step<? super IncrementalChangesContext, ? extends CurrentSnapshotResult> delegate
     ) {
         this.buildCache = buildCache;
         this.commandFactory = commandFactory;
         this.deleter = deleter;
         this.outputChangeListener = outputChangeListener;
+        this.speculativeRemoteLoadDeadline = speculativeRemoteLoadDeadline;
         this.delegate = delegate;
     }
 
@@ -75,7 +99,7 @@ public CurrentSnapshotResult execute(IncrementalChangesContext context) {
     private CurrentSnapshotResult executeWithCache(IncrementalChangesContext context, BuildCacheKey cacheKey) {
         UnitOfWork work = context.getWork();
         return Try.ofFailable(() -> work.isAllowedToLoadFromCache()
-                ? buildCache.load(commandFactory.createLoad(cacheKey, work))
+                ? load(context, cacheKey)
                 : Optional.<LoadMetadata>empty()
             )
             .map(successfulLoad -> successfulLoad
@@ -120,6 +144,18 @@ public ImmutableSortedMap<String, CurrentFileCollectionFingerprint> getFinalOutp
             });
     }
 
+    private Optional<LoadMetadata> load(IncrementalChangesContext context, BuildCacheKey cacheKey) {
+        BuildCacheLoadCommand<LoadMetadata> loadCommand = commandFactory.createLoad(cacheKey, context.getWork());
+        if (speculativeRemoteLoadDeadline < 0) {
+            return buildCache.load(loadCommand);
+        }
+        // The previous execution time is the best estimate we have for how long executing the work takes
+        Long estimatedExecutionTime = context.getAfterPreviousExecutionState()
+            .map(afterPreviousExecutionState -> afterPreviousExecutionState.getOriginMetadata().getExecutionTime())
+            .orElse(null);
+        return buildCache.loadSpeculatively(loadCommand, estimatedExecutionTime, speculativeRemoteLoadDeadline);
+    }
+
     private void cleanLocalState(UnitOfWork work) {
         work.visitLocalState(localStateFile -> {
             try {
@@ -37,9 +37,12 @@
 import org.gradle.internal.fingerprint.overlap.OverlappingOutputDetector;
 import org.gradle.internal.fingerprint.overlap.OverlappingOutputs;
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.BuildOperationType;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.resources.ProjectLeaseRegistry;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
 import org.gradle.internal.snapshot.ValueSnapshot;
 import org.gradle.internal.snapshot.ValueSnapshotter;
@@ -47,15 +50,29 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class CaptureStateBeforeExecutionStep extends BuildOperationStep<AfterPreviousExecutionContext, CachingResult> {
     private static final Logger LOGGER = LoggerFactory.getLogger(CaptureStateBeforeExecutionStep.class);
 
+    /**
+     * When set, the input file properties and the outputs of a unit of work are fingerprinted concurrently using the shared build operation worker pool,
+     * each in its own build operation.
+     *
+     * The executing thread releases its project lock while it waits for the worker threads, so that they can acquire it to resolve input file collections.
+     */
+    public static final String PARALLEL_FINGERPRINTING_PROPERTY = "org.gradle.internal.execution.fingerprinting.parallel";
+
+    private final BuildOperationExecutor buildOperationExecutor;
     private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
     private final ValueSnapshotter valueSnapshotter;
     private final OverlappingOutputDetector overlappingOutputDetector;
+    private final ProjectLeaseRegistry projectLeaseRegistry;
+    private final boolean parallelFingerprinting;
     private final Step<? super BeforeExecutionContext, ? extends CachingResult> delegate;
 
     public CaptureStateBeforeExecutionStep(
@@ -64,11 +81,44 @@ public CaptureStateBeforeExecutionStep(
         ValueSnapshotter valueSnapshotter,
         OverlappingOutputDetector overlappingOutputDetector,
         Step<? super BeforeExecutionContext, ? extends CachingResult> delegate
+    ) {
+        this(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, null, false, delegate);
+    }
+
+    public CaptureStateBeforeExecutionStep(
+        BuildOperationExecutor buildOperationExecutor,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+        ValueSnapshotter valueSnapshotter,
+        OverlappingOutputDetector overlappingOutputDetector,
+        ProjectLeaseRegistry projectLeaseRegistry,
+        Step<? super BeforeExecutionContext, ? extends CachingResult> delegate
+    ) {
+        this(buildOperationExecutor, classLoaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, projectLeaseRegistry, Boolean.getBoolean(PARALLEL_FINGERPRINTING_PROPERTY), delegate);
+    }
+
+    /**
+     * @param projectLeaseRegistry the registry to release the project lock of the executing thread with while fingerprinting concurrently,
+     * which is only required when {@code parallelFingerprinting} is set.
+     */
+    public CaptureStateBeforeExecutionStep(
+        BuildOperationExecutor buildOperationExecutor,
+        ClassLoaderHierarchyHasher classLoaderHierarchyHasher,
+        ValueSnapshotter valueSnapshotter,
+        OverlappingOutputDetector overlappingOutputDetector,
+        @Nullable ProjectLeaseRegistry projectLeaseRegistry,
+        boolean parallelFingerprinting,
+        Step<? super BeforeExecutionContext, ? extends CachingResult> delegate
     ) {
         super(buildOperationExecutor);
+        if (parallelFingerprinting && projectLeaseRegistry == null) {
+            throw new IllegalArgumentException("Fingerprinting concurrently requires a project lease registry.");
+        }
+        this.buildOperationExecutor = buildOperationExecutor;
         this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
         this.valueSnapshotter = valueSnapshotter;
         this.overlappingOutputDetector = overlappingOutputDetector;
+        this.projectLeaseRegistry = projectLeaseRegistry;
+        this.parallelFingerprinting = parallelFingerprinting;
         this.delegate = delegate;
     }
 
@@ -132,7 +182,15 @@ private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext
             .map(AfterPreviousExecutionState::getOutputFileProperties)
             .orElse(ImmutableSortedMap.of());
 
-        ImmutableSortedMap<String, FileSystemSnapshot> outputFileSnapshots = work.snapshotOutputsBeforeExecution();
+        ImmutableSortedMap<String, FileSystemSnapshot> outputFileSnapshots;
+        List<FingerprintInputFileProperty> inputFileProperties = null;
+        if (parallelFingerprinting) {
+            SnapshotOutputsBeforeExecution snapshotOutputs = new SnapshotOutputsBeforeExecution(work);
+            inputFileProperties = fingerprintConcurrently(work, snapshotOutputs);
+            outputFileSnapshots = snapshotOutputs.getResult();
+        } else {
+            outputFileSnapshots = work.snapshotOutputsBeforeExecution();
+        }
 
         OverlappingOutputs overlappingOutputs;
         switch (work.getOverlappingOutputHandling()) {
@@ -147,7 +205,9 @@ private BeforeExecutionState captureExecutionState(AfterPreviousExecutionContext
         }
 
         ImmutableSortedMap<String, ValueSnapshot> inputProperties = fingerprintInputProperties(work, previousInputProperties, valueSnapshotter);
-        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileFingerprints = fingerprintInputFiles(work);
+        ImmutableSortedMap<String, CurrentFileCollectionFingerprint> inputFileFingerprints = inputFileProperties == null
+            ? fingerprintInputFiles(work)
+            : collectInputFileFingerprints(inputFileProperties);
         ImmutableSortedMap<String, CurrentFileCollectionFingerprint> outputFileFingerprints = fingerprintOutputFiles(
             outputSnapshotsAfterPreviousExecution,
             outputFileSnapshots,
@@ -195,6 +255,33 @@ private static ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fing
         return builder.build();
     }
 
+    /**
+     * Snapshots the outputs and fingerprints each input file property in its own build operation on the shared worker pool.
+     * The failures are only rethrown when the results are collected, so the same failure is reported regardless of which operation finished first.
+     */
+    private List<FingerprintInputFileProperty> fingerprintConcurrently(UnitOfWork work, SnapshotOutputsBeforeExecution snapshotOutputs) {
+        List<FingerprintInputFileProperty> inputFileProperties = new ArrayList<>();
+        work.visitInputFileProperties((propertyName, value, incremental, fingerprinter) ->
+            inputFileProperties.add(new FingerprintInputFileProperty(work, propertyName, fingerprinter)));
+
+        // The worker threads may need the project lock to resolve the input file collections
+        projectLeaseRegistry.withoutProjectLock(() ->
+            buildOperationExecutor.<ConcurrentFingerprintOperation<?>>runAll(queue -> {
+                queue.add(snapshotOutputs);
+                inputFileProperties.forEach(queue::add);
+            })
+        );
+        return inputFileProperties;
+    }
+
+    private static ImmutableSortedMap<String, CurrentFileCollectionFingerprint> collectInputFileFingerprints(List<FingerprintInputFileProperty> inputFileProperties) {
+        ImmutableSortedMap.Builder<String, CurrentFileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        for (FingerprintInputFileProperty property : inputFileProperties) {
+            builder.put(property.propertyName, property.getResult());
+        }
+        return builder.build();
+    }
+
     private static ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fingerprintOutputFiles(
         ImmutableSortedMap<String, FileCollectionFingerprint> previousOutputFingerprints,
         ImmutableSortedMap<String, FileSystemSnapshot> beforeExecutionOutputSnapshots,
@@ -219,6 +306,93 @@ private static CurrentFileCollectionFingerprint fingerprintOutputSnapshot(FileSy
         return DefaultCurrentFileCollectionFingerprint.from(roots, AbsolutePathFingerprintingStrategy.IGNORE_MISSING);
     }
 
+    private static abstract class ConcurrentFingerprintOperation<T> implements RunnableBuildOperation {
+        private T result;
+        private RuntimeException failure;
+
+        @Override
+        public void run(BuildOperationContext context) {
+            try {
+                result = calculate();
+                context.setResult(FingerprintOperation.Result.INSTANCE);
+            } catch (RuntimeException e) {
+                // Rethrown by the thread executing the work, to retain the original failure
+                failure = e;
+                context.failed(e);
+            }
+        }
+
+        protected abstract T calculate();
+
+        public T getResult() {
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+    }
+
+    private static class SnapshotOutputsBeforeExecution extends ConcurrentFingerprintOperation<ImmutableSortedMap<String, FileSystemSnapshot>> {
+        private final UnitOfWork work;
+
+        public SnapshotOutputsBeforeExecution(UnitOfWork work) {
+            this.work = work;
+        }
+
+        @Override
+        protected ImmutableSortedMap<String, FileSystemSnapshot> calculate() {
+            return work.snapshotOutputsBeforeExecution();
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor
+                .displayName("Snapshot outputs before executing " + work.getDisplayName())
+                .details(new FingerprintDetails(null));
+        }
+    }
+
+    private static class FingerprintInputFileProperty extends ConcurrentFingerprintOperation<CurrentFileCollectionFingerprint> {
+        private final UnitOfWork work;
+        private final String propertyName;
+        private final Supplier<CurrentFileCollectionFingerprint> fingerprinter;
+
+        public FingerprintInputFileProperty(UnitOfWork work, String propertyName, Supplier<CurrentFileCollectionFingerprint> fingerprinter) {
+            this.work = work;
+            this.propertyName = propertyName;
+            this.fingerprinter = fingerprinter;
+        }
+
+        @Override
+        protected CurrentFileCollectionFingerprint calculate() {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Fingerprinting property {} for {}", propertyName, work.getDisplayName());
+            }
+            return fingerprinter.get();
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor
+                .displayName("Fingerprint input file property '" + propertyName + "' for " + work.getDisplayName())
+                .details(new FingerprintDetails(propertyName));
+        }
+    }
+
+    private static class FingerprintDetails implements FingerprintOperation.Details {
+        private final String propertyName;
+
+        public FingerprintDetails(@Nullable String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        @Nullable
+        @Override
+        public String getPropertyName() {
+            return propertyName;
+        }
+    }
+
     private static class ImplementationsBuilder implements UnitOfWork.ImplementationVisitor {
         private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
         private ImplementationSnapshot implementation;
@@ -258,7 +432,7 @@ public ImmutableList<ImplementationSnapshot> getAdditionalImplementations() {
         }
     }
 
-    /*
+    /**
      * This operation is only used here temporarily. Should be replaced with a more stable operation in the long term.
      */
     public interface Operation extends BuildOperationType<Operation.Details, Operation.Result> {
@@ -272,4 +446,22 @@ interface Result {
             };
         }
     }
+
+    /**
+     * Records the time spent fingerprinting an input file property or snapshotting the outputs when fingerprinting concurrently.
+     */
+    public interface FingerprintOperation extends BuildOperationType<FingerprintOperation.Details, FingerprintOperation.Result> {
+        interface Details {
+            /**
+             * The name of the input file property, or {@code null} when snapshotting the outputs.
+             */
+            @Nullable
+            String getPropertyName();
+        }
+
+        interface Result {
+            Result INSTANCE = new Result() {
+            };
+        }
+    }
 }
@@ -311,6 +311,31 @@ class FingerprintCompareStrategyTest extends Specification {
         strategy << ALL_STRATEGIES
     }
 
+    def "does not compare fingerprints with the same strategy hash (#strategy.class.simpleName)"() {
+        def current = Mock(FileCollectionFingerprint)
+        def previous = new SerializableFileCollectionFingerprint(["one": fingerprint("one")], ImmutableMultimap.of("some", HashCode.fromInt(4321)), HashCode.fromInt(1))
+
+        when:
+        def result = changes(strategy, current, previous)
+
+        then:
+        result.empty
+        _ * current.rootHashes >> ImmutableMultimap.of("some", HashCode.fromInt(1234))
+        1 * current.strategyHash >> HashCode.fromInt(1)
+        0 * current.fingerprints
+
+        where:
+        strategy << ALL_STRATEGIES
+    }
+
+    def "compares fingerprints with a different strategy hash"() {
+        def current = new SerializableFileCollectionFingerprint(["two": fingerprint("two")], ImmutableMultimap.of("some", HashCode.fromInt(1234)), HashCode.fromInt(2))
+        def previous = new SerializableFileCollectionFingerprint(["one": fingerprint("one")], ImmutableMultimap.of("some", HashCode.fromInt(4321)), HashCode.fromInt(1))
+
+        expect:
+        changes(ABSOLUTE, current, previous) == [removed("one"), added("two")]
+    }
+
     def changes(FingerprintCompareStrategy strategy, Map<String, FileSystemLocationFingerprint> current, Map<String, FileSystemLocationFingerprint> previous) {
         def currentFingerprint = new SerializableFileCollectionFingerprint(current, ImmutableMultimap.of("some", HashCode.fromInt(1234)))
         def previousFingerprint = new SerializableFileCollectionFingerprint(previous,  ImmutableMultimap.of("some", HashCode.fromInt(4321)))
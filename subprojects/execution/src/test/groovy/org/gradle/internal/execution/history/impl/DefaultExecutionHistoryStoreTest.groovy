@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableMultimap
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.cache.PersistentCache
+import org.gradle.cache.internal.DefaultInMemoryCacheDecoratorFactory
+import org.gradle.internal.Factory
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.internal.file.FileType
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.FileCollectionFingerprint
+import org.gradle.internal.fingerprint.impl.DefaultFileSystemLocationFingerprint
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.internal.snapshot.ValueSnapshot
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class DefaultExecutionHistoryStoreTest extends Specification {
+    @Rule
+    public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def stringInterner = new StringInterner()
+    def entries = new InMemoryIndexedCache<String, Object>(new DefaultPreviousExecutionStateSerializer(new FileCollectionFingerprintReferenceSerializer()))
+    def fingerprints = new InMemoryIndexedCache<HashCode, Object>(new FileCollectionFingerprintSerializer(stringInterner))
+    def references = new InMemoryIndexedCache<HashCode, Integer>(BaseSerializerFactory.INTEGER_SERIALIZER)
+    def legacyEntries = new InMemoryIndexedCache<String, Object>(new DefaultPreviousExecutionStateSerializer(new FileCollectionFingerprintSerializer(stringInterner)))
+    def cache = Stub(PersistentCache) {
+        createCache({ it.cacheName == "executionHistoryEntries" }) >> entries
+        createCache({ it.cacheName == "executionHistoryFingerprints" }) >> fingerprints
+        createCache({ it.cacheName == "executionHistoryFingerprintReferences" }) >> references
+        createCache({ it.cacheName == "executionHistory" }) >> legacyEntries
+        cacheExists(_) >> true
+        getBaseDir() >> tmpDir.testDirectory
+        useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        useCache(_ as Factory) >> { Factory action -> action.create() }
+    }
+    def store = createStore()
+
+    def classpath = fingerprint("/classpath/lib.jar", 1)
+    def sources = fingerprint("/src/Main.java", 2)
+    def otherSources = fingerprint("/src/Other.java", 3)
+
+    def "stores fingerprints shared between entries once"() {
+        when:
+        storeEntry("first", classpath, sources)
+        storeEntry("second", classpath, otherSources)
+
+        then:
+        fingerprints.keySet().size() == 3
+        references.keySet().collect { references.get(it) }.sort() == [1, 1, 2]
+
+        and:
+        loadsInputs("first", classpath, sources)
+        loadsInputs("second", classpath, otherSources)
+    }
+
+    def "removes fingerprints which are no longer referenced"() {
+        storeEntry("first", classpath, sources)
+        storeEntry("second", classpath, sources)
+
+        when:
+        storeEntry("first", classpath, otherSources)
+
+        then:
+        fingerprints.keySet().size() == 3
+        loadsInputs("first", classpath, otherSources)
+
+        when:
+        store.remove("second")
+
+        then:
+        fingerprints.keySet().size() == 2
+        references.keySet().collect { references.get(it) }.sort() == [1, 1]
+        !store.load("second").present
+
+        when:
+        store.remove("first")
+
+        then:
+        fingerprints.keySet().empty
+        references.keySet().empty
+    }
+
+    def "does not store empty fingerprints"() {
+        when:
+        storeEntry("first", FileCollectionFingerprint.EMPTY, sources)
+
+        then:
+        fingerprints.keySet().size() == 1
+        store.load("first").get().inputFileProperties["classpath"].fingerprints.isEmpty()
+    }
+
+    def "migrates entries in previous format when reading them"() {
+        legacyEntries.put("first", legacyEntry(classpath))
+
+        when:
+        def loaded = store.load("first")
+
+        then:
+        loaded.present
+        legacyEntries.keySet().empty
+        fingerprints.keySet().size() == 1
+        loadsInputs("first", classpath)
+
+        when:
+        storeEntry("first", classpath, sources)
+
+        then:
+        legacyEntries.keySet().empty
+        loadsInputs("first", classpath, sources)
+    }
+
+    def "deletes legacy store when it has not been used for a week while the store was updated"() {
+        def legacyFile = tmpDir.createFile("executionHistory.bin")
+        def entriesFile = tmpDir.createFile("executionHistoryEntries.bin")
+        entriesFile.lastModified = legacyFile.lastModified() + TimeUnit.DAYS.toMillis(legacyAgeInDays)
+
+        when:
+        store = createStore()
+
+        then:
+        legacyFile.exists() == !deleted
+
+        where:
+        legacyAgeInDays | deleted
+        1               | false
+        6               | false
+        7               | true
+        30              | true
+    }
+
+    def "keeps strategy hash of each property when fingerprints are shared"() {
+        when:
+        storeEntry("first", sources, sources)
+
+        then:
+        fingerprints.keySet().size() == 1
+        store.load("first").get().inputFileProperties.values()*.strategyHash == [strategyHash(sources), strategyHash(sources)]
+    }
+
+    def "ignores entry when a referenced fingerprint is missing"() {
+        storeEntry("first", classpath, sources)
+
+        when:
+        fingerprints.keySet().toList().each { fingerprints.remove(it) }
+
+        then:
+        !store.load("first").present
+    }
+
+    private DefaultExecutionHistoryStore createStore() {
+        new DefaultExecutionHistoryStore({ cache }, Stub(DefaultInMemoryCacheDecoratorFactory), stringInterner)
+    }
+
+    private static DefaultAfterPreviousExecutionState legacyEntry(FileCollectionFingerprint classpath) {
+        new DefaultAfterPreviousExecutionState(
+            new OriginMetadata("build", 1),
+            ImplementationSnapshot.of("Work", HashCode.fromInt(1)),
+            ImmutableList.of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.<String, FileCollectionFingerprint> of("classpath", serializable(classpath)),
+            ImmutableSortedMap.of(),
+            true
+        )
+    }
+
+    private void storeEntry(String key, FileCollectionFingerprint classpath, FileCollectionFingerprint sources) {
+        store.store(
+            key,
+            new OriginMetadata("build", 1),
+            ImplementationSnapshot.of("Work", HashCode.fromInt(1)),
+            ImmutableList.of(),
+            ImmutableSortedMap.<String, ValueSnapshot> of(),
+            ImmutableSortedMap.<String, CurrentFileCollectionFingerprint> of("classpath", current(classpath), "sources", current(sources)),
+            ImmutableSortedMap.<String, CurrentFileCollectionFingerprint> of(),
+            true
+        )
+    }
+
+    private boolean loadsInputs(String key, FileCollectionFingerprint... expected) {
+        def loaded = store.load(key).get().inputFileProperties.values() as List
+        assert loaded.size() == expected.length
+        [loaded, expected as List].transpose().each { FileCollectionFingerprint actual, FileCollectionFingerprint expectedFingerprint ->
+            assert actual.fingerprints.keySet() == expectedFingerprint.fingerprints.keySet()
+            assert actual.fingerprints.values()*.normalizedContentHash == expectedFingerprint.fingerprints.values()*.normalizedContentHash
+            assert actual.rootHashes == expectedFingerprint.rootHashes
+        }
+        return true
+    }
+
+    private static FileCollectionFingerprint fingerprint(String path, int hash) {
+        return new SerializableFileCollectionFingerprint(
+            [(path): new DefaultFileSystemLocationFingerprint(path, FileType.RegularFile, HashCode.fromInt(hash))],
+            ImmutableMultimap.of(path, HashCode.fromInt(hash))
+        )
+    }
+
+    private static FileCollectionFingerprint serializable(FileCollectionFingerprint fingerprint) {
+        return new SerializableFileCollectionFingerprint(fingerprint.fingerprints, fingerprint.rootHashes)
+    }
+
+    private CurrentFileCollectionFingerprint current(FileCollectionFingerprint fingerprint) {
+        Stub(CurrentFileCollectionFingerprint) {
+            getFingerprints() >> fingerprint.fingerprints
+            getRootHashes() >> fingerprint.rootHashes
+            getStrategyHash() >> strategyHash(fingerprint)
+        }
+    }
+
+    private static HashCode strategyHash(FileCollectionFingerprint fingerprint) {
+        return HashCode.fromInt(fingerprint.fingerprints.keySet().join().hashCode())
+    }
+}
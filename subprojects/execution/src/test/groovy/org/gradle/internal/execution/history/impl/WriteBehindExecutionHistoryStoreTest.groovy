@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.api.GradleException
+import org.gradle.cache.PersistentCache
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.execution.history.ExecutionHistoryStore
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class WriteBehindExecutionHistoryStoreTest extends Specification {
+    def delegate = Mock(ExecutionHistoryStore)
+    def cache = Stub(PersistentCache) {
+        useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+    def executorFactory = new DefaultExecutorFactory()
+    def store = new WriteBehindExecutionHistoryStore(delegate, { cache }, executorFactory)
+    def writeStarted = new CountDownLatch(1)
+    def continueWrite = new CountDownLatch(1)
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "loads queued state before it has been written"() {
+        given:
+        delegate.store("first", *_) >> { blockWriter() }
+
+        when:
+        storeEntry("first")
+        writeStarted.await()
+        def loaded = store.load("first")
+
+        then:
+        loaded.get().originMetadata.buildInvocationId == "build"
+        0 * delegate.load(_)
+
+        when:
+        continueWrite.countDown()
+        store.flush()
+        store.load("first")
+
+        then:
+        1 * delegate.load("first") >> Optional.empty()
+    }
+
+    def "loads removed entry as missing until the removal has been written"() {
+        given:
+        delegate.store("first", *_) >> { blockWriter() }
+
+        when:
+        storeEntry("first")
+        store.remove("second")
+        writeStarted.await()
+
+        then:
+        !store.load("second").present
+        0 * delegate.load(_)
+
+        cleanup:
+        continueWrite.countDown()
+        store.close()
+    }
+
+    def "writes all queued updates in order when closed"() {
+        when:
+        storeEntry("first")
+        store.remove("first")
+        storeEntry("second")
+        store.close()
+
+        then:
+        1 * delegate.store("first", *_)
+
+        then:
+        1 * delegate.remove("first")
+
+        then:
+        1 * delegate.store("second", *_)
+    }
+
+    def "reports failure to write when flushed"() {
+        def failure = new RuntimeException("broken")
+        delegate.store("first", *_) >> { throw failure }
+
+        when:
+        storeEntry("first")
+        storeEntry("second")
+        store.flush()
+
+        then:
+        def e = thrown(GradleException)
+        e.message == "Could not write execution history."
+        e.cause == failure
+
+        when:
+        store.close()
+
+        then:
+        noExceptionThrown()
+    }
+
+    private void blockWriter() {
+        writeStarted.countDown()
+        continueWrite.await()
+    }
+
+    private void storeEntry(String key) {
+        store.store(
+            key,
+            new OriginMetadata("build", 1),
+            ImplementationSnapshot.of("Work", HashCode.fromInt(1)),
+            ImmutableList.<ImplementationSnapshot> of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.of(),
+            true
+        )
+    }
+}
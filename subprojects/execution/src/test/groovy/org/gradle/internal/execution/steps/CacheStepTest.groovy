@@ -32,6 +32,7 @@ import org.gradle.internal.execution.UnitOfWork
 import org.gradle.internal.execution.caching.CachingDisabledReason
 import org.gradle.internal.execution.caching.CachingDisabledReasonCategory
 import org.gradle.internal.execution.caching.CachingState
+import org.gradle.internal.execution.history.AfterPreviousExecutionState
 import org.gradle.internal.file.Deleter
 
 class CacheStepTest extends StepSpec<IncrementalChangesContext> implements FingerprinterFixture {
@@ -115,6 +116,35 @@ class CacheStepTest extends StepSpec<IncrementalChangesContext> implements Finge
         0 * _
     }
 
+    def "loads speculatively with previous execution time as estimate"() {
+        def speculativeStep = new CacheStep(buildCacheController, buildCacheCommandFactory, deleter, outputChangeListener, 500, delegate)
+        def afterPreviousExecutionState = Stub(AfterPreviousExecutionState) {
+            getOriginMetadata() >> new OriginMetadata("previous", 100)
+        }
+
+        when:
+        def result = speculativeStep.execute(context)
+
+        then:
+        result == delegateResult
+
+        interaction { withValidCacheKey() }
+
+        then:
+        _ * work.allowedToLoadFromCache >> true
+        _ * context.afterPreviousExecutionState >> Optional.of(afterPreviousExecutionState)
+        1 * buildCacheCommandFactory.createLoad(cacheKey, work) >> loadCommand
+        1 * buildCacheController.loadSpeculatively(loadCommand, 100, 500) >> Optional.empty()
+
+        then:
+        1 * delegate.execute(context) >> delegateResult
+        1 * delegateResult.outcome >> Try.successful(ExecutionOutcome.EXECUTED_NON_INCREMENTALLY)
+
+        then:
+        interaction { outputStored {} }
+        0 * _
+    }
+
     def "fails after unpack failure"() {
         def failure = new RuntimeException("unpack failure")
         def loadedOutputFile = file("output.txt")
@@ -29,6 +29,7 @@ import org.gradle.internal.fingerprint.overlap.OverlappingOutputDetector
 import org.gradle.internal.fingerprint.overlap.OverlappingOutputs
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher
 import org.gradle.internal.hash.HashCode
+import org.gradle.internal.resources.ProjectLeaseRegistry
 import org.gradle.internal.snapshot.FileSystemSnapshot
 import org.gradle.internal.snapshot.ValueSnapshot
 import org.gradle.internal.snapshot.ValueSnapshotter
@@ -46,7 +47,10 @@ class CaptureStateBeforeExecutionStepTest extends StepSpec<AfterPreviousExecutio
     def overlappingOutputDetector = Mock(OverlappingOutputDetector)
     def executionHistoryStore = Mock(ExecutionHistoryStore)
 
+    def projectLeaseRegistry = Mock(ProjectLeaseRegistry)
+
     def step = new CaptureStateBeforeExecutionStep(buildOperationExecutor, classloaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, delegate)
+    def concurrentStep = new CaptureStateBeforeExecutionStep(buildOperationExecutor, classloaderHierarchyHasher, valueSnapshotter, overlappingOutputDetector, projectLeaseRegistry, true, delegate)
 
     @Override
     protected AfterPreviousExecutionContext createContext() {
@@ -162,6 +166,51 @@ class CaptureStateBeforeExecutionStepTest extends StepSpec<AfterPreviousExecutio
         assertOperationForInputsBeforeExecution()
     }
 
+    def "input file properties and outputs are fingerprinted concurrently when enabled"() {
+        def firstFingerprint = Mock(CurrentFileCollectionFingerprint)
+        def secondFingerprint = Mock(CurrentFileCollectionFingerprint)
+
+        when:
+        concurrentStep.execute(context)
+
+        then:
+        _ * work.visitInputFileProperties(_) >> { UnitOfWork.InputFilePropertyVisitor visitor ->
+            visitor.visitInputFileProperty("second", "ignored", false, { -> secondFingerprint })
+            visitor.visitInputFileProperty("first", "ignored", false, { -> firstFingerprint })
+        }
+        interaction { fingerprintInputs() }
+        1 * projectLeaseRegistry.withoutProjectLock(_ as Runnable) >> { Runnable action -> action.run() }
+        1 * delegate.execute(_) >> { BeforeExecutionContext beforeExecution ->
+            def state = beforeExecution.beforeExecutionState.get()
+            assert state.inputFileProperties.keySet() as List == ['first', 'second']
+            assert state.inputFileProperties == ImmutableSortedMap.<String, CurrentFileCollectionFingerprint>of('first', firstFingerprint, 'second', secondFingerprint)
+        }
+        0 * _
+
+        assertConcurrentFingerprintOperations("second", "first")
+    }
+
+    def "reports failure to fingerprint input file property concurrently"() {
+        def failure = new RuntimeException("broken")
+        def fingerprint = Mock(CurrentFileCollectionFingerprint)
+
+        when:
+        concurrentStep.execute(context)
+
+        then:
+        _ * work.visitInputFileProperties(_) >> { UnitOfWork.InputFilePropertyVisitor visitor ->
+            visitor.visitInputFileProperty("broken", "ignored", false, { -> throw failure })
+            visitor.visitInputFileProperty("other", "ignored", false, { -> fingerprint })
+        }
+        interaction { fingerprintInputs() }
+        1 * projectLeaseRegistry.withoutProjectLock(_ as Runnable) >> { Runnable action -> action.run() }
+        0 * delegate.execute(_)
+
+        def e = thrown(RuntimeException)
+        e.is(failure)
+        buildOperationExecutor.log.mostRecentFailure(CaptureStateBeforeExecutionStep.FingerprintOperation).is(failure)
+    }
+
     def "output file properties are fingerprinted"() {
         def outputFileSnapshot = Mock(FileSystemSnapshot)
 
@@ -283,6 +332,12 @@ class CaptureStateBeforeExecutionStepTest extends StepSpec<AfterPreviousExecutio
         _ * work.executionHistoryStore >> Optional.of(executionHistoryStore)
     }
 
+    private void assertConcurrentFingerprintOperations(String... propertyNames) {
+        def operations = buildOperationExecutor.log.all(CaptureStateBeforeExecutionStep.FingerprintOperation)
+        assert operations*.details*.propertyName == [null] + (propertyNames as List)
+        assert operations*.descriptor*.displayName == ["Snapshot outputs before executing job ':test'"] + propertyNames.collect { "Fingerprint input file property '$it' for job ':test'".toString() }
+    }
+
     private void assertOperationForInputsBeforeExecution() {
         withOnlyOperation(CaptureStateBeforeExecutionStep.Operation) {
             assert it.descriptor.displayName == "Snapshot inputs and outputs before executing job ':test'"
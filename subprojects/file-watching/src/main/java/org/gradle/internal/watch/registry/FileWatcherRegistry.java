@@ -26,6 +26,7 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface FileWatcherRegistry extends Closeable {
@@ -33,6 +34,13 @@ public interface FileWatcherRegistry extends Closeable {
     interface ChangeHandler {
         void handleChange(Type type, Path path);
 
+        /**
+         * Handles a batch of coalesced changes, in the order they have been received.
+         */
+        default void handleChanges(Map<Path, Type> changes) {
+            changes.forEach((path, type) -> handleChange(type, path));
+        }
+
         void handleLostState();
     }
 
@@ -92,5 +100,7 @@ interface FileWatchingStatistics {
         boolean isUnknownEventEncountered();
         int getNumberOfReceivedEvents();
         int getNumberOfWatchedHierarchies();
+        int getNumberOfCoalescedEvents();
+        int getNumberOfOverflows();
     }
 }
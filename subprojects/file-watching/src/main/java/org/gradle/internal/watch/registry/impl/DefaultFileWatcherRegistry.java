@@ -45,7 +45,19 @@
 import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.REMOVED;
 
 public class DefaultFileWatcherRegistry implements FileWatcherRegistry {
+    /**
+     * How long to wait for more events after receiving an event, so the events can be handled together.
+     */
+    public static final String COALESCING_WINDOW_PROPERTY = "org.gradle.internal.watch.coalescing-window-millis";
+    /**
+     * The number of changes in a single directory above which the whole directory is invalidated instead.
+     */
+    public static final String MAX_CHANGES_PER_DIRECTORY_PROPERTY = "org.gradle.internal.watch.max-changes-per-directory";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileWatcherRegistry.class);
+    private static final int DEFAULT_COALESCING_WINDOW_MILLIS = 10;
+    private static final int DEFAULT_MAX_CHANGES_PER_DIRECTORY = 100;
+    private static final int MAX_CHANGES_PER_BATCH = 10_000;
 
     private final AbstractFileEventFunctions fileEventFunctions;
     private final FileWatcher watcher;
@@ -53,6 +65,8 @@ public class DefaultFileWatcherRegistry implements FileWatcherRegistry {
     private final Thread eventConsumerThread;
     private final AtomicReference<MutableFileWatchingStatistics> fileWatchingStatistics = new AtomicReference<>(new MutableFileWatchingStatistics());
     private final FileWatcherUpdater fileWatcherUpdater;
+    private final long coalescingWindowNanos;
+    private final FileEventCoalescer coalescer;
 
     private volatile boolean consumeEvents = true;
     private volatile boolean stopping = false;
@@ -63,54 +77,100 @@ public DefaultFileWatcherRegistry(
         ChangeHandler handler,
         FileWatcherUpdater fileWatcherUpdater,
         BlockingQueue<FileWatchEvent> fileEvents
+    ) {
+        this(
+            fileEventFunctions,
+            watcher,
+            handler,
+            fileWatcherUpdater,
+            fileEvents,
+            Integer.getInteger(COALESCING_WINDOW_PROPERTY, DEFAULT_COALESCING_WINDOW_MILLIS),
+            Integer.getInteger(MAX_CHANGES_PER_DIRECTORY_PROPERTY, DEFAULT_MAX_CHANGES_PER_DIRECTORY)
+        );
+    }
+
+    /**
+     * @param coalescingWindowMillis how long to wait for more events after receiving an event, so the events are handled as a single batch
+     * @param maximumChangesPerDirectory the number of changes in a directory within one batch above which the whole directory is invalidated
+     */
+    public DefaultFileWatcherRegistry(
+        AbstractFileEventFunctions fileEventFunctions,
+        FileWatcher watcher,
+        ChangeHandler handler,
+        FileWatcherUpdater fileWatcherUpdater,
+        BlockingQueue<FileWatchEvent> fileEvents,
+        long coalescingWindowMillis,
+        int maximumChangesPerDirectory
     ) {
         this.fileEventFunctions = fileEventFunctions;
         this.watcher = watcher;
         this.fileEvents = fileEvents;
         this.fileWatcherUpdater = fileWatcherUpdater;
+        this.coalescingWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalescingWindowMillis);
+        this.coalescer = new FileEventCoalescer(maximumChangesPerDirectory);
         this.eventConsumerThread = createAndStartEventConsumerThread(handler);
     }
 
     private Thread createAndStartEventConsumerThread(ChangeHandler handler) {
+        FileWatchEvent.Handler eventHandler = new FileWatchEvent.Handler() {
+            @Override
+            public void handleChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
+                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::eventReceived);
+                coalescer.changed(convertType(type), Paths.get(absolutePath));
+            }
+
+            @Override
+            public void handleUnknownEvent(String absolutePath) {
+                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::unknownEventEncountered);
+                dropPendingChanges();
+                handler.handleLostState();
+            }
+
+            @Override
+            public void handleOverflow(FileWatchEvent.OverflowType type, @Nullable String absolutePath) {
+                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::overflowed);
+                if (absolutePath == null) {
+                    dropPendingChanges();
+                    handler.handleLostState();
+                } else {
+                    coalescer.invalidated(Paths.get(absolutePath));
+                }
+            }
+
+            @Override
+            public void handleFailure(Throwable failure) {
+                LOGGER.error("Error while receiving file changes", failure);
+                fileWatchingStatistics.updateAndGet(statistics -> statistics.errorWhileReceivingFileChanges(failure));
+                dropPendingChanges();
+                handler.handleLostState();
+            }
+
+            @Override
+            public void handleTerminated() {
+                consumeEvents = false;
+            }
+        };
         Thread thread = new Thread(() -> {
             try {
                 while (consumeEvents) {
                     FileWatchEvent nextEvent = fileEvents.take();
-                    if (!stopping) {
-                        nextEvent.handleEvent(new FileWatchEvent.Handler() {
-                            @Override
-                            public void handleChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
-                                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::eventReceived);
-                                handler.handleChange(convertType(type), Paths.get(absolutePath));
-                            }
-
-                            @Override
-                            public void handleUnknownEvent(String absolutePath) {
-                                fileWatchingStatistics.updateAndGet(MutableFileWatchingStatistics::unknownEventEncountered);
-                                handler.handleLostState();
-                            }
-
-                            @Override
-                            public void handleOverflow(FileWatchEvent.OverflowType type, @Nullable String absolutePath) {
-                                if (absolutePath == null) {
-                                    handler.handleLostState();
-                                } else {
-                                    handler.handleChange(INVALIDATED, Paths.get(absolutePath));
-                                }
-                            }
-
-                            @Override
-                            public void handleFailure(Throwable failure) {
-                                LOGGER.error("Error while receiving file changes", failure);
-                                fileWatchingStatistics.updateAndGet(statistics -> statistics.errorWhileReceivingFileChanges(failure));
-                                handler.handleLostState();
-                            }
-
-                            @Override
-                            public void handleTerminated() {
-                                consumeEvents = false;
-                            }
-                        });
+                    // Drain the events arriving within the coalescing window, so the changes are handled as one batch
+                    long deadline = System.nanoTime() + coalescingWindowNanos;
+                    while (nextEvent != null) {
+                        if (!stopping) {
+                            nextEvent.handleEvent(eventHandler);
+                        }
+                        if (!consumeEvents || coalescer.getNumberOfChanges() >= MAX_CHANGES_PER_BATCH) {
+                            break;
+                        }
+                        nextEvent = fileEvents.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                    if (!coalescer.isEmpty()) {
+                        FileEventCoalescer.CoalescedChanges changes = coalescer.drain();
+                        fileWatchingStatistics.updateAndGet(statistics -> statistics.eventsCoalesced(changes.getNumberOfCoalescedEvents()));
+                        if (!stopping && !changes.getChanges().isEmpty()) {
+                            handler.handleChanges(changes.getChanges());
+                        }
                     }
                 }
             } catch (InterruptedException e) {
@@ -124,6 +184,10 @@ public void handleTerminated() {
         return thread;
     }
 
+    private void dropPendingChanges() {
+        coalescer.drain();
+    }
+
     @Override
     public void registerWatchableHierarchy(File watchableHierarchy, SnapshotHierarchy root) {
         fileWatcherUpdater.registerWatchableHierarchy(watchableHierarchy, root);
@@ -178,6 +242,16 @@ public int getNumberOfReceivedEvents() {
             public int getNumberOfWatchedHierarchies() {
                 return numberOfWatchedHierarchies;
             }
+
+            @Override
+            public int getNumberOfCoalescedEvents() {
+                return currentStatistics.getNumberOfCoalescedEvents();
+            }
+
+            @Override
+            public int getNumberOfOverflows() {
+                return currentStatistics.getNumberOfOverflows();
+            }
         };
     }
 
@@ -210,6 +284,8 @@ public void close() throws IOException {
     private static class MutableFileWatchingStatistics {
         private boolean unknownEventEncountered;
         private int numberOfReceivedEvents;
+        private int numberOfCoalescedEvents;
+        private int numberOfOverflows;
         private Throwable errorWhileReceivingFileChanges;
 
         public Optional<Throwable> getErrorWhileReceivingFileChanges() {
@@ -224,6 +300,24 @@ public int getNumberOfReceivedEvents() {
             return numberOfReceivedEvents;
         }
 
+        public int getNumberOfCoalescedEvents() {
+            return numberOfCoalescedEvents;
+        }
+
+        public int getNumberOfOverflows() {
+            return numberOfOverflows;
+        }
+
+        public MutableFileWatchingStatistics eventsCoalesced(int count) {
+            numberOfCoalescedEvents += count;
+            return this;
+        }
+
+        public MutableFileWatchingStatistics overflowed() {
+            numberOfOverflows++;
+            return this;
+        }
+
         public MutableFileWatchingStatistics eventReceived() {
             numberOfReceivedEvents++;
             return this;
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.registry.impl;
+
+import org.gradle.internal.watch.registry.FileWatcherRegistry.Type;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.INVALIDATED;
+
+/**
+ * Coalesces the file events received in a batch, so the virtual file system is updated once per batch instead of once per event.
+ *
+ * Repeated events for the same path are merged into one.
+ * When a directory has more changed children than the threshold, the changes are collapsed into a single invalidation of the directory,
+ * which also covers any further changes below the directory.
+ */
+public class FileEventCoalescer {
+    private final int maximumChangesPerDirectory;
+    private final Map<Path, Map<Path, Type>> changesByDirectory = new LinkedHashMap<>();
+    private final Set<Path> invalidatedDirectories = new HashSet<>();
+    private int numberOfEvents;
+    private int numberOfChanges;
+
+    public FileEventCoalescer(int maximumChangesPerDirectory) {
+        this.maximumChangesPerDirectory = maximumChangesPerDirectory;
+    }
+
+    public void changed(Type type, Path path) {
+        numberOfEvents++;
+        Path directory = directoryOf(path);
+        if (invalidatedDirectories.contains(directory)) {
+            return;
+        }
+        Map<Path, Type> changes = changesByDirectory.computeIfAbsent(directory, key -> new LinkedHashMap<>());
+        Type previousType = changes.put(path, type);
+        if (previousType == null) {
+            numberOfChanges++;
+        } else if (previousType != type) {
+            changes.put(path, INVALIDATED);
+        }
+        if (changes.size() > maximumChangesPerDirectory) {
+            invalidateDirectory(directory);
+        }
+    }
+
+    /**
+     * Records that everything below the directory may have changed, e.g. when the watcher dropped events for the directory.
+     */
+    public void invalidated(Path directory) {
+        numberOfEvents++;
+        if (!invalidatedDirectories.contains(directory)) {
+            invalidateDirectory(directory);
+        }
+    }
+
+    private void invalidateDirectory(Path directory) {
+        Map<Path, Type> changes = changesByDirectory.remove(directory);
+        if (changes != null) {
+            numberOfChanges -= changes.size();
+        }
+        invalidatedDirectories.add(directory);
+        Map<Path, Type> invalidation = new LinkedHashMap<>();
+        invalidation.put(directory, INVALIDATED);
+        changesByDirectory.put(directory, invalidation);
+        numberOfChanges++;
+    }
+
+    private static Path directoryOf(Path path) {
+        Path parent = path.getParent();
+        return parent == null ? path : parent;
+    }
+
+    public boolean isEmpty() {
+        return numberOfEvents == 0;
+    }
+
+    /**
+     * The number of distinct changes currently held.
+     */
+    public int getNumberOfChanges() {
+        return numberOfChanges;
+    }
+
+    /**
+     * Returns the coalesced changes in the order they have been received and resets the coalescer.
+     */
+    public CoalescedChanges drain() {
+        Map<Path, Type> result = new LinkedHashMap<>();
+        changesByDirectory.values().forEach(changes -> changes.forEach((path, type) -> {
+            if (!isBelowInvalidatedDirectory(path)) {
+                result.put(path, type);
+            }
+        }));
+        CoalescedChanges coalescedChanges = new CoalescedChanges(result, numberOfEvents - result.size());
+        changesByDirectory.clear();
+        invalidatedDirectories.clear();
+        numberOfEvents = 0;
+        numberOfChanges = 0;
+        return coalescedChanges;
+    }
+
+    private boolean isBelowInvalidatedDirectory(Path path) {
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            if (invalidatedDirectories.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class CoalescedChanges {
+        private final Map<Path, Type> changes;
+        private final int numberOfCoalescedEvents;
+
+        public CoalescedChanges(Map<Path, Type> changes, int numberOfCoalescedEvents) {
+            this.changes = changes;
+            this.numberOfCoalescedEvents = numberOfCoalescedEvents;
+        }
+
+        public Map<Path, Type> getChanges() {
+            return changes;
+        }
+
+        public int getNumberOfCoalescedEvents() {
+            return numberOfCoalescedEvents;
+        }
+    }
+}
@@ -20,7 +20,29 @@ public interface FileSystemWatchingStatistics {
     int getNumberOfReceivedEvents();
     int getNumberOfWatchedHierarchies();
 
+    /**
+     * The number of received file system events which have been merged into other events, or into the invalidation of a whole directory.
+     */
+    int getNumberOfCoalescedEvents();
+
+    /**
+     * The number of times the watcher reported that events have been dropped.
+     */
+    int getNumberOfOverflows();
+
     int getRetainedRegularFiles();
     int getRetainedDirectories();
     int getRetainedMissingFiles();
+
+    /**
+     * The number of files, directories and missing files retained by the virtual file system.
+     */
+    default int getRetainedEntries() {
+        return getRetainedRegularFiles() + getRetainedDirectories() + getRetainedMissingFiles();
+    }
+
+    /**
+     * The number of files, directories and missing files evicted from the virtual file system to stay within its memory budget.
+     */
+    int getNumberOfEvictedEntries();
 }
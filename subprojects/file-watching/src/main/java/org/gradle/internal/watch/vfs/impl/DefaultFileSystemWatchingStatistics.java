@@ -29,13 +29,23 @@
 public class DefaultFileSystemWatchingStatistics implements FileSystemWatchingStatistics {
     private final FileWatcherRegistry.FileWatchingStatistics fileWatchingStatistics;
     private final VirtualFileSystemStatistics vfsStatistics;
+    private final int numberOfEvictedEntries;
 
     public DefaultFileSystemWatchingStatistics(
         FileWatcherRegistry.FileWatchingStatistics fileWatchingStatistics,
         SnapshotHierarchy vfsRoot
+    ) {
+        this(fileWatchingStatistics, vfsRoot, 0);
+    }
+
+    public DefaultFileSystemWatchingStatistics(
+        FileWatcherRegistry.FileWatchingStatistics fileWatchingStatistics,
+        SnapshotHierarchy vfsRoot,
+        int numberOfEvictedEntries
     ) {
         this.fileWatchingStatistics = fileWatchingStatistics;
         this.vfsStatistics = getStatistics(vfsRoot);
+        this.numberOfEvictedEntries = numberOfEvictedEntries;
     }
 
     @Override
@@ -48,6 +58,16 @@ public int getNumberOfWatchedHierarchies() {
         return fileWatchingStatistics.getNumberOfWatchedHierarchies();
     }
 
+    @Override
+    public int getNumberOfCoalescedEvents() {
+        return fileWatchingStatistics.getNumberOfCoalescedEvents();
+    }
+
+    @Override
+    public int getNumberOfOverflows() {
+        return fileWatchingStatistics.getNumberOfOverflows();
+    }
+
     @Override
     public int getRetainedRegularFiles() {
         return vfsStatistics.getRetained(FileType.RegularFile);
@@ -63,6 +83,11 @@ public int getRetainedMissingFiles() {
         return vfsStatistics.getRetained(FileType.Missing);
     }
 
+    @Override
+    public int getNumberOfEvictedEntries() {
+        return numberOfEvictedEntries;
+    }
+
     private static VirtualFileSystemStatistics getStatistics(SnapshotHierarchy root) {
         EnumMultiset<FileType> retained = EnumMultiset.create(FileType.class);
         root.visitSnapshotRoots(snapshot -> snapshot.accept(new FileSystemSnapshotVisitor() {
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl;
+
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshotVisitor;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the number of entries retained by the virtual file system within a budget, by evicting the least recently accessed snapshot roots.
+ *
+ * Evicting a snapshot is always safe, since the location is snapshotted again the next time it is accessed.
+ */
+public class SnapshotRetentionBudget {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotRetentionBudget.class);
+
+    private final int maximumRetainedEntries;
+    private final ConcurrentMap<String, Long> lastAccessed = new ConcurrentHashMap<>();
+    private int retainedEntries;
+    private int evictedEntries;
+
+    public SnapshotRetentionBudget(int maximumRetainedEntries) {
+        this.maximumRetainedEntries = maximumRetainedEntries;
+    }
+
+    /**
+     * Records an access to the given location, which marks the snapshot root containing it as recently used.
+     *
+     * Snapshot roots which have been stored since the last eviction are considered recently used anyway, so only the known roots are tracked.
+     */
+    public void locationAccessed(String absolutePath) {
+        long now = System.nanoTime();
+        String path = absolutePath;
+        while (true) {
+            if (lastAccessed.replace(path, now) != null) {
+                return;
+            }
+            int lastSeparator = path.lastIndexOf(File.separatorChar);
+            if (lastSeparator <= 0) {
+                return;
+            }
+            path = path.substring(0, lastSeparator);
+        }
+    }
+
+    /**
+     * Evicts the least recently accessed snapshot roots until the retained entries are within the budget.
+     *
+     * @return the hierarchy without the evicted snapshots.
+     */
+    public SnapshotHierarchy evictLeastRecentlyAccessed(SnapshotHierarchy root, SnapshotHierarchy.NodeDiffListener diffListener) {
+        long now = System.nanoTime();
+        List<RetainedSnapshot> retainedSnapshots = new ArrayList<>();
+        root.visitSnapshotRoots(snapshot -> retainedSnapshots.add(new RetainedSnapshot(
+            snapshot.getAbsolutePath(),
+            countEntries(snapshot),
+            lastAccessed.getOrDefault(snapshot.getAbsolutePath(), now)
+        )));
+
+        // Forget roots which have been invalidated or merged into other roots, and start tracking the new ones
+        Set<String> retainedPaths = new HashSet<>();
+        retainedEntries = 0;
+        evictedEntries = 0;
+        for (RetainedSnapshot retainedSnapshot : retainedSnapshots) {
+            retainedPaths.add(retainedSnapshot.absolutePath);
+            retainedEntries += retainedSnapshot.entries;
+            lastAccessed.putIfAbsent(retainedSnapshot.absolutePath, retainedSnapshot.lastAccessed);
+        }
+        lastAccessed.keySet().retainAll(retainedPaths);
+
+        if (retainedEntries <= maximumRetainedEntries) {
+            return root;
+        }
+        retainedSnapshots.sort(Comparator.comparingLong(RetainedSnapshot::getLastAccessed));
+        SnapshotHierarchy newRoot = root;
+        for (RetainedSnapshot retainedSnapshot : retainedSnapshots) {
+            if (retainedEntries <= maximumRetainedEntries) {
+                break;
+            }
+            newRoot = newRoot.invalidate(retainedSnapshot.absolutePath, diffListener);
+            lastAccessed.remove(retainedSnapshot.absolutePath);
+            retainedEntries -= retainedSnapshot.entries;
+            evictedEntries += retainedSnapshot.entries;
+        }
+        LOGGER.info("Evicted {} entries from the virtual file system to retain at most {} entries", evictedEntries, maximumRetainedEntries);
+        return newRoot;
+    }
+
+    /**
+     * The number of entries retained after the last eviction.
+     */
+    public int getRetainedEntries() {
+        return retainedEntries;
+    }
+
+    /**
+     * The number of entries removed by the last eviction.
+     */
+    public int getEvictedEntries() {
+        return evictedEntries;
+    }
+
+    private static int countEntries(CompleteFileSystemLocationSnapshot snapshot) {
+        int[] entries = new int[1];
+        snapshot.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            public boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                entries[0]++;
+                return true;
+            }
+
+            @Override
+            public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                entries[0]++;
+            }
+
+            @Override
+            public void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        });
+        return entries[0];
+    }
+
+    private static class RetainedSnapshot {
+        private final String absolutePath;
+        private final int entries;
+        private final long lastAccessed;
+
+        public RetainedSnapshot(String absolutePath, int entries, long lastAccessed) {
+            this.absolutePath = absolutePath;
+            this.entries = entries;
+            this.lastAccessed = lastAccessed;
+        }
+
+        public long getLastAccessed() {
+            return lastAccessed;
+        }
+    }
+}
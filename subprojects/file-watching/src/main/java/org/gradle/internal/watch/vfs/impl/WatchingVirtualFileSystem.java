@@ -25,6 +25,7 @@
 import org.gradle.internal.snapshot.FileSystemNode;
 import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.vfs.impl.VfsRootReference;
+import org.gradle.internal.vfs.impl.VirtualFileSystemImage;
 import org.gradle.internal.watch.WatchingNotSupportedException;
 import org.gradle.internal.watch.registry.FileWatcherRegistry;
 import org.gradle.internal.watch.registry.FileWatcherRegistryFactory;
@@ -37,11 +38,14 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 
@@ -54,21 +58,42 @@ public class WatchingVirtualFileSystem implements BuildLifecycleAwareVirtualFile
     private final VfsRootReference rootReference;
     private final DaemonDocumentationIndex daemonDocumentationIndex;
     private final LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild;
+    private final VirtualFileSystemImage image;
+    private final SnapshotRetentionBudget retentionBudget;
     private final Set<File> watchableHierarchies = new HashSet<>();
 
     private FileWatcherRegistry watchRegistry;
     private Exception reasonForNotWatchingFiles;
+    private boolean imageRestored;
 
     public WatchingVirtualFileSystem(
         FileWatcherRegistryFactory watcherRegistryFactory,
         VfsRootReference rootReference,
         DaemonDocumentationIndex daemonDocumentationIndex,
         LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild
+    ) {
+        this(watcherRegistryFactory, rootReference, daemonDocumentationIndex, locationsWrittenByCurrentBuild, null, null);
+    }
+
+    /**
+     * @param image the image to restore the virtual file system from when starting to watch for the first time,
+     * and to write the virtual file system to when the daemon stops, or {@code null} when the virtual file system is not persisted.
+     * @param retentionBudget the budget for the entries retained between builds, or {@code null} when the retained entries are not limited.
+     */
+    public WatchingVirtualFileSystem(
+        FileWatcherRegistryFactory watcherRegistryFactory,
+        VfsRootReference rootReference,
+        DaemonDocumentationIndex daemonDocumentationIndex,
+        LocationsWrittenByCurrentBuild locationsWrittenByCurrentBuild,
+        @Nullable VirtualFileSystemImage image,
+        @Nullable SnapshotRetentionBudget retentionBudget
     ) {
         this.watcherRegistryFactory = watcherRegistryFactory;
         this.rootReference = rootReference;
         this.daemonDocumentationIndex = daemonDocumentationIndex;
         this.locationsWrittenByCurrentBuild = locationsWrittenByCurrentBuild;
+        this.image = image;
+        this.retentionBudget = retentionBudget;
     }
 
     @Override
@@ -76,6 +101,13 @@ public SnapshotHierarchy getRoot() {
         return rootReference.getRoot();
     }
 
+    @Override
+    public void locationAccessed(String absolutePath) {
+        if (retentionBudget != null) {
+            retentionBudget.locationAccessed(absolutePath);
+        }
+    }
+
     @Override
     public void update(UpdateFunction updateFunction) {
         rootReference.update(currentRoot -> updateRootNotifyingWatchers(currentRoot, updateFunction));
@@ -105,7 +137,7 @@ public SnapshotHierarchy call(BuildOperationContext context) {
                     if (watchRegistry == null) {
                         context.setStatus("Starting file system watching");
                         startWatching(currentRoot);
-                        newRoot = currentRoot.empty();
+                        newRoot = restoreImage(currentRoot.empty());
                         statisticsSinceLastBuild = null;
                     } else {
                         FileWatcherRegistry.FileWatchingStatistics statistics = watchRegistry.getAndResetStatistics();
@@ -199,11 +231,20 @@ public SnapshotHierarchy call(BuildOperationContext context) {
                         } else {
                             newRoot = withWatcherChangeErrorHandling(currentRoot, () -> watchRegistry.buildFinished(currentRoot, maximumNumberOfWatchedHierarchies));
                         }
-                        statisticsDuringBuild = new DefaultFileSystemWatchingStatistics(statistics, newRoot);
+                        int evictedEntries = 0;
+                        if (retentionBudget != null && watchRegistry != null) {
+                            // Unregisters the watches for the evicted snapshots
+                            newRoot = updateRootNotifyingWatchers(newRoot, retentionBudget::evictLeastRecentlyAccessed);
+                            evictedEntries = retentionBudget.getEvictedEntries();
+                        }
+                        statisticsDuringBuild = new DefaultFileSystemWatchingStatistics(statistics, newRoot, evictedEntries);
                         if (vfsLogging == VfsLogging.VERBOSE) {
                             LOGGER.warn("Received {} file system events during the current build while watching {} hierarchies",
                                 statisticsDuringBuild.getNumberOfReceivedEvents(),
                                 statisticsDuringBuild.getNumberOfWatchedHierarchies());
+                            LOGGER.warn("Coalesced {} file system events, the watcher overflowed {} times",
+                                statisticsDuringBuild.getNumberOfCoalescedEvents(),
+                                statisticsDuringBuild.getNumberOfOverflows());
                             LOGGER.warn("Virtual file system retains information about {} files, {} directories and {} missing files until next build",
                                 statisticsDuringBuild.getRetainedRegularFiles(),
                                 statisticsDuringBuild.getRetainedDirectories(),
@@ -251,11 +292,24 @@ private void startWatching(SnapshotHierarchy currentRoot) {
             watchRegistry = watcherRegistryFactory.createFileWatcherRegistry(new FileWatcherRegistry.ChangeHandler() {
                 @Override
                 public void handleChange(FileWatcherRegistry.Type type, Path path) {
+                    handleChanges(Collections.singletonMap(path, type));
+                }
+
+                @Override
+                public void handleChanges(Map<Path, FileWatcherRegistry.Type> changes) {
                     try {
-                        String absolutePath = path.toString();
-                        if (!locationsWrittenByCurrentBuild.wasLocationWritten(absolutePath)) {
-                            update((root, diffListener) -> root.invalidate(absolutePath, new VfsChangeLoggingNodeDiffListener(type, path, diffListener)));
-                        }
+                        // Invalidate all the changed locations in a single update of the root
+                        update((root, diffListener) -> {
+                            SnapshotHierarchy newRoot = root;
+                            for (Map.Entry<Path, FileWatcherRegistry.Type> change : changes.entrySet()) {
+                                Path path = change.getKey();
+                                String absolutePath = path.toString();
+                                if (!locationsWrittenByCurrentBuild.wasLocationWritten(absolutePath)) {
+                                    newRoot = newRoot.invalidate(absolutePath, new VfsChangeLoggingNodeDiffListener(change.getValue(), path, diffListener));
+                                }
+                            }
+                            return newRoot;
+                        });
                     } catch (Exception e) {
                         LOGGER.error("Error while processing file events", e);
                         stopWatchingAndInvalidateHierarchy();
@@ -374,9 +428,24 @@ private boolean hasDroppedStateBecauseOfErrorsReceivedWhileWatching(FileWatcherR
         return false;
     }
 
+    /**
+     * Restores the image once per daemon, after watching has started, so that changes after validating the image are not missed.
+     */
+    private SnapshotHierarchy restoreImage(SnapshotHierarchy emptyRoot) {
+        if (image == null || imageRestored || watchRegistry == null) {
+            return emptyRoot;
+        }
+        imageRestored = true;
+        return updateRootNotifyingWatchers(emptyRoot, image::restore);
+    }
+
     @Override
     public void close() {
         rootReference.update(currentRoot -> {
+            // Only a watched file system has been kept up-to-date since the last build
+            if (image != null && watchRegistry != null) {
+                image.write(currentRoot);
+            }
             closeUnderLock();
             return currentRoot.empty();
         });
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.registry.impl
+
+import spock.lang.Specification
+
+import java.nio.file.Paths
+
+import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.CREATED
+import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.INVALIDATED
+import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.MODIFIED
+import static org.gradle.internal.watch.registry.FileWatcherRegistry.Type.REMOVED
+
+class FileEventCoalescerTest extends Specification {
+    def coalescer = new FileEventCoalescer(3)
+
+    def "merges repeated events for the same path"() {
+        when:
+        coalescer.changed(MODIFIED, path("root/a.txt"))
+        coalescer.changed(MODIFIED, path("root/a.txt"))
+        coalescer.changed(CREATED, path("root/b.txt"))
+        coalescer.changed(REMOVED, path("root/b.txt"))
+        def changes = coalescer.drain()
+
+        then:
+        changes.changes == [(path("root/a.txt")): MODIFIED, (path("root/b.txt")): INVALIDATED]
+        changes.numberOfCoalescedEvents == 2
+    }
+
+    def "invalidates the whole directory when it has too many changes"() {
+        when:
+        4.times { coalescer.changed(MODIFIED, path("root/dir/file${it}.txt")) }
+        coalescer.changed(MODIFIED, path("root/dir/file4.txt"))
+        coalescer.changed(MODIFIED, path("root/dir/sub/nested.txt"))
+        coalescer.changed(MODIFIED, path("root/other.txt"))
+        def changes = coalescer.drain()
+
+        then:
+        changes.changes == [(path("root/dir")): INVALIDATED, (path("root/other.txt")): MODIFIED]
+        changes.numberOfCoalescedEvents == 5
+    }
+
+    def "an overflow for a directory covers the changes below it"() {
+        when:
+        coalescer.changed(MODIFIED, path("root/dir/a.txt"))
+        coalescer.invalidated(path("root/dir"))
+        coalescer.changed(MODIFIED, path("root/dir/b.txt"))
+        def changes = coalescer.drain()
+
+        then:
+        changes.changes == [(path("root/dir")): INVALIDATED]
+        changes.numberOfCoalescedEvents == 2
+    }
+
+    def "is reset after draining"() {
+        coalescer.changed(MODIFIED, path("root/a.txt"))
+
+        when:
+        coalescer.drain()
+
+        then:
+        coalescer.empty
+        coalescer.numberOfChanges == 0
+        coalescer.drain().changes.isEmpty()
+    }
+
+    private static path(String relativePath) {
+        Paths.get("/", relativePath)
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.watch.vfs.impl
+
+import org.gradle.internal.file.FileMetadata.AccessType
+import org.gradle.internal.file.impl.DefaultFileMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.CaseSensitivity
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileSystemNode
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
+import spock.lang.Specification
+
+class SnapshotRetentionBudgetTest extends Specification {
+    def root = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE)
+    def removedNodes = []
+    def diffListener = new SnapshotHierarchy.NodeDiffListener() {
+        @Override
+        void nodeRemoved(FileSystemNode node) {
+            removedNodes << node
+        }
+
+        @Override
+        void nodeAdded(FileSystemNode node) {
+        }
+    }
+
+    def "retains everything within the budget"() {
+        def budget = new SnapshotRetentionBudget(10)
+        root = store(root, directory("/first", 3), directory("/second", 3))
+
+        when:
+        def newRoot = budget.evictLeastRecentlyAccessed(root, diffListener)
+
+        then:
+        newRoot.is(root)
+        budget.retainedEntries == 8
+        budget.evictedEntries == 0
+        removedNodes.empty
+    }
+
+    def "evicts the least recently accessed snapshots when over budget"() {
+        def budget = new SnapshotRetentionBudget(10)
+        root = store(root, directory("/first", 3), directory("/second", 3))
+        budget.evictLeastRecentlyAccessed(root, diffListener)
+
+        when:
+        budget.locationAccessed(path("/first/file1"))
+        root = store(root, directory("/third", 3))
+        def newRoot = budget.evictLeastRecentlyAccessed(root, diffListener)
+
+        then:
+        !newRoot.getSnapshot(path("/second")).present
+        newRoot.getSnapshot(path("/first")).present
+        newRoot.getSnapshot(path("/third")).present
+        budget.retainedEntries == 8
+        budget.evictedEntries == 4
+    }
+
+    def "forgets about snapshots which have been invalidated"() {
+        def budget = new SnapshotRetentionBudget(4)
+        root = store(root, directory("/first", 3))
+        budget.evictLeastRecentlyAccessed(root, diffListener)
+        root = root.invalidate(path("/first"), diffListener)
+        root = store(root, directory("/second", 3))
+        budget.evictLeastRecentlyAccessed(root, diffListener)
+
+        when:
+        root = store(root, directory("/first", 3))
+        def newRoot = budget.evictLeastRecentlyAccessed(root, diffListener)
+
+        then:
+        budget.evictedEntries == 4
+        newRoot.getSnapshot(path("/first")).present
+        !newRoot.getSnapshot(path("/second")).present
+    }
+
+    private SnapshotHierarchy store(SnapshotHierarchy root, CompleteFileSystemLocationSnapshot... snapshots) {
+        snapshots.inject(root) { current, snapshot -> current.store(snapshot.absolutePath, snapshot, diffListener) }
+    }
+
+    private static CompleteDirectorySnapshot directory(String relativePath, int fileCount) {
+        def absolutePath = path(relativePath)
+        def children = (1..fileCount).collect {
+            new RegularFileSnapshot("${absolutePath}${File.separator}file${it}", "file${it}", HashCode.fromInt(it), DefaultFileMetadata.file(it, it, AccessType.DIRECT))
+        }
+        new CompleteDirectorySnapshot(absolutePath, new File(absolutePath).name, children, HashCode.fromInt(fileCount), AccessType.DIRECT)
+    }
+
+    private static String path(String path) {
+        new File(path).absolutePath
+    }
+}
@@ -16,8 +16,10 @@
 
 package org.gradle.internal.watch.vfs.impl
 
+import org.gradle.internal.file.FileMetadata.AccessType
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.snapshot.CaseSensitivity
+import org.gradle.internal.snapshot.MissingFileSnapshot
 import org.gradle.internal.snapshot.SnapshotHierarchy
 import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
 import org.gradle.internal.vfs.impl.VfsRootReference
@@ -150,4 +152,29 @@ class WatchingVirtualFileSystemTest extends Specification {
         then:
         1 * watcherRegistry.registerWatchableHierarchy(newWatchableHierarchy, _)
     }
+
+    def "evicts snapshots over the retention budget at the end of the build and updates the watchers"() {
+        def budgetedVirtualFileSystem = new WatchingVirtualFileSystem(
+            watcherRegistryFactory,
+            rootReference,
+            daemonDocumentationIndex,
+            locationsUpdatedByCurrentBuild,
+            null,
+            new SnapshotRetentionBudget(1)
+        )
+        def first = new MissingFileSnapshot(new File("first").absolutePath, AccessType.DIRECT)
+        def second = new MissingFileSnapshot(new File("second").absolutePath, AccessType.DIRECT)
+
+        when:
+        budgetedVirtualFileSystem.afterBuildStarted(true, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner)
+        rootReference.update { root -> root.store(first.absolutePath, first, SnapshotHierarchy.NodeDiffListener.NOOP).store(second.absolutePath, second, SnapshotHierarchy.NodeDiffListener.NOOP) }
+        budgetedVirtualFileSystem.beforeBuildFinished(true, VfsLogging.NORMAL, WatchLogging.NORMAL, buildOperationRunner, Integer.MAX_VALUE)
+        then:
+        1 * watcherRegistryFactory.createFileWatcherRegistry(_) >> watcherRegistry
+        1 * watcherRegistry.getAndResetStatistics() >> Stub(FileWatcherRegistry.FileWatchingStatistics)
+        1 * watcherRegistry.buildFinished(_, Integer.MAX_VALUE) >> { SnapshotHierarchy root, int maximum -> root }
+        1 * watcherRegistry.virtualFileSystemContentsChanged({ it.size() == 1 }, [], _)
+
+        rootReference.getRoot().getSnapshot(first.absolutePath).present != rootReference.getRoot().getSnapshot(second.absolutePath).present
+    }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import java.util.List;
+
+/**
+ * A {@link FileHasher} which can hash many files at once. This allows looking up and storing the hashes of the files together,
+ * and hashing the files concurrently.
+ */
+public interface BatchFileHasher extends FileHasher {
+    /**
+     * Returns the hashes of the current content of the given files, assuming the given file metadata, in the order of the given files.
+     * The hash of a file which cannot be read is {@code null}.
+     */
+    List<HashCode> hash(List<FileToHash> files);
+}
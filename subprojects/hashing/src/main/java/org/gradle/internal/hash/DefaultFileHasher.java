@@ -15,30 +15,95 @@
  */
 package org.gradle.internal.hash;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 public class DefaultFileHasher implements FileHasher {
+    /**
+     * Files of at least this many bytes are hashed by reading them through a memory mapping instead of a stream.
+     * Large file hashing is disabled when the property is not set.
+     */
+    public static final String LARGE_FILE_THRESHOLD_PROPERTY = "org.gradle.internal.hash.large-file-threshold";
+
+    /**
+     * When set, the chunks of large files are read ahead in parallel while the file is hashed.
+     * The hash is the same as the hash of the streamed content.
+     */
+    public static final String PARALLEL_READ_PROPERTY = "org.gradle.internal.hash.parallel-read";
+
+    private static final int MAPPING_SIZE = 64 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNKS_TO_READ_AHEAD = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final StreamHasher streamHasher;
+    private final long largeFileThreshold;
+    private final Executor readAheadExecutor;
 
     public DefaultFileHasher(StreamHasher streamHasher) {
+        this(streamHasher, null);
+    }
+
+    /**
+     * Creates a file hasher that hashes large files via memory mappings, as configured by {@link #LARGE_FILE_THRESHOLD_PROPERTY}.
+     * When {@link #PARALLEL_READ_PROPERTY} is set as well, chunks of large files are read ahead using the given executor.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, @Nullable Executor executor) {
+        this(
+            streamHasher,
+            Long.getLong(LARGE_FILE_THRESHOLD_PROPERTY, -1L),
+            System.getProperty(PARALLEL_READ_PROPERTY) != null ? executor : null
+        );
+    }
+
+    /**
+     * @param largeFileThreshold the minimum size of files to hash via memory mappings, or a negative value to always stream the content.
+     * @param readAheadExecutor the executor to read ahead chunks of large files with, or {@code null} to read large files on the hashing thread only.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, long largeFileThreshold, @Nullable Executor readAheadExecutor) {
         this.streamHasher = streamHasher;
+        // Only the default stream hasher can reproduce its hash from a memory mapping
+        this.largeFileThreshold = streamHasher instanceof DefaultStreamHasher ? largeFileThreshold : -1;
+        this.readAheadExecutor = readAheadExecutor;
     }
 
     @Override
     public HashCode hash(File file) {
+        return hash(file, largeFileThreshold < 0 ? 0 : file.length());
+    }
+
+    @Override
+    public HashCode hash(File file, long length, long lastModified) {
+        return hash(file, length);
+    }
+
+    private HashCode hash(File file, long length) {
         InputStream inputStream;
         try {
             inputStream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
         }
         try {
+            if (largeFileThreshold >= 0 && length >= largeFileThreshold) {
+                return hashLargeFile(((FileInputStream) inputStream).getChannel(), (DefaultStreamHasher) streamHasher);
+            }
             return streamHasher.hash(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
         } finally {
             try {
                 inputStream.close();
@@ -48,8 +113,76 @@ public HashCode hash(File file) {
         }
     }
 
-    @Override
-    public HashCode hash(File file, long length, long lastModified) {
-        return hash(file);
+    private HashCode hashLargeFile(FileChannel channel, DefaultStreamHasher streamHasher) throws IOException {
+        long size = channel.size();
+        PrimitiveHasher hasher = streamHasher.newContentHasher();
+        if (readAheadExecutor != null && size > CHUNK_SIZE) {
+            hashChunksReadInParallel(channel, size, hasher);
+        } else {
+            hashRegion(channel, 0, size, hasher, new byte[BUFFER_SIZE]);
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Hashes the chunks of the file in order, while the executor loads the following chunks into memory.
+     */
+    private void hashChunksReadInParallel(final FileChannel channel, final long size, PrimitiveHasher hasher) throws IOException {
+        Deque<FutureTask<MappedByteBuffer>> chunks = new ArrayDeque<FutureTask<MappedByteBuffer>>();
+        long nextChunkStart = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (nextChunkStart < size || !chunks.isEmpty()) {
+            while (nextChunkStart < size && chunks.size() < CHUNKS_TO_READ_AHEAD) {
+                final long chunkStart = nextChunkStart;
+                final long chunkSize = Math.min(CHUNK_SIZE, size - chunkStart);
+                FutureTask<MappedByteBuffer> chunk = new FutureTask<MappedByteBuffer>(new Callable<MappedByteBuffer>() {
+                    @Override
+                    public MappedByteBuffer call() throws IOException {
+                        return channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize).load();
+                    }
+                });
+                readAheadExecutor.execute(chunk);
+                chunks.add(chunk);
+                nextChunkStart += chunkSize;
+            }
+            FutureTask<MappedByteBuffer> chunk = chunks.remove();
+            // Read chunks not yet picked up by the executor on this thread, so hashing never waits for a busy executor
+            chunk.run();
+            MappedByteBuffer mapping = getChunk(chunk);
+            while (mapping.hasRemaining()) {
+                int length = Math.min(buffer.length, mapping.remaining());
+                mapping.get(buffer, 0, length);
+                hasher.putBytes(buffer, 0, length);
+            }
+        }
+    }
+
+    private static MappedByteBuffer getChunk(FutureTask<MappedByteBuffer> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void hashRegion(FileChannel channel, long start, long end, PrimitiveHasher hasher, byte[] buffer) throws IOException {
+        for (long position = start; position < end; position += MAPPING_SIZE) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING_SIZE, end - position));
+            while (mapping.hasRemaining()) {
+                int length = Math.min(buffer.length, mapping.remaining());
+                mapping.get(buffer, 0, length);
+                hasher.putBytes(buffer, 0, length);
+            }
+        }
     }
 }
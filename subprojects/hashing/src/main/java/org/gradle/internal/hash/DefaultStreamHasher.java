@@ -28,13 +28,22 @@ public class DefaultStreamHasher implements StreamHasher {
     private static final HashCode SIGNATURE = Hashing.signature(DefaultStreamHasher.class);
 
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final HashFunction hashFunction;
+
+    public DefaultStreamHasher() {
+        this(Hashing.contentFunction());
+    }
+
+    public DefaultStreamHasher(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream, ByteStreams.nullOutputStream());
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException("Failed to create hash for file content.", e);
         }
     }
 
@@ -46,8 +55,7 @@ public HashCode hashCopy(InputStream inputStream, OutputStream outputStream) thr
     private HashCode doHash(InputStream inputStream, OutputStream outputStream) throws IOException {
         byte[] buffer = takeBuffer();
         try {
-            PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
-            hasher.putHash(SIGNATURE);
+            PrimitiveHasher hasher = newContentHasher();
             while (true) {
                 int nread = inputStream.read(buffer);
                 if (nread < 0) {
@@ -62,6 +70,19 @@ private HashCode doHash(InputStream inputStream, OutputStream outputStream) thro
         }
     }
 
+    /**
+     * Creates a hasher that produces the same hash as this stream hasher when fed the same content.
+     */
+    PrimitiveHasher newContentHasher() {
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        hasher.putHash(SIGNATURE);
+        return hasher;
+    }
+
+    HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
     private void returnBuffer(byte[] buffer) {
         // Retain buffer if there is capacity in the queue, otherwise discard
         buffers.offer(buffer);
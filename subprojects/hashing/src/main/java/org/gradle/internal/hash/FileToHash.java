@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import java.io.File;
+
+/**
+ * A file to hash via a {@link BatchFileHasher}, together with its metadata.
+ */
+public class FileToHash {
+    private final File file;
+    private final long length;
+    private final long lastModified;
+
+    public FileToHash(File file, long length, long lastModified) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -21,26 +21,32 @@
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * An immutable hash code. Must be 4-255 bytes long.
  * Inspired by the Google Guava project – https://github.com/google/guava.
+ *
+ * <p>128-bit and 160-bit hash codes, like MD5 and SHA-1 hashes, are stored in primitive fields instead of a byte array,
+ * so they can be compared, hashed and serialized without allocating or dereferencing an array.</p>
  */
-public class HashCode implements Serializable, Comparable<HashCode> {
+public abstract class HashCode implements Serializable, Comparable<HashCode> {
     private static final int MIN_NUMBER_OF_BYTES = 4;
     private static final int MAX_NUMBER_OF_BYTES = 255;
     private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
-    private final byte[] bytes;
-
-    private long hashCode;
-
-    private HashCode(byte[] bytes) {
-        this.bytes = bytes;
+    HashCode() {
     }
 
     static HashCode fromBytesNoCopy(byte[] bytes) {
-        return new HashCode(bytes);
+        switch (bytes.length) {
+            case 16:
+                return new HashCode128(bigEndianLong(bytes, 0), bigEndianLong(bytes, 8));
+            case 20:
+                return new HashCode160(bigEndianLong(bytes, 0), bigEndianLong(bytes, 8), bigEndianInt(bytes, 16));
+            default:
+                return new ByteArrayBackedHashCode(bytes);
+        }
     }
 
     public static HashCode fromBytes(byte[] bytes) {
@@ -51,6 +57,20 @@ public static HashCode fromBytes(byte[] bytes) {
         return fromBytesNoCopy(bytes.clone());
     }
 
+    /**
+     * Creates a 128-bit hash code from its bytes, given as two big-endian longs.
+     */
+    public static HashCode fromLongs(long bits1, long bits2) {
+        return new HashCode128(bits1, bits2);
+    }
+
+    /**
+     * Creates a 160-bit hash code from its bytes, given as two big-endian longs and a big-endian int.
+     */
+    public static HashCode fromLongs(long bits1, long bits2, int bits3) {
+        return new HashCode160(bits1, bits2, bits3);
+    }
+
     public static HashCode fromInt(int value) {
         byte[] bytes = Ints.toByteArray(value); // Big-endian
         return fromBytesNoCopy(bytes);
@@ -88,25 +108,30 @@ private static int decode(char ch) {
         throw new IllegalArgumentException("Illegal hexadecimal character: " + ch);
     }
 
-    public int length() {
-        return bytes.length;
-    }
+    public abstract int length();
 
     public byte[] toByteArray() {
-        return bytes.clone();
+        return getBytes().clone();
+    }
+
+    /**
+     * Returns the 8 bytes starting at the given offset as a big-endian long.
+     */
+    public long getLong(int offset) {
+        return bigEndianLong(getBytes(), offset);
+    }
+
+    /**
+     * Returns the 4 bytes starting at the given offset as a big-endian int.
+     */
+    public int getInt(int offset) {
+        return bigEndianInt(getBytes(), offset);
     }
 
     @Override
     public int hashCode() {
-        if (hashCode == 0) {
-            hashCode = (bytes[0] & 0xFF)
-                | ((bytes[1] & 0xFF) << 8)
-                | ((bytes[2] & 0xFF) << 16)
-                | ((bytes[3] & 0xFF) << 24)
-                // Make sure it's always > 0 but without affecting the lower 32 bits
-                | (1L << 32);
-        }
-        return (int) hashCode;
+        // The first four bytes in little-endian order
+        return Integer.reverseBytes(getInt(0));
     }
 
     @Override
@@ -114,31 +139,17 @@ public boolean equals(@Nullable Object obj) {
         if (obj == this) {
             return true;
         }
-
-        if (obj == null || obj.getClass() != HashCode.class) {
+        // Hash codes of the same length always have the same representation
+        if (obj == null || obj.getClass() != getClass()) {
             return false;
         }
-
-        byte[] a = bytes;
-        byte[] b = ((HashCode) obj).bytes;
-        int length = a.length;
-
-        if (b.length != length) {
-            return false;
-        }
-
-        for (int i = 0; i < length; i++) {
-            if (a[i] != b[i]) {
-                return false;
-            }
-        }
-
-        return true;
+        return Arrays.equals(getBytes(), ((HashCode) obj).getBytes());
     }
 
     @Override
     public int compareTo(@Nonnull HashCode o) {
-        byte[] bytes2 = o.bytes;
+        byte[] bytes = getBytes();
+        byte[] bytes2 = o.getBytes();
         int result;
         int len1 = bytes.length;
         int len2 = bytes2.length;
@@ -154,6 +165,7 @@ public int compareTo(@Nonnull HashCode o) {
 
     @Override
     public String toString() {
+        byte[] bytes = getBytes();
         StringBuilder sb = new StringBuilder(2 * bytes.length);
         for (byte b : bytes) {
             sb.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
@@ -161,8 +173,262 @@ public String toString() {
         return sb.toString();
     }
 
-    // Package private accessor used by MessageDigestHasher.putHash for performance reasons
-    byte[] getBytes() {
-        return bytes;
+    /**
+     * Returns the bytes of the hash code. The returned array must not be modified, as it may be the internal representation of the hash code.
+     */
+    // Package private accessor used by the hashers for performance reasons
+    abstract byte[] getBytes();
+
+    /**
+     * Feeds the bytes of this hash code to the given hasher, which must write ints and longs in little-endian order.
+     */
+    void appendToHasher(PrimitiveHasher hasher) {
+        hasher.putBytes(getBytes());
+    }
+
+    private static long bigEndianLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL) << 56
+            | (bytes[offset + 1] & 0xffL) << 48
+            | (bytes[offset + 2] & 0xffL) << 40
+            | (bytes[offset + 3] & 0xffL) << 32
+            | (bytes[offset + 4] & 0xffL) << 24
+            | (bytes[offset + 5] & 0xffL) << 16
+            | (bytes[offset + 6] & 0xffL) << 8
+            | bytes[offset + 7] & 0xffL;
+    }
+
+    private static int bigEndianInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24
+            | (bytes[offset + 1] & 0xff) << 16
+            | (bytes[offset + 2] & 0xff) << 8
+            | bytes[offset + 3] & 0xff;
+    }
+
+    private static void putBigEndian(byte[] bytes, int offset, long value, int numberOfBytes) {
+        for (int i = 0; i < numberOfBytes; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * (numberOfBytes - 1 - i)));
+        }
+    }
+
+    private static void appendHex(StringBuilder sb, long value, int numberOfBytes) {
+        for (int shift = numberOfBytes * 8 - 4; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    /**
+     * Compares two groups of bytes given as big-endian longs in the same way as comparing the signed bytes one by one.
+     */
+    private static int compareSignedBytes(long a, long b) {
+        // Flipping the sign bit of all bytes but the first turns the comparison of signed bytes into a comparison of signed longs
+        long x = a ^ 0x0080808080808080L;
+        long y = b ^ 0x0080808080808080L;
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    private static class ByteArrayBackedHashCode extends HashCode {
+        private final byte[] bytes;
+
+        ByteArrayBackedHashCode(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    private static class HashCode128 extends HashCode {
+        private final long bits1;
+        private final long bits2;
+
+        HashCode128(long bits1, long bits2) {
+            this.bits1 = bits1;
+            this.bits2 = bits2;
+        }
+
+        @Override
+        public int length() {
+            return 16;
+        }
+
+        @Override
+        public long getLong(int offset) {
+            if (offset == 0) {
+                return bits1;
+            }
+            if (offset == 8) {
+                return bits2;
+            }
+            return super.getLong(offset);
+        }
+
+        @Override
+        public int getInt(int offset) {
+            return offset == 0 ? (int) (bits1 >>> 32) : super.getInt(offset);
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return getBytes();
+        }
+
+        @Override
+        byte[] getBytes() {
+            byte[] bytes = new byte[16];
+            putBigEndian(bytes, 0, bits1, 8);
+            putBigEndian(bytes, 8, bits2, 8);
+            return bytes;
+        }
+
+        @Override
+        void appendToHasher(PrimitiveHasher hasher) {
+            hasher.putLong(Long.reverseBytes(bits1));
+            hasher.putLong(Long.reverseBytes(bits2));
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != HashCode128.class) {
+                return false;
+            }
+            HashCode128 other = (HashCode128) obj;
+            return bits1 == other.bits1 && bits2 == other.bits2;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.reverseBytes((int) (bits1 >>> 32));
+        }
+
+        @Override
+        public int compareTo(@Nonnull HashCode o) {
+            if (o.getClass() != HashCode128.class) {
+                return super.compareTo(o);
+            }
+            HashCode128 other = (HashCode128) o;
+            int result = compareSignedBytes(bits1, other.bits1);
+            return result != 0 ? result : compareSignedBytes(bits2, other.bits2);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(32);
+            appendHex(sb, bits1, 8);
+            appendHex(sb, bits2, 8);
+            return sb.toString();
+        }
+    }
+
+    private static class HashCode160 extends HashCode {
+        private final long bits1;
+        private final long bits2;
+        private final int bits3;
+
+        HashCode160(long bits1, long bits2, int bits3) {
+            this.bits1 = bits1;
+            this.bits2 = bits2;
+            this.bits3 = bits3;
+        }
+
+        @Override
+        public int length() {
+            return 20;
+        }
+
+        @Override
+        public long getLong(int offset) {
+            if (offset == 0) {
+                return bits1;
+            }
+            if (offset == 8) {
+                return bits2;
+            }
+            return super.getLong(offset);
+        }
+
+        @Override
+        public int getInt(int offset) {
+            if (offset == 0) {
+                return (int) (bits1 >>> 32);
+            }
+            if (offset == 16) {
+                return bits3;
+            }
+            return super.getInt(offset);
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return getBytes();
+        }
+
+        @Override
+        byte[] getBytes() {
+            byte[] bytes = new byte[20];
+            putBigEndian(bytes, 0, bits1, 8);
+            putBigEndian(bytes, 8, bits2, 8);
+            putBigEndian(bytes, 16, bits3, 4);
+            return bytes;
+        }
+
+        @Override
+        void appendToHasher(PrimitiveHasher hasher) {
+            hasher.putLong(Long.reverseBytes(bits1));
+            hasher.putLong(Long.reverseBytes(bits2));
+            hasher.putInt(Integer.reverseBytes(bits3));
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != HashCode160.class) {
+                return false;
+            }
+            HashCode160 other = (HashCode160) obj;
+            return bits1 == other.bits1 && bits2 == other.bits2 && bits3 == other.bits3;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.reverseBytes((int) (bits1 >>> 32));
+        }
+
+        @Override
+        public int compareTo(@Nonnull HashCode o) {
+            if (o.getClass() != HashCode160.class) {
+                return super.compareTo(o);
+            }
+            HashCode160 other = (HashCode160) o;
+            int result = compareSignedBytes(bits1, other.bits1);
+            if (result == 0) {
+                result = compareSignedBytes(bits2, other.bits2);
+            }
+            if (result == 0) {
+                // Place the int in the upper half, so the comparison of its bytes works as for a long
+                result = compareSignedBytes((long) bits3 << 32, (long) other.bits3 << 32);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(40);
+            appendHex(sb, bits1, 8);
+            appendHex(sb, bits2, 8);
+            appendHex(sb, bits3 & 0xffffffffL, 4);
+            return sb.toString();
+        }
     }
 }
@@ -32,6 +32,13 @@
  * Inspired by the Google Guava project – https://github.com/google/guava.
  */
 public class Hashing {
+    /**
+     * Selects the hash function used for the contents of files, either {@value #DEFAULT_CONTENT_FUNCTION} or {@code murmur3}.
+     * Since the daemon is specific to a Gradle user home, the function can be chosen per Gradle user home via {@code org.gradle.jvmargs}.
+     */
+    public static final String CONTENT_FUNCTION_PROPERTY = "org.gradle.internal.hash.content-function";
+    public static final String DEFAULT_CONTENT_FUNCTION = "md5";
+
     private Hashing() {}
 
     private static final HashFunction MD5 = MessageDigestHashFunction.of("MD5");
@@ -42,8 +49,12 @@ private Hashing() {}
 
     private static final HashFunction SHA512 = MessageDigestHashFunction.of("SHA-512");
 
+    private static final HashFunction MURMUR3_128 = new Murmur3HashFunction();
+
     private static final HashFunction DEFAULT = MD5;
 
+    private static final String CONTENT_FUNCTION_NAME = System.getProperty(CONTENT_FUNCTION_PROPERTY, DEFAULT_CONTENT_FUNCTION);
+
     /**
      * Returns a new {@link Hasher} based on the default hashing implementation.
      */
@@ -138,6 +149,49 @@ public static HashFunction sha512() {
         return SHA512;
     }
 
+    /**
+     * 128-bit MurmurHash3 (x64 variant) hashing function. A fast non-cryptographic hash, compatible with Guava's {@code murmur3_128()}.
+     */
+    public static HashFunction murmur3() {
+        return MURMUR3_128;
+    }
+
+    /**
+     * The hashing function used for the contents of files, as selected by {@link #CONTENT_FUNCTION_PROPERTY}.
+     */
+    public static HashFunction contentFunction() {
+        return contentFunction(CONTENT_FUNCTION_NAME);
+    }
+
+    static HashFunction contentFunction(String name) {
+        if (DEFAULT_CONTENT_FUNCTION.equals(name)) {
+            return DEFAULT;
+        }
+        if ("murmur3".equals(name)) {
+            return MURMUR3_128;
+        }
+        throw new IllegalArgumentException(String.format("Unknown content hash function '%s' selected via %s, supported functions are md5 and murmur3.", name, CONTENT_FUNCTION_PROPERTY));
+    }
+
+    /**
+     * The name of the hashing function used for the contents of files.
+     */
+    public static String contentFunctionName() {
+        return CONTENT_FUNCTION_NAME;
+    }
+
+    /**
+     * Qualifies the name of a cache storing content hashes with the content hash function,
+     * so hashes created by different functions are never mixed. The name is unchanged for the default function.
+     */
+    public static String qualifyWithContentFunction(String cacheName) {
+        return qualifyWithContentFunction(cacheName, CONTENT_FUNCTION_NAME);
+    }
+
+    static String qualifyWithContentFunction(String cacheName, String contentFunctionName) {
+        return DEFAULT_CONTENT_FUNCTION.equals(contentFunctionName) ? cacheName : cacheName + "-" + contentFunctionName;
+    }
+
     private static abstract class MessageDigestHashFunction implements HashFunction {
         private final int hexDigits;
 
@@ -304,7 +358,7 @@ public void putString(CharSequence value) {
 
         @Override
         public void putHash(HashCode hashCode) {
-            putBytes(hashCode.getBytes());
+            hashCode.appendToHasher(this);
         }
 
         @Override
@@ -315,6 +369,211 @@ public HashCode hash() {
         }
     }
 
+    private static class Murmur3HashFunction implements HashFunction {
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            return new Murmur3Hasher();
+        }
+
+        @Override
+        public Hasher newHasher() {
+            return new DefaultHasher(newPrimitiveHasher());
+        }
+
+        @Override
+        public HashCode hashBytes(byte[] bytes) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putBytes(bytes);
+            return hasher.hash();
+        }
+
+        @Override
+        public HashCode hashString(CharSequence string) {
+            PrimitiveHasher hasher = newPrimitiveHasher();
+            hasher.putString(string);
+            return hasher.hash();
+        }
+
+        @Override
+        public int getHexDigits() {
+            return 32;
+        }
+    }
+
+    /**
+     * Streaming implementation of the x64 128-bit variant of MurmurHash3 with a seed of 0.
+     */
+    private static class Murmur3Hasher implements PrimitiveHasher {
+        private static final int BLOCK_SIZE = 16;
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        private int buffered;
+        private long length;
+        private long h1;
+        private long h2;
+        private boolean done;
+
+        @Override
+        public void putByte(byte b) {
+            checkNotDone();
+            buffer[buffered++] = b;
+            length++;
+            if (buffered == BLOCK_SIZE) {
+                processBlock(buffer, 0);
+                buffered = 0;
+            }
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            checkNotDone();
+            length += len;
+            int offset = off;
+            int remaining = len;
+            if (buffered > 0) {
+                int toCopy = Math.min(BLOCK_SIZE - buffered, remaining);
+                System.arraycopy(bytes, offset, buffer, buffered, toCopy);
+                buffered += toCopy;
+                offset += toCopy;
+                remaining -= toCopy;
+                if (buffered < BLOCK_SIZE) {
+                    return;
+                }
+                processBlock(buffer, 0);
+                buffered = 0;
+            }
+            while (remaining >= BLOCK_SIZE) {
+                processBlock(bytes, offset);
+                offset += BLOCK_SIZE;
+                remaining -= BLOCK_SIZE;
+            }
+            System.arraycopy(bytes, offset, buffer, 0, remaining);
+            buffered = remaining;
+        }
+
+        @Override
+        public void putInt(int value) {
+            putLittleEndian(value, 4);
+        }
+
+        @Override
+        public void putLong(long value) {
+            putLittleEndian(value, 8);
+        }
+
+        private void putLittleEndian(long value, int byteCount) {
+            for (int i = 0; i < byteCount; i++) {
+                putByte((byte) (value >>> (8 * i)));
+            }
+        }
+
+        @Override
+        public void putDouble(double value) {
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            putByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            putBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            hashCode.appendToHasher(this);
+        }
+
+        private void processBlock(byte[] bytes, int offset) {
+            long k1 = getLittleEndianLong(bytes, offset);
+            long k2 = getLittleEndianLong(bytes, offset + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        private static long getLittleEndianLong(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xffL)
+                | (bytes[offset + 1] & 0xffL) << 8
+                | (bytes[offset + 2] & 0xffL) << 16
+                | (bytes[offset + 3] & 0xffL) << 24
+                | (bytes[offset + 4] & 0xffL) << 32
+                | (bytes[offset + 5] & 0xffL) << 40
+                | (bytes[offset + 6] & 0xffL) << 48
+                | (bytes[offset + 7] & 0xffL) << 56;
+        }
+
+        private static long mixK1(long k1) {
+            return Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+
+        private static long mixK2(long k2) {
+            return Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private void checkNotDone() {
+            if (done) {
+                throw new IllegalStateException("Cannot reuse hasher!");
+            }
+        }
+
+        @Override
+        public HashCode hash() {
+            checkNotDone();
+            done = true;
+            if (buffered > 0) {
+                long k1 = 0;
+                long k2 = 0;
+                for (int i = buffered - 1; i >= 8; i--) {
+                    k2 = k2 << 8 | (buffer[i] & 0xffL);
+                }
+                for (int i = Math.min(buffered, 8) - 1; i >= 0; i--) {
+                    k1 = k1 << 8 | (buffer[i] & 0xffL);
+                }
+                h1 ^= mixK1(k1);
+                h2 ^= mixK2(k2);
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            byte[] bytes = new byte[BLOCK_SIZE];
+            for (int i = 0; i < 8; i++) {
+                bytes[i] = (byte) (h1 >>> (8 * i));
+                bytes[i + 8] = (byte) (h2 >>> (8 * i));
+            }
+            return HashCode.fromBytesNoCopy(bytes);
+        }
+    }
+
     private static class DefaultHasher implements Hasher {
         private final PrimitiveHasher hasher;
         private String invalidReason;
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def streamHasher = new DefaultStreamHasher()
+    def executor = Executors.newFixedThreadPool(2)
+
+    def cleanup() {
+        executor.shutdown()
+    }
+
+    def "hashing a large file via memory mapping gives the same hash as streaming it"() {
+        def file = randomFile(9 * 1024 * 1024 + 17)
+
+        expect:
+        new DefaultFileHasher(streamHasher, 0, null).hash(file) == new DefaultFileHasher(streamHasher, -1, null).hash(file)
+    }
+
+    def "files below the threshold are streamed"() {
+        def file = randomFile(1000)
+
+        expect:
+        new DefaultFileHasher(streamHasher, 1001, executor).hash(file) == new DefaultFileHasher(streamHasher, -1, null).hash(file)
+    }
+
+    def "reading chunks of a large file ahead in parallel gives the same hash as streaming it"() {
+        def file = randomFile(41 * 1024 * 1024 + 17)
+        def hasher = new DefaultFileHasher(streamHasher, 0, executor)
+
+        expect:
+        hasher.hash(file) == new DefaultFileHasher(streamHasher, -1, null).hash(file)
+        hasher.hash(file, file.length(), file.lastModified()) == hasher.hash(file)
+    }
+
+    def "hash changes when the content of a chunk read ahead changes"() {
+        def file = randomFile(9 * 1024 * 1024)
+        def hasher = new DefaultFileHasher(streamHasher, 0, executor)
+        def original = hasher.hash(file)
+
+        when:
+        def raf = new RandomAccessFile(file, "rw")
+        try {
+            raf.seek(5 * 1024 * 1024)
+            def value = raf.read()
+            raf.seek(5 * 1024 * 1024)
+            raf.write(value ^ 1)
+        } finally {
+            raf.close()
+        }
+
+        then:
+        hasher.hash(file) != original
+    }
+
+    private File randomFile(int length) {
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def file = tmpDir.newFile()
+        file.bytes = bytes
+        file
+    }
+}
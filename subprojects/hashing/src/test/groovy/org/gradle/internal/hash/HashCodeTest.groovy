@@ -36,6 +36,8 @@ class HashCodeTest extends Specification {
         "CAFEBABE"     | 4      | "cafebabe"     | 0xBEBAFECA | toBytes(0xCA, 0xFE, 0xBA, 0xBE)
         "abbaabba"     | 4      | "abbaabba"     | 0xBAABBAAB | toBytes([0xAB, 0xBA] * 2)
         "abbaabbaabba" | 6      | "abbaabbaabba" | 0xBAABBAAB | toBytes([0xAB, 0xBA] * 3)
+        "Ab12" * 8     | 16     | "ab12" * 8     | 0x12AB12AB | toBytes([0xAB, 0x12] * 8)
+        "Ab12" * 10    | 20     | "ab12" * 10    | 0x12AB12AB | toBytes([0xAB, 0x12] * 10)
         "aB" * 255     | 255    | "ab" * 255     | 0xABABABAB | toBytes([0xAB] * 255)
     }
 
@@ -85,6 +87,10 @@ class HashCodeTest extends Specification {
         "abcdef12"   | "abcdef12"   | true
         "abcdef12"   | "abcdef1234" | false
         "abcdef1234" | "abcdef12"   | false
+        "0f" * 16    | "0f" * 16    | true
+        "0f" * 16    | "0f" * 15 + "0e" | false
+        "0f" * 16    | "0f" * 20    | false
+        "0f" * 20    | "0f" * 19 + "0e" | false
     }
 
     def "#a <=> #b: #expected"() {
@@ -104,6 +110,38 @@ class HashCodeTest extends Specification {
         "abcdef1234" | "abcdef12"   | 1
         "abcdef1234" | "bcdef123"   | -1
         "bcdef123"   | "abcdef12"   | 1
+        "0f" * 16    | "0f" * 16    | 0
+        "8f" + "0f" * 15 | "0f" * 16 | -1
+        "0f" * 15 + "80" | "0f" * 15 + "7f" | -1
+        "0f" * 8 + "ff" + "0f" * 7 | "0f" * 8 + "01" + "0f" * 7 | -1
+        "0f" * 16    | "0f" * 20    | -1
+        "0f" * 20    | "0f" * 20    | 0
+        "0f" * 19 + "80" | "0f" * 19 + "00" | -1
+        "0f" * 16 + "7f" + "0f" * 3 | "0f" * 16 + "ff" + "0f" * 3 | 1
+    }
+
+    def "128-bit and 160-bit hash codes can be created from longs"() {
+        expect:
+        HashCode.fromLongs(0x0123456789abcdefL, -0x0123456789abcdf0L) == HashCode.fromString("0123456789abcdeffedcba9876543210")
+        HashCode.fromLongs(0x0123456789abcdefL, -0x0123456789abcdf0L, 0x01020304) == HashCode.fromString("0123456789abcdeffedcba987654321001020304")
+        HashCode.fromString("0123456789abcdeffedcba987654321001020304").getLong(8) == -0x0123456789abcdf0L
+        HashCode.fromString("0123456789abcdeffedcba987654321001020304").getInt(16) == 0x01020304
+    }
+
+    def "hashing a hash code feeds its bytes to the hasher"() {
+        def bytes = toBytes((0..<length).collect { it * 17 })
+
+        expect:
+        hashOf { it.putHash(HashCode.fromBytes(bytes)) } == hashOf { it.putBytes(bytes) }
+
+        where:
+        length << [4, 16, 20, 32]
+    }
+
+    private static HashCode hashOf(Closure<?> action) {
+        def hasher = Hashing.md5().newPrimitiveHasher()
+        action(hasher)
+        hasher.hash()
     }
 
     def "not equals with null"() {
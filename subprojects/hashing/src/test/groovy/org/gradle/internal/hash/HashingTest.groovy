@@ -109,6 +109,46 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 hashes the same as Guava for input of #length bytes fed in chunks of #chunkSize'() {
+        given:
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+
+        when:
+        for (int offset = 0; offset < length; offset += chunkSize) {
+            hasher.putBytes(bytes, offset, Math.min(chunkSize, length - offset))
+        }
+
+        then:
+        hasher.hash().toByteArray() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).asBytes()
+
+        where:
+        length | chunkSize
+        0      | 1
+        1      | 1
+        15     | 4
+        16     | 16
+        31     | 7
+        1000   | 3
+        1000   | 1000
+    }
+
+    def 'content function is selected by name'() {
+        expect:
+        Hashing.contentFunction("md5") == Hashing.md5()
+        Hashing.contentFunction("murmur3") == Hashing.murmur3()
+        Hashing.qualifyWithContentFunction("fileHashes", "md5") == "fileHashes"
+        Hashing.qualifyWithContentFunction("fileHashes", "murmur3") == "fileHashes-murmur3"
+
+        when:
+        Hashing.contentFunction("sha1")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown content hash function 'sha1' selected via org.gradle.internal.hash.content-function, supported functions are md5 and murmur3."
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
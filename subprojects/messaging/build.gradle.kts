@@ -1,5 +1,6 @@
 plugins {
     id("gradlebuild.distribution.api-java")
+    id("gradlebuild.jmh")
 }
 
 gradlebuildJava.usedInWorkers()
@@ -11,6 +12,7 @@ dependencies {
     implementation(libs.slf4jApi)
     implementation(libs.guava)
     implementation(libs.kryo)
+    implementation(libs.asm)
 
     testImplementation(testFixtures(project(":core")))
 
@@ -19,3 +21,5 @@ dependencies {
 
     integTestDistributionRuntimeOnly(project(":distributions-core"))
 }
+
+jmh.include = listOf("ListenerBroadcastBenchmark")
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.event;
+
+import org.gradle.internal.dispatch.ReflectionDispatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of broadcasting events to a number of listeners, comparing generated dispatch with reflective dispatch.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ListenerBroadcastBenchmark {
+
+    @Param({"1", "10", "100"})
+    int listenerCount;
+
+    @Param({"generated", "reflection"})
+    String dispatch;
+
+    BenchmarkListener source;
+    String event = "event";
+
+    @Setup
+    public void setup() {
+        ListenerBroadcast<BenchmarkListener> broadcast = new ListenerBroadcast<BenchmarkListener>(BenchmarkListener.class);
+        for (int i = 0; i < listenerCount; i++) {
+            CountingListener listener = new CountingListener();
+            if (dispatch.equals("reflection")) {
+                broadcast.add(new ReflectionDispatch(listener));
+            } else {
+                broadcast.add(listener);
+            }
+        }
+        source = broadcast.getSource();
+    }
+
+    @Benchmark
+    public void broadcastWithObjectArgument() {
+        source.objectEvent(event);
+    }
+
+    @Benchmark
+    public void broadcastWithPrimitiveArguments() {
+        source.primitiveEvent(12, 34L);
+    }
+
+    public interface BenchmarkListener {
+        void objectEvent(String event);
+
+        void primitiveEvent(int value, long other);
+    }
+
+    public static class CountingListener implements BenchmarkListener {
+        long count;
+
+        @Override
+        public void objectEvent(String event) {
+            count += event.length();
+        }
+
+        @Override
+        public void primitiveEvent(int value, long other) {
+            count += value + other;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.dispatch;
+
+import org.gradle.internal.UncheckedException;
+
+import java.lang.reflect.Method;
+
+/**
+ * Dispatches method invocations to a target object using a {@link MethodInvoker}, which calls the target directly instead of via reflection.
+ * Failures are propagated in the same way as {@link ReflectionDispatch}.
+ */
+public class DirectDispatch implements Dispatch<MethodInvocation> {
+    private final Object target;
+    // Most recently used method, shared between threads without synchronization as the resolved method is immutable
+    private ResolvedMethod resolved;
+
+    public DirectDispatch(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public void dispatch(MethodInvocation message) {
+        Method method = message.getMethod();
+        ResolvedMethod resolved = this.resolved;
+        if (resolved == null || resolved.method != method) {
+            resolved = resolve(method);
+            this.resolved = resolved;
+        }
+        try {
+            resolved.invoker.invoke(target, resolved.index, message.getArguments());
+        } catch (Throwable throwable) {
+            throw UncheckedException.throwAsUncheckedException(throwable);
+        }
+    }
+
+    private static ResolvedMethod resolve(Method method) {
+        MethodInvoker invoker = MethodInvoker.forType(method.getDeclaringClass());
+        int index = invoker.indexOf(method);
+        if (index < 0) {
+            throw new IllegalArgumentException(String.format("Cannot dispatch to method %s.", method));
+        }
+        return new ResolvedMethod(method, invoker, index);
+    }
+
+    private static class ResolvedMethod {
+        final Method method;
+        final MethodInvoker invoker;
+        final int index;
+
+        ResolvedMethod(Method method, MethodInvoker invoker, int index) {
+            this.method = method;
+            this.invoker = invoker;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.dispatch;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invokes the methods declared by a particular type on some target object, given the index of the method.
+ *
+ * <p>For interfaces, the implementation is generated by {@link MethodInvokerGenerator} and calls the target directly, so that no reflection
+ * is involved when dispatching a {@link MethodInvocation}. Other types, and interfaces that cannot be generated for, use reflection.</p>
+ */
+public abstract class MethodInvoker {
+    // Generated invokers are kept alive by their class, so they are only collected together with the class loader of the interface
+    private static final LoadingCache<Class<?>, MethodInvoker> INVOKERS = CacheBuilder.newBuilder()
+        .weakKeys()
+        .weakValues()
+        .build(new CacheLoader<Class<?>, MethodInvoker>() {
+            @Override
+            public MethodInvoker load(Class<?> type) {
+                return create(type);
+            }
+        });
+
+    private final Map<Method, Integer> indexes;
+
+    protected MethodInvoker(Method[] methods) {
+        this.indexes = new HashMap<Method, Integer>(methods.length * 2);
+        for (int i = 0; i < methods.length; i++) {
+            indexes.put(methods[i], i);
+        }
+    }
+
+    /**
+     * Returns the invoker for the methods declared by the given type.
+     */
+    public static MethodInvoker forType(Class<?> type) {
+        return INVOKERS.getUnchecked(type);
+    }
+
+    /**
+     * Returns the methods that can be invoked, in index order.
+     */
+    static Method[] invocableMethods(Class<?> type) {
+        List<Method> methods = new ArrayList<Method>();
+        for (Method method : type.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isStatic(modifiers) || method.isSynthetic()) {
+                continue;
+            }
+            if (type.isInterface() && !Modifier.isPublic(modifiers)) {
+                continue;
+            }
+            methods.add(method);
+        }
+        return methods.toArray(new Method[0]);
+    }
+
+    private static MethodInvoker create(Class<?> type) {
+        Method[] methods = invocableMethods(type);
+        if (type.isInterface()) {
+            try {
+                MethodInvoker invoker = MethodInvokerGenerator.generate(type, methods);
+                if (invoker != null) {
+                    return invoker;
+                }
+            } catch (Exception e) {
+                // Fall through to reflection
+            } catch (LinkageError e) {
+                // Fall through to reflection
+            }
+        }
+        return new ReflectionMethodInvoker(methods);
+    }
+
+    /**
+     * Returns the index of the given method, or -1 when the method is not declared by the type of this invoker.
+     */
+    public int indexOf(Method method) {
+        Integer index = indexes.get(method);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Invokes the method with the given index on the target. Any failure thrown by the method is rethrown unchanged.
+     */
+    public abstract void invoke(Object target, int methodIndex, Object[] arguments) throws Throwable;
+
+    private static class ReflectionMethodInvoker extends MethodInvoker {
+        private final Method[] methods;
+
+        ReflectionMethodInvoker(Method[] methods) {
+            super(methods);
+            this.methods = methods;
+        }
+
+        @Override
+        public void invoke(Object target, int methodIndex, Object[] arguments) throws Throwable {
+            Method method = methods[methodIndex];
+            method.setAccessible(true);
+            try {
+                method.invoke(target, arguments);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.dispatch;
+
+import org.gradle.internal.classloader.ClassLoaderUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a {@link MethodInvoker} for an interface. The generated {@code invoke()} method switches on the method index and calls the
+ * interface method on the target with the unboxed arguments, so that no reflective call is made for each listener notification.
+ *
+ * <p>The generated class is defined in the package and class loader of the interface, so that it can see the interface and the types
+ * of its parameters. The generated class keeps its instance in a static field, so the instance lives as long as the class loader of the interface.</p>
+ */
+class MethodInvokerGenerator implements Opcodes {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final String SUPER_CLASS_NAME = Type.getInternalName(MethodInvoker.class);
+    private static final String CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Method[].class));
+    private static final String INVOKE_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class), Type.INT_TYPE, Type.getType(Object[].class));
+    private static final String ILLEGAL_ARGUMENT_EXCEPTION = Type.getInternalName(IllegalArgumentException.class);
+    static final String INSTANCE_FIELD_NAME = "INSTANCE";
+
+    /**
+     * Returns an invoker for the given methods of the given interface, or null when no class can be generated for the interface.
+     */
+    @Nullable
+    static MethodInvoker generate(Class<?> type, Method[] methods) throws Exception {
+        ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null || !isVisible(MethodInvoker.class, classLoader)) {
+            return null;
+        }
+        for (Method method : methods) {
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (!isAccessible(parameterType, type)) {
+                    return null;
+                }
+            }
+        }
+
+        String generatedTypeName = type.getName() + "$$MethodInvoker" + COUNTER.incrementAndGet();
+        byte[] bytes = generateClass(type, methods, generatedTypeName.replace('.', '/'));
+        Class<?> generatedClass = ClassLoaderUtils.defineDecorator(type, classLoader, generatedTypeName, bytes);
+        return (MethodInvoker) generatedClass.getConstructor(Method[].class).newInstance(new Object[]{methods});
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader classLoader) {
+        try {
+            return classLoader.loadClass(type.getName()) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean isAccessible(Class<?> parameterType, Class<?> generatedFor) {
+        Class<?> type = parameterType;
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || Modifier.isPublic(type.getModifiers())) {
+            return true;
+        }
+        // The generated class lives in the same runtime package as the interface
+        return type.getClassLoader() == generatedFor.getClassLoader() && packageOf(type).equals(packageOf(generatedFor));
+    }
+
+    private static String packageOf(Class<?> type) {
+        String name = type.getName();
+        int index = name.lastIndexOf('.');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    private static byte[] generateClass(Class<?> type, Method[] methods, String generatedTypeName) {
+        ClassWriter visitor = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        visitor.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SYNTHETIC, generatedTypeName, null, SUPER_CLASS_NAME, null);
+        visitor.visitField(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, INSTANCE_FIELD_NAME, "L" + SUPER_CLASS_NAME + ";", null, null).visitEnd();
+
+        MethodVisitor constructor = visitor.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitVarInsn(ALOAD, 1);
+        constructor.visitMethodInsn(INVOKESPECIAL, SUPER_CLASS_NAME, "<init>", CONSTRUCTOR_DESCRIPTOR, false);
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitFieldInsn(PUTSTATIC, generatedTypeName, INSTANCE_FIELD_NAME, "L" + SUPER_CLASS_NAME + ";");
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor invoke = visitor.visitMethod(ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, null, null);
+        invoke.visitCode();
+        Label unknownMethod = new Label();
+        Label[] cases = new Label[methods.length];
+        for (int i = 0; i < cases.length; i++) {
+            cases[i] = new Label();
+        }
+        if (methods.length > 0) {
+            invoke.visitVarInsn(ILOAD, 2);
+            invoke.visitTableSwitchInsn(0, methods.length - 1, unknownMethod, cases);
+        }
+        String interfaceName = Type.getInternalName(type);
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            invoke.visitLabel(cases[i]);
+            invoke.visitVarInsn(ALOAD, 1);
+            invoke.visitTypeInsn(CHECKCAST, interfaceName);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int p = 0; p < parameterTypes.length; p++) {
+                invoke.visitVarInsn(ALOAD, 3);
+                pushInt(invoke, p);
+                invoke.visitInsn(AALOAD);
+                unpack(invoke, parameterTypes[p]);
+            }
+            invoke.visitMethodInsn(INVOKEINTERFACE, interfaceName, method.getName(), Type.getMethodDescriptor(method), true);
+            int returnSize = Type.getReturnType(method).getSize();
+            if (returnSize == 1) {
+                invoke.visitInsn(POP);
+            } else if (returnSize == 2) {
+                invoke.visitInsn(POP2);
+            }
+            invoke.visitInsn(RETURN);
+        }
+        invoke.visitLabel(unknownMethod);
+        invoke.visitTypeInsn(NEW, ILLEGAL_ARGUMENT_EXCEPTION);
+        invoke.visitInsn(DUP);
+        invoke.visitMethodInsn(INVOKESPECIAL, ILLEGAL_ARGUMENT_EXCEPTION, "<init>", "()V", false);
+        invoke.visitInsn(ATHROW);
+        invoke.visitMaxs(0, 0);
+        invoke.visitEnd();
+
+        visitor.visitEnd();
+        return visitor.toByteArray();
+    }
+
+    private static void pushInt(MethodVisitor visitor, int value) {
+        if (value <= 5) {
+            visitor.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            visitor.visitIntInsn(BIPUSH, value);
+        } else {
+            visitor.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    private static void unpack(MethodVisitor visitor, Class<?> parameterType) {
+        if (parameterType == Object.class) {
+            return;
+        }
+        if (!parameterType.isPrimitive()) {
+            visitor.visitTypeInsn(CHECKCAST, Type.getInternalName(parameterType));
+            return;
+        }
+        Class<?> boxedType = boxedType(parameterType);
+        String boxedTypeName = Type.getInternalName(boxedType);
+        visitor.visitTypeInsn(CHECKCAST, boxedTypeName);
+        visitor.visitMethodInsn(INVOKEVIRTUAL, boxedTypeName, parameterType.getName() + "Value", Type.getMethodDescriptor(Type.getType(parameterType)), false);
+    }
+
+    private static Class<?> boxedType(Class<?> primitiveType) {
+        if (primitiveType == boolean.class) {
+            return Boolean.class;
+        } else if (primitiveType == char.class) {
+            return Character.class;
+        } else if (primitiveType == byte.class) {
+            return Byte.class;
+        } else if (primitiveType == short.class) {
+            return Short.class;
+        } else if (primitiveType == int.class) {
+            return Integer.class;
+        } else if (primitiveType == long.class) {
+            return Long.class;
+        } else if (primitiveType == float.class) {
+            return Float.class;
+        } else if (primitiveType == double.class) {
+            return Double.class;
+        }
+        throw new IllegalArgumentException(String.format("Unexpected primitive type %s.", primitiveType));
+    }
+}
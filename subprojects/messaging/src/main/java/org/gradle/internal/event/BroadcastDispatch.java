@@ -18,9 +18,9 @@
 
 import org.gradle.api.Action;
 import org.gradle.internal.Cast;
+import org.gradle.internal.dispatch.DirectDispatch;
 import org.gradle.internal.dispatch.Dispatch;
 import org.gradle.internal.dispatch.MethodInvocation;
-import org.gradle.internal.dispatch.ReflectionDispatch;
 import org.gradle.util.CollectionUtils;
 
 import java.lang.reflect.Method;
@@ -52,7 +52,7 @@ public BroadcastDispatch<T> add(Dispatch<MethodInvocation> dispatch) {
     }
 
     public BroadcastDispatch<T> add(T listener) {
-        return add(listener, new ReflectionDispatch(listener));
+        return add(listener, new DirectDispatch(listener));
     }
 
     public BroadcastDispatch<T> add(String methodName, Action<?> action) {
@@ -135,7 +135,7 @@ public void visitListeners(Action<T> visitor) {
         public BroadcastDispatch<T> addAll(Collection<? extends T> listeners) {
             List<SingletonDispatch<T>> result = new ArrayList<SingletonDispatch<T>>();
             for (T listener : listeners) {
-                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new ReflectionDispatch(listener));
+                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new DirectDispatch(listener));
                 if (!result.contains(dispatch)) {
                     result.add(dispatch);
                 }
@@ -199,7 +199,7 @@ public BroadcastDispatch<T> addAll(Collection<? extends T> listeners) {
                 if (handler == listener || handler.equals(listener)) {
                     continue;
                 }
-                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new ReflectionDispatch(listener));
+                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new DirectDispatch(listener));
                 if (!result.contains(dispatch)) {
                     result.add(dispatch);
                 }
@@ -277,7 +277,7 @@ public BroadcastDispatch<T> addAll(Collection<? extends T> listeners) {
             List<SingletonDispatch<T>> result = new ArrayList<SingletonDispatch<T>>();
             result.addAll(dispatchers);
             for (T listener : listeners) {
-                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new ReflectionDispatch(listener));
+                SingletonDispatch<T> dispatch = new SingletonDispatch<T>(type, listener, new DirectDispatch(listener));
                 if (!result.contains(dispatch)) {
                     result.add(dispatch);
                 }
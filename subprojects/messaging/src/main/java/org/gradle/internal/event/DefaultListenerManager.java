@@ -17,10 +17,10 @@
 package org.gradle.internal.event;
 
 import org.gradle.internal.Cast;
+import org.gradle.internal.dispatch.DirectDispatch;
 import org.gradle.internal.dispatch.Dispatch;
 import org.gradle.internal.dispatch.MethodInvocation;
 import org.gradle.internal.dispatch.ProxyDispatchAdapter;
-import org.gradle.internal.dispatch.ReflectionDispatch;
 import org.gradle.internal.service.scopes.EventScope;
 import org.gradle.internal.service.scopes.Scope;
 
@@ -385,7 +385,7 @@ private class ListenerDetails implements Dispatch<MethodInvocation> {
 
         public ListenerDetails(Object listener) {
             this.listener = listener;
-            this.dispatch = new ReflectionDispatch(listener);
+            this.dispatch = new DirectDispatch(listener);
         }
 
         void disconnect() {
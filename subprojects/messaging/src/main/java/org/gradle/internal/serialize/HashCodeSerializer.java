@@ -20,19 +20,49 @@
 
 import java.io.IOException;
 
+/**
+ * Serializes a hash code as its length followed by its bytes. 128-bit and 160-bit hash codes are read and written as longs and ints, without copying them to an array.
+ */
 public class HashCodeSerializer extends AbstractSerializer<HashCode> {
     @Override
     public HashCode read(Decoder decoder) throws IOException {
         byte hashSize = decoder.readByte();
-        byte[] hash = new byte[hashSize];
-        decoder.readBytes(hash);
-        return HashCode.fromBytes(hash);
+        switch (hashSize) {
+            case 16: {
+                long bits1 = decoder.readLong();
+                long bits2 = decoder.readLong();
+                return HashCode.fromLongs(bits1, bits2);
+            }
+            case 20: {
+                long bits1 = decoder.readLong();
+                long bits2 = decoder.readLong();
+                int bits3 = decoder.readInt();
+                return HashCode.fromLongs(bits1, bits2, bits3);
+            }
+            default: {
+                byte[] hash = new byte[hashSize & 0xff];
+                decoder.readBytes(hash);
+                return HashCode.fromBytes(hash);
+            }
+        }
     }
 
     @Override
     public void write(Encoder encoder, HashCode value) throws IOException {
-        byte[] hash = value.toByteArray();
-        encoder.writeByte((byte) hash.length);
-        encoder.writeBytes(hash);
+        int length = value.length();
+        encoder.writeByte((byte) length);
+        switch (length) {
+            case 16:
+                encoder.writeLong(value.getLong(0));
+                encoder.writeLong(value.getLong(8));
+                break;
+            case 20:
+                encoder.writeLong(value.getLong(0));
+                encoder.writeLong(value.getLong(8));
+                encoder.writeInt(value.getInt(16));
+                break;
+            default:
+                encoder.writeBytes(value.toByteArray());
+        }
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.dispatch
+
+import org.gradle.internal.UncheckedException
+import spock.lang.Specification
+
+class DirectDispatchTest extends Specification {
+    def "generates invoker for listener interface"() {
+        def invoker = MethodInvoker.forType(DirectDispatchTestListener)
+
+        expect:
+        invoker.class.name.startsWith(DirectDispatchTestListener.name + '$$MethodInvoker')
+        MethodInvoker.forType(DirectDispatchTestListener).is(invoker)
+    }
+
+    def "generated invoker is kept alive by its class"() {
+        def invoker = MethodInvoker.forType(DirectDispatchTestListener)
+        def field = invoker.class.getDeclaredField(MethodInvokerGenerator.INSTANCE_FIELD_NAME)
+        field.accessible = true
+
+        expect:
+        field.get(null).is(invoker)
+    }
+
+    def "dispatches method invocations to target"() {
+        def listener = Mock(DirectDispatchTestListener)
+        def dispatch = new DirectDispatch(listener)
+        def values = [1, 2] as int[]
+
+        when:
+        dispatch.dispatch(invocation('withObjects', ['value', values] as Object[]))
+        dispatch.dispatch(invocation('withPrimitives', [true, 'c' as char, 1 as byte, 2 as short, 3, 4L, 5.5f, 6.5d] as Object[]))
+        dispatch.dispatch(invocation('withResult', [12L] as Object[]))
+        dispatch.dispatch(invocation('noArgs', null))
+
+        then:
+        1 * listener.withObjects('value', values)
+        1 * listener.withPrimitives(true, 'c' as char, 1 as byte, 2 as short, 3, 4L, 5.5f, 6.5d)
+        1 * listener.withResult(12L) >> 13L
+        1 * listener.noArgs()
+        0 * _
+    }
+
+    def "rethrows unchecked failure from target"() {
+        def failure = new RuntimeException("broken")
+        def listener = Mock(DirectDispatchTestListener)
+        def dispatch = new DirectDispatch(listener)
+
+        when:
+        dispatch.dispatch(invocation('noArgs', null))
+
+        then:
+        1 * listener.noArgs() >> { throw failure }
+        def e = thrown(RuntimeException)
+        e.is(failure)
+    }
+
+    def "wraps checked failure from target"() {
+        def failure = new IOException("broken")
+        def listener = Mock(DirectDispatchTestListener)
+        def dispatch = new DirectDispatch(listener)
+
+        when:
+        dispatch.dispatch(invocation('noArgs', null))
+
+        then:
+        1 * listener.noArgs() >> { throw failure }
+        def e = thrown(UncheckedException)
+        e.cause.is(failure)
+    }
+
+    def "uses reflection for interfaces that cannot be generated for"() {
+        def listener = Mock(Runnable)
+        def dispatch = new DirectDispatch(listener)
+
+        when:
+        dispatch.dispatch(new MethodInvocation(Runnable.getMethod('run'), null))
+
+        then:
+        1 * listener.run()
+    }
+
+    private static MethodInvocation invocation(String name, Object[] args) {
+        def method = DirectDispatchTestListener.methods.find { it.name == name }
+        return new MethodInvocation(method, args)
+    }
+}
+
+interface DirectDispatchTestListener {
+    void withObjects(String value, int[] values)
+
+    void withPrimitives(boolean z, char c, byte b, short s, int i, long l, float f, double d)
+
+    long withResult(long value)
+
+    void noArgs() throws IOException
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.Hashing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained per file by directory snapshots, with and without {@link CompactRegularFileSnapshot}s,
+ * and the cost of visiting them. The retained heap is printed at the end of each iteration.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SnapshotHeapBenchmark {
+    private static final int FILES_PER_DIRECTORY = 50;
+    private static final String ROOT_PATH = new File("/home/user/projects/some-project/node_modules/some-package/lib").getAbsolutePath();
+
+    @Param({"false", "true"})
+    boolean compact;
+
+    @Param({"100000"})
+    int fileCount;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private long heapBefore;
+    private CompleteDirectorySnapshot snapshot;
+
+    @Setup(Level.Iteration)
+    public void measureHeapBefore() {
+        snapshot = null;
+        heapBefore = usedHeapAfterGc();
+    }
+
+    @TearDown(Level.Iteration)
+    public void measureHeapAfter() {
+        snapshot = createSnapshot();
+        long retained = usedHeapAfterGc() - heapBefore;
+        System.out.printf("%nRetained heap per file: %d bytes%n", retained / fileCount);
+    }
+
+    @Benchmark
+    public CompleteDirectorySnapshot create() {
+        return createSnapshot();
+    }
+
+    @Benchmark
+    public void visit(Blackhole blackhole) {
+        if (snapshot == null) {
+            snapshot = createSnapshot();
+        }
+        snapshot.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            public boolean preVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+                return true;
+            }
+
+            @Override
+            public void visitFile(CompleteFileSystemLocationSnapshot fileSnapshot) {
+                blackhole.consume(fileSnapshot.getAbsolutePath());
+                blackhole.consume(fileSnapshot.getHash());
+            }
+
+            @Override
+            public void postVisitDirectory(CompleteDirectorySnapshot directorySnapshot) {
+            }
+        });
+    }
+
+    private CompleteDirectorySnapshot createSnapshot() {
+        List<CompleteFileSystemLocationSnapshot> directories = new ArrayList<>();
+        for (int directoryIndex = 0; directoryIndex * FILES_PER_DIRECTORY < fileCount; directoryIndex++) {
+            String directoryName = "directory" + directoryIndex;
+            String directoryPath = ROOT_PATH + File.separatorChar + directoryName;
+            List<CompleteFileSystemLocationSnapshot> files = new ArrayList<>(FILES_PER_DIRECTORY);
+            for (int fileIndex = 0; fileIndex < FILES_PER_DIRECTORY; fileIndex++) {
+                // File names are interned when snapshotting, so they are shared between snapshots
+                String fileName = ("file" + fileIndex + ".js").intern();
+                RegularFileSnapshot file = new RegularFileSnapshot(
+                    directoryPath + File.separatorChar + fileName,
+                    fileName,
+                    Hashing.md5().hashString(directoryPath + fileName),
+                    DefaultFileMetadata.file(directoryIndex, fileIndex, AccessType.DIRECT)
+                );
+                files.add(compact ? CompactRegularFileSnapshot.compact(directoryPath, file) : file);
+            }
+            directories.add(new CompleteDirectorySnapshot(directoryPath, directoryName, files, Hashing.md5().hashString(directoryPath), AccessType.DIRECT));
+        }
+        return new CompleteDirectorySnapshot(ROOT_PATH, "lib", directories, Hashing.md5().hashString(ROOT_PATH), AccessType.DIRECT);
+    }
+
+    private long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
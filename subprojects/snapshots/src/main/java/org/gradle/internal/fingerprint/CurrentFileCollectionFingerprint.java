@@ -17,6 +17,8 @@
 package org.gradle.internal.fingerprint;
 
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
 
 /**
@@ -30,5 +32,13 @@ public interface CurrentFileCollectionFingerprint extends FileCollectionFingerpr
 
     String getStrategyIdentifier();
 
+    @Override
+    default HashCode getStrategyHash() {
+        Hasher hasher = Hashing.newHasher();
+        hasher.putString(getStrategyIdentifier());
+        hasher.putHash(getHash());
+        return hasher.hash();
+    }
+
     boolean isEmpty();
 }
@@ -21,6 +21,7 @@
 import com.google.common.collect.ImmutableSortedMap;
 import org.gradle.internal.hash.HashCode;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 /**
@@ -45,6 +46,16 @@ default ImmutableSet<String> getRootPaths() {
         return getRootHashes().keySet();
     }
 
+    /**
+     * The hash of the fingerprints combined with the identifier of the strategy that produced them, or {@code null} when not known.
+     *
+     * Two fingerprints with the same strategy hash contain the same normalized paths and content hashes, so there can be no changes between them.
+     */
+    @Nullable
+    default HashCode getStrategyHash() {
+        return null;
+    }
+
     FileCollectionFingerprint EMPTY = new FileCollectionFingerprint() {
         @Override
         public Map<String, FileSystemLocationFingerprint> getFingerprints() {
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import com.google.common.primitives.Longs;
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+
+import java.io.File;
+
+/**
+ * A {@link RegularFileSnapshot} of a file in a directory snapshot, stored with fewer objects, which matters for
+ * the large number of file snapshots retained by the virtual file system.
+ *
+ * <ul>
+ *     <li>The absolute path is not stored, but created on demand from the absolute path of the parent directory, which is shared by all of its children.</li>
+ *     <li>The 128 bit content hash is stored in two longs.</li>
+ *     <li>The length and the last modified time are stored inline instead of in a {@link FileMetadata}.</li>
+ * </ul>
+ */
+public class CompactRegularFileSnapshot extends RegularFileSnapshot {
+    private static final int HASH_LENGTH = 16;
+
+    private final String parentPath;
+    private final long hashHigh;
+    private final long hashLow;
+    private final long lastModified;
+    private final long length;
+
+    private CompactRegularFileSnapshot(String parentPath, String name, long hashHigh, long hashLow, FileMetadata metadata) {
+        super(name, metadata.getAccessType());
+        this.parentPath = parentPath;
+        this.hashHigh = hashHigh;
+        this.hashLow = hashLow;
+        this.lastModified = metadata.getLastModified();
+        this.length = metadata.getLength();
+    }
+
+    /**
+     * Returns a compact copy of the given file snapshot located in the directory with the given path,
+     * or the snapshot itself when it cannot be stored compactly.
+     */
+    public static CompleteFileSystemLocationSnapshot compact(String parentPath, CompleteFileSystemLocationSnapshot snapshot) {
+        if (snapshot.getClass() != RegularFileSnapshot.class) {
+            return snapshot;
+        }
+        String name = snapshot.getName();
+        String absolutePath = snapshot.getAbsolutePath();
+        // Files accessed via a symlinked directory may not be located in the directory they are snapshotted for
+        if (absolutePath.length() != parentPath.length() + 1 + name.length()
+            || !absolutePath.startsWith(parentPath)
+            || absolutePath.charAt(parentPath.length()) != File.separatorChar
+            || !absolutePath.endsWith(name)) {
+            return snapshot;
+        }
+        HashCode hash = snapshot.getHash();
+        if (hash.length() != HASH_LENGTH) {
+            return snapshot;
+        }
+        byte[] bytes = hash.toByteArray();
+        long hashHigh = Longs.fromBytes(bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7]);
+        long hashLow = Longs.fromBytes(bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]);
+        return new CompactRegularFileSnapshot(parentPath, name, hashHigh, hashLow, ((RegularFileSnapshot) snapshot).getMetadata());
+    }
+
+    @Override
+    public String getAbsolutePath() {
+        return parentPath + File.separatorChar + getName();
+    }
+
+    @Override
+    public HashCode getHash() {
+        byte[] bytes = new byte[HASH_LENGTH];
+        for (int i = 0; i < 8; i++) {
+            int shift = 56 - 8 * i;
+            bytes[i] = (byte) (hashHigh >>> shift);
+            bytes[i + 8] = (byte) (hashLow >>> shift);
+        }
+        return HashCode.fromBytes(bytes);
+    }
+
+    @Override
+    public FileMetadata getMetadata() {
+        return DefaultFileMetadata.file(lastModified, length, getAccessType());
+    }
+
+    @Override
+    public boolean isContentAndMetadataUpToDate(CompleteFileSystemLocationSnapshot other) {
+        if (other instanceof CompactRegularFileSnapshot) {
+            CompactRegularFileSnapshot otherSnapshot = (CompactRegularFileSnapshot) other;
+            return hashHigh == otherSnapshot.hashHigh
+                && hashLow == otherSnapshot.hashLow
+                && lastModified == otherSnapshot.lastModified
+                && length == otherSnapshot.length
+                && getAccessType() == otherSnapshot.getAccessType();
+        }
+        return super.isContentAndMetadataUpToDate(other);
+    }
+}
@@ -28,7 +28,13 @@
 import java.util.List;
 
 public class MerkleDirectorySnapshotBuilder implements FileSystemSnapshotVisitor {
+    /**
+     * When set, the file snapshots in the built directory snapshots are stored as {@link CompactRegularFileSnapshot}s.
+     */
+    public static final String COMPACT_SNAPSHOTS_PROPERTY = "org.gradle.internal.snapshot.compact";
+
     private static final HashCode DIR_SIGNATURE = Hashing.signature("DIR");
+    private static final boolean COMPACT_SNAPSHOTS = System.getProperty(COMPACT_SNAPSHOTS_PROPERTY) != null;
 
     private final RelativePathSegmentsTracker relativePathSegmentsTracker = new RelativePathSegmentsTracker();
     private final Deque<List<CompleteFileSystemLocationSnapshot>> levelHolder = new ArrayDeque<>();
@@ -94,6 +100,9 @@ public boolean postVisitDirectory(boolean includeEmpty, AccessType accessType) {
             hasher.putString(child.getName());
             hasher.putHash(child.getHash());
         }
+        if (COMPACT_SNAPSHOTS) {
+            children.replaceAll(child -> CompactRegularFileSnapshot.compact(absolutePath, child));
+        }
         CompleteDirectorySnapshot directorySnapshot = new CompleteDirectorySnapshot(absolutePath, name, children, hasher.hash(), accessType);
         List<CompleteFileSystemLocationSnapshot> siblings = levelHolder.peekLast();
         if (siblings != null) {
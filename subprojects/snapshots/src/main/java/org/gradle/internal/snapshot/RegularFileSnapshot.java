@@ -17,6 +17,7 @@
 package org.gradle.internal.snapshot;
 
 import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.FileMetadata.AccessType;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.HashCode;
 
@@ -37,6 +38,15 @@ public RegularFileSnapshot(String absolutePath, String name, HashCode contentHas
         this.metadata = metadata;
     }
 
+    /**
+     * Used by {@link CompactRegularFileSnapshot}, which stores its path, content hash and metadata itself.
+     */
+    protected RegularFileSnapshot(String name, AccessType accessType) {
+        super(null, name, accessType);
+        this.contentHash = null;
+        this.metadata = null;
+    }
+
     @Override
     public FileType getType() {
         return FileType.RegularFile;
@@ -58,7 +68,7 @@ public boolean isContentAndMetadataUpToDate(CompleteFileSystemLocationSnapshot o
             return false;
         }
         RegularFileSnapshot otherSnapshot = (RegularFileSnapshot) other;
-        return metadata.equals(otherSnapshot.metadata) && contentHash.equals(otherSnapshot.contentHash);
+        return getMetadata().equals(otherSnapshot.getMetadata()) && getHash().equals(otherSnapshot.getHash());
     }
 
     @Override
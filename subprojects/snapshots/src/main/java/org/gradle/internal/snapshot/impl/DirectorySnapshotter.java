@@ -17,14 +17,18 @@
 package org.gradle.internal.snapshot.impl;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Lists;
 import org.gradle.internal.file.FileMetadata;
 import org.gradle.internal.file.FileMetadata.AccessType;
 import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.BatchFileHasher;
 import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.FileToHash;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
 import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
 import org.gradle.internal.snapshot.MissingFileSnapshot;
@@ -37,40 +41,90 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class DirectorySnapshotter {
+    /**
+     * When set, directories are walked and their files hashed in parallel on the common fork/join pool.
+     */
+    public static final String PARALLEL_SNAPSHOTTING_PROPERTY = "org.gradle.internal.snapshot.parallel";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySnapshotter.class);
     private static final EnumSet<FileVisitOption> DONT_FOLLOW_SYMLINKS = EnumSet.noneOf(FileVisitOption.class);
+    private static final int FILES_PER_TASK = 64;
+    private static final Function<String, Optional<CompleteFileSystemLocationSnapshot>> NO_KNOWN_SNAPSHOTS = absolutePath -> Optional.empty();
 
     private final FileHasher hasher;
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
+    private final ForkJoinPool forkJoinPool;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes) {
+        this(hasher, stringInterner, defaultExcludes, System.getProperty(PARALLEL_SNAPSHOTTING_PROPERTY) != null ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Creates a snapshotter which walks directories on the given pool, or sequentially on the calling thread when no pool is given.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, @Nullable ForkJoinPool forkJoinPool) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
+        this.forkJoinPool = forkJoinPool;
     }
 
     public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered) {
+        return snapshot(absolutePath, predicate, hasBeenFiltered, NO_KNOWN_SNAPSHOTS);
+    }
+
+    /**
+     * Snapshots the location, reusing the complete snapshots of its descendants which are already known.
+     *
+     * Known directory snapshots are used instead of walking the directory, and known regular file snapshots are used instead of hashing the file
+     * when the length and the modification time of the file did not change.
+     * After a change to a single file, only the directories on the path to the changed file are listed and re-hashed.
+     * Known snapshots are only used for unfiltered walks, and not for descendants accessed via symbolic links.
+     *
+     * @param knownSnapshots looks up the complete snapshot known for an absolute path
+     */
+    public CompleteFileSystemLocationSnapshot snapshot(
+        String absolutePath,
+        @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
+        final AtomicBoolean hasBeenFiltered,
+        Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots
+    ) {
+        Function<String, Optional<CompleteFileSystemLocationSnapshot>> reusableSnapshots = predicate == null ? knownSnapshots : NO_KNOWN_SNAPSHOTS;
+        Path rootPath = Paths.get(absolutePath);
+        if (forkJoinPool != null && Files.isDirectory(rootPath, LinkOption.NOFOLLOW_LINKS)) {
+            ParallelWalk walk = new ParallelWalk(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, reusableSnapshots);
+            String rootName = stringInterner.intern(getFilename(rootPath));
+            return forkJoinPool.invoke(new DirectorySnapshottingTask(walk, rootPath, stringInterner.intern(rootPath.toString()), rootName, AccessType.DIRECT, ImmutableList.of(), null));
+        }
         try {
-            Path rootPath = Paths.get(absolutePath);
-            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes);
+            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, reusableSnapshots);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
             return visitor.getResult();
         } catch (IOException e) {
@@ -78,6 +132,123 @@ public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullabl
         }
     }
 
+    private static String getFilename(Path dir) {
+        return Optional.ofNullable(dir.getFileName())
+            .map(Object::toString)
+            .orElse("");
+    }
+
+    private static BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFileAttributes symlinkAttributes) {
+        try {
+            return Files.readAttributes(symlink, BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            // We emulate the behavior of `Files.walkFileTree(Path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), PathVisitor)`,
+            // and return the attributes of the symlink if we can't read the attributes of the target of the symlink.
+            return symlinkAttributes;
+        }
+    }
+
+    private static Optional<CompleteFileSystemLocationSnapshot> knownDirectory(Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots, String internedAbsolutePath) {
+        return knownSnapshots.apply(internedAbsolutePath)
+            .filter(snapshot -> snapshot instanceof CompleteDirectorySnapshot && snapshot.getAccessType() == AccessType.DIRECT);
+    }
+
+    private static Optional<CompleteFileSystemLocationSnapshot> knownRegularFile(Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots, String internedAbsolutePath, BasicFileAttributes attrs) {
+        if (!attrs.isRegularFile()) {
+            return Optional.empty();
+        }
+        return knownSnapshots.apply(internedAbsolutePath)
+            .filter(RegularFileSnapshot.class::isInstance)
+            .filter(snapshot -> {
+                FileMetadata metadata = ((RegularFileSnapshot) snapshot).getMetadata();
+                return metadata.getAccessType() == AccessType.DIRECT
+                    && metadata.getLastModified() == attrs.lastModifiedTime().toMillis()
+                    && metadata.getLength() == attrs.size();
+            });
+    }
+
+    /**
+     * Snapshots the given files, hashing them together when the hasher supports hashing batches of files.
+     */
+    private static List<CompleteFileSystemLocationSnapshot> snapshotFiles(FileHasher hasher, List<FileToSnapshot> files) {
+        List<CompleteFileSystemLocationSnapshot> snapshots = new ArrayList<>(files.size());
+        if (!(hasher instanceof BatchFileHasher) || files.size() < 2) {
+            for (FileToSnapshot file : files) {
+                snapshots.add(snapshotFile(hasher, file.path, file.absolutePath, file.name, file.attributes, file.accessType));
+            }
+            return snapshots;
+        }
+        List<FileToHash> filesToHash = new ArrayList<>(files.size());
+        for (FileToSnapshot file : files) {
+            if (file.attributes.isRegularFile()) {
+                filesToHash.add(new FileToHash(file.path.toFile(), file.attributes.size(), file.attributes.lastModifiedTime().toMillis()));
+            }
+        }
+        Iterator<HashCode> hashes = ((BatchFileHasher) hasher).hash(filesToHash).iterator();
+        Iterator<FileToHash> hashedFiles = filesToHash.iterator();
+        for (FileToSnapshot file : files) {
+            if (file.attributes.isRegularFile()) {
+                FileToHash hashedFile = hashedFiles.next();
+                HashCode hash = hashes.next();
+                if (hash != null) {
+                    FileMetadata metadata = DefaultFileMetadata.file(hashedFile.getLastModified(), hashedFile.getLength(), file.accessType);
+                    snapshots.add(new RegularFileSnapshot(file.absolutePath, file.name, hash, metadata));
+                    continue;
+                }
+                LOGGER.info("Could not read file path '{}'.", file.path);
+            }
+            snapshots.add(new MissingFileSnapshot(file.absolutePath, file.name, file.accessType));
+        }
+        return snapshots;
+    }
+
+    private static CompleteFileSystemLocationSnapshot snapshotFile(FileHasher hasher, Path absoluteFilePath, String internedAbsoluteFilePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
+        if (attrs.isRegularFile()) {
+            try {
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                long fileLength = attrs.size();
+                FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
+                HashCode hash = hasher.hash(absoluteFilePath.toFile(), fileLength, lastModified);
+                return new RegularFileSnapshot(internedAbsoluteFilePath, internedName, hash, metadata);
+            } catch (UncheckedIOException e) {
+                LOGGER.info("Could not read file path '{}'.", absoluteFilePath, e);
+            }
+        }
+        return new MissingFileSnapshot(internedAbsoluteFilePath, internedName, accessType);
+    }
+
+    /**
+     * Returns whether we want to visit the given path during our walk, or ignore it completely,
+     * based on the directory/file excludes or the provided filtering predicate.
+     * Excludes won't mark this walk as `filtered`, only if the `predicate` rejects any entry.
+     **/
+    private static boolean shouldVisit(
+        Path path,
+        String internedName,
+        boolean isDirectory,
+        Iterable<String> relativePath,
+        DefaultExcludes defaultExcludes,
+        @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
+        AtomicBoolean hasBeenFiltered
+    ) {
+        if (isDirectory) {
+            if (defaultExcludes.excludeDir(internedName)) {
+                return false;
+            }
+        } else if (defaultExcludes.excludeFile(internedName)) {
+            return false;
+        }
+
+        if (predicate == null) {
+            return true;
+        }
+        boolean allowed = predicate.test(path, internedName, isDirectory, relativePath);
+        if (!allowed) {
+            hasBeenFiltered.set(true);
+        }
+        return allowed;
+    }
+
     private static class SymbolicLinkMapping {
         private final String source;
         private final String target;
@@ -180,13 +351,17 @@ private static class PathVisitor implements java.nio.file.FileVisitor<Path> {
         private final DefaultExcludes defaultExcludes;
         private final Deque<SymbolicLinkMapping> symbolicLinkMappings = new ArrayDeque<>();
         private final Deque<String> parentDirectories = new ArrayDeque<>();
+        // The files to hash of each directory being visited, hashed together when the directory has been visited
+        private final Deque<List<FileToSnapshot>> filesToHash = new ArrayDeque<>();
+        private final Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots;
 
         public PathVisitor(
             @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
             AtomicBoolean hasBeenFiltered,
             FileHasher hasher,
             Interner<String> stringInterner,
-            DefaultExcludes defaultExcludes
+            DefaultExcludes defaultExcludes,
+            Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots
         ) {
             this.builder = MerkleDirectorySnapshotBuilder.sortingRequired();
             this.predicate = predicate;
@@ -194,6 +369,7 @@ public PathVisitor(
             this.hasher = hasher;
             this.stringInterner = stringInterner;
             this.defaultExcludes = defaultExcludes;
+            this.knownSnapshots = knownSnapshots;
         }
 
         @Override
@@ -201,20 +377,23 @@ public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
             String fileName = getFilename(dir);
             String internedName = intern(fileName);
             if (builder.isRoot() || shouldVisit(dir, internedName, true, builder.getRelativePath())) {
-                builder.preVisitDirectory(intern(remapAbsolutePath(dir)), internedName);
+                String internedAbsolutePath = intern(remapAbsolutePath(dir));
+                if (!builder.isRoot() && symbolicLinkMappings.isEmpty()) {
+                    Optional<CompleteFileSystemLocationSnapshot> knownDirectory = knownDirectory(knownSnapshots, internedAbsolutePath);
+                    if (knownDirectory.isPresent()) {
+                        builder.visitFile(knownDirectory.get());
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                builder.preVisitDirectory(internedAbsolutePath, internedName);
                 parentDirectories.addFirst(dir.toString());
+                filesToHash.addFirst(new ArrayList<>());
                 return FileVisitResult.CONTINUE;
             } else {
                 return FileVisitResult.SKIP_SUBTREE;
             }
         }
 
-        private String getFilename(Path dir) {
-            return Optional.ofNullable(dir.getFileName())
-                .map(Object::toString)
-                .orElse("");
-        }
-
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
             if (attrs.isSymbolicLink()) {
@@ -258,34 +437,18 @@ private String remapAbsolutePath(Path dir) {
         private void visitResolvedFile(Path file, BasicFileAttributes targetAttributes, AccessType accessType) {
             String internedName = intern(file.getFileName().toString());
             if (shouldVisit(file, internedName, false, builder.getRelativePath())) {
-                builder.visitFile(snapshotFile(file, internedName, targetAttributes, accessType));
-            }
-        }
-
-        private BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFileAttributes symlinkAttributes) {
-            try {
-                return Files.readAttributes(symlink, BasicFileAttributes.class);
-            } catch (IOException ioe) {
-                // We emulate the behavior of `Files.walkFileTree(Path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), PathVisitor)`,
-                // and return the attributes of the symlink if we can't read the attributes of the target of the symlink.
-                return symlinkAttributes;
-            }
-        }
-
-        private CompleteFileSystemLocationSnapshot snapshotFile(Path absoluteFilePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
-            String internedAbsoluteFilePath = intern(remapAbsolutePath(absoluteFilePath));
-            if (attrs.isRegularFile()) {
-                try {
-                    long lastModified = attrs.lastModifiedTime().toMillis();
-                    long fileLength = attrs.size();
-                    FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
-                    HashCode hash = hasher.hash(absoluteFilePath.toFile(), fileLength, lastModified);
-                    return new RegularFileSnapshot(internedAbsoluteFilePath, internedName, hash, metadata);
-                } catch (UncheckedIOException e) {
-                    LOGGER.info("Could not read file path '{}'.", absoluteFilePath, e);
+                String internedAbsolutePath = intern(remapAbsolutePath(file));
+                Optional<CompleteFileSystemLocationSnapshot> knownFile = accessType == AccessType.DIRECT && symbolicLinkMappings.isEmpty()
+                    ? knownRegularFile(knownSnapshots, internedAbsolutePath, targetAttributes)
+                    : Optional.empty();
+                if (knownFile.isPresent()) {
+                    builder.visitFile(knownFile.get());
+                } else if (filesToHash.isEmpty()) {
+                    builder.visitFile(snapshotFile(hasher, file, internedAbsolutePath, internedName, targetAttributes, accessType));
+                } else {
+                    filesToHash.getFirst().add(new FileToSnapshot(file, internedAbsolutePath, internedName, targetAttributes, accessType));
                 }
             }
-            return new MissingFileSnapshot(internedAbsoluteFilePath, internedName, accessType);
         }
 
         /** unlistable directories (and maybe some locked files) will stop here */
@@ -317,6 +480,7 @@ public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException exc) {
             AccessType accessType = AccessType.viaSymlink(
                 !symbolicLinkMappings.isEmpty() && symbolicLinkMappings.getFirst().target.equals(dir.toString())
             );
+            snapshotFiles(hasher, filesToHash.removeFirst()).forEach(builder::visitFile);
             builder.postVisitDirectory(accessType);
             parentDirectories.removeFirst();
             return FileVisitResult.CONTINUE;
@@ -330,32 +494,249 @@ private String intern(String string) {
             return stringInterner.intern(string);
         }
 
-        /**
-         * Returns whether we want to visit the given path during our walk, or ignore it completely,
-         * based on the directory/file excludes or the provided filtering predicate.
-         * Excludes won't mark this walk as `filtered`, only if the `predicate` rejects any entry.
-         **/
         private boolean shouldVisit(Path path, String internedName, boolean isDirectory, Iterable<String> relativePath) {
-            if (isDirectory) {
-                if (defaultExcludes.excludeDir(internedName)) {
-                    return false;
+            return DirectorySnapshotter.shouldVisit(path, internedName, isDirectory, relativePath, defaultExcludes, predicate, hasBeenFiltered);
+        }
+
+        public CompleteFileSystemLocationSnapshot getResult() {
+            return builder.getResult();
+        }
+    }
+
+    /**
+     * State shared by the tasks of a parallel walk. The interner, the hasher and the predicate are used concurrently.
+     */
+    private static class ParallelWalk {
+        private final SnapshottingFilter.DirectoryWalkerPredicate predicate;
+        private final AtomicBoolean hasBeenFiltered;
+        private final FileHasher hasher;
+        private final Interner<String> stringInterner;
+        private final DefaultExcludes defaultExcludes;
+        private final Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots;
+
+        public ParallelWalk(
+            @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
+            AtomicBoolean hasBeenFiltered,
+            FileHasher hasher,
+            Interner<String> stringInterner,
+            DefaultExcludes defaultExcludes,
+            Function<String, Optional<CompleteFileSystemLocationSnapshot>> knownSnapshots
+        ) {
+            this.predicate = predicate;
+            this.hasBeenFiltered = hasBeenFiltered;
+            this.hasher = hasher;
+            this.stringInterner = stringInterner;
+            this.defaultExcludes = defaultExcludes;
+            this.knownSnapshots = knownSnapshots;
+        }
+
+        boolean shouldVisit(Path path, String internedName, boolean isDirectory, Iterable<String> relativePath) {
+            return DirectorySnapshotter.shouldVisit(path, internedName, isDirectory, relativePath, defaultExcludes, predicate, hasBeenFiltered);
+        }
+
+        String intern(String string) {
+            return stringInterner.intern(string);
+        }
+    }
+
+    /**
+     * A directory on the path from the root of the walk, used to detect cycles introduced by symbolic links.
+     */
+    private static class ParentDirectory {
+        private final String path;
+        private final ParentDirectory parent;
+
+        public ParentDirectory(String path, @Nullable ParentDirectory parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+
+        boolean contains(String directory) {
+            for (ParentDirectory current = this; current != null; current = current.parent) {
+                if (current.path.equals(directory)) {
+                    return true;
                 }
-            } else if (defaultExcludes.excludeFile(internedName)) {
-                return false;
             }
+            return false;
+        }
+    }
+
+    /**
+     * Snapshots a directory, forking a task for each of its subdirectories and for each batch of files to hash.
+     * The children are sorted by name when the directory snapshot is built, so the result is the same as for the sequential walk.
+     */
+    private static class DirectorySnapshottingTask extends RecursiveTask<CompleteFileSystemLocationSnapshot> {
+        private final ParallelWalk walk;
+        private final Path dir;
+        private final String absolutePath;
+        private final String name;
+        private final AccessType accessType;
+        private final ImmutableList<String> relativePath;
+        private final ParentDirectory parentDirectories;
+
+        /**
+         * @param dir the physical location of the directory, which is the target of the symbolic link for directories accessed via a symbolic link
+         * @param absolutePath the absolute path of the directory as seen from the root of the walk
+         * @param relativePath the segments of the relative path of the directory from the root of the walk, empty for the root
+         */
+        public DirectorySnapshottingTask(
+            ParallelWalk walk,
+            Path dir,
+            String absolutePath,
+            String name,
+            AccessType accessType,
+            ImmutableList<String> relativePath,
+            @Nullable ParentDirectory parentDirectories
+        ) {
+            this.walk = walk;
+            this.dir = dir;
+            this.absolutePath = absolutePath;
+            this.name = name;
+            this.accessType = accessType;
+            this.relativePath = relativePath;
+            this.parentDirectories = new ParentDirectory(dir.toString(), parentDirectories);
+        }
 
-            if (predicate == null) {
-                return true;
+        @Override
+        protected CompleteFileSystemLocationSnapshot compute() {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
+            } catch (DirectoryIteratorException e) {
+                throw new UncheckedIOException(String.format("Could not read directory path '%s'.", dir), e.getCause());
+            } catch (IOException e) {
+                // Unlistable directories are snapshotted as missing, the same as when walking sequentially
+                LOGGER.info("Could not read file path '{}'.", dir);
+                return new MissingFileSnapshot(absolutePath, name, AccessType.DIRECT);
             }
-            boolean allowed = predicate.test(path, internedName, isDirectory, relativePath);
-            if (!allowed) {
-                hasBeenFiltered.set(true);
+
+            List<DirectorySnapshottingTask> subdirectories = new ArrayList<>();
+            List<FileToSnapshot> files = new ArrayList<>();
+            List<CompleteFileSystemLocationSnapshot> children = new ArrayList<>(entries.size());
+            for (Path entry : entries) {
+                String internedName = walk.intern(entry.getFileName().toString());
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    if (walk.shouldVisit(entry, internedName, Files.isDirectory(entry), relativePath)) {
+                        LOGGER.info("Could not read file path '{}'.", entry);
+                        children.add(new MissingFileSnapshot(walk.intern(entry.toString()), internedName, AccessType.DIRECT));
+                    }
+                    continue;
+                }
+                String childAbsolutePath = absolutePath + File.separatorChar + internedName;
+                if (attrs.isDirectory()) {
+                    if (walk.shouldVisit(entry, internedName, true, relativePath)) {
+                        String internedChildAbsolutePath = walk.intern(childAbsolutePath);
+                        Optional<CompleteFileSystemLocationSnapshot> knownDirectory = isWalkedDirectly()
+                            ? knownDirectory(walk.knownSnapshots, internedChildAbsolutePath)
+                            : Optional.empty();
+                        if (knownDirectory.isPresent()) {
+                            children.add(knownDirectory.get());
+                        } else {
+                            subdirectories.add(new DirectorySnapshottingTask(walk, entry, internedChildAbsolutePath, internedName, AccessType.DIRECT, append(relativePath, internedName), parentDirectories));
+                        }
+                    }
+                } else if (attrs.isSymbolicLink()) {
+                    BasicFileAttributes targetAttributes = readAttributesOfSymlinkTarget(entry, attrs);
+                    if (targetAttributes.isDirectory()) {
+                        Path targetDir = toRealPath(entry);
+                        if (parentDirectories.contains(targetDir.toString())) {
+                            continue;
+                        }
+                        // Like the sequential walk, name the directory after the target of the link
+                        String targetName = walk.intern(getFilename(targetDir));
+                        if (walk.shouldVisit(targetDir, targetName, true, relativePath)) {
+                            subdirectories.add(new DirectorySnapshottingTask(walk, targetDir, walk.intern(childAbsolutePath), targetName, AccessType.VIA_SYMLINK, append(relativePath, targetName), parentDirectories));
+                        }
+                    } else if (walk.shouldVisit(entry, internedName, false, relativePath)) {
+                        files.add(new FileToSnapshot(entry, walk.intern(childAbsolutePath), internedName, targetAttributes, AccessType.VIA_SYMLINK));
+                    }
+                } else if (walk.shouldVisit(entry, internedName, false, relativePath)) {
+                    String internedChildAbsolutePath = walk.intern(childAbsolutePath);
+                    Optional<CompleteFileSystemLocationSnapshot> knownFile = isWalkedDirectly()
+                        ? knownRegularFile(walk.knownSnapshots, internedChildAbsolutePath, attrs)
+                        : Optional.empty();
+                    if (knownFile.isPresent()) {
+                        children.add(knownFile.get());
+                    } else {
+                        files.add(new FileToSnapshot(entry, internedChildAbsolutePath, internedName, attrs, AccessType.DIRECT));
+                    }
+                }
             }
-            return allowed;
-        }
 
-        public CompleteFileSystemLocationSnapshot getResult() {
+            List<FileHashingTask> fileBatches = new ArrayList<>();
+            for (int start = FILES_PER_TASK; start < files.size(); start += FILES_PER_TASK) {
+                fileBatches.add(new FileHashingTask(walk.hasher, files.subList(start, Math.min(start + FILES_PER_TASK, files.size()))));
+            }
+            subdirectories.forEach(ForkJoinTask::fork);
+            fileBatches.forEach(ForkJoinTask::fork);
+            children.addAll(new FileHashingTask(walk.hasher, files.subList(0, Math.min(FILES_PER_TASK, files.size()))).compute());
+            for (FileHashingTask fileBatch : fileBatches) {
+                children.addAll(fileBatch.join());
+            }
+            for (DirectorySnapshottingTask subdirectory : subdirectories) {
+                children.add(subdirectory.join());
+            }
+
+            MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+            builder.preVisitDirectory(absolutePath, name);
+            children.forEach(builder::visitFile);
+            builder.postVisitDirectory(accessType);
             return builder.getResult();
         }
+
+        /**
+         * Whether the directory is not reached via a symbolic link, in which case its physical location is the same as its absolute path.
+         */
+        private boolean isWalkedDirectly() {
+            return dir.toString().equals(absolutePath);
+        }
+
+        private static ImmutableList<String> append(ImmutableList<String> relativePath, String name) {
+            return ImmutableList.<String>builder().addAll(relativePath).add(name).build();
+        }
+
+        private static Path toRealPath(Path symlink) {
+            try {
+                return symlink.toRealPath();
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", symlink), e);
+            }
+        }
+    }
+
+    private static class FileToSnapshot {
+        private final Path path;
+        private final String absolutePath;
+        private final String name;
+        private final BasicFileAttributes attributes;
+        private final AccessType accessType;
+
+        public FileToSnapshot(Path path, String absolutePath, String name, BasicFileAttributes attributes, AccessType accessType) {
+            this.path = path;
+            this.absolutePath = absolutePath;
+            this.name = name;
+            this.attributes = attributes;
+            this.accessType = accessType;
+        }
+    }
+
+    private static class FileHashingTask extends RecursiveTask<List<CompleteFileSystemLocationSnapshot>> {
+        private final FileHasher hasher;
+        private final List<FileToSnapshot> files;
+
+        public FileHashingTask(FileHasher hasher, List<FileToSnapshot> files) {
+            this.hasher = hasher;
+            this.files = files;
+        }
+
+        @Override
+        protected List<CompleteFileSystemLocationSnapshot> compute() {
+            return snapshotFiles(hasher, files);
+        }
     }
 }
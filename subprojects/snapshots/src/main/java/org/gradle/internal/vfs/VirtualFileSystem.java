@@ -22,6 +22,13 @@ public interface VirtualFileSystem {
     SnapshotHierarchy getRoot();
     void update(UpdateFunction updateFunction);
 
+    /**
+     * Notifies the virtual file system that the snapshot of the given location is being read,
+     * so that it can retain recently used snapshots in favour of others.
+     */
+    default void locationAccessed(String absolutePath) {
+    }
+
     /**
      * Updates the snapshot hierarchy, passing a {@link SnapshotHierarchy.NodeDiffListener} to the calls on {@link SnapshotHierarchy}.
      */
@@ -81,6 +81,7 @@ public <T> T read(String location, Function<CompleteFileSystemLocationSnapshot,
 
     @Override
     public <T> Optional<T> readRegularFileContentHash(String location, Function<HashCode, T> visitor) {
+        virtualFileSystem.locationAccessed(location);
         return virtualFileSystem.getRoot().getMetadata(location)
             .<Optional<HashCode>>flatMap(snapshot -> {
                 if (snapshot.getType() != FileType.RegularFile) {
@@ -122,6 +123,7 @@ public void read(String location, SnapshottingFilter filter, Consumer<CompleteFi
         if (filter.isEmpty()) {
             visitor.accept(readLocation(location));
         } else {
+            virtualFileSystem.locationAccessed(location);
             FileSystemSnapshot filteredSnapshot = virtualFileSystem.getRoot().getSnapshot(location)
                 .filter(CompleteFileSystemLocationSnapshot.class::isInstance)
                 .map(snapshot -> FileSystemSnapshotFilter.filterSnapshot(filter.getAsSnapshotPredicate(), snapshot))
@@ -158,7 +160,8 @@ private CompleteFileSystemLocationSnapshot snapshot(String location) {
                 virtualFileSystem.update((root, changeListener) -> root.store(missingFileSnapshot.getAbsolutePath(), missingFileSnapshot, changeListener));
                 return missingFileSnapshot;
             case Directory:
-                CompleteFileSystemLocationSnapshot directorySnapshot = directorySnapshotter.snapshot(location, null, new AtomicBoolean(false));
+                // Reuse what is still known below the directory, e.g. the siblings of a changed file after an invalidation
+                CompleteFileSystemLocationSnapshot directorySnapshot = directorySnapshotter.snapshot(location, null, new AtomicBoolean(false), virtualFileSystem.getRoot()::getSnapshot);
                 virtualFileSystem.update((root, changeListener) -> root.store(directorySnapshot.getAbsolutePath(), directorySnapshot, changeListener));
                 return directorySnapshot;
             default:
@@ -167,6 +170,7 @@ private CompleteFileSystemLocationSnapshot snapshot(String location) {
     }
 
     private CompleteFileSystemLocationSnapshot readLocation(String location) {
+        virtualFileSystem.locationAccessed(location);
         return virtualFileSystem.getRoot().getSnapshot(location)
             .orElseGet(() -> producingSnapshots.guardByKey(location,
                 () -> virtualFileSystem.getRoot().getSnapshot(location).orElseGet(() -> snapshot(location)))
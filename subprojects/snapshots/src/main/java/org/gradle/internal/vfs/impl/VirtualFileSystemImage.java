@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl;
+
+import org.gradle.internal.file.FileMetadata;
+import org.gradle.internal.file.FileMetadata.AccessType;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.file.Stat;
+import org.gradle.internal.file.impl.DefaultFileMetadata;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.PathUtil;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.SnapshotHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An on-disk image of the complete snapshots in a {@link SnapshotHierarchy}, so that the virtual file system can be reused after the daemon restarts.
+ *
+ * The image is only a hint: when it is restored, each snapshot is validated against the metadata of the file system.
+ * Regular files need to have the same modification time and length, directories the same children and missing files need to be still missing.
+ * A directory which is stale is not restored, but its children that are still valid are.
+ * Snapshots accessed via symlinks are never restored, since a changed link target cannot be detected from the metadata.
+ */
+public class VirtualFileSystemImage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualFileSystemImage.class);
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte REGULAR_FILE = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte MISSING = 2;
+
+    private final File imageFile;
+    private final Stat stat;
+
+    public VirtualFileSystemImage(File imageFile, Stat stat) {
+        this.imageFile = imageFile;
+        this.stat = stat;
+    }
+
+    /**
+     * Writes the complete snapshots in the hierarchy to the image, replacing any previous image.
+     */
+    public void write(SnapshotHierarchy root) {
+        List<CompleteFileSystemLocationSnapshot> snapshots = new ArrayList<>();
+        root.visitSnapshotRoots(snapshots::add);
+        File tempFile = new File(imageFile.getParentFile(), imageFile.getName() + ".tmp");
+        try {
+            Files.createDirectories(imageFile.getParentFile().toPath());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeInt(snapshots.size());
+                for (CompleteFileSystemLocationSnapshot snapshot : snapshots) {
+                    output.writeUTF(snapshot.getAbsolutePath());
+                    writeSnapshot(output, snapshot);
+                }
+            }
+            // Other daemons using the same Gradle user home may read the image at the same time
+            Files.move(tempFile.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write virtual file system image to {}", imageFile, e);
+            tempFile.delete();
+        }
+    }
+
+    private static void writeSnapshot(DataOutputStream output, CompleteFileSystemLocationSnapshot snapshot) throws IOException {
+        output.writeBoolean(snapshot.getAccessType() == AccessType.DIRECT);
+        switch (snapshot.getType()) {
+            case RegularFile:
+                RegularFileSnapshot fileSnapshot = (RegularFileSnapshot) snapshot;
+                output.writeByte(REGULAR_FILE);
+                writeHash(output, fileSnapshot.getHash());
+                output.writeLong(fileSnapshot.getMetadata().getLastModified());
+                output.writeLong(fileSnapshot.getMetadata().getLength());
+                break;
+            case Directory:
+                CompleteDirectorySnapshot directorySnapshot = (CompleteDirectorySnapshot) snapshot;
+                output.writeByte(DIRECTORY);
+                writeHash(output, directorySnapshot.getHash());
+                List<CompleteFileSystemLocationSnapshot> children = directorySnapshot.getChildren();
+                output.writeInt(children.size());
+                for (CompleteFileSystemLocationSnapshot child : children) {
+                    output.writeUTF(child.getName());
+                    writeSnapshot(output, child);
+                }
+                break;
+            case Missing:
+                output.writeByte(MISSING);
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private static void writeHash(DataOutputStream output, HashCode hash) throws IOException {
+        byte[] bytes = hash.toByteArray();
+        output.writeByte(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Stores the snapshots from the image that are still valid in the given hierarchy.
+     * Returns the hierarchy unchanged when there is no image or it cannot be read.
+     */
+    public SnapshotHierarchy restore(SnapshotHierarchy root, SnapshotHierarchy.NodeDiffListener diffListener) {
+        if (!imageFile.isFile()) {
+            return root;
+        }
+        List<CompleteFileSystemLocationSnapshot> validSnapshots = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(imageFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                return root;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String absolutePath = input.readUTF();
+                CompleteFileSystemLocationSnapshot snapshot = readAndValidate(input, absolutePath, PathUtil.getFileName(absolutePath), validSnapshots);
+                if (snapshot != null) {
+                    validSnapshots.add(snapshot);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read virtual file system image from {}", imageFile, e);
+            return root;
+        }
+        SnapshotHierarchy newRoot = root;
+        for (CompleteFileSystemLocationSnapshot snapshot : validSnapshots) {
+            newRoot = newRoot.store(snapshot.getAbsolutePath(), snapshot, diffListener);
+        }
+        LOGGER.info("Restored {} snapshots from virtual file system image {}", validSnapshots.size(), imageFile);
+        return newRoot;
+    }
+
+    /**
+     * Reads the snapshot at the given location and returns it when it is still valid.
+     * Otherwise, adds the valid snapshots of its descendants to the given list and returns {@code null}.
+     */
+    @Nullable
+    private CompleteFileSystemLocationSnapshot readAndValidate(DataInputStream input, String absolutePath, String name, List<CompleteFileSystemLocationSnapshot> validDescendants) throws IOException {
+        boolean accessedDirectly = input.readBoolean();
+        byte type = input.readByte();
+        switch (type) {
+            case REGULAR_FILE:
+                HashCode contentHash = readHash(input);
+                long lastModified = input.readLong();
+                long length = input.readLong();
+                FileMetadata metadata = stat.stat(new File(absolutePath));
+                if (accessedDirectly
+                    && metadata.getType() == FileType.RegularFile
+                    && metadata.getAccessType() == AccessType.DIRECT
+                    && metadata.getLastModified() == lastModified
+                    && metadata.getLength() == length) {
+                    return new RegularFileSnapshot(absolutePath, name, contentHash, DefaultFileMetadata.file(lastModified, length, AccessType.DIRECT));
+                }
+                return null;
+            case DIRECTORY:
+                return readAndValidateDirectory(input, absolutePath, name, accessedDirectly, validDescendants);
+            case MISSING:
+                if (accessedDirectly && stat.stat(new File(absolutePath)).getType() == FileType.Missing) {
+                    return new MissingFileSnapshot(absolutePath, name, AccessType.DIRECT);
+                }
+                return null;
+            default:
+                throw new IOException("Unknown snapshot type " + type);
+        }
+    }
+
+    @Nullable
+    private CompleteFileSystemLocationSnapshot readAndValidateDirectory(DataInputStream input, String absolutePath, String name, boolean accessedDirectly, List<CompleteFileSystemLocationSnapshot> validDescendants) throws IOException {
+        HashCode hash = readHash(input);
+        int childCount = input.readInt();
+        List<CompleteFileSystemLocationSnapshot> children = new ArrayList<>(childCount);
+        List<CompleteFileSystemLocationSnapshot> validChildren = new ArrayList<>();
+        boolean allChildrenValid = true;
+        for (int i = 0; i < childCount; i++) {
+            String childName = input.readUTF();
+            CompleteFileSystemLocationSnapshot child = readAndValidate(input, absolutePath + File.separatorChar + childName, childName, validChildren);
+            if (child == null) {
+                allChildrenValid = false;
+            } else {
+                children.add(child);
+            }
+        }
+        FileMetadata metadata = stat.stat(new File(absolutePath));
+        boolean directoryValid = accessedDirectly
+            && allChildrenValid
+            && metadata.getType() == FileType.Directory
+            && metadata.getAccessType() == AccessType.DIRECT
+            && hasChildren(absolutePath, children);
+        if (directoryValid) {
+            return new CompleteDirectorySnapshot(absolutePath, name, children, hash, AccessType.DIRECT);
+        }
+        // Invalidate only the directory itself, and keep what is still valid below it
+        validDescendants.addAll(validChildren);
+        validDescendants.addAll(children);
+        return null;
+    }
+
+    private static boolean hasChildren(String absolutePath, List<CompleteFileSystemLocationSnapshot> children) {
+        // A directory containing a file excluded by default from snapshots, like .DS_Store, is never restored as a whole
+        String[] actualChildren = new File(absolutePath).list();
+        if (actualChildren == null || actualChildren.length != children.size()) {
+            return false;
+        }
+        Set<String> expectedNames = new HashSet<>(children.size());
+        for (CompleteFileSystemLocationSnapshot child : children) {
+            expectedNames.add(child.getName());
+        }
+        for (String actualChild : actualChildren) {
+            if (!expectedNames.contains(actualChild)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static HashCode readHash(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readByte()];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+}
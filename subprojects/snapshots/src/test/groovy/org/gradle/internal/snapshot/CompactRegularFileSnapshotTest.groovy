@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot
+
+import org.gradle.internal.file.FileMetadata.AccessType
+import org.gradle.internal.file.FileType
+import org.gradle.internal.file.impl.DefaultFileMetadata
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.Hashing
+import spock.lang.Specification
+
+class CompactRegularFileSnapshotTest extends Specification {
+    def parentPath = new File("/some/dir").absolutePath
+    def hash = Hashing.md5().hashString("content")
+    def metadata = DefaultFileMetadata.file(1234, 5678, AccessType.VIA_SYMLINK)
+
+    def "compact snapshot has the same content as the original"() {
+        def original = new RegularFileSnapshot(parentPath + File.separator + "file.txt", "file.txt", hash, metadata)
+
+        when:
+        def compact = CompactRegularFileSnapshot.compact(parentPath, original)
+
+        then:
+        compact instanceof CompactRegularFileSnapshot
+        compact.absolutePath == original.absolutePath
+        compact.name == "file.txt"
+        compact.type == FileType.RegularFile
+        compact.hash == hash
+        compact.accessType == AccessType.VIA_SYMLINK
+        compact.metadata == metadata
+        compact.isContentAndMetadataUpToDate(original)
+        original.isContentAndMetadataUpToDate(compact)
+        compact.isContentAndMetadataUpToDate(CompactRegularFileSnapshot.compact(parentPath, original))
+        !compact.isContentAndMetadataUpToDate(CompactRegularFileSnapshot.compact(parentPath, new RegularFileSnapshot(original.absolutePath, "file.txt", Hashing.md5().hashString("other"), metadata)))
+    }
+
+    def "keeps snapshots which cannot be stored compactly"() {
+        expect:
+        CompactRegularFileSnapshot.compact(parentPath, snapshot).is(snapshot)
+
+        where:
+        snapshot << [
+            new RegularFileSnapshot(new File("/other/dir/file.txt").absolutePath, "file.txt", Hashing.md5().hashString("content"), DefaultFileMetadata.file(1, 2, AccessType.DIRECT)),
+            new RegularFileSnapshot(new File("/some/dir/file.txt").absolutePath, "file.txt", HashCode.fromInt(1234), DefaultFileMetadata.file(1, 2, AccessType.DIRECT)),
+            new MissingFileSnapshot(new File("/some/dir/missing.txt").absolutePath, "missing.txt", AccessType.DIRECT),
+            new CompleteDirectorySnapshot(new File("/some/dir/sub").absolutePath, "sub", [], HashCode.fromInt(1234), AccessType.DIRECT)
+        ]
+    }
+}
@@ -22,13 +22,17 @@ import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.tasks.util.PatternSet
 import org.gradle.internal.file.FileMetadata.AccessType
 import org.gradle.internal.fingerprint.impl.PatternSetSnapshottingFilter
+import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.hash.TestFileHasher
+import org.gradle.internal.snapshot.CaseSensitivity
 import org.gradle.internal.snapshot.CompleteDirectorySnapshot
 import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
 import org.gradle.internal.snapshot.FileSystemSnapshotVisitor
 import org.gradle.internal.snapshot.MissingFileSnapshot
 import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.SnapshotHierarchy
 import org.gradle.internal.snapshot.SnapshottingFilter
+import org.gradle.internal.vfs.impl.DefaultSnapshotHierarchy
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.Requires
@@ -37,8 +41,10 @@ import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Issue
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import java.nio.file.Paths
+import java.util.concurrent.ForkJoinPool
 import java.util.concurrent.atomic.AtomicBoolean
 
 @UsesNativeServices
@@ -258,6 +264,98 @@ class DirectorySnapshotterTest extends Specification {
         pipe.delete()
     }
 
+    def "parallel snapshotting produces the same snapshot as the sequential walk"() {
+        def rootDir = tmpDir.createDir("root")
+        100.times { rootDir.file("file${it}.txt").text = "content ${it}" }
+        rootDir.file("a/b/c.txt").text = "c"
+        rootDir.file("a/b/c.html").text = "html"
+        rootDir.file("a/d/e.txt").text = "e"
+        rootDir.file("subdir1/a/b/c.txt").text = "excluded"
+        rootDir.file("a/.git/config").text = "excluded by default"
+
+        def patterns = new PatternSet()
+        patterns.include("**/*.txt")
+        patterns.exclude("subdir1/**")
+        def sequentiallyFiltered = new AtomicBoolean(false)
+        def parallelFiltered = new AtomicBoolean(false)
+        def pool = new ForkJoinPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), [".git/**"], pool)
+        def sequentialSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), [".git/**"], null)
+
+        when:
+        def sequential = sequentialSnapshotter.snapshot(rootDir.absolutePath, directoryWalkerPredicate(patterns), sequentiallyFiltered)
+        def parallel = parallelSnapshotter.snapshot(rootDir.absolutePath, directoryWalkerPredicate(patterns), parallelFiltered)
+
+        then:
+        parallel.hash == sequential.hash
+        visitedPaths(parallel) == visitedPaths(sequential)
+        visitedPaths(parallel).size() == 106
+        parallelFiltered.get()
+        sequentiallyFiltered.get()
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    @Requires(TestPrecondition.SYMLINKS)
+    def "parallel snapshotting follows symlinked directories"() {
+        def rootDir = tmpDir.createDir("root")
+        def target = tmpDir.createDir("target")
+        target.file("a.txt").text = "a"
+        rootDir.file("link").createLink(target)
+        def pool = new ForkJoinPool(2)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), [], pool)
+
+        when:
+        def sequential = directorySnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false))
+        def parallel = parallelSnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false))
+
+        then:
+        parallel.hash == sequential.hash
+        visitedPaths(parallel) == visitedPaths(sequential)
+        parallel.children*.accessType == [AccessType.VIA_SYMLINK]
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    @Unroll
+    def "reuses known snapshots of unchanged descendants when re-snapshotting after a change (#walker)"() {
+        def rootDir = tmpDir.createDir("root")
+        10.times { rootDir.file("sibling${it}/file.txt").text = "sibling ${it}" }
+        def changedFile = rootDir.file("a/b/changed.txt")
+        changedFile.text = "before"
+        rootDir.file("a/b/unchanged.txt").text = "unchanged"
+        def hashedFiles = []
+        def countingHasher = [hash: { File file, long length, long lastModified ->
+            hashedFiles << file.absolutePath
+            fileHasher.hash(file, length, lastModified)
+        }] as FileHasher
+        def pool = walker == "parallel" ? new ForkJoinPool(2) : null
+        def snapshotter = new DirectorySnapshotter(countingHasher, new StringInterner(), [], pool)
+        def knownSnapshots = DefaultSnapshotHierarchy.empty(CaseSensitivity.CASE_SENSITIVE)
+
+        when:
+        def initial = snapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false))
+        knownSnapshots = knownSnapshots.store(rootDir.absolutePath, initial, SnapshotHierarchy.NodeDiffListener.NOOP)
+        changedFile.text = "after"
+        knownSnapshots = knownSnapshots.invalidate(changedFile.absolutePath, SnapshotHierarchy.NodeDiffListener.NOOP)
+        hashedFiles.clear()
+        def incremental = snapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false), knownSnapshots.&getSnapshot)
+
+        then:
+        hashedFiles == [changedFile.absolutePath]
+        incremental.hash != initial.hash
+        incremental.hash == directorySnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false)).hash
+        visitedPaths(incremental) == visitedPaths(initial)
+
+        cleanup:
+        pool?.shutdown()
+
+        where:
+        walker << ["sequential", "parallel"]
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes() as List)
 
@@ -279,6 +377,17 @@ class DirectorySnapshotterTest extends Specification {
         !defaultExcludes.excludeFile('#some')
     }
 
+    private static List<String> visitedPaths(CompleteFileSystemLocationSnapshot snapshot) {
+        def visited = []
+        snapshot.accept(new RelativePathTrackingVisitor() {
+            @Override
+            void visit(String absolutePath, Deque<String> relativePath) {
+                visited << absolutePath
+            }
+        })
+        return visited
+    }
+
     private static String fileSystemRoot() {
         "${Paths.get("").toAbsolutePath().root}"
     }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs.impl
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_SENSITIVE
+import static org.gradle.internal.snapshot.SnapshotHierarchy.NodeDiffListener.NOOP
+
+class VirtualFileSystemImageTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    private static final SnapshotHierarchy EMPTY = DefaultSnapshotHierarchy.empty(CASE_SENSITIVE)
+
+    def directorySnapshotter = new DirectorySnapshotter(TestFiles.fileHasher(), new StringInterner(), [])
+    def image = new VirtualFileSystemImage(tmpDir.file("vfs/image.bin"), TestFiles.fileSystem())
+
+    def "restores unchanged snapshots"() {
+        def dir = tmpDir.createDir("dir")
+        def child = dir.file("child").createFile()
+        dir.file("sub/nested").createFile()
+        def snapshot = snapshotDir(dir)
+
+        when:
+        image.write(EMPTY.store(dir.absolutePath, snapshot, NOOP))
+        def restored = image.restore(EMPTY, NOOP)
+
+        then:
+        restored.getSnapshot(dir.absolutePath).get().hash == snapshot.hash
+        restored.getSnapshot(child.absolutePath).present
+    }
+
+    def "does not restore modified files"() {
+        def dir = tmpDir.createDir("dir")
+        def child = dir.file("child").createFile()
+        def unchanged = dir.file("unchanged").createFile()
+
+        when:
+        image.write(EMPTY.store(dir.absolutePath, snapshotDir(dir), NOOP))
+        child.text = "modified"
+        child.lastModified = child.lastModified() + 2000
+        def restored = image.restore(EMPTY, NOOP)
+
+        then:
+        !restored.getSnapshot(dir.absolutePath).present
+        !restored.getSnapshot(child.absolutePath).present
+        restored.getSnapshot(unchanged.absolutePath).present
+    }
+
+    def "restores unchanged children of a directory with new entries"() {
+        def dir = tmpDir.createDir("dir")
+        def sub = dir.file("sub/nested").createFile().parentFile
+
+        when:
+        image.write(EMPTY.store(dir.absolutePath, snapshotDir(dir), NOOP))
+        dir.file("added").createFile()
+        def restored = image.restore(EMPTY, NOOP)
+
+        then:
+        !restored.getSnapshot(dir.absolutePath).present
+        restored.getSnapshot(sub.absolutePath).get().hash == snapshotDir(sub).hash
+    }
+
+    def "ignores a missing image"() {
+        expect:
+        image.restore(EMPTY, NOOP).is(EMPTY)
+    }
+
+    private def snapshotDir(File dir) {
+        directorySnapshotter.snapshot(dir.absolutePath, null, new AtomicBoolean(false))
+    }
+}